@@ -0,0 +1,37 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class CheckpointCacheTest {
+
+	@Test
+	public void backwardSeeksRestoreSameFrames() throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap[] expectedFrames = decodeFrames(bytes);
+		final GifOptions options = new GifOptions();
+		options.setInCheckpointCacheSize(1 << 22);
+		options.setInCheckpointInterval(1);
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), options);
+		try {
+			decodeFrames(decoder);
+			for (int i = expectedFrames.length - 1; i >= 0; i--) {
+				assertSameFrame(decodeFrame(decoder, i), expectedFrames[i], i);
+			}
+			assertThat(decoder.getCheckpointCacheHitCount()).isPositive();
+		} finally {
+			decoder.recycle();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class CropTest {
+
+	@Test
+	public void croppedFramesMatchRegionOfFullOnes() throws Exception {
+		assertCroppedFramesMatch(0);
+	}
+
+	@Test
+	public void croppedFramesRestoredFromCacheMatchRegionOfFullOnes() throws Exception {
+		assertCroppedFramesMatch(1 << 24);
+	}
+
+	private static void assertCroppedFramesMatch(final long frameCacheSize) throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap[] fullFrames = decodeFrames(bytes);
+		final int left = 93, top = 46, right = 231, bottom = 157;
+		final GifOptions options = new GifOptions();
+		options.setInCropRect(left, top, right, bottom);
+		options.setInFrameCacheSize(frameCacheSize);
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), options);
+		try {
+			assertThat(decoder.getWidth()).isEqualTo(right - left);
+			assertThat(decoder.getHeight()).isEqualTo(bottom - top);
+
+			for (int loop = 0; loop < 2; loop++) {
+				for (int i = 0; i < fullFrames.length; i++) {
+					final Bitmap expected = Bitmap.createBitmap(fullFrames[i], left, top, right - left, bottom - top);
+					assertSameFrame(decodeFrame(decoder, i), expected, i);
+				}
+			}
+		} finally {
+			decoder.recycle();
+		}
+	}
+}
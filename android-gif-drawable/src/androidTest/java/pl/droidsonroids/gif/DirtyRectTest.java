@@ -0,0 +1,93 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import pl.droidsonroids.gif.test.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.readRawResource;
+
+@RunWith(AndroidJUnit4.class)
+public class DirtyRectTest {
+
+	@Test
+	public void dirtyRectContainsChangedPixels() throws Exception {
+		assertDirtyRectsContainChangedPixels(new GifOptions());
+	}
+
+	@Test
+	public void croppedDirtyRectContainsChangedPixels() throws Exception {
+		final GifOptions options = new GifOptions();
+		options.setInCropRect(4, 2, 14, 10);
+		assertDirtyRectsContainChangedPixels(options);
+	}
+
+	@Test
+	public void downsampledDirtyRectContainsChangedPixels() throws Exception {
+		final GifOptions options = new GifOptions();
+		options.setInTargetSize(11, 7);
+		assertDirtyRectsContainChangedPixels(options);
+	}
+
+	/**
+	 * Renders consecutive frames of dispose_previous.gif over 2 loops, its frames cover only parts of the canvas
+	 * and dispose to background or previous. Each pixel changed by rendering has to lie inside the dirty rect of
+	 * the frame buffer, and each pixel changed in the drawable scaled up or down has to lie inside the rect mapped to its bounds.
+	 */
+	private static void assertDirtyRectsContainChangedPixels(final GifOptions options) throws Exception {
+		final GifInfoHandle handle = new InputSource.ByteArraySource(readRawResource(R.raw.dispose_previous)).createHandleWith(options);
+		try {
+			final Bitmap buffer = Bitmap.createBitmap(handle.getWidth(), handle.getHeight(), Bitmap.Config.ARGB_8888);
+			final Rect bufferRect = new Rect(0, 0, buffer.getWidth(), buffer.getHeight());
+			final Rect[] boundsList = {
+					new Rect(5, 3, 5 + buffer.getWidth() * 7 / 3, 3 + buffer.getHeight() * 12 / 5),
+					new Rect(0, 0, buffer.getWidth() * 5, buffer.getHeight() * 5),
+					new Rect(1, 2, 1 + buffer.getWidth() * 2 / 3, 2 + buffer.getHeight() * 3 / 4)
+			};
+			final int[] dirtyRect = new int[4];
+			boolean isPartialFrameRendered = false;
+			Bitmap previousFrame = buffer.copy(Bitmap.Config.ARGB_8888, false);
+			for (int i = 0; i < 2 * handle.getNumberOfFrames(); i++) {
+				handle.renderFrame(buffer, dirtyRect);
+				final Rect frameDirtyRect = new Rect(dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3]);
+				assertThat(bufferRect.contains(frameDirtyRect)).as("frame %d", i).isTrue();
+				assertChangedPixelsInside(previousFrame, buffer, frameDirtyRect, i);
+
+				for (final Rect bounds : boundsList) {
+					final Rect dirtyBounds = new Rect(frameDirtyRect);
+					GifDrawable.mapDirtyRect(dirtyBounds, bufferRect, bounds, null);
+					assertChangedPixelsInside(draw(previousFrame, bufferRect, bounds), draw(buffer, bufferRect, bounds), dirtyBounds, i);
+				}
+
+				isPartialFrameRendered |= !frameDirtyRect.isEmpty() && !frameDirtyRect.equals(bufferRect);
+				previousFrame = buffer.copy(Bitmap.Config.ARGB_8888, false);
+			}
+			assertThat(isPartialFrameRendered).isTrue();
+		} finally {
+			handle.recycle();
+		}
+	}
+
+	private static Bitmap draw(final Bitmap frame, final Rect srcRect, final Rect bounds) {
+		final Bitmap bitmap = Bitmap.createBitmap(bounds.right, bounds.bottom, Bitmap.Config.ARGB_8888);
+		new Canvas(bitmap).drawBitmap(frame, srcRect, bounds, new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG));
+		return bitmap;
+	}
+
+	private static void assertChangedPixelsInside(final Bitmap before, final Bitmap after, final Rect dirtyRect, final int index) {
+		for (int y = 0; y < after.getHeight(); y++) {
+			for (int x = 0; x < after.getWidth(); x++) {
+				if (before.getPixel(x, y) != after.getPixel(x, y)) {
+					assertThat(dirtyRect.contains(x, y)).as("frame %d, pixel (%d, %d) outside of %s", index, x, y, dirtyRect).isTrue();
+				}
+			}
+		}
+	}
+}
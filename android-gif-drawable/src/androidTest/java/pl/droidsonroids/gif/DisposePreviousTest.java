@@ -0,0 +1,119 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import pl.droidsonroids.gif.test.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.decodeFrame;
+import static pl.droidsonroids.gif.GifFrames.readRawResource;
+
+@RunWith(AndroidJUnit4.class)
+public class DisposePreviousTest {
+
+	private static final int WIDTH = 16;
+	private static final int HEIGHT = 12;
+	private static final int DISPOSE_DO_NOT = 1;
+	private static final int DISPOSE_BACKGROUND = 2;
+	private static final int DISPOSE_PREVIOUS = 3;
+	private static final int[] PALETTE = {0xFF000000, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFF00, 0xFFFFFFFF, 0xFFFF00FF, 0xFF00FFFF};
+	/**
+	 * Frames of dispose_previous.gif: left, top, width, height, color index, transparency and disposal method.
+	 * The first frame is a pattern of all the colors, other ones are filled with a single color and transparent ones
+	 * have holes wherever x + y is divisible by 3.
+	 */
+	private static final int[][] FRAMES = {
+			{0, 0, 16, 12, 0, 0, DISPOSE_DO_NOT},
+			{2, 2, 6, 4, 2, 1, DISPOSE_PREVIOUS},
+			{8, 3, 5, 5, 3, 0, DISPOSE_PREVIOUS},
+			{5, 5, 4, 4, 4, 1, DISPOSE_BACKGROUND},
+			{11, 7, 5, 5, 5, 0, DISPOSE_PREVIOUS},
+			{0, 0, 3, 3, 6, 1, DISPOSE_DO_NOT},
+	};
+
+	@Test
+	public void framesMatchFullCanvasBackup() throws Exception {
+		assertFramesMatchFullCanvasBackup(new Rect(0, 0, WIDTH, HEIGHT), new GifOptions());
+	}
+
+	@Test
+	public void croppedFramesMatchFullCanvasBackup() throws Exception {
+		// the frame at (2, 2) lies partly outside of the crop rectangle
+		final Rect cropRect = new Rect(4, 2, 14, 10);
+		final GifOptions options = new GifOptions();
+		options.setInCropRect(cropRect.left, cropRect.top, cropRect.right, cropRect.bottom);
+		assertFramesMatchFullCanvasBackup(cropRect, options);
+	}
+
+	private static void assertFramesMatchFullCanvasBackup(final Rect cropRect, final GifOptions options) throws Exception {
+		final int[][] expectedFrames = composeWithFullCanvasBackup();
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(readRawResource(R.raw.dispose_previous)), options);
+		try {
+			assertThat(decoder.getNumberOfFrames()).isEqualTo(FRAMES.length);
+			for (int i = 0; i < 2 * FRAMES.length; i++) {
+				assertFrameMatches(decodeFrame(decoder, i % FRAMES.length), expectedFrames[i % FRAMES.length], cropRect, i);
+			}
+			for (int i = FRAMES.length - 1; i >= 0; i--) {
+				assertFrameMatches(decodeFrame(decoder, i), expectedFrames[i], cropRect, i);
+			}
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	private static void assertFrameMatches(final Bitmap frame, final int[] expectedCanvas, final Rect cropRect, final int index) {
+		final int width = cropRect.width();
+		final int height = cropRect.height();
+		final int[] pixels = new int[width * height];
+		frame.getPixels(pixels, 0, width, 0, 0, width, height);
+		final int[] expectedPixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(expectedCanvas, (cropRect.top + y) * WIDTH + cropRect.left, expectedPixels, y * width, width);
+		}
+		assertThat(pixels).as("frame %d", index).isEqualTo(expectedPixels);
+	}
+
+	/**
+	 * Composes frames the way the whole canvas was saved under DISPOSE_PREVIOUS frames before
+	 * only the area under them was.
+	 */
+	private static int[][] composeWithFullCanvasBackup() {
+		final int[][] canvases = new int[FRAMES.length][];
+		int[] canvas = new int[WIDTH * HEIGHT];
+		int[] backup = null;
+		for (int i = 0; i < FRAMES.length; i++) {
+			final int[] frame = FRAMES[i];
+			if (i > 0) {
+				final int[] previousFrame = FRAMES[i - 1];
+				if (previousFrame[6] == DISPOSE_BACKGROUND) {
+					for (int y = previousFrame[1]; y < previousFrame[1] + previousFrame[3]; y++) {
+						for (int x = previousFrame[0]; x < previousFrame[0] + previousFrame[2]; x++) {
+							canvas[y * WIDTH + x] = 0;
+						}
+					}
+				} else if (previousFrame[6] == DISPOSE_PREVIOUS) {
+					canvas = backup.clone();
+				}
+			}
+			if (frame[6] == DISPOSE_PREVIOUS) {
+				backup = canvas.clone();
+			}
+			for (int y = frame[1]; y < frame[1] + frame[3]; y++) {
+				for (int x = frame[0]; x < frame[0] + frame[2]; x++) {
+					if (frame[4] == 0) {
+						canvas[y * WIDTH + x] = PALETTE[1 + (x + 2 * y) % 7];
+					} else if (frame[5] == 0 || (x + y) % 3 != 0) {
+						canvas[y * WIDTH + x] = PALETTE[frame[4]];
+					}
+				}
+			}
+			canvases[i] = canvas.clone();
+		}
+		return canvases;
+	}
+}
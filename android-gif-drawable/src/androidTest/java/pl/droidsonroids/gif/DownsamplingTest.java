@@ -0,0 +1,81 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.decodeFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class DownsamplingTest {
+
+	private static final int MAX_CHANNEL_ERROR = 2;
+
+	@Test
+	public void framesAreAreaAveraged() throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap[] fullFrames = decodeFrames(bytes);
+		final GifOptions options = new GifOptions();
+		options.setInTargetSize(92, 61);
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), options);
+		try {
+			assertThat(decoder.getWidth()).isEqualTo(92);
+			assertThat(decoder.getHeight()).isEqualTo(61);
+
+			for (int i = 0; i < fullFrames.length; i++) {
+				final byte[] expected = areaAverage(fullFrames[i], decoder.getWidth(), decoder.getHeight());
+				final byte[] actual = getPixelBytes(decodeFrame(decoder, i));
+				for (int j = 0; j < expected.length; j++) {
+					assertThat(Math.abs((actual[j] & 0xFF) - (expected[j] & 0xFF))).as("frame %d, byte %d", i, j)
+							.isLessThanOrEqualTo(MAX_CHANNEL_ERROR);
+				}
+			}
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	/**
+	 * Premultiplied channels are averaged independently, like the decoder does.
+	 */
+	private static byte[] areaAverage(final Bitmap frame, final int width, final int height) {
+		final byte[] source = getPixelBytes(frame);
+		final int sourceWidth = frame.getWidth();
+		final int sourceHeight = frame.getHeight();
+		final byte[] target = new byte[width * height * 4];
+		for (int ty = 0; ty < height; ty++) {
+			final double y0 = (double) ty * sourceHeight / height;
+			final double y1 = (double) (ty + 1) * sourceHeight / height;
+			for (int tx = 0; tx < width; tx++) {
+				final double x0 = (double) tx * sourceWidth / width;
+				final double x1 = (double) (tx + 1) * sourceWidth / width;
+				for (int c = 0; c < 4; c++) {
+					double sum = 0;
+					for (int y = (int) y0; y < sourceHeight && y < y1; y++) {
+						final double weightY = Math.min(y + 1, y1) - Math.max(y, y0);
+						for (int x = (int) x0; x < sourceWidth && x < x1; x++) {
+							final double weightX = Math.min(x + 1, x1) - Math.max(x, x0);
+							sum += (source[(y * sourceWidth + x) * 4 + c] & 0xFF) * weightX * weightY;
+						}
+					}
+					target[(ty * width + tx) * 4 + c] = (byte) Math.round(sum / ((x1 - x0) * (y1 - y0)));
+				}
+			}
+		}
+		return target;
+	}
+
+	private static byte[] getPixelBytes(final Bitmap bitmap) {
+		final ByteBuffer buffer = ByteBuffer.allocate(bitmap.getByteCount());
+		bitmap.copyPixelsToBuffer(buffer);
+		return buffer.array();
+	}
+}
@@ -0,0 +1,45 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrames;
+import static pl.droidsonroids.gif.GifFrames.decodeFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class FrameCacheTest {
+
+	@Test
+	public void indexedFramesAreRestoredUnchanged() throws Exception {
+		assertFramesRestoredUnchanged(true);
+	}
+
+	@Test
+	public void pixelFramesAreRestoredUnchanged() throws Exception {
+		assertFramesRestoredUnchanged(false);
+	}
+
+	private static void assertFramesRestoredUnchanged(final boolean isIndexed) throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap[] expectedFrames = decodeFrames(bytes);
+		final GifOptions options = new GifOptions();
+		options.setInFrameCacheSize(1 << 24);
+		options.setInFrameCacheIndexed(isIndexed);
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), options);
+		try {
+			assertSameFrames(decodeFrames(decoder), expectedFrames);
+			for (int i = expectedFrames.length - 1; i >= 0; i--) {
+				assertSameFrame(decodeFrame(decoder, i), expectedFrames[i], i);
+			}
+		} finally {
+			decoder.recycle();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package pl.droidsonroids.gif;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import pl.droidsonroids.gif.test.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class GifAnimationMetaDataTest {
+
+	@Test
+	public void scannedMetadataIsConsistentWithDecoder() throws Exception {
+		final Resources resources = InstrumentationRegistry.getInstrumentation().getContext().getResources();
+		final AssetFileDescriptor assetFileDescriptor = resources.openRawResourceFd(R.raw.test);
+		final byte[] bytes = new byte[(int) assetFileDescriptor.getDeclaredLength()];
+		final FileInputStream inputStream = assetFileDescriptor.createInputStream();
+		final int bufferedByteCount = inputStream.read(bytes);
+		inputStream.close();
+		assetFileDescriptor.close();
+		assertThat(bufferedByteCount).isEqualTo(bytes.length);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+
+		final GifAnimationMetaData decoded = new GifAnimationMetaData(new ByteArrayInputStream(bytes));
+		assertMetaDataEqual(new GifAnimationMetaData(bytes), decoded);
+		assertMetaDataEqual(new GifAnimationMetaData(buffer), decoded);
+		assertMetaDataEqual(new GifAnimationMetaData(resources, R.raw.test), decoded);
+	}
+
+	private static void assertMetaDataEqual(final GifAnimationMetaData actual, final GifAnimationMetaData expected) {
+		assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+		assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+		assertThat(actual.getNumberOfFrames()).isEqualTo(expected.getNumberOfFrames());
+		assertThat(actual.getLoopCount()).isEqualTo(expected.getLoopCount());
+		assertThat(actual.getDuration()).isEqualTo(expected.getDuration());
+		assertThat(actual.getAllocationByteCount()).isEqualTo(expected.getAllocationByteCount());
+	}
+}
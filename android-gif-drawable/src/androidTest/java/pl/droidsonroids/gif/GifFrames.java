@@ -0,0 +1,77 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import pl.droidsonroids.gif.test.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Frames of the test GIF decoded the default way, as a reference for decoding paths which should produce the same pixels.
+ */
+final class GifFrames {
+
+	private GifFrames() {
+	}
+
+	static byte[] readTestGif() throws IOException {
+		return readRawResource(R.raw.test);
+	}
+
+	static byte[] readRawResource(final int id) throws IOException {
+		final InputStream inputStream = InstrumentationRegistry.getInstrumentation().getContext().getResources().openRawResource(id);
+		try {
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int length;
+			while ((length = inputStream.read(buffer)) > 0) {
+				outputStream.write(buffer, 0, length);
+			}
+			return outputStream.toByteArray();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Decodes all the frames one after another, without any options.
+	 */
+	static Bitmap[] decodeFrames(final byte[] bytes) throws IOException {
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes));
+		try {
+			return decodeFrames(decoder);
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	static Bitmap[] decodeFrames(final GifDecoder decoder) {
+		final Bitmap[] frames = new Bitmap[decoder.getNumberOfFrames()];
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = decodeFrame(decoder, i);
+		}
+		return frames;
+	}
+
+	static Bitmap decodeFrame(final GifDecoder decoder, final int index) {
+		final Bitmap frame = Bitmap.createBitmap(decoder.getWidth(), decoder.getHeight(), Bitmap.Config.ARGB_8888);
+		decoder.seekToFrame(index, frame);
+		return frame;
+	}
+
+	static void assertSameFrame(final Bitmap actual, final Bitmap expected, final int index) {
+		assertThat(actual.sameAs(expected)).as("frame %d", index).isTrue();
+	}
+
+	static void assertSameFrames(final Bitmap[] actual, final Bitmap[] expected) {
+		assertThat(actual).hasSameSizeAs(expected);
+		for (int i = 0; i < expected.length; i++) {
+			assertSameFrame(actual[i], expected[i], i);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class GifMirrorDrawableTest {
+
+	private byte[] mBytes;
+	private GifDrawable mSource;
+
+	@Before
+	public void setUp() throws Exception {
+		mBytes = readTestGif();
+		mSource = new GifDrawable(mBytes);
+		mSource.stop();
+	}
+
+	@After
+	public void tearDown() {
+		mSource.recycle();
+	}
+
+	@Test
+	public void mirrorDrawsFramesOfSource() throws Exception {
+		final Bitmap[] expectedFrames = decodeFrames(mBytes);
+		final GifMirrorDrawable mirror = new GifMirrorDrawable(mSource);
+		final Rect bounds = new Rect(0, 0, mSource.getIntrinsicWidth(), mSource.getIntrinsicHeight());
+		mSource.setBounds(bounds);
+		mirror.setBounds(bounds);
+
+		for (int i = 0; i < expectedFrames.length; i++) {
+			assertSameFrame(mSource.seekToFrameAndGet(i), expectedFrames[i], i);
+			assertSameFrame(draw(mirror, bounds), draw(mSource, bounds), i);
+		}
+	}
+
+	@Test
+	public void mirrorDrawsFramesOfSourceInOwnBounds() {
+		final GifMirrorDrawable mirror = new GifMirrorDrawable(mSource);
+		final Rect sourceBounds = new Rect(0, 0, mSource.getIntrinsicWidth(), mSource.getIntrinsicHeight());
+		final Rect mirrorBounds = new Rect(0, 0, sourceBounds.width() / 2, sourceBounds.height() / 2);
+		mirror.setBounds(mirrorBounds);
+
+		for (int i = 0; i < mSource.getNumberOfFrames(); i++) {
+			mSource.seekToFrameAndGet(i);
+			final Bitmap mirrorFrame = draw(mirror, mirrorBounds);
+			mSource.setBounds(mirrorBounds);
+			final Bitmap expectedFrame = draw(mSource, mirrorBounds);
+			mSource.setBounds(sourceBounds);
+			assertSameFrame(mirrorFrame, expectedFrame, i);
+		}
+	}
+
+	@Test
+	public void sourceInvalidationIsFannedOutToMirrors() {
+		final GifMirrorDrawable mirror = new GifMirrorDrawable(mSource);
+		final GifMirrorDrawable otherMirror = new GifMirrorDrawable(mSource);
+		final List<Drawable> invalidatedDrawables = new ArrayList<>();
+		final List<Drawable> drawablesInvalidatedBySource = new ArrayList<>();
+		final Drawable.Callback callback = new Drawable.Callback() {
+			@Override
+			public void invalidateDrawable(@NonNull Drawable who) {
+				invalidatedDrawables.add(who);
+			}
+
+			@Override
+			public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+			}
+
+			@Override
+			public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+			}
+		};
+		mirror.setCallback(callback);
+		otherMirror.setCallback(callback);
+
+		InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+			@Override
+			public void run() {
+				invalidatedDrawables.clear();
+				mSource.invalidateSelf();
+				drawablesInvalidatedBySource.addAll(invalidatedDrawables);
+			}
+		});
+		assertThat(drawablesInvalidatedBySource).hasSize(2).containsOnly(mirror, otherMirror);
+	}
+
+	private static Bitmap draw(final Drawable drawable, final Rect bounds) {
+		final Bitmap bitmap = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+		drawable.draw(new Canvas(bitmap));
+		return bitmap;
+	}
+}
@@ -0,0 +1,99 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrame;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class LazyMetadataTest {
+
+	private byte[] mBytes;
+	private GifDecoder mEagerDecoder;
+	private GifDecoder mLazyDecoder;
+
+	@Before
+	public void setUp() throws Exception {
+		mBytes = readTestGif();
+		mEagerDecoder = new GifDecoder(new InputSource.ByteArraySource(mBytes));
+		mLazyDecoder = new GifDecoder(new InputSource.ByteArraySource(mBytes), createLazyOptions());
+	}
+
+	@After
+	public void tearDown() {
+		mEagerDecoder.recycle();
+		mLazyDecoder.recycle();
+	}
+
+	@Test
+	public void onlyBeginningIsReadWhenOpening() {
+		assertThat(mEagerDecoder.isMetadataComplete()).isTrue();
+		assertThat(mLazyDecoder.isMetadataComplete()).isFalse();
+		assertThat(mLazyDecoder.getNumberOfFrames()).isGreaterThan(1).isLessThan(mEagerDecoder.getNumberOfFrames());
+		assertThat(mLazyDecoder.getWidth()).isEqualTo(mEagerDecoder.getWidth());
+		assertThat(mLazyDecoder.getHeight()).isEqualTo(mEagerDecoder.getHeight());
+	}
+
+	@Test
+	public void seekingPastScannedFramesReadsTheirMetadata() {
+		final int lastIndex = mEagerDecoder.getNumberOfFrames() - 1;
+		final Bitmap frame = decodeFrame(mLazyDecoder, lastIndex);
+		assertThat(mLazyDecoder.getNumberOfFrames()).isEqualTo(lastIndex + 1);
+		assertSameFrame(frame, decodeFrame(mEagerDecoder, lastIndex), lastIndex);
+	}
+
+	@Test
+	public void frameDurationPastScannedFramesReadsTheirMetadata() {
+		final int lastIndex = mEagerDecoder.getNumberOfFrames() - 1;
+		assertThat(mLazyDecoder.getFrameDuration(lastIndex)).isEqualTo(mEagerDecoder.getFrameDuration(lastIndex));
+		assertThat(mLazyDecoder.getNumberOfFrames()).isEqualTo(lastIndex + 1);
+	}
+
+	@Test
+	public void metadataMatchesEagerOneAfterScan() {
+		assertThat(mLazyDecoder.getMetadataSidecar()).isNotNull();
+		assertThat(mLazyDecoder.isMetadataComplete()).isTrue();
+		assertSameMetadata(mLazyDecoder.getNumberOfFrames(), mLazyDecoder.getDuration(), mLazyDecoder.getLoopCount());
+		for (int i = 0; i < mEagerDecoder.getNumberOfFrames(); i++) {
+			assertThat(mLazyDecoder.getFrameDuration(i)).as("frame %d", i).isEqualTo(mEagerDecoder.getFrameDuration(i));
+			assertSameFrame(decodeFrame(mLazyDecoder, i), decodeFrame(mEagerDecoder, i), i);
+		}
+	}
+
+	@Test
+	public void drawableScansMetadataInBackground() throws Exception {
+		final GifDrawable drawable = new GifDrawableBuilder().from(mBytes).options(createLazyOptions()).build();
+		try {
+			final long deadline = SystemClock.uptimeMillis() + 5000;
+			while (!drawable.isMetadataComplete()) {
+				assertThat(SystemClock.uptimeMillis()).as("metadata scan timeout").isLessThan(deadline);
+				Thread.sleep(10);
+			}
+			assertSameMetadata(drawable.getNumberOfFrames(), drawable.getDuration(), drawable.getLoopCount());
+		} finally {
+			drawable.recycle();
+		}
+	}
+
+	private void assertSameMetadata(final int numberOfFrames, final int duration, final int loopCount) {
+		assertThat(numberOfFrames).isEqualTo(mEagerDecoder.getNumberOfFrames());
+		assertThat(duration).isEqualTo(mEagerDecoder.getDuration());
+		assertThat(loopCount).isEqualTo(mEagerDecoder.getLoopCount());
+	}
+
+	private static GifOptions createLazyOptions() {
+		final GifOptions options = new GifOptions();
+		options.setInLazyMetadata(true);
+		return options;
+	}
+}
@@ -0,0 +1,88 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrames;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class MappedFileTest {
+
+	private byte[] mBytes;
+	private File mFile;
+
+	@Before
+	public void setUp() throws Exception {
+		mBytes = readTestGif();
+		mFile = new File(InstrumentationRegistry.getInstrumentation().getContext().getCacheDir(), "mapped.gif");
+		writeFile(mFile, mBytes);
+	}
+
+	@After
+	public void tearDown() {
+		mFile.delete();
+	}
+
+	@Test
+	public void mappingIsKeptUntilLastHandleIsReleased() throws Exception {
+		final Bitmap[] expectedFrames = decodeFrames(mBytes);
+		final GifDecoder decoder = new GifDecoder(new InputSource.FileSource(mFile));
+		final GifDecoder sharingDecoder = new GifDecoder(new InputSource.FileSource(mFile));
+		try {
+			assertSameFrames(decodeFrames(decoder), expectedFrames);
+
+			decoder.recycle();
+			assertSameFrames(decodeFrames(sharingDecoder), expectedFrames);
+		} finally {
+			decoder.recycle();
+			sharingDecoder.recycle();
+		}
+	}
+
+	@Test
+	public void replacedFileIsMappedAgain() throws Exception {
+		final GifDecoder decoder = new GifDecoder(new InputSource.FileSource(mFile));
+		try {
+			// all the frames use the global color table
+			final byte[] replacementBytes = mBytes.clone();
+			for (int i = 13; i < 13 + 3 * 256; i++) {
+				replacementBytes[i] ^= 0xFF;
+			}
+			final File replacementFile = new File(mFile.getParentFile(), "replacement.gif");
+			writeFile(replacementFile, replacementBytes);
+			assertThat(replacementFile.renameTo(mFile)).isTrue();
+			final GifDecoder replacementDecoder = new GifDecoder(new InputSource.FileSource(mFile));
+			try {
+				assertSameFrames(decodeFrames(replacementDecoder), decodeFrames(replacementBytes));
+				assertSameFrames(decodeFrames(decoder), decodeFrames(mBytes));
+			} finally {
+				replacementDecoder.recycle();
+			}
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	private static void writeFile(final File file, final byte[] bytes) throws IOException {
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(bytes);
+		} finally {
+			outputStream.close();
+		}
+	}
+}
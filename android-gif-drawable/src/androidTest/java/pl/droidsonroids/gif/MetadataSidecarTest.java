@@ -0,0 +1,54 @@
+package pl.droidsonroids.gif;
+
+import android.content.res.Resources;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import pl.droidsonroids.gif.test.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class MetadataSidecarTest {
+
+	@Test
+	public void importedMetadataIsConsistentWithDecoder() throws Exception {
+		final Resources resources = InstrumentationRegistry.getInstrumentation().getContext().getResources();
+		final GifDecoder decoder = new GifDecoder(new InputSource.ResourcesSource(resources, R.raw.test));
+		final byte[] sidecar = decoder.getMetadataSidecar();
+		assertThat(sidecar).isNotNull();
+
+		final GifOptions options = new GifOptions();
+		options.setInMetadataSidecar(sidecar);
+		final GifDecoder importingDecoder = new GifDecoder(new InputSource.ResourcesSource(resources, R.raw.test), options);
+		assertThat(importingDecoder.isMetadataComplete()).isTrue();
+		assertThat(importingDecoder.getNumberOfFrames()).isEqualTo(decoder.getNumberOfFrames());
+		assertThat(importingDecoder.getDuration()).isEqualTo(decoder.getDuration());
+		assertThat(importingDecoder.getLoopCount()).isEqualTo(decoder.getLoopCount());
+		assertThat(importingDecoder.getComment()).isEqualTo(decoder.getComment());
+		assertThat(importingDecoder.getMetadataSidecar()).isEqualTo(sidecar);
+		decoder.recycle();
+		importingDecoder.recycle();
+	}
+
+	@Test
+	public void corruptedSidecarIsIgnored() throws Exception {
+		final Resources resources = InstrumentationRegistry.getInstrumentation().getContext().getResources();
+		final GifDecoder decoder = new GifDecoder(new InputSource.ResourcesSource(resources, R.raw.test));
+		final byte[] sidecar = decoder.getMetadataSidecar();
+		assertThat(sidecar).isNotNull();
+		sidecar[sidecar.length / 2] ^= 1;
+
+		final GifOptions options = new GifOptions();
+		options.setInMetadataSidecar(sidecar);
+		final GifDecoder importingDecoder = new GifDecoder(new InputSource.ResourcesSource(resources, R.raw.test), options);
+		assertThat(importingDecoder.isMetadataComplete()).isTrue();
+		assertThat(importingDecoder.getNumberOfFrames()).isEqualTo(decoder.getNumberOfFrames());
+		assertThat(importingDecoder.getDuration()).isEqualTo(decoder.getDuration());
+		decoder.recycle();
+		importingDecoder.recycle();
+	}
+}
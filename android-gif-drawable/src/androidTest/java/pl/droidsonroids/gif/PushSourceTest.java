@@ -0,0 +1,246 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class PushSourceTest {
+
+	private byte[] mBytes;
+	private Bitmap[] mExpectedFrames;
+	private int[] mFrameEnds;
+	private int mAppendedByteCount;
+	private InputSource.PushSource mSource;
+	private GifDrawable mDrawable;
+	private FrameRecorder mRecorder;
+
+	@Before
+	public void setUp() throws Exception {
+		mBytes = readTestGif();
+		mExpectedFrames = decodeFrames(mBytes);
+		mFrameEnds = findFrameEnds(mBytes);
+		assertThat(mFrameEnds).hasSize(mExpectedFrames.length);
+		mSource = new InputSource.PushSource(mBytes.length);
+		mRecorder = new FrameRecorder();
+	}
+
+	@After
+	public void tearDown() {
+		mSource.close();
+		if (mDrawable != null) {
+			InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+				@Override
+				public void run() {
+					mDrawable.setCallback(null);
+					mDrawable.recycle();
+				}
+			});
+		}
+	}
+
+	@Test
+	public void playbackPausesAtDataFrontierAndResumesWhenBytesArrive() throws Exception {
+		appendUpTo(mFrameEnds[0] - 1);
+		assertThat(mSource.isFirstFrameAvailable()).isFalse();
+		appendUpTo(mFrameEnds[1]);
+		assertThat(mSource.isFirstFrameAvailable()).isTrue();
+		openDrawable();
+		assertThat(mDrawable.isMetadataComplete()).isFalse();
+		final int frameDuration = mDrawable.getFrameDuration(0);
+
+		// several frame durations pass while only 2 frames have arrived
+		mRecorder.awaitFrame(1, 0);
+		Thread.sleep(4 * frameDuration);
+		assertThat(mDrawable.isRunning()).isTrue();
+		assertThat(mDrawable.getCurrentFrameIndex()).isEqualTo(1);
+		final List<DisplayedFrame> framesBeforeFrontier = mRecorder.getFrames();
+		assertFramesDrawn(framesBeforeFrontier, mExpectedFrames.length);
+		assertThat(framesBeforeFrontier.get(framesBeforeFrontier.size() - 1).mIndex).isEqualTo(1);
+
+		appendUpTo(mFrameEnds[3]);
+		final int lastFramePosition = mRecorder.awaitFrame(3, 0);
+		final List<DisplayedFrame> frames = mRecorder.getFrames();
+		assertFramesDrawn(frames, mExpectedFrames.length);
+		assertThat(frames.get(lastFramePosition - 1).mIndex).isEqualTo(2);
+		assertThat(mDrawable.getNumberOfFrames()).isEqualTo(mExpectedFrames.length);
+
+		// the trailer has not arrived, so it is not known yet whether there are more frames
+		Thread.sleep(4 * frameDuration);
+		assertThat(mRecorder.getFrames()).hasSize(frames.size());
+
+		appendUpTo(mBytes.length);
+		mSource.finish();
+		final int loopStart = mRecorder.awaitFrame(0, lastFramePosition);
+		mRecorder.awaitFrame(3, loopStart);
+		assertFramesDrawn(mRecorder.getFrames(), mExpectedFrames.length);
+		assertThat(mDrawable.isMetadataComplete()).isTrue();
+		assertThat(mDrawable.getNumberOfFrames()).isEqualTo(mExpectedFrames.length);
+	}
+
+	@Test
+	public void truncatedDataLoopsAfterFinish() throws Exception {
+		appendUpTo(mFrameEnds[1]);
+		openDrawable();
+		final int position = mRecorder.awaitFrame(1, 0);
+
+		mSource.finish();
+		mRecorder.awaitFrame(1, mRecorder.awaitFrame(0, position + 1));
+		assertFramesDrawn(mRecorder.getFrames(), 2);
+		assertThat(mDrawable.isMetadataComplete()).isTrue();
+		assertThat(mDrawable.getNumberOfFrames()).isEqualTo(2);
+	}
+
+	@Test
+	public void openedDrawableKeepsPlayingAfterSourceIsClosed() throws Exception {
+		appendUpTo(mBytes.length);
+		openDrawable();
+		mSource.close();
+		try {
+			mSource.append(mBytes);
+			fail("Closed source should not be appendable");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+
+		final int loopEnd = mRecorder.awaitFrame(mExpectedFrames.length - 1, 0);
+		mRecorder.awaitFrame(0, loopEnd);
+		assertFramesDrawn(mRecorder.getFrames(), mExpectedFrames.length);
+	}
+
+	private void openDrawable() throws Exception {
+		mDrawable = new GifDrawable(mSource, null, null, false, new GifOptions());
+		mDrawable.setBounds(0, 0, mDrawable.getIntrinsicWidth(), mDrawable.getIntrinsicHeight());
+		mDrawable.setCallback(mRecorder);
+	}
+
+	private void appendUpTo(final int end) {
+		mSource.append(mBytes, mAppendedByteCount, end - mAppendedByteCount);
+		mAppendedByteCount = end;
+	}
+
+	/**
+	 * Asserts that frames are drawn in order, looping over the given number of frames,
+	 * and that they match a decode of the complete data.
+	 */
+	private void assertFramesDrawn(final List<DisplayedFrame> frames, final int frameCount) {
+		int previousIndex = 0;
+		for (int i = 0; i < frames.size(); i++) {
+			final DisplayedFrame frame = frames.get(i);
+			assertThat(frame.mIndex).as("drawn frame %d", i).isIn(previousIndex, (previousIndex + 1) % frameCount);
+			assertSameFrame(frame.mBitmap, mExpectedFrames[frame.mIndex], frame.mIndex);
+			previousIndex = frame.mIndex;
+		}
+	}
+
+	/**
+	 * @return offsets following the image data of each frame
+	 */
+	private static int[] findFrameEnds(final byte[] bytes) {
+		final List<Integer> frameEnds = new ArrayList<>();
+		int position = 13 + getColorTableSize(bytes[10]);
+		while (position < bytes.length && bytes[position] != 0x3B) {
+			final boolean isImage = bytes[position] == 0x2C;
+			if (isImage) {
+				// descriptor, local color table and LZW minimum code size precede image data blocks
+				position += 10 + getColorTableSize(bytes[position + 9]) + 1;
+			} else {
+				position += 2;
+			}
+			int blockLength;
+			do {
+				blockLength = bytes[position] & 0xFF;
+				position += blockLength + 1;
+			} while (blockLength != 0);
+			if (isImage) {
+				frameEnds.add(position);
+			}
+		}
+		final int[] result = new int[frameEnds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = frameEnds.get(i);
+		}
+		return result;
+	}
+
+	private static int getColorTableSize(final byte flags) {
+		return (flags & 0x80) != 0 ? 3 * (2 << (flags & 7)) : 0;
+	}
+
+	private static final class DisplayedFrame {
+		final int mIndex;
+		final Bitmap mBitmap;
+
+		DisplayedFrame(final int index, final Bitmap bitmap) {
+			mIndex = index;
+			mBitmap = bitmap;
+		}
+	}
+
+	/**
+	 * Draws the drawable whenever it is invalidated, the way a view does.
+	 */
+	private static final class FrameRecorder implements Drawable.Callback {
+		private final List<DisplayedFrame> mFrames = new ArrayList<>();
+
+		@Override
+		public void invalidateDrawable(@NonNull Drawable who) {
+			final GifDrawable drawable = (GifDrawable) who;
+			final Bitmap bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
+			drawable.draw(new Canvas(bitmap));
+			synchronized (this) {
+				mFrames.add(new DisplayedFrame(drawable.getCurrentFrameIndex(), bitmap));
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+		}
+
+		@Override
+		public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+		}
+
+		synchronized List<DisplayedFrame> getFrames() {
+			return new ArrayList<>(mFrames);
+		}
+
+		/**
+		 * @return position of the first frame with given index drawn at or after given position
+		 */
+		synchronized int awaitFrame(final int index, final int fromPosition) throws InterruptedException {
+			final long deadline = SystemClock.uptimeMillis() + 5000;
+			int position = fromPosition;
+			while (true) {
+				for (; position < mFrames.size(); position++) {
+					if (mFrames.get(position).mIndex == index) {
+						return position;
+					}
+				}
+				final long timeout = deadline - SystemClock.uptimeMillis();
+				assertThat(timeout).as("frame %d not drawn", index).isPositive();
+				wait(timeout);
+			}
+		}
+	}
+}
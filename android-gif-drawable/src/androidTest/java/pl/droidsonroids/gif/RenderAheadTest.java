@@ -0,0 +1,198 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrame;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class RenderAheadTest {
+
+	private static final int RENDER_AHEAD_FRAME_COUNT = 3;
+
+	private byte[] mBytes;
+	private Bitmap[] mExpectedFrames;
+	private GifDrawable mDrawable;
+	private FrameRecorder mRecorder;
+	private long mFrameDuration;
+
+	@Before
+	public void setUp() throws Exception {
+		mBytes = readTestGif();
+		mExpectedFrames = decodeFrames(mBytes);
+		mDrawable = new GifDrawableBuilder().from(mBytes).renderAheadFrameCount(RENDER_AHEAD_FRAME_COUNT).build();
+		mDrawable.setBounds(0, 0, mDrawable.getIntrinsicWidth(), mDrawable.getIntrinsicHeight());
+		mFrameDuration = mDrawable.getDuration() / mDrawable.getNumberOfFrames();
+		mRecorder = new FrameRecorder();
+		mDrawable.setCallback(mRecorder);
+	}
+
+	@After
+	public void tearDown() {
+		InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+			@Override
+			public void run() {
+				mDrawable.setCallback(null);
+				mDrawable.recycle();
+			}
+		});
+	}
+
+	@Test
+	public void displayedFramesFollowSequentialDecode() throws Exception {
+		final List<DisplayedFrame> frames = mRecorder.awaitFrames(2 * mExpectedFrames.length + 1);
+		assertFramesFollow(frames, frames.get(0).mIndex);
+
+		int maxQueuedFrameCount = 0;
+		for (final DisplayedFrame frame : frames) {
+			assertThat(frame.mQueuedFrameCount).isLessThanOrEqualTo(RENDER_AHEAD_FRAME_COUNT);
+			maxQueuedFrameCount = Math.max(maxQueuedFrameCount, frame.mQueuedFrameCount);
+		}
+		assertThat(maxQueuedFrameCount).isPositive();
+		assertThat(mDrawable.getRenderAheadUnderrunCount()).isZero();
+	}
+
+	@Test
+	public void framesAreNotRenderedAheadByDefault() throws Exception {
+		final GifDrawable drawable = new GifDrawable(mBytes);
+		try {
+			Thread.sleep(2 * mFrameDuration);
+			assertThat(drawable.getRenderAheadFrameCount()).isZero();
+			assertThat(drawable.getRenderAheadUnderrunCount()).isZero();
+		} finally {
+			drawable.recycle();
+		}
+	}
+
+	@Test
+	public void seekDropsQueuedFrames() throws Exception {
+		mRecorder.awaitFrames(2);
+		stopAndSettle();
+
+		mRecorder.clear();
+		mDrawable.seekToFrame(2);
+		assertFramesFollow(mRecorder.awaitFrames(1), 2);
+		Thread.sleep(2 * mFrameDuration);
+		assertThat(mRecorder.awaitFrames(1)).hasSize(1);
+		assertThat(mDrawable.getRenderAheadFrameCount()).isZero();
+
+		// the seeked frame has been displayed while stopped, so the next one is not postponed by the time before seeking
+		mRecorder.clear();
+		final long startTime = SystemClock.uptimeMillis();
+		mDrawable.start();
+		final List<DisplayedFrame> framesAfterStart = mRecorder.awaitFrames(1);
+		assertThat(SystemClock.uptimeMillis() - startTime).isLessThan(3 * mFrameDuration);
+		assertFramesFollow(framesAfterStart, 3);
+		assertFramesFollow(mRecorder.awaitFrames(3), 3);
+	}
+
+	@Test
+	public void resetDropsQueuedFrames() throws Exception {
+		mRecorder.awaitFrames(2);
+		stopAndSettle();
+
+		mRecorder.clear();
+		mDrawable.reset();
+		assertFramesFollow(mRecorder.awaitFrames(3), 0);
+	}
+
+	@Test
+	public void startShiftsQueuedFrames() throws Exception {
+		mRecorder.awaitFrames(2);
+		stopAndSettle();
+		final List<DisplayedFrame> framesBeforeStop = mRecorder.awaitFrames(1);
+		final int lastIndex = framesBeforeStop.get(framesBeforeStop.size() - 1).mIndex;
+		assertThat(mDrawable.getRenderAheadFrameCount()).isPositive();
+
+		// all the queued frames would be due if they were not postponed
+		Thread.sleep(mDrawable.getDuration());
+		mRecorder.clear();
+		mDrawable.start();
+		assertFramesFollow(mRecorder.awaitFrames(2), (lastIndex + 1) % mExpectedFrames.length);
+	}
+
+	/**
+	 * Stops the animation and waits until frames rendered meanwhile are published.
+	 */
+	private void stopAndSettle() throws InterruptedException {
+		mDrawable.stop();
+		Thread.sleep((RENDER_AHEAD_FRAME_COUNT + 1) * mFrameDuration);
+	}
+
+	private void assertFramesFollow(final List<DisplayedFrame> frames, final int firstIndex) {
+		for (int i = 0; i < frames.size(); i++) {
+			final DisplayedFrame frame = frames.get(i);
+			assertThat(frame.mIndex).as("displayed frame %d", i).isEqualTo((firstIndex + i) % mExpectedFrames.length);
+			assertSameFrame(frame.mBitmap, mExpectedFrames[frame.mIndex], frame.mIndex);
+		}
+	}
+
+	private static final class DisplayedFrame {
+		final int mIndex;
+		final Bitmap mBitmap;
+		final int mQueuedFrameCount;
+
+		DisplayedFrame(final int index, final Bitmap bitmap, final int queuedFrameCount) {
+			mIndex = index;
+			mBitmap = bitmap;
+			mQueuedFrameCount = queuedFrameCount;
+		}
+	}
+
+	/**
+	 * Draws the drawable whenever it is invalidated, the way a view does.
+	 */
+	private static final class FrameRecorder implements Drawable.Callback {
+		private final List<DisplayedFrame> mFrames = new ArrayList<>();
+
+		@Override
+		public void invalidateDrawable(@NonNull Drawable who) {
+			final GifDrawable drawable = (GifDrawable) who;
+			final Bitmap bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
+			drawable.draw(new Canvas(bitmap));
+			synchronized (this) {
+				mFrames.add(new DisplayedFrame(drawable.getCurrentFrameIndex(), bitmap, drawable.getRenderAheadFrameCount()));
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+		}
+
+		@Override
+		public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+		}
+
+		synchronized void clear() {
+			mFrames.clear();
+		}
+
+		synchronized List<DisplayedFrame> awaitFrames(final int count) throws InterruptedException {
+			final long deadline = SystemClock.uptimeMillis() + 5000 + 1000L * count;
+			while (mFrames.size() < count) {
+				final long timeout = deadline - SystemClock.uptimeMillis();
+				assertThat(timeout).as("%d frames displayed, %d expected", mFrames.size(), count).isPositive();
+				wait(timeout);
+			}
+			return new ArrayList<>(mFrames);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import pl.droidsonroids.gif.test.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrames;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readRawResource;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class Rgb565Test {
+
+	@Test
+	public void roundedFramesMatchArgbOnesWithinQuantization() throws Exception {
+		assertFramesMatchWithinQuantization(false);
+	}
+
+	@Test
+	public void ditheredFramesMatchArgbOnesWithinQuantization() throws Exception {
+		assertFramesMatchWithinQuantization(true);
+	}
+
+	@Test
+	public void ditheringChangesPixels() throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap rounded = decodeRgb565Frames(bytes, false)[0];
+		final Bitmap dithered = decodeRgb565Frames(bytes, true)[0];
+		assertThat(dithered.sameAs(rounded)).isFalse();
+	}
+
+	@Test
+	public void drawableUsesRgb565FrameBuffer() throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap expected = decodeOpaqueArgbFrames(bytes)[0];
+		final GifDrawable drawable = new GifDrawableBuilder().from(bytes).options(createOptions(true, false)).build();
+		try {
+			final Bitmap frame = drawable.getCurrentFrame();
+			assertThat(frame.getConfig()).isEqualTo(Bitmap.Config.RGB_565);
+			assertMatchesWithinQuantization(frame, expected, 0);
+		} finally {
+			drawable.recycle();
+		}
+	}
+
+	@Test
+	public void framesFallBackToArgbWithoutOpaqueOption() throws Exception {
+		assertFallsBackToArgb(readTestGif());
+	}
+
+	@Test
+	public void transparentFramesFallBackToArgbWithoutOpaqueOption() throws Exception {
+		final byte[] bytes = readRawResource(R.raw.dispose_previous);
+		final Bitmap[] frames = assertFallsBackToArgb(bytes);
+		boolean hasTransparentPixel = false;
+		for (final Bitmap frame : frames) {
+			final int[] pixels = new int[frame.getWidth() * frame.getHeight()];
+			frame.getPixels(pixels, 0, frame.getWidth(), 0, 0, frame.getWidth(), frame.getHeight());
+			for (final int pixel : pixels) {
+				hasTransparentPixel |= Color.alpha(pixel) == 0;
+			}
+		}
+		assertThat(hasTransparentPixel).isTrue();
+	}
+
+	private static Bitmap[] assertFallsBackToArgb(final byte[] bytes) throws Exception {
+		final GifOptions options = new GifOptions();
+		options.setInPreferredConfig(Bitmap.Config.RGB_565);
+		final Bitmap[] frames;
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), options);
+		try {
+			assertThat(decoder.getBitmapConfig()).isEqualTo(Bitmap.Config.ARGB_8888);
+			frames = decodeFrames(decoder);
+		} finally {
+			decoder.recycle();
+		}
+		assertSameFrames(frames, decodeFrames(bytes));
+
+		final GifDrawable drawable = new GifDrawableBuilder().from(bytes).options(options).build();
+		try {
+			assertThat(drawable.getCurrentFrame().getConfig()).isEqualTo(Bitmap.Config.ARGB_8888);
+		} finally {
+			drawable.recycle();
+		}
+		return frames;
+	}
+
+	private static void assertFramesMatchWithinQuantization(final boolean isDithered) throws Exception {
+		final byte[] bytes = readTestGif();
+		final Bitmap[] expectedFrames = decodeOpaqueArgbFrames(bytes);
+		final Bitmap[] frames = decodeRgb565Frames(bytes, isDithered);
+		assertThat(frames).hasSameSizeAs(expectedFrames);
+		for (int i = 0; i < frames.length; i++) {
+			assertMatchesWithinQuantization(frames[i], expectedFrames[i], i);
+		}
+	}
+
+	private static Bitmap[] decodeRgb565Frames(final byte[] bytes, final boolean isDithered) throws Exception {
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), createOptions(true, isDithered));
+		try {
+			assertThat(decoder.getBitmapConfig()).isEqualTo(Bitmap.Config.RGB_565);
+			final Bitmap[] frames = new Bitmap[decoder.getNumberOfFrames()];
+			for (int i = 0; i < frames.length; i++) {
+				frames[i] = Bitmap.createBitmap(decoder.getWidth(), decoder.getHeight(), Bitmap.Config.RGB_565);
+				decoder.seekToFrame(i, frames[i]);
+			}
+			return frames;
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	private static Bitmap[] decodeOpaqueArgbFrames(final byte[] bytes) throws Exception {
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), createOptions(false, false));
+		try {
+			return decodeFrames(decoder);
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	private static GifOptions createOptions(final boolean isRgb565, final boolean isDithered) {
+		final GifOptions options = new GifOptions();
+		options.setInIsOpaque(true);
+		if (isRgb565) {
+			options.setInPreferredConfig(Bitmap.Config.RGB_565);
+			options.setInDither(isDithered);
+		}
+		return options;
+	}
+
+	/**
+	 * Channels expanded from 16 bits keep their original bits on top, so these are compared with the reference.
+	 * Rounding to nearest and ordered dithering both stay within a single quantization step.
+	 */
+	private static void assertMatchesWithinQuantization(final Bitmap actual, final Bitmap expected, final int index) {
+		assertThat(actual.getConfig()).isEqualTo(Bitmap.Config.RGB_565);
+		final int width = expected.getWidth();
+		final int height = expected.getHeight();
+		assertThat(actual.getWidth()).isEqualTo(width);
+		assertThat(actual.getHeight()).isEqualTo(height);
+		final int[] actualPixels = new int[width * height];
+		final int[] expectedPixels = new int[width * height];
+		actual.getPixels(actualPixels, 0, width, 0, 0, width, height);
+		expected.getPixels(expectedPixels, 0, width, 0, 0, width, height);
+		for (int i = 0; i < expectedPixels.length; i++) {
+			final int actualPixel = actualPixels[i];
+			final int expectedPixel = expectedPixels[i];
+			final String description = String.format("frame %d, pixel (%d, %d)", index, i % width, i / width);
+			assertThat(Math.abs((Color.red(actualPixel) & ~7) - Color.red(expectedPixel))).as(description).isLessThanOrEqualTo(8);
+			assertThat(Math.abs((Color.green(actualPixel) & ~3) - Color.green(expectedPixel))).as(description).isLessThanOrEqualTo(4);
+			assertThat(Math.abs((Color.blue(actualPixel) & ~7) - Color.blue(expectedPixel))).as(description).isLessThanOrEqualTo(8);
+		}
+	}
+}
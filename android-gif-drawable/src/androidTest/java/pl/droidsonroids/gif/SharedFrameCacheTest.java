@@ -0,0 +1,123 @@
+package pl.droidsonroids.gif;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrames;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class SharedFrameCacheTest {
+
+	private byte[] mBytes;
+	private GifOptions mOptions;
+
+	@Before
+	public void setUp() throws Exception {
+		SharedFrameCache.setMaxSize(SharedFrameCache.DEFAULT_MAX_SIZE);
+		SharedFrameCache.trimToSize(0);
+		mBytes = readTestGif();
+		mOptions = new GifOptions();
+		mOptions.setInFrameCacheSize(SharedFrameCache.DEFAULT_MAX_SIZE);
+		mOptions.setInFrameCacheShared(true);
+	}
+
+	@After
+	public void tearDown() {
+		SharedFrameCache.setMaxSize(SharedFrameCache.DEFAULT_MAX_SIZE);
+		SharedFrameCache.trimToSize(0);
+	}
+
+	@Test
+	public void sameContentSharesCache() throws Exception {
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(mBytes), mOptions);
+		final long size;
+		final GifDecoder sharingDecoder;
+		try {
+			assertThat(decoder.warmUpFrameCache(1)).isTrue();
+			size = SharedFrameCache.getSize();
+			assertThat(size).isPositive();
+			sharingDecoder = new GifDecoder(new InputSource.ByteArraySource(mBytes.clone()), mOptions);
+		} finally {
+			decoder.recycle();
+		}
+		try {
+			SharedFrameCache.trimToSize(0);
+			assertThat(SharedFrameCache.getSize()).isEqualTo(size);
+			assertSameFrames(decodeFrames(sharingDecoder), decodeFrames(mBytes));
+		} finally {
+			sharingDecoder.recycle();
+		}
+		SharedFrameCache.trimToSize(0);
+		assertThat(SharedFrameCache.getSize()).isZero();
+	}
+
+	@Test
+	public void differentContentDoesNotShareCache() throws Exception {
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(mBytes), mOptions);
+		try {
+			assertThat(decoder.warmUpFrameCache(1)).isTrue();
+			final long size = SharedFrameCache.getSize();
+
+			// first color of the global color table, so length and frame offsets stay the same
+			final byte[] modifiedBytes = mBytes.clone();
+			modifiedBytes[13] ^= 1;
+			final GifDecoder otherDecoder = new GifDecoder(new InputSource.ByteArraySource(modifiedBytes), mOptions);
+			try {
+				assertThat(otherDecoder.warmUpFrameCache(1)).isTrue();
+				assertThat(SharedFrameCache.getSize()).isGreaterThan(size);
+				assertSameFrames(decodeFrames(otherDecoder), decodeFrames(modifiedBytes));
+			} finally {
+				otherDecoder.recycle();
+			}
+		} finally {
+			decoder.recycle();
+		}
+	}
+
+	@Test
+	public void sharedCacheIsNotCountedInAllocationByteCount() throws Exception {
+		final GifDecoder uncachedDecoder = new GifDecoder(new InputSource.ByteArraySource(mBytes));
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(mBytes), mOptions);
+		try {
+			final long uncachedByteCount = uncachedDecoder.getAllocationByteCount();
+			final long privateCacheByteCount = decoder.getAllocationByteCount();
+			assertThat(privateCacheByteCount).isGreaterThan(uncachedByteCount);
+			assertThat(decoder.warmUpFrameCache(1)).isTrue();
+			assertThat(SharedFrameCache.getSize()).isPositive();
+			assertThat(decoder.getAllocationByteCount()).isLessThan(privateCacheByteCount);
+
+			// freshly opened GIF adopts the shared cache, so nothing but the cache differs from the uncached one
+			final GifDecoder sharingDecoder = new GifDecoder(new InputSource.ByteArraySource(mBytes.clone()), mOptions);
+			try {
+				assertThat(sharingDecoder.getAllocationByteCount()).isEqualTo(uncachedByteCount);
+			} finally {
+				sharingDecoder.recycle();
+			}
+		} finally {
+			decoder.recycle();
+			uncachedDecoder.recycle();
+		}
+	}
+
+	@Test
+	public void unreferencedCacheIsEvicted() throws Exception {
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(mBytes), mOptions);
+		try {
+			assertThat(decoder.warmUpFrameCache(1)).isTrue();
+			final long size = SharedFrameCache.getSize();
+
+			SharedFrameCache.setMaxSize(1);
+			assertThat(SharedFrameCache.getSize()).isEqualTo(size);
+		} finally {
+			decoder.recycle();
+		}
+		assertThat(SharedFrameCache.getSize()).isZero();
+	}
+}
@@ -0,0 +1,51 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.droidsonroids.gif.GifFrames.assertSameFrames;
+import static pl.droidsonroids.gif.GifFrames.decodeFrames;
+import static pl.droidsonroids.gif.GifFrames.readTestGif;
+
+@RunWith(AndroidJUnit4.class)
+public class WarmUpFrameCacheTest {
+
+	@Test
+	public void framesDecodedInParallelMatchSequentialOnes() throws Exception {
+		assertWarmedUpFramesMatch(1);
+	}
+
+	@Test
+	public void subsampledFramesDecodedInParallelMatchSequentialOnes() throws Exception {
+		assertWarmedUpFramesMatch(2);
+	}
+
+	private static void assertWarmedUpFramesMatch(final int sampleSize) throws Exception {
+		final byte[] bytes = readTestGif();
+		final GifOptions referenceOptions = new GifOptions();
+		referenceOptions.setInSampleSize(sampleSize);
+		final GifDecoder referenceDecoder = new GifDecoder(new InputSource.ByteArraySource(bytes), referenceOptions);
+		final Bitmap[] expectedFrames;
+		try {
+			expectedFrames = decodeFrames(referenceDecoder);
+		} finally {
+			referenceDecoder.recycle();
+		}
+
+		final GifOptions options = new GifOptions();
+		options.setInSampleSize(sampleSize);
+		options.setInFrameCacheSize(1 << 24);
+		final GifDecoder decoder = new GifDecoder(new InputSource.ByteArraySource(bytes), options);
+		try {
+			assertThat(decoder.warmUpFrameCache(4)).isTrue();
+			assertSameFrames(decodeFrames(decoder), expectedFrames);
+		} finally {
+			decoder.recycle();
+		}
+	}
+}
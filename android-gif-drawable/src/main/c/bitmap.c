@@ -4,7 +4,7 @@
 int lockPixels(JNIEnv *env, jobject jbitmap, GifInfo *info, void **pixels) {
 	AndroidBitmapInfo bitmapInfo;
 	if (AndroidBitmap_getInfo(env, jbitmap, &bitmapInfo) == ANDROID_BITMAP_RESULT_SUCCESS)
-		info->stride = bitmapInfo.width;
+		setOutputStride(info, bitmapInfo.width);
 	else {
 		throwException(env, RUNTIME_EXCEPTION_BARE, "Could not get bitmap info");
 		return -2;
@@ -55,21 +55,36 @@ void unlockPixels(JNIEnv *env, jobject jbitmap) {
 }
 
 __unused JNIEXPORT jlong JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_renderFrame(JNIEnv *env, jclass __unused handleClass, jlong gifInfo, jobject jbitmap) {
+Java_pl_droidsonroids_gif_GifInfoHandle_renderFrame(JNIEnv *env, jclass __unused handleClass, jlong gifInfo, jobject jbitmap,
+                                                    jintArray dirtyRect) {
 	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
 	if (info == NULL)
 		return -1;
 
 	long renderStartTime = getRealTime();
+	if (info->isWaitingForFrame && !resumeAfterFrontier(info)) {
+		const jint emptyRect[4] = {0, 0, 0, 0};
+		(*env)->SetIntArrayRegion(env, dirtyRect, 0, 4, emptyRect);
+		return info->isWaitingForFrame ? FRAME_POLL_INTERVAL_MS : -1;
+	}
 	void *pixels;
 	if (lockPixels(env, jbitmap, info, &pixels) != 0) {
 		return 0;
 	}
+	argb *const canvas = getCanvas(info, pixels);
 	DDGifSlurp(info, true, false);
-	if (info->currentIndex == 0) {
-		prepareCanvas(pixels, info);
+	if (info->currentIndex == 0 && !isFrameMissing(info)) {
+		prepareCanvas(canvas, info);
 	}
-	const uint_fast32_t frameDuration = getBitmap(pixels, info);
+	const uint_fast32_t frameDuration = getBitmap(canvas, info);
+	presentCanvas(info, pixels);
 	unlockPixels(env, jbitmap);
+
+	DirtyRect rect;
+	if (!takeDirtyRect(info, &rect)) {
+		rect = (DirtyRect) {.left = 0, .top = 0, .right = 0, .bottom = 0};
+	}
+	const jint nativeRect[4] = {(jint) rect.left, (jint) rect.top, (jint) rect.right, (jint) rect.bottom};
+	(*env)->SetIntArrayRegion(env, dirtyRect, 0, 4, nativeRect);
 	return calculateInvalidationDelay(info, renderStartTime, frameDuration);
 }
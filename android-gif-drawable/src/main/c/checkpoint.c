@@ -0,0 +1,140 @@
+#include "gif.h"
+
+static inline size_t getCheckpointSize(GifInfo *info) {
+	return info->gifFilePtr->SWidth * info->gifFilePtr->SHeight * getCanvasPixelSize(info);
+}
+
+// doubles the interval and drops snapshots which are no longer on the grid
+static void thinOutCheckpoints(GifInfo *info) {
+	CheckpointCache *cache = info->checkpointCache;
+	const size_t checkpointSize = getCheckpointSize(info);
+	cache->interval *= 2;
+	uint_fast32_t i;
+	for (i = 0; i < info->gifFilePtr->ImageCount; i++) {
+		if (cache->frames[i] != NULL && i % cache->interval != 0) {
+			free(cache->frames[i]);
+			cache->frames[i] = NULL;
+			cache->byteCount -= checkpointSize;
+		}
+	}
+}
+
+void initCheckpointCache(GifInfo *info, size_t byteBudget, uint_fast32_t interval) {
+	if (byteBudget == 0 || interval == 0 || info->checkpointCache != NULL) {
+		return;
+	}
+	CheckpointCache *cache = malloc(sizeof(CheckpointCache));
+	if (cache == NULL) {
+		return;
+	}
+	cache->frames = calloc(info->gifFilePtr->ImageCount, sizeof(void *));
+	if (cache->frames == NULL) {
+		free(cache);
+		return;
+	}
+	cache->byteBudget = byteBudget;
+	cache->byteCount = 0;
+	cache->interval = interval;
+	cache->hitCount = 0;
+	cache->missCount = 0;
+	info->checkpointCache = cache;
+}
+
+void releaseCheckpointCache(GifInfo *info) {
+	CheckpointCache *cache = info->checkpointCache;
+	if (cache == NULL) {
+		return;
+	}
+	uint_fast32_t i;
+	for (i = 0; i < info->gifFilePtr->ImageCount; i++) {
+		free(cache->frames[i]);
+	}
+	free(cache->frames);
+	free(cache);
+	info->checkpointCache = NULL;
+}
+
+void storeCheckpoint(const argb *bm, GifInfo *info) {
+	CheckpointCache *cache = info->checkpointCache;
+	const uint_fast32_t index = info->currentIndex;
+	if (cache == NULL || index == 0 || cache->frames[index] != NULL) {
+		return;
+	}
+	// canvas after DISPOSE_PREVIOUS frame cannot be restored without the backup
+	if (info->controlBlock[index].DisposalMode == DISPOSE_PREVIOUS) {
+		return;
+	}
+	bool isOnGrid = index % cache->interval == 0;
+	if (!isOnGrid && !isKeyFrame(info, index)) {
+		return;
+	}
+	const size_t checkpointSize = getCheckpointSize(info);
+	if (checkpointSize > cache->byteBudget) {
+		return;
+	}
+	while (cache->byteCount + checkpointSize > cache->byteBudget) {
+		if (!isOnGrid || cache->interval >= info->gifFilePtr->ImageCount) {
+			return;
+		}
+		thinOutCheckpoints(info);
+		isOnGrid = index % cache->interval == 0;
+	}
+
+	uint8_t *snapshot = malloc(checkpointSize);
+	if (snapshot == NULL) {
+		return;
+	}
+	const size_t pixelSize = getCanvasPixelSize(info);
+	const size_t rowSize = info->gifFilePtr->SWidth * pixelSize;
+	GifWord y;
+	for (y = 0; y < info->gifFilePtr->SHeight; y++) {
+		memcpy(snapshot + y * rowSize, (const uint8_t *) bm + y * info->stride * pixelSize, rowSize);
+	}
+	cache->frames[index] = snapshot;
+	cache->byteCount += checkpointSize;
+}
+
+bool findCheckpoint(GifInfo *info, uint_fast32_t startIndex, uint_fast32_t *index) {
+	CheckpointCache *cache = info->checkpointCache;
+	if (cache == NULL) {
+		return false;
+	}
+	uint_fast32_t i;
+	for (i = *index; i >= startIndex && i > 0; i--) {
+		if (cache->frames[i] != NULL) {
+			cache->hitCount++;
+			*index = i;
+			return true;
+		}
+	}
+	cache->missCount++;
+	return false;
+}
+
+void restoreCheckpoint(argb *bm, GifInfo *info, uint_fast32_t index) {
+	const uint8_t *snapshot = info->checkpointCache->frames[index];
+	const size_t pixelSize = getCanvasPixelSize(info);
+	const size_t rowSize = info->gifFilePtr->SWidth * pixelSize;
+	GifWord y;
+	for (y = 0; y < info->gifFilePtr->SHeight; y++) {
+		memcpy((uint8_t *) bm + y * info->stride * pixelSize, snapshot + y * rowSize, rowSize);
+	}
+}
+
+__unused JNIEXPORT jint JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_getCheckpointCacheHitCount(JNIEnv __unused *env, jclass __unused handleClass, jlong gifInfo) {
+	GifInfo *const info = ((GifInfo *) (intptr_t) gifInfo);
+	if (info == NULL || info->checkpointCache == NULL) {
+		return 0;
+	}
+	return (jint) info->checkpointCache->hitCount;
+}
+
+__unused JNIEXPORT jint JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_getCheckpointCacheMissCount(JNIEnv __unused *env, jclass __unused handleClass, jlong gifInfo) {
+	GifInfo *const info = ((GifInfo *) (intptr_t) gifInfo);
+	if (info == NULL || info->checkpointCache == NULL) {
+		return 0;
+	}
+	return (jint) info->checkpointCache->missCount;
+}
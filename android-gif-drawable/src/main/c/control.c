@@ -8,6 +8,8 @@ bool reset(GifInfo *info) {
 	info->currentLoop = 0;
 	info->currentIndex = 0;
 	info->lastFrameRemainder = -1;
+	info->isFramePending = false;
+	info->isWaitingForFrame = false;
 	return true;
 }
 
@@ -35,13 +37,51 @@ static uint_fast32_t seekBitmap(GifInfo *info, JNIEnv *env, jint desiredIndex, j
 	if (lockPixels(env, jbitmap, info, &pixels) != 0) {
 		return 0;
 	}
-	uint_fast32_t duration = seek(info, (uint_fast32_t) desiredIndex, pixels);
+	uint_fast32_t duration = seek(info, (uint_fast32_t) desiredIndex, getCanvas(info, pixels));
+	presentCanvas(info, pixels);
 	unlockPixels(env, jbitmap);
 	return duration;
 }
 
+static bool jumpToFrame(GifInfo *info, uint_fast32_t index) {
+	if (info->frameOffsets == NULL || index <= info->currentIndex) {
+		return false;
+	}
+	if (info->seekFunction(info, info->frameOffsets[index]) != 0) {
+		return false;
+	}
+	info->currentIndex = index;
+	return true;
+}
+
+static void skipToFrame(GifInfo *info, uint_fast32_t index) {
+	if (!jumpToFrame(info, index)) {
+		while (info->currentIndex < index) {
+			DDGifSlurp(info, false, true);
+			++info->currentIndex;
+		}
+	}
+}
+
+bool isKeyFrame(GifInfo *info, uint_fast32_t index) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	GifImageDesc visible;
+	if (clipToCanvas(info, &gifFilePtr->SavedImages[index].ImageDesc, &visible)
+	    && gifFilePtr->SWidth == visible.Width && gifFilePtr->SHeight == visible.Height) {
+		const GraphicsControlBlock controlBlock = info->controlBlock[index];
+		if (controlBlock.TransparentColor == NO_TRANSPARENT_COLOR) {
+			return true;
+		} else if (controlBlock.DisposalMode == DISPOSE_BACKGROUND) {
+			return true;
+		}
+	}
+	return false;
+}
+
 uint_fast32_t seek(GifInfo *info, uint_fast32_t desiredIndex, void *pixels) {
 	GifFileType *const gifFilePtr = info->gifFilePtr;
+	// frames may be skipped or restored from caches, so the whole canvas is assumed to change
+	invalidateCanvas(info);
 	if (desiredIndex < info->currentIndex || info->currentIndex == 0) {
 		if (!reset(info)) {
 			gifFilePtr->Error = D_GIF_ERR_REWIND_FAILED;
@@ -49,34 +89,44 @@ uint_fast32_t seek(GifInfo *info, uint_fast32_t desiredIndex, void *pixels) {
 		}
 		prepareCanvas(pixels, info);
 	}
+	if (desiredIndex >= gifFilePtr->ImageCount) {
+		scanMetadata(info, desiredIndex + 1 - gifFilePtr->ImageCount);
+	}
 	if (desiredIndex >= gifFilePtr->ImageCount) {
 		desiredIndex = gifFilePtr->ImageCount - 1;
 	}
+	if (isFrameCacheComplete(info)) {
+		info->currentIndex = desiredIndex;
+		drawNextBitmap(pixels, info);
+		return getFrameDuration(info);
+	}
+	if (info->frameCache != NULL) {
+		info->frameCache->isSequential = false;
+	}
 
 	uint_fast32_t i;
 	for (i = desiredIndex; i > info->currentIndex; i--) {
-		const GifImageDesc imageDesc = info->gifFilePtr->SavedImages[i].ImageDesc;
-		if (gifFilePtr->SWidth == imageDesc.Width && gifFilePtr->SHeight == imageDesc.Height) {
-			const GraphicsControlBlock controlBlock = info->controlBlock[i];
-			if (controlBlock.TransparentColor == NO_TRANSPARENT_COLOR) {
-				break;
-			} else if (controlBlock.DisposalMode == DISPOSE_BACKGROUND) {
-				break;
-			}
+		if (isKeyFrame(info, i)) {
+			break;
 		}
 	}
 
-	if (i > 0) {
-		while (info->currentIndex < i - 1) {
-			DDGifSlurp(info, false, true);
-			++info->currentIndex;
-		}
+	const uint_fast32_t startIndex = i > info->currentIndex ? i - 1 : info->currentIndex;
+	uint_fast32_t checkpointIndex = desiredIndex;
+	if (startIndex < desiredIndex && findCheckpoint(info, startIndex, &checkpointIndex)) {
+		skipToFrame(info, checkpointIndex);
+		DDGifSlurp(info, false, true);
+		restoreCheckpoint(pixels, info, checkpointIndex);
+		info->currentIndex = checkpointIndex + 1;
+	} else {
+		skipToFrame(info, startIndex);
 	}
 
-	do {
+	while (info->currentIndex <= desiredIndex) {
 		DDGifSlurp(info, true, false);
 		drawNextBitmap(pixels, info);
-	} while (info->currentIndex++ < desiredIndex);
+		++info->currentIndex;
+	}
 	--info->currentIndex;
 	return getFrameDuration(info);
 }
@@ -89,6 +139,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_seekToTime(JNIEnv *env, jclass __unused
 		return;
 	}
 
+	scanMetadata(info, 0);
 	unsigned long sum = 0;
 	unsigned int desiredIndex;
 	for (desiredIndex = 0; desiredIndex < info->gifFilePtr->ImageCount - 1; desiredIndex++) {
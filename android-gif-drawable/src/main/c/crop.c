@@ -0,0 +1,48 @@
+#include "gif.h"
+
+/**
+ * Restricts the canvas to the given rectangle of the logical screen (after subsampling). Logical screen dimensions
+ * become the ones of the crop rectangle, so all the buffers sized after them, including the frame buffer, are
+ * allocated only for the visible area. Frames are clipped to the crop rectangle when drawn.
+ * Rectangle is clamped to the logical screen bounds, cropping is not enabled if they do not intersect.
+ */
+void initCrop(GifInfo *info, GifWord left, GifWord top, GifWord right, GifWord bottom) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	if (right > gifFilePtr->SWidth) {
+		right = gifFilePtr->SWidth;
+	}
+	if (bottom > gifFilePtr->SHeight) {
+		bottom = gifFilePtr->SHeight;
+	}
+	if (left >= right || top >= bottom) {
+		return;
+	}
+	info->cropLeft = left;
+	info->cropTop = top;
+	gifFilePtr->SWidth = right - left;
+	gifFilePtr->SHeight = bottom - top;
+}
+
+/**
+ * Intersects frame rectangle with the canvas, that is the crop rectangle if cropping is enabled.
+ * Resulting rectangle is in the logical screen coordinates, the same as the frame ones.
+ * @return false if frame is not visible at all
+ */
+bool clipToCanvas(const GifInfo *info, const GifImageDesc *frame, GifImageDesc *visible) {
+	const GifWord canvasRight = info->cropLeft + info->gifFilePtr->SWidth;
+	const GifWord canvasBottom = info->cropTop + info->gifFilePtr->SHeight;
+	const GifWord left = frame->Left > info->cropLeft ? frame->Left : info->cropLeft;
+	const GifWord top = frame->Top > info->cropTop ? frame->Top : info->cropTop;
+	const GifWord frameRight = frame->Left + frame->Width;
+	const GifWord frameBottom = frame->Top + frame->Height;
+	const GifWord right = frameRight < canvasRight ? frameRight : canvasRight;
+	const GifWord bottom = frameBottom < canvasBottom ? frameBottom : canvasBottom;
+	if (left >= right || top >= bottom) {
+		return false;
+	}
+	visible->Left = left;
+	visible->Top = top;
+	visible->Width = right - left;
+	visible->Height = bottom - top;
+	return true;
+}
@@ -1,5 +1,4 @@
 #include "gif.h"
-#define COMMENT_LENGTH_MAX 2048
 
 static bool updateGCB(GifInfo *info, uint_fast32_t *lastAllocatedGCBIndex) {
 	if (*lastAllocatedGCBIndex < info->gifFilePtr->ImageCount) {
@@ -15,28 +14,205 @@ static bool updateGCB(GifInfo *info, uint_fast32_t *lastAllocatedGCBIndex) {
 	return true;
 }
 
+static bool updateFrameOffsets(GifInfo *info, long long recordPosition) {
+	if (info->seekFunction == NULL) {
+		return true;
+	}
+	if (recordPosition < 0) {
+		free(info->frameOffsets);
+		info->frameOffsets = NULL;
+		info->seekFunction = NULL;
+		return true;
+	}
+	long long *tmpOffsets = reallocarray(info->frameOffsets, info->gifFilePtr->ImageCount + 1, sizeof(long long));
+	if (tmpOffsets == NULL) {
+		info->gifFilePtr->Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+		return false;
+	}
+	tmpOffsets[info->gifFilePtr->ImageCount] = recordPosition;
+	info->frameOffsets = tmpOffsets;
+	return true;
+}
+
+/**
+ * Reads pixels of the current image into raster of Image.Width * Image.Height indices,
+ * rows subsampled by sampleSize are packed at the beginning of the raster.
+ * @return false if non-interlaced image could not be read, failed interlaced passes are skipped
+ */
+bool readRasterBits(GifFileType *gifFilePtr, GifPixelType *rasterBits, uint_fast16_t sampleSize) {
+	if (gifFilePtr->Image.Interlace) {
+		uint_fast16_t i, j;
+		/*
+		 * The way an interlaced image should be read -
+		 * offsets and jumps...
+		 */
+		uint_fast8_t InterlacedOffset[] = {0, 4, 2, 1};
+		uint_fast8_t InterlacedJumps[] = {8, 8, 4, 2};
+		/* Need to perform 4 passes on the image */
+		for (i = 0; i < 4; i++)
+			for (j = InterlacedOffset[i]; j < gifFilePtr->Image.Height; j += InterlacedJumps[i]) {
+				if (DGifGetLine(gifFilePtr, rasterBits + j * gifFilePtr->Image.Width, gifFilePtr->Image.Width) == GIF_ERROR)
+					break;
+			}
+	} else {
+		if (DGifGetLine(gifFilePtr, rasterBits, gifFilePtr->Image.Width * gifFilePtr->Image.Height) == GIF_ERROR) {
+			return false;
+		}
+	}
+
+	if (sampleSize > 1) {
+		unsigned char *dst = rasterBits;
+		unsigned char *src = rasterBits;
+		unsigned char *const srcEndImage = rasterBits + gifFilePtr->Image.Width * gifFilePtr->Image.Height;
+		do {
+			unsigned char *srcNextLineStart = src + gifFilePtr->Image.Width * sampleSize;
+			unsigned char *const srcEndLine = src + gifFilePtr->Image.Width;
+			unsigned char *dstEndLine = dst + gifFilePtr->Image.Width / sampleSize;
+			do {
+				*dst = *src;
+				dst++;
+				src += sampleSize;
+			} while (src < srcEndLine);
+			dst = dstEndLine;
+			src = srcNextLineStart;
+		} while (src < srcEndImage);
+	}
+	return true;
+}
+
+/**
+ * Reads records from the current position collecting metadata of frames, image data is skipped.
+ * Frames are sampled according to the current sample size.
+ * @param frameLimit maximum number of frames to read, reading stops right after the data of the last one
+ * @return true if there are no more frames, because the trailer has been reached or reading failed
+ */
+static bool readMetadata(GifInfo *info, uint_fast32_t frameLimit) {
+	GifRecordType RecordType;
+	const GifByteType *ExtData;
+	int ExtFunction;
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	uint_fast32_t lastAllocatedGCBIndex = (uint_fast32_t) gifFilePtr->ImageCount;
+	uint_fast32_t frameCount = 0;
+	long long recordPosition = -1;
+	do {
+		if (info->recordAvailableFunction != NULL && !info->recordAvailableFunction(info)) {
+			// the rest of the data has not arrived yet
+			return false;
+		}
+		if (info->seekFunction != NULL) {
+			recordPosition = info->tellFunction(info);
+		}
+		if (DGifGetRecordType(gifFilePtr, &RecordType) == GIF_ERROR && gifFilePtr->Error != D_GIF_ERR_WRONG_RECORD) {
+			break;
+		}
+		if (RecordType == IMAGE_DESC_RECORD_TYPE) {
+			if (!updateFrameOffsets(info, recordPosition)) {
+				break;
+			}
+			if (DGifGetImageDesc(gifFilePtr, true, info->originalWidth, info->originalHeight) == GIF_ERROR) {
+				break;
+			}
+			if (!updateGCB(info, &lastAllocatedGCBIndex)) {
+				break;
+			}
+			sampleImageDesc(info, &gifFilePtr->SavedImages[gifFilePtr->ImageCount - 1].ImageDesc);
+			do {
+				if (DGifGetCodeNext(gifFilePtr, &ExtData) == GIF_ERROR) {
+					break;
+				}
+			} while (ExtData != NULL);
+			if (++frameCount == frameLimit) {
+				return false;
+			}
+		} else if (RecordType == EXTENSION_RECORD_TYPE) {
+			if (DGifGetExtension(gifFilePtr, &ExtFunction, &ExtData) == GIF_ERROR) {
+				break;
+			}
+			updateGCB(info, &lastAllocatedGCBIndex);
+			if (readExtensions(ExtFunction, ExtData, info) == GIF_ERROR) {
+				break;
+			}
+			while (ExtData != NULL) {
+				if (DGifGetExtensionNext(gifFilePtr, &ExtData) == GIF_ERROR) {
+					break;
+				}
+				if (readExtensions(ExtFunction, ExtData, info) == GIF_ERROR) {
+					break;
+				}
+			}
+		}
+	} while (RecordType != TERMINATE_RECORD_TYPE);
+	return true;
+}
+
+/**
+ * Reads metadata of the first frameLimit frames, or all of them if frameLimit is 0, and rewinds the source.
+ * Position of the remaining ones is kept, so they can be read later by scanMetadata.
+ */
+void readInitialMetadata(GifInfo *info, uint_fast32_t frameLimit) {
+	info->isMetadataComplete = readMetadata(info, frameLimit);
+	if (!info->isMetadataComplete) {
+		info->metadataPosition = info->seekFunction != NULL ? info->tellFunction(info) : -1;
+		if (info->metadataPosition < 0) {
+			// remaining frames could not be reached later without seeking
+			readMetadata(info, 0);
+			info->isMetadataComplete = true;
+		}
+	}
+	info->rewindFunction(info);
+}
+
+/**
+ * Continues reading metadata of frames following the known ones. Decoding position is restored afterwards,
+ * so it must not be called in the middle of the frame.
+ * @return true if metadata of all the frames is known
+ */
+bool scanMetadata(GifInfo *info, uint_fast32_t frameCount) {
+	if (info->isMetadataComplete) {
+		return true;
+	}
+	if (info->isFramePending) {
+		return false;
+	}
+	const long long decodingPosition = info->tellFunction(info);
+	if (decodingPosition < 0 || info->seekFunction == NULL || info->seekFunction(info, info->metadataPosition) != 0) {
+		info->isMetadataComplete = true;
+		return true;
+	}
+	info->isMetadataComplete = readMetadata(info, frameCount);
+	info->metadataPosition = info->tellFunction(info);
+	if (info->seekFunction == NULL || info->seekFunction(info, decodingPosition) != 0) {
+		// animation starts over from the first frame, as the decoding position cannot be restored
+		info->rewindFunction(info);
+		info->currentIndex = 0;
+	}
+	return info->isMetadataComplete;
+}
+
 void DDGifSlurp(GifInfo *info, bool decode, bool exitAfterFrame) {
 	GifRecordType RecordType;
-	GifByteType *ExtData;
+	const GifByteType *ExtData;
 	int ExtFunction;
 	GifFileType *gifFilePtr;
 	gifFilePtr = info->gifFilePtr;
-	uint_fast32_t lastAllocatedGCBIndex = 0;
+	if (!decode && !exitAfterFrame) {
+		readInitialMetadata(info, 0);
+		return;
+	}
+	if (isFrameCacheComplete(info)) {
+		return;
+	}
 	do {
 		if (DGifGetRecordType(gifFilePtr, &RecordType) == GIF_ERROR && gifFilePtr->Error != D_GIF_ERR_WRONG_RECORD) {
 			break;
 		}
-		bool isInitialPass = !decode && !exitAfterFrame;
 		if (RecordType == IMAGE_DESC_RECORD_TYPE) {
-			if (DGifGetImageDesc(gifFilePtr, isInitialPass, info->originalWidth,
+			if (DGifGetImageDesc(gifFilePtr, false, info->originalWidth,
 								 info->originalHeight) == GIF_ERROR) {
 				break;
 			}
-
-			if (isInitialPass) {
-				if (!updateGCB(info, &lastAllocatedGCBIndex)) {
-					break;
-				}
+			if (decode && !isImageDescConsistent(info)) {
+				break;
 			}
 
 			if (decode) {
@@ -47,6 +223,20 @@ void DDGifSlurp(GifInfo *info, bool decode, bool exitAfterFrame) {
 					info->rasterSize = newRasterSize;
 					break;
 				}
+				if (info->isDecodeFused) {
+					// pixels are decoded row by row straight onto the canvas by drawFrame, only one row is buffered
+					if (gifFilePtr->Image.Width > info->rasterSize) {
+						void *tmpRasterBits = reallocarray(info->rasterBits, gifFilePtr->Image.Width, sizeof(GifPixelType));
+						if (tmpRasterBits == NULL) {
+							gifFilePtr->Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+							break;
+						}
+						info->rasterBits = tmpRasterBits;
+						info->rasterSize = gifFilePtr->Image.Width;
+					}
+					info->isFramePending = true;
+					return;
+				}
 				const int_fast32_t widthOverflow = gifFilePtr->Image.Width - info->originalWidth;
 				const int_fast32_t heightOverflow = gifFilePtr->Image.Height - info->originalHeight;
 				if (newRasterSize > info->rasterSize || widthOverflow > 0 || heightOverflow > 0) {
@@ -58,42 +248,8 @@ void DDGifSlurp(GifInfo *info, bool decode, bool exitAfterFrame) {
 					info->rasterBits = tmpRasterBits;
 					info->rasterSize = newRasterSize;
 				}
-				if (gifFilePtr->Image.Interlace) {
-					uint_fast16_t i, j;
-					/*
-					 * The way an interlaced image should be read -
-					 * offsets and jumps...
-					 */
-					uint_fast8_t InterlacedOffset[] = {0, 4, 2, 1};
-					uint_fast8_t InterlacedJumps[] = {8, 8, 4, 2};
-					/* Need to perform 4 passes on the image */
-					for (i = 0; i < 4; i++)
-							for (j = InterlacedOffset[i]; j < gifFilePtr->Image.Height; j += InterlacedJumps[i]) {
-								if (DGifGetLine(gifFilePtr, info->rasterBits + j * gifFilePtr->Image.Width, gifFilePtr->Image.Width) == GIF_ERROR)
-								break;
-						}
-				} else {
-						if (DGifGetLine(gifFilePtr, info->rasterBits, gifFilePtr->Image.Width * gifFilePtr->Image.Height) == GIF_ERROR) {
-						break;
-					}
-				}
-
-				if (info->sampleSize > 1) {
-					unsigned char *dst = info->rasterBits;
-					unsigned char *src = info->rasterBits;
-					unsigned char *const srcEndImage = info->rasterBits + gifFilePtr->Image.Width * gifFilePtr->Image.Height;
-					do {
-						unsigned char *srcNextLineStart = src + gifFilePtr->Image.Width * info->sampleSize;
-						unsigned char *const srcEndLine = src + gifFilePtr->Image.Width;
-						unsigned char *dstEndLine = dst + gifFilePtr->Image.Width / info->sampleSize;
-						do {
-							*dst = *src;
-							dst++;
-							src += info->sampleSize;
-						} while (src < srcEndLine);
-						dst = dstEndLine;
-						src = srcNextLineStart;
-					} while (src < srcEndImage);
+				if (!readRasterBits(gifFilePtr, info->rasterBits, info->sampleSize)) {
+					break;
 				}
 				return;
 			} else {
@@ -110,19 +266,10 @@ void DDGifSlurp(GifInfo *info, bool decode, bool exitAfterFrame) {
 			if (DGifGetExtension(gifFilePtr, &ExtFunction, &ExtData) == GIF_ERROR) {
 				break;
 			}
-			if (isInitialPass) {
-				updateGCB(info, &lastAllocatedGCBIndex);
-				if (readExtensions(ExtFunction, ExtData, info) == GIF_ERROR) {
-					break;
-				}
-			}
 			while (ExtData != NULL) {
 				if (DGifGetExtensionNext(gifFilePtr, &ExtData) == GIF_ERROR) {
 					break;
 				}
-				if (isInitialPass && readExtensions(ExtFunction, ExtData, info) == GIF_ERROR) {
-					break;
-				}
 			}
 		}
 	} while (RecordType != TERMINATE_RECORD_TYPE);
@@ -130,7 +277,7 @@ void DDGifSlurp(GifInfo *info, bool decode, bool exitAfterFrame) {
 	info->rewindFunction(info);
 }
 
-static int readExtensions(int ExtFunction, GifByteType *ExtData, GifInfo *info) {
+static int readExtensions(int ExtFunction, const GifByteType *ExtData, GifInfo *info) {
 	if (ExtData == NULL) {
 		return GIF_OK;
 	}
@@ -165,7 +312,7 @@ static int readExtensions(int ExtFunction, GifByteType *ExtData, GifInfo *info)
 	return GIF_OK;
 }
 
-static int getComment(GifByteType *Bytes, GifInfo *info) {
+static int getComment(const GifByteType *Bytes, GifInfo *info) {
 	unsigned int length = (unsigned int) Bytes[0];
 	size_t offset = info->comment != NULL ? strlen(info->comment) : 0;
 	unsigned int newLength = length + offset + 1;
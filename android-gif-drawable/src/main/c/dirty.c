@@ -0,0 +1,79 @@
+#include "gif.h"
+
+static inline void unionDirtyRect(DirtyRect *rect, const DirtyRect *other) {
+	if (other->left >= other->right || other->top >= other->bottom) {
+		return;
+	}
+	if (rect->left >= rect->right || rect->top >= rect->bottom) {
+		*rect = *other;
+		return;
+	}
+	if (other->left < rect->left) {
+		rect->left = other->left;
+	}
+	if (other->top < rect->top) {
+		rect->top = other->top;
+	}
+	if (other->right > rect->right) {
+		rect->right = other->right;
+	}
+	if (other->bottom > rect->bottom) {
+		rect->bottom = other->bottom;
+	}
+}
+
+static void addFrameRect(GifInfo *info, const GifImageDesc *frame, DirtyRect *rect) {
+	GifImageDesc visible;
+	if (clipToCanvas(info, frame, &visible)) {
+		const DirtyRect frameRect = {
+				.left = visible.Left - info->cropLeft,
+				.top = visible.Top - info->cropTop,
+				.right = visible.Left - info->cropLeft + visible.Width,
+				.bottom = visible.Top - info->cropTop + visible.Height
+		};
+		unionDirtyRect(rect, &frameRect);
+	}
+}
+
+/**
+ * Computes the area of the canvas changed by drawing frame at given index right after the preceding one.
+ * It consists of the frame itself and the area disposed by the preceding frame. The first frame is drawn
+ * onto the cleared canvas, so it changes all of it.
+ */
+void getFrameDirtyRect(GifInfo *info, uint_fast32_t index, DirtyRect *rect) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	if (index == 0) {
+		*rect = (DirtyRect) {.left = 0, .top = 0, .right = gifFilePtr->SWidth, .bottom = gifFilePtr->SHeight};
+		return;
+	}
+	*rect = (DirtyRect) {.left = 0, .top = 0, .right = 0, .bottom = 0};
+	addFrameRect(info, &gifFilePtr->SavedImages[index].ImageDesc, rect);
+	const uint_fast8_t previousDisposal = info->controlBlock[index - 1].DisposalMode;
+	if (previousDisposal == DISPOSE_BACKGROUND || previousDisposal == DISPOSE_PREVIOUS) {
+		addFrameRect(info, &gifFilePtr->SavedImages[index - 1].ImageDesc, rect);
+	}
+}
+
+void addCurrentFrameDirtyRect(GifInfo *info) {
+	DirtyRect frameRect;
+	getFrameDirtyRect(info, info->currentIndex, &frameRect);
+	unionDirtyRect(&info->dirtyRect, &frameRect);
+}
+
+void invalidateCanvas(GifInfo *info) {
+	info->dirtyRect = (DirtyRect) {.left = 0, .top = 0, .right = info->gifFilePtr->SWidth, .bottom = info->gifFilePtr->SHeight};
+}
+
+/**
+ * Moves area of the canvas changed since the previous call, mapped to the output, to given rect.
+ * @return false if nothing has changed
+ */
+bool takeDirtyRect(GifInfo *info, DirtyRect *rect) {
+	*rect = info->dirtyRect;
+	info->dirtyRect = (DirtyRect) {.left = 0, .top = 0, .right = 0, .bottom = 0};
+	if (rect->left >= rect->right || rect->top >= rect->bottom) {
+		return false;
+	}
+	mapToOutput(info, rect);
+	return true;
+}
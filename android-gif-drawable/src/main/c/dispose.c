@@ -9,32 +9,20 @@ Java_pl_droidsonroids_gif_GifInfoHandle_free(JNIEnv *env, jclass __unused handle
 	if (info->destructor != NULL) {
 		info->destructor(info, env);
 	}
-	if (info->rewindFunction == streamRewind) {
-		StreamContainer *streamContainer = info->gifFilePtr->UserData;
-
-		(*env)->CallVoidMethod(env, streamContainer->stream, streamContainer->closeMethodID);
-
-		if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
-#ifdef DEBUG
-			(*env)->ExceptionDescribe(env);
-#endif
-			(*env)->ExceptionClear(env);
-		}
-
-		(*env)->DeleteGlobalRef(env, streamContainer->stream);
-		(*env)->DeleteGlobalRef(env, streamContainer->buffer);
-
-		free(streamContainer);
-	} else if (info->rewindFunction == fileRewind) {
+	if (info->sourceRewindFunction == streamRewind) {
+		releaseStreamContainer(env, info->gifFilePtr->UserData);
+	} else if (info->sourceRewindFunction == fileRewind) {
 		fclose(info->gifFilePtr->UserData);
-	} else if (info->rewindFunction == byteArrayRewind) {
-		ByteArrayContainer *container = info->gifFilePtr->UserData;
-		(*env)->DeleteGlobalRef(env, container->buffer);
-		free(container);
-	} else if (info->rewindFunction == directByteBufferRewind) {
+	} else if (info->sourceRewindFunction == byteArrayRewind) {
+		releaseByteArrayContainer(env, info->gifFilePtr->UserData);
+	} else if (info->sourceRewindFunction == directByteBufferRewind) {
 		DirectByteBufferContainer *container = info->gifFilePtr->UserData;
 		(*env)->DeleteGlobalRef(env, container->bufferRef);
 		free(container);
+	} else if (info->sourceRewindFunction == pushBufferRewind) {
+		releasePushBufferContainer(info->gifFilePtr->UserData);
+	} else if (info->sourceRewindFunction == mappedFileRewind) {
+		releaseMappedFileContainer(info->gifFilePtr->UserData);
 	}
 	info->gifFilePtr->UserData = NULL;
 	cleanUp(info);
@@ -43,8 +31,15 @@ Java_pl_droidsonroids_gif_GifInfoHandle_free(JNIEnv *env, jclass __unused handle
 void cleanUp(GifInfo *info) {
 	free(info->backupPtr);
 	info->backupPtr = NULL;
+	info->backupSize = 0;
 	free(info->controlBlock);
 	info->controlBlock = NULL;
+	free(info->frameOffsets);
+	info->frameOffsets = NULL;
+	releaseCheckpointCache(info);
+	releaseFrameCache(info);
+	releaseDownsampler(info);
+	releaseRgb565(info);
 	free(info->rasterBits);
 	info->rasterBits = NULL;
 	free(info->comment);
@@ -0,0 +1,240 @@
+#include "gif.h"
+
+#define WEIGHT_ONE 65536U
+
+/**
+ * Weights of a source column or row in the target ones it overlaps. Target pixels are not smaller than source ones,
+ * so each source pixel contributes to at most 2 target pixels. Weights of all source pixels overlapping the same
+ * target pixel sum up to WEIGHT_ONE.
+ */
+typedef struct {
+	GifWord index;
+	uint32_t weight;
+	uint32_t nextWeight;
+	bool isLast;
+} AreaWeight;
+
+struct Downsampler {
+	argb *canvas;
+	uint32_t outputStride;
+	GifWord width;
+	GifWord height;
+	AreaWeight *columnWeights;
+	AreaWeight *rowWeights;
+	uint32_t *columnSums;
+	uint16_t *rowSums;
+	uint32_t *targetSums;
+	uint32_t *nextTargetSums;
+	argb *outputRow;
+};
+
+static inline uint32_t getWeight(uint_fast64_t position, uint_fast32_t sourceLength) {
+	return (uint32_t) ((position * WEIGHT_ONE + sourceLength / 2) / sourceLength);
+}
+
+/**
+ * Target pixel i covers [i * sourceLength, (i + 1) * sourceLength) and source pixel j covers
+ * [j * targetLength, (j + 1) * targetLength), weights are proportional to the overlapping area.
+ */
+static AreaWeight *createAreaWeights(GifWord sourceLength, GifWord targetLength) {
+	AreaWeight *weights = reallocarray(NULL, sourceLength, sizeof(AreaWeight));
+	if (weights == NULL) {
+		return NULL;
+	}
+	GifWord j;
+	for (j = 0; j < sourceLength; j++) {
+		const uint_fast64_t start = (uint_fast64_t) j * targetLength;
+		const uint_fast64_t end = start + targetLength;
+		const GifWord index = (GifWord) (start / sourceLength);
+		const uint_fast64_t targetStart = (uint_fast64_t) index * sourceLength;
+		const uint_fast64_t targetEnd = targetStart + sourceLength;
+		AreaWeight *weight = weights + j;
+		weight->index = index;
+		if (end <= targetEnd) {
+			weight->weight = getWeight(end - targetStart, sourceLength) - getWeight(start - targetStart, sourceLength);
+			weight->nextWeight = 0;
+			weight->isLast = end == targetEnd;
+		} else {
+			weight->weight = WEIGHT_ONE - getWeight(start - targetStart, sourceLength);
+			weight->nextWeight = getWeight(end - targetEnd, sourceLength);
+			weight->isLast = true;
+		}
+	}
+	return weights;
+}
+
+void releaseDownsampler(GifInfo *info) {
+	Downsampler *downsampler = info->downsampler;
+	if (downsampler == NULL) {
+		return;
+	}
+	free(downsampler->canvas);
+	free(downsampler->columnWeights);
+	free(downsampler->rowWeights);
+	free(downsampler->columnSums);
+	free(downsampler->rowSums);
+	free(downsampler->targetSums);
+	free(downsampler->nextTargetSums);
+	free(downsampler->outputRow);
+	free(downsampler);
+	info->downsampler = NULL;
+}
+
+/**
+ * Frames are composited onto an internal canvas of the full size, so disposal works the same as without downsampling,
+ * and the canvas is reduced to the target size by area averaging when a frame is presented.
+ * Target dimensions greater than the canvas ones are clamped, images are never upscaled.
+ */
+void initDownsampler(GifInfo *info, GifWord width, GifWord height) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	if (width == 0 || height == 0 || info->downsampler != NULL) {
+		return;
+	}
+	if (width > gifFilePtr->SWidth) {
+		width = gifFilePtr->SWidth;
+	}
+	if (height > gifFilePtr->SHeight) {
+		height = gifFilePtr->SHeight;
+	}
+	if (width == gifFilePtr->SWidth && height == gifFilePtr->SHeight) {
+		return;
+	}
+	Downsampler *downsampler = calloc(1, sizeof(Downsampler));
+	if (downsampler == NULL) {
+		return;
+	}
+	info->downsampler = downsampler;
+	downsampler->width = width;
+	downsampler->height = height;
+	downsampler->outputStride = width;
+	downsampler->canvas = reallocarray(NULL, (size_t) gifFilePtr->SWidth * gifFilePtr->SHeight, sizeof(argb));
+	downsampler->columnWeights = createAreaWeights(gifFilePtr->SWidth, width);
+	downsampler->rowWeights = createAreaWeights(gifFilePtr->SHeight, height);
+	downsampler->columnSums = reallocarray(NULL, width * 4U, sizeof(uint32_t));
+	downsampler->rowSums = reallocarray(NULL, width * 4U, sizeof(uint16_t));
+	downsampler->targetSums = calloc(width * 4U, sizeof(uint32_t));
+	downsampler->nextTargetSums = calloc(width * 4U, sizeof(uint32_t));
+	downsampler->outputRow = reallocarray(NULL, width, sizeof(argb));
+	if (downsampler->canvas == NULL || downsampler->columnWeights == NULL || downsampler->rowWeights == NULL
+	    || downsampler->columnSums == NULL || downsampler->rowSums == NULL || downsampler->targetSums == NULL
+	    || downsampler->nextTargetSums == NULL || downsampler->outputRow == NULL) {
+		releaseDownsampler(info);
+		return;
+	}
+	info->stride = gifFilePtr->SWidth;
+}
+
+GifWord getOutputWidth(GifInfo *info) {
+	return info->downsampler != NULL ? info->downsampler->width : info->gifFilePtr->SWidth;
+}
+
+GifWord getOutputHeight(GifInfo *info) {
+	return info->downsampler != NULL ? info->downsampler->height : info->gifFilePtr->SHeight;
+}
+
+size_t getDownsamplerByteCount(GifInfo *info) {
+	const Downsampler *downsampler = info->downsampler;
+	if (downsampler == NULL) {
+		return 0;
+	}
+	const GifFileType *gifFilePtr = info->gifFilePtr;
+	return (size_t) gifFilePtr->SWidth * gifFilePtr->SHeight * sizeof(argb)
+	       + (gifFilePtr->SWidth + gifFilePtr->SHeight) * sizeof(AreaWeight)
+	       + downsampler->width * 4U * (3 * sizeof(uint32_t) + sizeof(uint16_t)) + downsampler->width * sizeof(argb);
+}
+
+void setOutputStride(GifInfo *info, uint32_t stride) {
+	if (info->downsampler != NULL) {
+		info->downsampler->outputStride = stride;
+	} else {
+		info->stride = stride;
+	}
+}
+
+argb *getCanvas(GifInfo *info, void *pixels) {
+	return info->downsampler != NULL ? info->downsampler->canvas : pixels;
+}
+
+/**
+ * Maps rectangle of the canvas to the rectangle of output pixels it contributes to.
+ */
+void mapToOutput(GifInfo *info, DirtyRect *rect) {
+	const Downsampler *downsampler = info->downsampler;
+	if (downsampler == NULL) {
+		return;
+	}
+	const AreaWeight *lastColumn = downsampler->columnWeights + rect->right - 1;
+	const AreaWeight *lastRow = downsampler->rowWeights + rect->bottom - 1;
+	rect->left = downsampler->columnWeights[rect->left].index;
+	rect->top = downsampler->rowWeights[rect->top].index;
+	rect->right = lastColumn->index + (lastColumn->nextWeight != 0 ? 2 : 1);
+	rect->bottom = lastRow->index + (lastRow->nextWeight != 0 ? 2 : 1);
+}
+
+static void sumRow(const Downsampler *downsampler, const uint8_t *src, GifWord sourceWidth) {
+	uint32_t *const sums = downsampler->columnSums;
+	memset(sums, 0, downsampler->width * 4U * sizeof(uint32_t));
+	GifWord x;
+	for (x = 0; x < sourceWidth; x++, src += 4) {
+		const AreaWeight *weight = downsampler->columnWeights + x;
+		uint32_t *dst = sums + weight->index * 4U;
+		dst[0] += src[0] * weight->weight;
+		dst[1] += src[1] * weight->weight;
+		dst[2] += src[2] * weight->weight;
+		dst[3] += src[3] * weight->weight;
+		if (weight->nextWeight != 0) {
+			dst[4] += src[0] * weight->nextWeight;
+			dst[5] += src[1] * weight->nextWeight;
+			dst[6] += src[2] * weight->nextWeight;
+			dst[7] += src[3] * weight->nextWeight;
+		}
+	}
+	// 8 fractional bits are kept for the vertical pass
+	uint_fast32_t i;
+	for (i = 0; i < downsampler->width * 4U; i++) {
+		downsampler->rowSums[i] = (uint16_t) ((sums[i] + 0x80) >> 8);
+	}
+}
+
+/**
+ * Area-averages internal canvas into given pixels. Channels are averaged independently,
+ * which is correct for premultiplied alpha used by bitmaps. RGB_565 pixels are converted from averaged rows.
+ */
+void presentCanvas(GifInfo *info, void *pixels) {
+	Downsampler *const downsampler = info->downsampler;
+	if (downsampler == NULL) {
+		return;
+	}
+	const GifWord sourceWidth = info->gifFilePtr->SWidth;
+	const GifWord sourceHeight = info->gifFilePtr->SHeight;
+	const uint_fast32_t sumCount = downsampler->width * 4U;
+	GifWord y;
+	for (y = 0; y < sourceHeight; y++) {
+		const AreaWeight *weight = downsampler->rowWeights + y;
+		sumRow(downsampler, (const uint8_t *) (downsampler->canvas + y * sourceWidth), sourceWidth);
+		uint_fast32_t i;
+		for (i = 0; i < sumCount; i++) {
+			downsampler->targetSums[i] += downsampler->rowSums[i] * weight->weight;
+		}
+		if (weight->nextWeight != 0) {
+			for (i = 0; i < sumCount; i++) {
+				downsampler->nextTargetSums[i] += downsampler->rowSums[i] * weight->nextWeight;
+			}
+		}
+		if (weight->isLast) {
+			uint8_t *dst = info->isRgb565 ? (uint8_t *) downsampler->outputRow
+			                              : (uint8_t *) ((argb *) pixels + weight->index * downsampler->outputStride);
+			for (i = 0; i < sumCount; i++) {
+				dst[i] = (uint8_t) ((downsampler->targetSums[i] + 0x800000) >> 24);
+			}
+			if (info->isRgb565) {
+				convertRowToRgb565(info, downsampler->outputRow, (uint16_t *) pixels + weight->index * downsampler->outputStride,
+				                   downsampler->width, 0, weight->index);
+			}
+			uint32_t *const targetSums = downsampler->targetSums;
+			downsampler->targetSums = downsampler->nextTargetSums;
+			downsampler->nextTargetSums = targetSums;
+			memset(targetSums, 0, sumCount * sizeof(uint32_t));
+		}
+	}
+}
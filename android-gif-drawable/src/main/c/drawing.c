@@ -7,62 +7,232 @@ extern void arm_memset32(uint32_t* dst, uint32_t value, int count);
 #define MEMSET_ARGB(dst, value, count) memset(dst, value, (count) * sizeof(argb))
 #endif
 
-static inline void blitNormal(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap) {
-	unsigned char *src = info->rasterBits;
-	if (src == NULL) {
+#if (defined(__GNUC__) || defined(__clang__)) && !defined(GIF_SCALAR_BLIT)
+#define GIF_VECTOR_BLIT
+typedef uint32_t uint32_vector __attribute__((vector_size(16)));
+#endif
+
+static const uint32_t *getArgbPalette(GifInfo *info, const ColorMapObject *cmap) {
+	if (info->argbPaletteSource == cmap) {
+		return info->argbPalette;
+	}
+	argb pixel = {.rgb = {0, 0, 0}, .alpha = info->isOpaque ? 0 : 0xFF};
+	uint_fast16_t i;
+	for (i = 0; i < 256; i++) {
+		if (i < cmap->ColorCount) {
+			pixel.rgb = cmap->Colors[i];
+		} else {
+			pixel.rgb.Red = pixel.rgb.Green = pixel.rgb.Blue = 0;
+		}
+		memcpy(info->argbPalette + i, &pixel, sizeof(uint32_t));
+	}
+	info->argbPaletteSource = cmap;
+	return info->argbPalette;
+}
+
+static inline void blitRow(uint32_t *dst, const unsigned char *src, const uint32_t *colors, GifWord width) {
+	GifWord x = 0;
+#ifdef GIF_VECTOR_BLIT
+	for (; x + 4 <= width; x += 4) {
+		const uint32_vector pixels = {colors[src[x]], colors[src[x + 1]], colors[src[x + 2]], colors[src[x + 3]]};
+		memcpy(dst + x, &pixels, sizeof(pixels));
+	}
+#endif
+	for (; x < width; x++) {
+		dst[x] = colors[src[x]];
+	}
+}
+
+static inline void blitRowMasked(uint32_t *dst, const unsigned char *src, const uint32_t *colors, const uint32_t *masks, GifWord width) {
+	GifWord x = 0;
+#ifdef GIF_VECTOR_BLIT
+	for (; x + 4 <= width; x += 4) {
+		const uint32_vector newPixels = {colors[src[x]], colors[src[x + 1]], colors[src[x + 2]], colors[src[x + 3]]};
+		const uint32_vector keptBits = {masks[src[x]], masks[src[x + 1]], masks[src[x + 2]], masks[src[x + 3]]};
+		uint32_vector pixels;
+		memcpy(&pixels, dst + x, sizeof(pixels));
+		pixels = (pixels & keptBits) | newPixels;
+		memcpy(dst + x, &pixels, sizeof(pixels));
+	}
+#endif
+	for (; x < width; x++) {
+		dst[x] = (dst[x] & masks[src[x]]) | colors[src[x]];
+	}
+}
+
+/**
+ * Coordinates of the first pixel on the canvas select palettes of the dither matrix, so the pattern is the same
+ * for each frame and static areas do not flicker.
+ */
+static inline void blitRowRgb565(uint16_t *dst, const unsigned char *src, const uint16_t *palettes, int_fast16_t transpIndex,
+                                 bool isDithered, GifWord width, GifWord x, GifWord y) {
+	GifWord i;
+	if (!isDithered) {
+		for (i = 0; i < width; i++) {
+			if (src[i] != transpIndex) {
+				dst[i] = palettes[src[i]];
+			}
+		}
 		return;
 	}
-	argb *dst = GET_ADDR(bm, info->stride, frame->ImageDesc.Left, frame->ImageDesc.Top);
+	const uint16_t *rowPalettes = palettes + (y & 3U) * 4 * 256;
+	for (i = 0; i < width; i++) {
+		if (src[i] != transpIndex) {
+			dst[i] = rowPalettes[((x + i) & 3U) * 256 + src[i]];
+		}
+	}
+}
+
+typedef struct {
+	const uint32_t *colors;
+	const uint32_t *masks;
+	uint32_t maskedColors[256];
+	uint32_t maskTable[256];
+	const uint16_t *rgb565Palettes;
+	int_fast16_t transparentIndex;
+	bool isDithered;
+} BlitTables;
 
-	uint_fast16_t x, y = frame->ImageDesc.Height;
+static void prepareBlitTables(BlitTables *tables, GifInfo *info, ColorMapObject *cmap) {
 	const int_fast16_t transpIndex = info->controlBlock[info->currentIndex].TransparentColor;
+	if (info->rgb565Palettes != NULL) {
+		// there is no alpha channel, transparent pixels just keep the destination
+		tables->rgb565Palettes = getRgb565Palettes(info, cmap);
+		tables->transparentIndex = transpIndex;
+		tables->isDithered = info->isRgb565Dithered;
+		return;
+	}
+	tables->rgb565Palettes = NULL;
+	const uint32_t *colors = getArgbPalette(info, cmap);
+	if (transpIndex == NO_TRANSPARENT_COLOR && !info->isOpaque) {
+		tables->colors = colors;
+		tables->masks = NULL;
+		return;
+	}
+
+	// transparent pixels keep the whole destination, opaque content keeps destination alpha
+	const argb alphaMask = {.rgb = {0, 0, 0}, .alpha = info->isOpaque ? 0xFF : 0};
+	uint32_t mask;
+	memcpy(&mask, &alphaMask, sizeof(mask));
+	uint_fast16_t i;
+	for (i = 0; i < 256; i++) {
+		tables->maskTable[i] = mask;
+	}
+	memcpy(tables->maskedColors, colors, sizeof(tables->maskedColors));
+	if (transpIndex != NO_TRANSPARENT_COLOR) {
+		tables->maskedColors[transpIndex] = 0;
+		tables->maskTable[transpIndex] = UINT32_MAX;
+	}
+	tables->colors = tables->maskedColors;
+	tables->masks = tables->maskTable;
+}
+
+/**
+ * @param x horizontal coordinate of the first pixel on the canvas
+ * @param y vertical coordinate of the line on the canvas
+ */
+static inline void blitLine(void *dst, const unsigned char *src, const BlitTables *tables, GifWord width, GifWord x, GifWord y) {
+	if (tables->rgb565Palettes != NULL) {
+		blitRowRgb565(dst, src, tables->rgb565Palettes, tables->transparentIndex, tables->isDithered, width, x, y);
+	} else if (tables->masks == NULL) {
+		blitRow(dst, src, tables->colors, width);
+	} else {
+		blitRowMasked(dst, src, tables->colors, tables->masks, width);
+	}
+}
+
+static inline void blitNormal(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap,
+                              const GifPixelType *rasterBits, uint_fast32_t rasterSize) {
+	const unsigned char *src = rasterBits;
+	if (src == NULL) {
+		return;
+	}
 	const GifWord frameWidth = frame->ImageDesc.Width;
-	const GifWord padding = info->stride - frameWidth;
-	if (info->rasterSize < frame->ImageDesc.Height * frame->ImageDesc.Width) {
+	if (rasterSize < frame->ImageDesc.Height * frame->ImageDesc.Width) {
 		return;
 	}
-	if (info->isOpaque) {
-		if (transpIndex == NO_TRANSPARENT_COLOR) {
-			for (; y > 0; y--) {
-				for (x = frameWidth; x > 0; x--, src++, dst++) {
-					dst->rgb = cmap->Colors[*src];
+	GifImageDesc visible;
+	if (!clipToCanvas(info, &frame->ImageDesc, &visible)) {
+		return;
+	}
+	src += (visible.Top - frame->ImageDesc.Top) * frameWidth + visible.Left - frame->ImageDesc.Left;
+	const size_t pixelSize = getCanvasPixelSize(info);
+	const GifWord left = visible.Left - info->cropLeft;
+	const GifWord top = visible.Top - info->cropTop;
+	uint8_t *dst = GET_ADDR((uint8_t *) bm, info->stride * pixelSize, left * pixelSize, top);
+
+	GifWord y;
+	BlitTables tables;
+	prepareBlitTables(&tables, info, cmap);
+	for (y = 0; y < visible.Height; y++, src += frameWidth, dst += info->stride * pixelSize) {
+		blitLine(dst, src, &tables, visible.Width, left, top + y);
+	}
+}
+
+/**
+ * Decodes pending frame line by line and blits each line onto the canvas right away, so indices of the whole frame
+ * are never stored. Lines skipped by subsampling or lying outside the canvas are decoded and dropped.
+ */
+static void decodeFrame(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	info->isFramePending = false;
+	unsigned char *const line = info->rasterBits;
+	if (line == NULL) {
+		return;
+	}
+	const GifWord lineWidth = gifFilePtr->Image.Width;
+	const GifWord lineCount = gifFilePtr->Image.Height;
+	const uint_fast16_t sampleSize = info->sampleSize;
+	GifImageDesc visible = {0};
+	const bool isVisible = clipToCanvas(info, &frame->ImageDesc, &visible);
+	GifWord firstRow = 0, firstColumn = 0;
+	const size_t rowSize = info->stride * getCanvasPixelSize(info);
+	const GifWord left = visible.Left - info->cropLeft;
+	const GifWord top = visible.Top - info->cropTop;
+	uint8_t *dst = NULL;
+	BlitTables tables;
+	if (isVisible) {
+		firstRow = visible.Top - frame->ImageDesc.Top;
+		firstColumn = visible.Left - frame->ImageDesc.Left;
+		dst = GET_ADDR((uint8_t *) bm, rowSize, left * getCanvasPixelSize(info), top);
+		prepareBlitTables(&tables, info, cmap);
+	}
+
+	static const uint_fast8_t InterlacedOffset[] = {0, 4, 2, 1};
+	static const uint_fast8_t InterlacedJumps[] = {8, 8, 4, 2};
+	const bool isInterlaced = gifFilePtr->Image.Interlace;
+	const uint_fast8_t passCount = isInterlaced ? 4 : 1;
+	uint_fast8_t pass;
+	for (pass = 0; pass < passCount; pass++) {
+		const uint_fast8_t jump = isInterlaced ? InterlacedJumps[pass] : 1;
+		GifWord y;
+		for (y = isInterlaced ? InterlacedOffset[pass] : 0; y < lineCount; y += jump) {
+			if (DGifGetLine(gifFilePtr, line, lineWidth) == GIF_ERROR) {
+				if (isInterlaced) {
+					break;
 				}
-				dst += padding;
+				info->rewindFunction(info);
+				return;
 			}
-		} else {
-			for (; y > 0; y--) {
-				for (x = frameWidth; x > 0; x--, src++, dst++) {
-					if (*src != transpIndex) {
-						dst->rgb = cmap->Colors[*src];
-					}
-				}
-				dst += padding;
+			if (!isVisible || y % sampleSize != 0) {
+				continue;
 			}
-		}
-	} else {
-		if (transpIndex == NO_TRANSPARENT_COLOR) {
-			for (; y > 0; y--) {
-				MEMSET_ARGB((uint32_t *) dst, UINT_MAX, frameWidth);
-				for (x = frameWidth; x > 0; x--, src++, dst++) {
-					dst->rgb = cmap->Colors[*src];
-				}
-				dst += padding;
+			const GifWord row = y / sampleSize;
+			if (row < firstRow || row - firstRow >= visible.Height) {
+				continue;
 			}
-		} else {
-			for (; y > 0; y--) {
-				for (x = frameWidth; x > 0; x--, src++, dst++) {
-					if (*src != transpIndex) {
-						dst->rgb = cmap->Colors[*src];
-						dst->alpha = 0xFF;
-					}
+			if (sampleSize > 1) {
+				GifWord x;
+				for (x = firstColumn; x < firstColumn + visible.Width; x++) {
+					line[x] = line[x * sampleSize];
 				}
-				dst += padding;
 			}
+			blitLine(dst + (row - firstRow) * rowSize, line + firstColumn, &tables, visible.Width, left, top + row - firstRow);
 		}
 	}
 }
 
-static void drawFrame(argb *bm, GifInfo *info, SavedImage *frame) {
+static void drawFrame(argb *bm, GifInfo *info, SavedImage *frame, const GifPixelType *rasterBits, uint_fast32_t rasterSize) {
 	ColorMapObject *cmap;
 	if (frame->ImageDesc.ColorMap != NULL)
 		cmap = frame->ImageDesc.ColorMap;// use local color table
@@ -71,7 +241,13 @@ static void drawFrame(argb *bm, GifInfo *info, SavedImage *frame) {
 	else
 		cmap = getDefColorMap();
 
-	blitNormal(bm, info, frame, cmap);
+	if (rasterBits != NULL) {
+		blitNormal(bm, info, frame, cmap, rasterBits, rasterSize);
+	} else if (info->isDecodeFused) {
+		decodeFrame(bm, info, frame, cmap);
+	} else {
+		blitNormal(bm, info, frame, cmap, info->rasterBits, info->rasterSize);
+	}
 }
 
 // return true if area of 'target' is completely covers area of 'covered'
@@ -83,6 +259,56 @@ static bool checkIfCover(const SavedImage *target, const SavedImage *covered) {
 	          <= target->ImageDesc.Top + target->ImageDesc.Height;
 }
 
+/**
+ * Saves the part of the canvas which is going to be covered by given frame, only that part can change
+ * until the frame is disposed.
+ */
+static void storeBackup(const argb *bm, GifInfo *info, const SavedImage *frame) {
+	GifImageDesc *const area = &info->backupArea;
+	if (!clipToCanvas(info, &frame->ImageDesc, area)) {
+		area->Width = 0;
+		return;
+	}
+	const size_t pixelSize = getCanvasPixelSize(info);
+	const uint_fast32_t backupSize = area->Width * area->Height;
+	if (backupSize > info->backupSize) {
+		void *tmpBackup = reallocarray(info->backupPtr, backupSize, pixelSize);
+		if (tmpBackup == NULL) {
+			area->Width = 0;
+			info->gifFilePtr->Error = D_GIF_ERR_NOT_ENOUGH_MEM; //TODO throw OOME
+			return;
+		}
+		info->backupPtr = tmpBackup;
+		info->backupSize = backupSize;
+	}
+	const uint8_t *src = GET_ADDR((const uint8_t *) bm, info->stride * pixelSize, (area->Left - info->cropLeft) * pixelSize,
+	                              area->Top - info->cropTop);
+	uint8_t *dst = info->backupPtr;
+	uint_fast16_t copyHeight = area->Height;
+	for (; copyHeight > 0; copyHeight--) {
+		memcpy(dst, src, area->Width * pixelSize);
+		src += info->stride * pixelSize;
+		dst += area->Width * pixelSize;
+	}
+}
+
+static void restoreBackup(argb *bm, GifInfo *info) {
+	const GifImageDesc *const area = &info->backupArea;
+	if (info->backupPtr == NULL || area->Width == 0) {
+		return;
+	}
+	const size_t pixelSize = getCanvasPixelSize(info);
+	const uint8_t *src = info->backupPtr;
+	uint8_t *dst = GET_ADDR((uint8_t *) bm, info->stride * pixelSize, (area->Left - info->cropLeft) * pixelSize,
+	                        area->Top - info->cropTop);
+	uint_fast16_t copyHeight = area->Height;
+	for (; copyHeight > 0; copyHeight--) {
+		memcpy(dst, src, area->Width * pixelSize);
+		src += area->Width * pixelSize;
+		dst += info->stride * pixelSize;
+	}
+}
+
 static inline void disposeFrameIfNeeded(argb *bm, GifInfo *info) {
 	GifFileType *fGif = info->gifFilePtr;
 	SavedImage *cur = &fGif->SavedImages[info->currentIndex - 1];
@@ -93,36 +319,62 @@ static inline void disposeFrameIfNeeded(argb *bm, GifInfo *info) {
 	bool nextTrans = info->controlBlock[info->currentIndex].TransparentColor != NO_TRANSPARENT_COLOR;
 	uint_fast8_t nextDisposal = info->controlBlock[info->currentIndex].DisposalMode;
 
-	if ((curDisposal == DISPOSE_PREVIOUS || nextDisposal == DISPOSE_PREVIOUS) && info->backupPtr == NULL) {
-		info->backupPtr = calloc(info->stride * fGif->SHeight, sizeof(argb));
-		if (!info->backupPtr) {
-			info->gifFilePtr->Error = D_GIF_ERR_NOT_ENOUGH_MEM; //TODO throw OOME
-			return;
-		}
-	}
-
 	if (nextTrans || !checkIfCover(next, cur)) {
 		if (curDisposal == DISPOSE_BACKGROUND || (info->currentIndex == 1 && curDisposal == DISPOSE_PREVIOUS)) {// restore to background (under this image) color
-			uint32_t *dst = (uint32_t *) GET_ADDR(bm, info->stride, cur->ImageDesc.Left, cur->ImageDesc.Top);
-			uint_fast16_t copyHeight = cur->ImageDesc.Height;
-			for (; copyHeight > 0; copyHeight--) {
-				MEMSET_ARGB(dst, 0, cur->ImageDesc.Width);
-				dst += info->stride;
+			GifImageDesc visible;
+			if (clipToCanvas(info, &cur->ImageDesc, &visible)) {
+				const GifWord left = visible.Left - info->cropLeft;
+				const GifWord top = visible.Top - info->cropTop;
+				uint_fast16_t copyHeight = visible.Height;
+				if (info->rgb565Palettes != NULL) {
+					uint16_t *dst = GET_ADDR((uint16_t *) bm, info->stride, left, top);
+					for (; copyHeight > 0; copyHeight--) {
+						memset(dst, 0, visible.Width * sizeof(uint16_t));
+						dst += info->stride;
+					}
+				} else {
+					uint32_t *dst = (uint32_t *) GET_ADDR(bm, info->stride, left, top);
+					for (; copyHeight > 0; copyHeight--) {
+						MEMSET_ARGB(dst, 0, visible.Width);
+						dst += info->stride;
+					}
+				}
 			}
 		} else if (curDisposal == DISPOSE_PREVIOUS) {// restore to previous
-			memcpy(bm, info->backupPtr, info->stride * fGif->SHeight * sizeof(argb));
+			restoreBackup(bm, info);
 		}
 	}
 
-	// Save current image if next frame's disposal method == DISPOSE_PREVIOUS
+	// Save area under the next frame if its disposal method == DISPOSE_PREVIOUS
 	if (nextDisposal == DISPOSE_PREVIOUS) {
-		memcpy(info->backupPtr, bm, info->stride * fGif->SHeight * sizeof(argb));
+		storeBackup(bm, info, next);
 	}
 }
 
-void prepareCanvas(const argb *bm, GifInfo *info) {
+static void prepareRgb565Canvas(uint16_t *bm, GifInfo *info) {
 	GifFileType *const gifFilePtr = info->gifFilePtr;
 	if (gifFilePtr->SColorMap && info->controlBlock->TransparentColor == NO_TRANSPARENT_COLOR) {
+		const uint16_t *palettes = getRgb565Palettes(info, gifFilePtr->SColorMap);
+		const GifWord backgroundIndex = (GifWord) gifFilePtr->SBackGroundColor;
+		GifWord x, y;
+		for (y = 0; y < gifFilePtr->SHeight; y++) {
+			uint16_t *row = bm + y * info->stride;
+			for (x = 0; x < gifFilePtr->SWidth; x++) {
+				const uint_fast16_t phase = info->isRgb565Dithered ? (y & 3U) * 4 + (x & 3U) : 0;
+				row[x] = palettes[phase * 256 + backgroundIndex];
+			}
+		}
+	} else {
+		memset(bm, 0, info->stride * gifFilePtr->SHeight * sizeof(uint16_t));
+	}
+}
+
+void prepareCanvas(const argb *bm, GifInfo *info) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	invalidateCanvas(info);
+	if (info->rgb565Palettes != NULL) {
+		prepareRgb565Canvas((uint16_t *) bm, info);
+	} else if (gifFilePtr->SColorMap && info->controlBlock->TransparentColor == NO_TRANSPARENT_COLOR) {
 		const GifColorType backgroundRGB = gifFilePtr->SColorMap->Colors[gifFilePtr->SBackGroundColor];
 		argb *pixel;
 		for (pixel = (argb *) bm; pixel < bm + (info->stride * info->gifFilePtr->SHeight); pixel++) {
@@ -134,32 +386,100 @@ void prepareCanvas(const argb *bm, GifInfo *info) {
 	}
 }
 
-void drawNextBitmap(argb *bm, GifInfo *info) {
+bool isFrameMissing(GifInfo *info) {
+	return info->isDecodeFused && !info->isFramePending && !isFrameCacheComplete(info);
+}
+
+static void drawBitmap(argb *bm, GifInfo *info, const GifPixelType *rasterBits, uint_fast32_t rasterSize) {
+	if (isFrameCacheComplete(info)) {
+		restoreFrame(bm, info);
+		addCurrentFrameDirtyRect(info);
+		return;
+	}
+	// canvas is left untouched if decoding reached the end of the stream or failed before the image data
+	if (rasterBits == NULL && isFrameMissing(info)) {
+		return;
+	}
 	if (info->currentIndex > 0) {
 		disposeFrameIfNeeded(bm, info);
 	}
-	drawFrame(bm, info, info->gifFilePtr->SavedImages + info->currentIndex);
+	drawFrame(bm, info, info->gifFilePtr->SavedImages + info->currentIndex, rasterBits, rasterSize);
+	addCurrentFrameDirtyRect(info);
+	storeCheckpoint(bm, info);
 }
 
-uint_fast32_t getFrameDuration(GifInfo *info) {
-	uint_fast32_t frameDuration = info->controlBlock[info->currentIndex].DelayTime;
+void drawNextBitmap(argb *bm, GifInfo *info) {
+	drawBitmap(bm, info, NULL, 0);
+}
+
+/**
+ * Same as drawNextBitmap but pixels of the current frame are taken from raster decoded beforehand
+ * instead of the decoder state.
+ */
+void drawDecodedBitmap(argb *bm, GifInfo *info, const GifPixelType *rasterBits, uint_fast32_t rasterSize) {
+	drawBitmap(bm, info, rasterBits, rasterSize);
+}
+
+/**
+ * @return true if metadata of the frame following the current one is not known, because its data has not arrived yet
+ */
+static bool isNextFrameMissing(GifInfo *info) {
+	if (info->currentIndex + 1 < info->gifFilePtr->ImageCount) {
+		return false;
+	}
+	scanMetadata(info, 1);
+	return info->currentIndex + 1 >= info->gifFilePtr->ImageCount && !info->isMetadataComplete;
+}
+
+/**
+ * Moves to the next frame, the first one is the next after the last one if there are loops left.
+ * @return false if animation has been completed or source could not be rewound
+ */
+static bool advanceFrame(GifInfo *info) {
 	if (++info->currentIndex >= info->gifFilePtr->ImageCount) {
 		if (info->loopCount == 0 || info->currentLoop + 1 < info->loopCount) {
-			if (info->rewindFunction(info) != 0)
-				return 0;
+			if (!isFrameCacheComplete(info) && info->rewindFunction(info) != 0)
+				return false;
 			else if (info->loopCount > 0)
 				info->currentLoop++;
 			info->currentIndex = 0;
 		} else {
 			info->currentLoop++;
 			--info->currentIndex;
-			frameDuration = 0;
+			return false;
 		}
 	}
-	return frameDuration;
+	return true;
+}
+
+uint_fast32_t getFrameDuration(GifInfo *info) {
+	const uint_fast32_t frameDuration = info->controlBlock[info->currentIndex].DelayTime;
+	// current frame stays until the following one arrives, see resumeAfterFrontier
+	info->isWaitingForFrame = isNextFrameMissing(info);
+	if (info->isWaitingForFrame) {
+		return frameDuration;
+	}
+	return advanceFrame(info) ? frameDuration : 0;
+}
+
+/**
+ * Moves past the frame which has been kept because the following one had not arrived, if it has arrived meanwhile
+ * or there are no more frames. It must be called before decoding the next frame.
+ * @return false if the following frame has still not arrived, the flag is kept then, or animation has been completed
+ */
+bool resumeAfterFrontier(GifInfo *info) {
+	if (!info->isWaitingForFrame) {
+		return true;
+	}
+	if (isNextFrameMissing(info)) {
+		return false;
+	}
+	info->isWaitingForFrame = false;
+	return advanceFrame(info);
 }
 
 uint_fast32_t getBitmap(argb *bm, GifInfo *info) {
 	drawNextBitmap(bm, info);
+	storeFrame(bm, info);
 	return getFrameDuration(info);
 }
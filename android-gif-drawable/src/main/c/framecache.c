@@ -0,0 +1,501 @@
+#include "gif.h"
+
+#define PALETTE_HASH_SIZE 1024
+#define PALETTE_HASH_SHIFT 22
+#define CONTENT_HASH_OFFSET 14695981039346656037ULL
+#define CONTENT_HASH_PRIME 1099511628211ULL
+#define DEFAULT_SHARED_BYTE_BUDGET (16 * 1024 * 1024)
+
+/**
+ * Complete frame caches shared by all the GifInfos having the same key, most recently used first.
+ * Caches which are not referenced anymore are kept until they have to be evicted to fit the budget.
+ */
+typedef struct SharedFrameCache {
+	FrameCache *cache;
+	uint_fast32_t referenceCount;
+	struct SharedFrameCache *next;
+} SharedFrameCache;
+
+static pthread_mutex_t sharedCachesMutex = PTHREAD_MUTEX_INITIALIZER;
+static SharedFrameCache *sharedCaches = NULL;
+static size_t sharedByteBudget = DEFAULT_SHARED_BYTE_BUDGET;
+static size_t sharedByteCount = 0;
+
+static inline size_t getPixelCount(GifInfo *info) {
+	return (size_t) info->gifFilePtr->SWidth * info->gifFilePtr->SHeight;
+}
+
+static uint64_t hashBytes(uint64_t hash, const uint8_t *bytes, size_t length) {
+	size_t i;
+	for (i = 0; i + sizeof(uint64_t) <= length; i += sizeof(uint64_t)) {
+		uint64_t word;
+		memcpy(&word, bytes + i, sizeof(word));
+		hash = (hash ^ word) * CONTENT_HASH_PRIME;
+	}
+	for (; i < length; i++) {
+		hash = (hash ^ bytes[i]) * CONTENT_HASH_PRIME;
+	}
+	return hash;
+}
+
+/**
+ * Hashes logical screen and all the records following it. Source is read from the start of the records up to the end
+ * and rewound afterwards, so it must be called before decoding.
+ * @return false if source could not be read
+ */
+static bool hashContent(GifInfo *info, FrameCacheKey *key) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	if (!info->isMetadataComplete || info->rewindFunction(info) != 0) {
+		return false;
+	}
+	const uint16_t screen[] = {(uint16_t) info->originalWidth, (uint16_t) info->originalHeight, gifFilePtr->SBackGroundColor};
+	uint64_t hash = hashBytes(CONTENT_HASH_OFFSET, (const uint8_t *) screen, sizeof(screen));
+	if (gifFilePtr->SColorMap != NULL) {
+		hash = hashBytes(hash, (const uint8_t *) gifFilePtr->SColorMap->Colors, gifFilePtr->SColorMap->ColorCount * sizeof(GifColorType));
+	}
+	GifByteType buffer[4096];
+	size_t length, contentLength = 0;
+	while ((length = DGifReadInput(gifFilePtr, buffer, sizeof(buffer))) > 0) {
+		hash = hashBytes(hash, buffer, length);
+		contentLength += length;
+	}
+	key->contentHash = hash;
+	key->contentLength = contentLength;
+	return info->rewindFunction(info) == 0;
+}
+
+/**
+ * Frame offsets confirm that content with the same hash and length has the same structure as well, so caches of
+ * different GIFs are shared only if their hashes collide and all the frames start at the same offsets.
+ * @return false if key could not be computed, no offsets are allocated then
+ */
+static bool getFrameCacheKey(GifInfo *info, FrameCacheKey *key) {
+	const uint_fast32_t imageCount = (uint_fast32_t) info->gifFilePtr->ImageCount;
+	if (info->frameOffsets == NULL || !hashContent(info, key)) {
+		return false;
+	}
+	key->frameOffsets = reallocarray(NULL, imageCount, sizeof(long long));
+	if (key->frameOffsets == NULL) {
+		return false;
+	}
+	uint_fast32_t i;
+	for (i = 0; i < imageCount; i++) {
+		key->frameOffsets[i] = info->frameOffsets[i] - info->startPos;
+	}
+	key->imageCount = imageCount;
+	key->sampleSize = info->sampleSize;
+	key->cropLeft = info->cropLeft;
+	key->cropTop = info->cropTop;
+	key->width = info->gifFilePtr->SWidth;
+	key->height = info->gifFilePtr->SHeight;
+	key->isOpaque = info->isOpaque;
+	key->isRgb565 = info->isRgb565;
+	key->isRgb565Dithered = info->isRgb565Dithered;
+	return true;
+}
+
+static bool isSameKey(const FrameCacheKey *a, const FrameCacheKey *b) {
+	return a->contentHash == b->contentHash && a->contentLength == b->contentLength && a->imageCount == b->imageCount
+	       && a->sampleSize == b->sampleSize && a->cropLeft == b->cropLeft && a->cropTop == b->cropTop
+	       && a->width == b->width && a->height == b->height && a->isOpaque == b->isOpaque
+	       && a->isRgb565 == b->isRgb565 && a->isRgb565Dithered == b->isRgb565Dithered
+	       && memcmp(a->frameOffsets, b->frameOffsets, a->imageCount * sizeof(long long)) == 0;
+}
+
+static void freeFrameCache(FrameCache *cache) {
+	uint_fast32_t i;
+	for (i = 0; i < cache->frameCount; i++) {
+		free(cache->frames[i].indices);
+		free(cache->frames[i].pixels);
+	}
+	for (i = 0; i < cache->paletteCount; i++) {
+		free(cache->palettes[i]);
+	}
+	free(cache->frames);
+	free(cache->palettes);
+	free(cache->key.frameOffsets);
+	free(cache);
+}
+
+/**
+ * Evicts least recently used caches which are not referenced until shared ones take at most the given number of bytes.
+ * Must be called with the mutex held.
+ */
+static void trimSharedCaches(size_t byteCount) {
+	while (sharedByteCount > byteCount) {
+		SharedFrameCache **link = NULL, **candidate;
+		for (candidate = &sharedCaches; *candidate != NULL; candidate = &(*candidate)->next) {
+			if ((*candidate)->referenceCount == 0) {
+				link = candidate;
+			}
+		}
+		if (link == NULL) {
+			return;
+		}
+		SharedFrameCache *shared = *link;
+		*link = shared->next;
+		sharedByteCount -= shared->cache->byteCount;
+		freeFrameCache(shared->cache);
+		free(shared);
+	}
+}
+
+/**
+ * Finds shared cache with the given key, it is moved to the front and referenced if found.
+ * Must be called with the mutex held.
+ */
+static FrameCache *referenceSharedCache(const FrameCacheKey *key) {
+	SharedFrameCache **link;
+	for (link = &sharedCaches; *link != NULL; link = &(*link)->next) {
+		SharedFrameCache *shared = *link;
+		if (isSameKey(&shared->cache->key, key)) {
+			*link = shared->next;
+			shared->next = sharedCaches;
+			sharedCaches = shared;
+			shared->referenceCount++;
+			return shared->cache;
+		}
+	}
+	return NULL;
+}
+
+/**
+ * Decoding buffers are not needed anymore once all the frames are restored from the cache.
+ */
+static void releaseDecodingBuffers(GifInfo *info) {
+	free(info->rasterBits);
+	info->rasterBits = NULL;
+	info->rasterSize = 0;
+	free(info->backupPtr);
+	info->backupPtr = NULL;
+	info->backupSize = 0;
+	releaseCheckpointCache(info);
+}
+
+/**
+ * Replaces frame cache being filled with the shared one having the same key, if any GifInfo has completed it.
+ * @return true if cache has been replaced
+ */
+static bool adoptSharedCache(GifInfo *info) {
+	pthread_mutex_lock(&sharedCachesMutex);
+	FrameCache *shared = referenceSharedCache(&info->frameCache->key);
+	pthread_mutex_unlock(&sharedCachesMutex);
+	if (shared == NULL) {
+		return false;
+	}
+	freeFrameCache(info->frameCache);
+	info->frameCache = shared;
+	releaseDecodingBuffers(info);
+	return true;
+}
+
+/**
+ * Shares just completed cache, unless the one having the same key has been shared meanwhile, it is adopted then.
+ * Cache which does not fit the budget stays private.
+ */
+static void shareCompletedCache(GifInfo *info) {
+	FrameCache *cache = info->frameCache;
+	pthread_mutex_lock(&sharedCachesMutex);
+	FrameCache *existing = referenceSharedCache(&cache->key);
+	if (existing != NULL) {
+		info->frameCache = existing;
+	} else if (cache->byteCount <= sharedByteBudget) {
+		SharedFrameCache *shared = malloc(sizeof(SharedFrameCache));
+		if (shared != NULL) {
+			trimSharedCaches(sharedByteBudget - cache->byteCount);
+			if (sharedByteCount + cache->byteCount <= sharedByteBudget) {
+				cache->isShared = true;
+				shared->cache = cache;
+				shared->referenceCount = 1;
+				shared->next = sharedCaches;
+				sharedCaches = shared;
+				sharedByteCount += cache->byteCount;
+			} else {
+				free(shared);
+			}
+		}
+	}
+	pthread_mutex_unlock(&sharedCachesMutex);
+	if (existing != NULL) {
+		freeFrameCache(cache);
+	}
+}
+
+void initFrameCache(GifInfo *info, size_t byteBudget, bool isIndexed, bool isShared) {
+	const uint_fast32_t imageCount = (uint_fast32_t) info->gifFilePtr->ImageCount;
+	if (imageCount < 2 || info->frameCache != NULL) {
+		return;
+	}
+	FrameCacheKey key = {.frameOffsets = NULL};
+	const bool isShareable = isShared && byteBudget > 0 && getFrameCacheKey(info, &key);
+	if (isShareable) {
+		pthread_mutex_lock(&sharedCachesMutex);
+		info->frameCache = referenceSharedCache(&key);
+		pthread_mutex_unlock(&sharedCachesMutex);
+		if (info->frameCache != NULL) {
+			free(key.frameOffsets);
+			return;
+		}
+	}
+	// whole animation has to fit, otherwise frames are decoded on each loop as usual
+	// RGB_565 frames are stored as they are, palette indices would not save much
+	if (info->rgb565Palettes != NULL) {
+		isIndexed = false;
+	}
+	const size_t frameSize = getPixelCount(info) * (isIndexed ? sizeof(GifByteType) : getCanvasPixelSize(info));
+	if (byteBudget / imageCount < frameSize) {
+		free(key.frameOffsets);
+		return;
+	}
+	FrameCache *cache = malloc(sizeof(FrameCache));
+	if (cache == NULL) {
+		free(key.frameOffsets);
+		return;
+	}
+	cache->frames = calloc(imageCount, sizeof(CachedFrame));
+	cache->palettes = isIndexed ? calloc(imageCount, sizeof(FramePalette *)) : NULL;
+	if (cache->frames == NULL || (isIndexed && cache->palettes == NULL)) {
+		free(cache->frames);
+		free(cache->palettes);
+		free(cache);
+		free(key.frameOffsets);
+		return;
+	}
+	cache->paletteCount = 0;
+	cache->frameCount = 0;
+	cache->byteBudget = byteBudget;
+	cache->byteCount = 0;
+	cache->isIndexed = isIndexed;
+	cache->isSequential = false;
+	cache->isShareable = isShareable;
+	cache->isShared = false;
+	cache->key = key;
+	info->frameCache = cache;
+}
+
+void releaseFrameCache(GifInfo *info) {
+	FrameCache *cache = info->frameCache;
+	if (cache == NULL) {
+		return;
+	}
+	info->frameCache = NULL;
+	if (!cache->isShared) {
+		freeFrameCache(cache);
+		return;
+	}
+	pthread_mutex_lock(&sharedCachesMutex);
+	SharedFrameCache *shared = sharedCaches;
+	while (shared->cache != cache) {
+		shared = shared->next;
+	}
+	shared->referenceCount--;
+	trimSharedCaches(sharedByteBudget);
+	pthread_mutex_unlock(&sharedCachesMutex);
+}
+
+bool isFrameCacheComplete(GifInfo *info) {
+	return info->frameCache != NULL && info->frameCache->frameCount == info->gifFilePtr->ImageCount;
+}
+
+/**
+ * Converts canvas to palette indices, colors missing in the palette are appended to it.
+ * @return false if canvas needs more than 256 colors, palette is left untouched in such case
+ */
+static bool encodeIndexed(const argb *bm, GifInfo *info, FramePalette *palette, GifByteType *indices) {
+	uint32_t keys[PALETTE_HASH_SIZE];
+	int_fast16_t values[PALETTE_HASH_SIZE];
+	uint32_t colors[256];
+	uint_fast16_t colorCount = palette->colorCount;
+	memcpy(colors, palette->colors, colorCount * sizeof(uint32_t));
+
+	uint_fast16_t i;
+	for (i = 0; i < PALETTE_HASH_SIZE; i++) {
+		values[i] = -1;
+	}
+	for (i = 0; i < colorCount; i++) {
+		uint_fast32_t slot = (colors[i] * 2654435761U) >> PALETTE_HASH_SHIFT;
+		while (values[slot] >= 0) {
+			slot = (slot + 1) & (PALETTE_HASH_SIZE - 1);
+		}
+		keys[slot] = colors[i];
+		values[slot] = (int_fast16_t) i;
+	}
+
+	const GifWord width = info->gifFilePtr->SWidth;
+	bool hasLastColor = false;
+	uint32_t lastColor = 0;
+	GifByteType lastIndex = 0;
+	GifWord x, y;
+	for (y = 0; y < info->gifFilePtr->SHeight; y++) {
+		const uint32_t *src = (const uint32_t *) (bm + y * info->stride);
+		GifByteType *dst = indices + y * width;
+		for (x = 0; x < width; x++) {
+			const uint32_t color = src[x];
+			if (!hasLastColor || color != lastColor) {
+				uint_fast32_t slot = (color * 2654435761U) >> PALETTE_HASH_SHIFT;
+				while (values[slot] >= 0 && keys[slot] != color) {
+					slot = (slot + 1) & (PALETTE_HASH_SIZE - 1);
+				}
+				if (values[slot] < 0) {
+					if (colorCount == 256) {
+						return false;
+					}
+					keys[slot] = color;
+					values[slot] = (int_fast16_t) colorCount;
+					colors[colorCount++] = color;
+				}
+				lastColor = color;
+				lastIndex = (GifByteType) values[slot];
+				hasLastColor = true;
+			}
+			dst[x] = lastIndex;
+		}
+	}
+
+	memcpy(palette->colors, colors, colorCount * sizeof(uint32_t));
+	palette->colorCount = colorCount;
+	return true;
+}
+
+static bool storeIndexedFrame(const argb *bm, GifInfo *info, CachedFrame *frame) {
+	FrameCache *cache = info->frameCache;
+	const size_t indicesSize = getPixelCount(info) * sizeof(GifByteType);
+	if (cache->byteCount + indicesSize > cache->byteBudget) {
+		return false;
+	}
+	GifByteType *indices = malloc(indicesSize);
+	if (indices == NULL) {
+		return false;
+	}
+	// palette of the previous frame is shared as long as new colors can be appended to it
+	if (cache->paletteCount > 0 && encodeIndexed(bm, info, cache->palettes[cache->paletteCount - 1], indices)) {
+		frame->palette = cache->palettes[cache->paletteCount - 1];
+	} else {
+		FramePalette *palette = malloc(sizeof(FramePalette));
+		if (palette == NULL) {
+			free(indices);
+			return false;
+		}
+		palette->colorCount = 0;
+		if (!encodeIndexed(bm, info, palette, indices) ||
+		    cache->byteCount + indicesSize + sizeof(FramePalette) > cache->byteBudget) {
+			free(palette);
+			free(indices);
+			return false;
+		}
+		cache->palettes[cache->paletteCount++] = palette;
+		cache->byteCount += sizeof(FramePalette);
+		frame->palette = palette;
+	}
+	frame->indices = indices;
+	cache->byteCount += indicesSize;
+	return true;
+}
+
+static bool storePixelFrame(const argb *bm, GifInfo *info, CachedFrame *frame) {
+	FrameCache *cache = info->frameCache;
+	const size_t pixelSize = getCanvasPixelSize(info);
+	const size_t pixelsSize = getPixelCount(info) * pixelSize;
+	if (cache->byteCount + pixelsSize > cache->byteBudget) {
+		return false;
+	}
+	uint8_t *pixels = malloc(pixelsSize);
+	if (pixels == NULL) {
+		return false;
+	}
+	const size_t rowSize = info->gifFilePtr->SWidth * pixelSize;
+	GifWord y;
+	for (y = 0; y < info->gifFilePtr->SHeight; y++) {
+		memcpy(pixels + y * rowSize, (const uint8_t *) bm + y * info->stride * pixelSize, rowSize);
+	}
+	frame->pixels = pixels;
+	cache->byteCount += pixelsSize;
+	return true;
+}
+
+void storeFrame(const argb *bm, GifInfo *info) {
+	FrameCache *cache = info->frameCache;
+	const uint_fast32_t index = info->currentIndex;
+	if (cache == NULL || cache->frameCount == info->gifFilePtr->ImageCount) {
+		return;
+	}
+	// only frames composited one after another from the first one are stored
+	if (index == 0) {
+		cache->isSequential = true;
+	}
+	if (!cache->isSequential || index != cache->frameCount) {
+		return;
+	}
+	// another GifInfo playing the same content may have completed the frames meanwhile
+	if (cache->isShareable && adoptSharedCache(info)) {
+		return;
+	}
+
+	CachedFrame *frame = &cache->frames[index];
+	// frames needing more than 256 colors fall back to ARGB, animation which does not fit is not cached at all
+	if (!(cache->isIndexed && storeIndexedFrame(bm, info, frame)) && !storePixelFrame(bm, info, frame)) {
+		releaseFrameCache(info);
+		return;
+	}
+	cache->frameCount++;
+
+	if (isFrameCacheComplete(info)) {
+		if (cache->isShareable) {
+			shareCompletedCache(info);
+		}
+		releaseDecodingBuffers(info);
+	}
+}
+
+void restoreFrame(argb *bm, GifInfo *info) {
+	const CachedFrame *frame = &info->frameCache->frames[info->currentIndex];
+	const GifWord width = info->gifFilePtr->SWidth;
+	GifWord x, y;
+	if (frame->indices != NULL) {
+		const uint32_t *colors = frame->palette->colors;
+		for (y = 0; y < info->gifFilePtr->SHeight; y++) {
+			const GifByteType *src = frame->indices + y * width;
+			uint32_t *dst = (uint32_t *) (bm + y * info->stride);
+			for (x = 0; x < width; x++) {
+				dst[x] = colors[src[x]];
+			}
+		}
+	} else {
+		const size_t pixelSize = getCanvasPixelSize(info);
+		const uint8_t *pixels = frame->pixels;
+		for (y = 0; y < info->gifFilePtr->SHeight; y++) {
+			memcpy((uint8_t *) bm + y * info->stride * pixelSize, pixels + y * width * pixelSize, width * pixelSize);
+		}
+	}
+}
+
+__unused JNIEXPORT void JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_setSharedFrameCacheMaxSize(JNIEnv *__unused env, jclass __unused handleClass, jlong maxSize) {
+	pthread_mutex_lock(&sharedCachesMutex);
+	sharedByteBudget = maxSize > 0 ? (size_t) maxSize : 0;
+	trimSharedCaches(sharedByteBudget);
+	pthread_mutex_unlock(&sharedCachesMutex);
+}
+
+__unused JNIEXPORT jlong JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_getSharedFrameCacheMaxSize(JNIEnv *__unused env, jclass __unused handleClass) {
+	pthread_mutex_lock(&sharedCachesMutex);
+	const size_t maxSize = sharedByteBudget;
+	pthread_mutex_unlock(&sharedCachesMutex);
+	return (jlong) maxSize;
+}
+
+__unused JNIEXPORT jlong JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_getSharedFrameCacheSize(JNIEnv *__unused env, jclass __unused handleClass) {
+	pthread_mutex_lock(&sharedCachesMutex);
+	const size_t size = sharedByteCount;
+	pthread_mutex_unlock(&sharedCachesMutex);
+	return (jlong) size;
+}
+
+__unused JNIEXPORT void JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_trimSharedFrameCache(JNIEnv *__unused env, jclass __unused handleClass, jlong size) {
+	pthread_mutex_lock(&sharedCachesMutex);
+	trimSharedCaches(size > 0 ? (size_t) size : 0);
+	pthread_mutex_unlock(&sharedCachesMutex);
+}
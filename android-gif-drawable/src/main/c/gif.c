@@ -1,93 +1,40 @@
 #include "gif.h"
 
-uint_fast8_t fileRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size) {
+size_t fileRead(GifFileType *gif, GifByteType *bytes, size_t size) {
 	FILE *file = (FILE *) gif->UserData;
-	return (uint_fast8_t) fread(bytes, 1, size, file);
+	return fread(bytes, 1, size, file);
 }
 
-uint_fast8_t directByteBufferRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size) {
+const GifByteType *directByteBufferMap(GifFileType *gif, size_t *size) {
 	DirectByteBufferContainer *dbbc = gif->UserData;
-	if (dbbc->position + size > dbbc->capacity) {
-		size -= dbbc->position + size - dbbc->capacity;
-	}
-	memcpy(bytes, dbbc->bytes + dbbc->position, (size_t) size);
-	dbbc->position += size;
-	return size;
+	const GifByteType *bytes = (const GifByteType *) dbbc->bytes + dbbc->position;
+	*size = (size_t) (dbbc->capacity - dbbc->position);
+	dbbc->position = dbbc->capacity;
+	return bytes;
 }
 
-uint_fast8_t byteArrayRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size) {
+size_t byteArrayRead(GifFileType *gif, GifByteType *bytes, size_t size) {
 	ByteArrayContainer *bac = gif->UserData;
-	JNIEnv *env = getEnv();
-	if (env == NULL) {
-		return 0;
-	}
 	if (bac->position + size > bac->length) {
-		size -= bac->position + size - bac->length;
+		size = bac->length - bac->position;
+	}
+	if (size > 0) {
+		JNIEnv *env = getEnv();
+		if (env == NULL) {
+			return 0;
+		}
+		(*env)->GetByteArrayRegion(env, bac->buffer, (jsize) bac->position, (jsize) size, (jbyte *) bytes);
 	}
-	(*env)->GetByteArrayRegion(env, bac->buffer, (jsize) bac->position, size, (jbyte *) bytes);
 	bac->position += size;
 	return size;
 }
 
-static jint bufferUpTo(JNIEnv *env, StreamContainer *sc, size_t size) {
-	jint totalLength = 0;
-	jint length;
-	do {
-		length = (*env)->CallIntMethod(env, sc->stream, sc->readMethodID, sc->buffer, totalLength, size - totalLength);
-		if (length > 0) {
-			totalLength += length;
-		} else {
-			if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
-#ifdef DEBUG
-				(*env)->ExceptionDescribe(env);
-#endif
-				(*env)->ExceptionClear(env);
-			}
-			break;
-		}
-	} while (totalLength < size);
-	return totalLength;
-}
-
-uint_fast8_t streamRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size) {
-	StreamContainer *sc = gif->UserData;
-	JNIEnv *env = getEnv();
-	if (env == NULL || (*env)->MonitorEnter(env, sc->stream) != 0) {
-		return 0;
-	}
-
-	if (sc->bufferPosition == 0) {
-		size_t bufferSize = sc->markCalled ? STREAM_BUFFER_SIZE : size;
-		jint readLen = bufferUpTo(env, sc, bufferSize);
-		if (readLen < size) {
-			size = (uint_fast8_t) readLen;
-		}
-		(*env)->GetByteArrayRegion(env, sc->buffer, 0, size, (jbyte *) bytes);
-		if (sc->markCalled) {
-			sc->bufferPosition += size;
-		}
-	} else if (sc->bufferPosition + size <= STREAM_BUFFER_SIZE) {
-		(*env)->GetByteArrayRegion(env, sc->buffer, sc->bufferPosition, size, (jbyte *) bytes);
-		sc->bufferPosition += size;
-	} else {
-		jint tailSize = STREAM_BUFFER_SIZE - sc->bufferPosition;
-		(*env)->GetByteArrayRegion(env, sc->buffer, sc->bufferPosition, tailSize, (jbyte *) bytes);
-		bytes += tailSize;
-		jint readLen = bufferUpTo(env, sc, STREAM_BUFFER_SIZE);
-		jint headSize = size - tailSize;
-		if (readLen < headSize) {
-			size = (uint_fast8_t) readLen;
-			headSize = readLen;
-		}
-		(*env)->GetByteArrayRegion(env, sc->buffer, 0, headSize, (jbyte *) bytes);
-		sc->bufferPosition = headSize;
-	}
-
-	if ((*env)->MonitorExit(env, sc->stream) != 0) {
-		return 0;
-	}
-
-	return (uint_fast8_t) size;
+const GifByteType *byteArrayMap(GifFileType *gif, size_t *size) {
+	ByteArrayContainer *bac = gif->UserData;
+	const GifByteType *bytes = bac->bytes + bac->position;
+	*size = bac->length - bac->position;
+	bac->position = bac->length;
+	return bytes;
 }
 
 int fileRewind(GifInfo *info) {
@@ -98,25 +45,12 @@ int fileRewind(GifInfo *info) {
 	return -1;
 }
 
-int streamRewind(GifInfo *info) {
-	GifFileType *gif = info->gifFilePtr;
-	StreamContainer *sc = gif->UserData;
-	JNIEnv *env = getEnv();
-	sc->bufferPosition = 0;
-	if (env == NULL) {
-		info->gifFilePtr->Error = D_GIF_ERR_REWIND_FAILED;
-		return -1;
-	}
-	(*env)->CallVoidMethod(env, sc->stream, sc->resetMethodID);
-	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
-#ifdef DEBUG
-		(*env)->ExceptionDescribe(env);
-#endif
-		(*env)->ExceptionClear(env);
-		info->gifFilePtr->Error = D_GIF_ERR_REWIND_FAILED;
-		return -1;
+void releaseByteArrayContainer(JNIEnv *env, ByteArrayContainer *container) {
+	if (container->buffer != NULL) {
+		(*env)->DeleteGlobalRef(env, container->buffer);
 	}
-	return 0;
+	free(container->bytes);
+	free(container);
 }
 
 int byteArrayRewind(GifInfo *info) {
@@ -131,8 +65,44 @@ int directByteBufferRewind(GifInfo *info) {
 	return 0;
 }
 
+long long fileTell(GifInfo *info) {
+	return ftello(info->gifFilePtr->UserData);
+}
+
+long long byteArrayTell(GifInfo *info) {
+	ByteArrayContainer *bac = info->gifFilePtr->UserData;
+	return (long long) bac->position;
+}
+
+long long directByteBufferTell(GifInfo *info) {
+	DirectByteBufferContainer *dbbc = info->gifFilePtr->UserData;
+	return dbbc->position;
+}
+
+int fileSeek(GifInfo *info, long long position) {
+	return fseeko(info->gifFilePtr->UserData, position, SEEK_SET);
+}
+
+int byteArraySeek(GifInfo *info, long long position) {
+	ByteArrayContainer *bac = info->gifFilePtr->UserData;
+	if (position < 0 || position > bac->length) {
+		return -1;
+	}
+	bac->position = (uint_fast32_t) position;
+	return 0;
+}
+
+int directByteBufferSeek(GifInfo *info, long long position) {
+	DirectByteBufferContainer *dbbc = info->gifFilePtr->UserData;
+	if (position < 0 || position > dbbc->capacity) {
+		return -1;
+	}
+	dbbc->position = position;
+	return 0;
+}
+
 __unused JNIEXPORT jlong JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_openFile(JNIEnv *env, jclass __unused class, jstring jfname) {
+Java_pl_droidsonroids_gif_GifInfoHandle_openFile(JNIEnv *env, jclass __unused class, jstring jfname, jboolean isMetadataLazy) {
 	if (isSourceNull(jfname, env)) {
 		return NULL_GIF_INFO;
 	}
@@ -150,10 +120,17 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openFile(JNIEnv *env, jclass __unused cl
 	}
 	(*env)->ReleaseStringUTFChars(env, jfname, filename);
 
+	bool isMapped;
+	GifInfo *info = createGifInfoFromMappedFile(env, fileno(file), 0, isMetadataLazy == JNI_TRUE, &isMapped);
+	if (isMapped) {
+		fclose(file);
+		return (jlong) (intptr_t) info;
+	}
+
 	struct stat64 st;
-	const long long sourceLength = stat64(filename, &st) == 0 ? st.st_size : -1;
+	const long long sourceLength = fstat64(fileno(file), &st) == 0 ? st.st_size : -1;
 
-	GifInfo *const info = createGifInfoFromFile(env, file, sourceLength);
+	info = createGifInfoFromFile(env, file, sourceLength, isMetadataLazy == JNI_TRUE);
 	if (info == NULL) {
 		fclose(file);
 	}
@@ -161,7 +138,8 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openFile(JNIEnv *env, jclass __unused cl
 }
 
 __unused JNIEXPORT jlong JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_openByteArray(JNIEnv *env, jclass __unused class, jbyteArray bytes) {
+Java_pl_droidsonroids_gif_GifInfoHandle_openByteArray(JNIEnv *env, jclass __unused class, jbyteArray bytes, jboolean isMetadataLazy,
+                                                      jboolean isCopiedToNativeMemory) {
 	if (isSourceNull(bytes, env)) {
 		return NULL_GIF_INFO;
 	}
@@ -170,32 +148,51 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openByteArray(JNIEnv *env, jclass __unus
 		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
 		return NULL_GIF_INFO;
 	}
-	container->buffer = (*env)->NewGlobalRef(env, bytes);
-	if (container->buffer == NULL) {
-		free(container);
-		throwException(env, RUNTIME_EXCEPTION_BARE, "NewGlobalRef failed");
-		return NULL_GIF_INFO;
-	}
-	container->length = (unsigned int) (*env)->GetArrayLength(env, container->buffer);
+	container->length = (unsigned int) (*env)->GetArrayLength(env, bytes);
 	container->position = 0;
+	if (isCopiedToNativeMemory == JNI_TRUE) {
+		// whole array is copied, so it is not needed anymore
+		container->buffer = NULL;
+		container->bytes = malloc(container->length > 0 ? container->length : 1);
+		if (container->bytes == NULL) {
+			free(container);
+			throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+			return NULL_GIF_INFO;
+		}
+		(*env)->GetByteArrayRegion(env, bytes, 0, (jsize) container->length, (jbyte *) container->bytes);
+	} else {
+		container->bytes = NULL;
+		container->buffer = (*env)->NewGlobalRef(env, bytes);
+		if (container->buffer == NULL) {
+			free(container);
+			throwException(env, RUNTIME_EXCEPTION_BARE, "NewGlobalRef failed");
+			return NULL_GIF_INFO;
+		}
+	}
 	GifSourceDescriptor descriptor = {
 			.rewindFunc = byteArrayRewind,
-			.sourceLength = container->length
+			.tellFunc = byteArrayTell,
+			.seekFunc = byteArraySeek,
+			.sourceLength = container->length,
+			.isMetadataLazy = isMetadataLazy == JNI_TRUE
 	};
-	descriptor.GifFileIn = DGifOpen(container, &byteArrayRead, &descriptor.Error);
+	if (container->bytes != NULL) {
+		descriptor.GifFileIn = DGifOpenMapped(container, &byteArrayMap, &descriptor.Error);
+	} else {
+		descriptor.GifFileIn = DGifOpenBulk(container, &byteArrayRead, &descriptor.Error);
+	}
 	descriptor.startPos = container->position;
 
 	GifInfo *info = createGifInfo(&descriptor, env);
 
 	if (info == NULL) {
-		(*env)->DeleteGlobalRef(env, container->buffer);
-		free(container);
+		releaseByteArrayContainer(env, container);
 	}
 	return (jlong) (intptr_t) info;
 }
 
 __unused JNIEXPORT jlong JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_openDirectByteBuffer(JNIEnv *env, jclass __unused class, jobject buffer) {
+Java_pl_droidsonroids_gif_GifInfoHandle_openDirectByteBuffer(JNIEnv *env, jclass __unused class, jobject buffer, jboolean isMetadataLazy) {
 	jbyte *bytes = (*env)->GetDirectBufferAddress(env, buffer);
 	jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
 	if (bytes == NULL || capacity <= 0) {
@@ -221,9 +218,12 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openDirectByteBuffer(JNIEnv *env, jclass
 
 	GifSourceDescriptor descriptor = {
 			.rewindFunc = directByteBufferRewind,
-			.sourceLength = container->capacity
+			.tellFunc = directByteBufferTell,
+			.seekFunc = directByteBufferSeek,
+			.sourceLength = container->capacity,
+			.isMetadataLazy = isMetadataLazy == JNI_TRUE
 	};
-	descriptor.GifFileIn = DGifOpen(container, &directByteBufferRead, &descriptor.Error);
+	descriptor.GifFileIn = DGifOpenMapped(container, &directByteBufferMap, &descriptor.Error);
 	descriptor.startPos = container->position;
 
 	GifInfo *info = createGifInfo(&descriptor, env);
@@ -234,81 +234,6 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openDirectByteBuffer(JNIEnv *env, jclass
 	return (jlong) (intptr_t) info;
 }
 
-__unused JNIEXPORT jlong JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_openStream(JNIEnv *env, jclass __unused class, jobject stream) {
-	jbyteArray bufferArray = (*env)->NewByteArray(env, STREAM_BUFFER_SIZE);
-	if (bufferArray == NULL) {
-		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
-		return NULL_GIF_INFO;
-	}
-
-	StreamContainer *container = malloc(sizeof(StreamContainer));
-	if (container == NULL) {
-		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
-		return NULL_GIF_INFO;
-	}
-
-	container->buffer = (*env)->NewGlobalRef(env, bufferArray);
-	if (container->buffer == NULL) {
-		free(container);
-		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
-		return NULL_GIF_INFO;
-	}
-
-	jclass streamClass = (*env)->GetObjectClass(env, stream);
-	if (streamClass == NULL) {
-		(*env)->DeleteGlobalRef(env, container->buffer);
-		free(container);
-		throwException(env, RUNTIME_EXCEPTION_BARE, "NewGlobalRef failed");
-		return NULL_GIF_INFO;
-	}
-
-	jmethodID markMethodID = (*env)->GetMethodID(env, streamClass, "mark", "(I)V");
-	container->readMethodID = (*env)->GetMethodID(env, streamClass, "read", "([BII)I");
-	container->resetMethodID = (*env)->GetMethodID(env, streamClass, "reset", "()V");
-	container->closeMethodID = (*env)->GetMethodID(env, streamClass, "close", "()V");
-
-	if (markMethodID == NULL || container->readMethodID == NULL || container->resetMethodID == NULL || container->closeMethodID == NULL) {
-		(*env)->DeleteGlobalRef(env, container->buffer);
-		free(container);
-		return NULL_GIF_INFO;
-	}
-
-	container->stream = (*env)->NewGlobalRef(env, stream);
-	if (container->stream == NULL) {
-		(*env)->DeleteGlobalRef(env, container->buffer);
-		free(container);
-		throwException(env, RUNTIME_EXCEPTION_BARE, "NewGlobalRef failed");
-		return NULL_GIF_INFO;
-	}
-
-	GifSourceDescriptor descriptor = {
-			.rewindFunc = streamRewind,
-			.startPos = 0,
-			.sourceLength = -1
-	};
-	container->bufferPosition = 0;
-	container->markCalled = false;
-	descriptor.GifFileIn = DGifOpen(container, &streamRead, &descriptor.Error);
-
-	(*env)->CallVoidMethod(env, stream, markMethodID, INT32_MAX);
-
-    if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
-#ifdef DEBUG
-        (*env)->ExceptionDescribe(env);
-#endif
-        (*env)->DeleteGlobalRef(env, container->stream);
-        (*env)->DeleteGlobalRef(env, container->buffer);
-        free(container);
-        return NULL_GIF_INFO;
-    } else {
-        GifInfo *info = createGifInfo(&descriptor, env);
-        container->markCalled = true;
-        container->bufferPosition = 0;
-        return (jlong) (intptr_t) info;
-    }
-}
-
 __unused JNIEXPORT jint JNICALL
 Java_pl_droidsonroids_gif_GifInfoHandle_extractNativeFileDescriptor(JNIEnv *env, jclass __unused handleClass, jobject fileDescriptor, jboolean closeOriginalDescriptor) {
 	if (isSourceNull(fileDescriptor, env)) {
@@ -339,7 +264,13 @@ Java_pl_droidsonroids_gif_GifInfoHandle_createTempNativeFileDescriptor(JNIEnv __
 }
 
 __unused JNIEXPORT jlong JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_openNativeFileDescriptor(JNIEnv *env, jclass __unused handleClass, jint fd, jlong offset) {
+Java_pl_droidsonroids_gif_GifInfoHandle_openNativeFileDescriptor(JNIEnv *env, jclass __unused handleClass, jint fd, jlong offset, jboolean isMetadataLazy) {
+	bool isMapped;
+	GifInfo *mappedInfo = createGifInfoFromMappedFile(env, fd, offset, isMetadataLazy == JNI_TRUE, &isMapped);
+	if (isMapped) {
+		close(fd);
+		return (jlong) (intptr_t) mappedInfo;
+	}
 	if (lseek64(fd, offset, SEEK_SET) != -1) {
 		FILE *file = fdopen(fd, "rb");
 		if (file == NULL) {
@@ -350,7 +281,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openNativeFileDescriptor(JNIEnv *env, jc
 		struct stat64 st;
 		const long long sourceLength = fstat64(fd, &st) == 0 ? st.st_size : -1;
 
-		GifInfo *const info = createGifInfoFromFile(env, file, sourceLength);
+		GifInfo *const info = createGifInfoFromFile(env, file, sourceLength, isMetadataLazy == JNI_TRUE);
 		if (info == NULL) {
 			fclose(file);
 			close(fd);
@@ -363,12 +294,15 @@ Java_pl_droidsonroids_gif_GifInfoHandle_openNativeFileDescriptor(JNIEnv *env, jc
 	}
 }
 
-static GifInfo *createGifInfoFromFile(JNIEnv *env, FILE *file, const long long sourceLength) {
+static GifInfo *createGifInfoFromFile(JNIEnv *env, FILE *file, const long long sourceLength, const bool isMetadataLazy) {
 	GifSourceDescriptor descriptor = {
 			.rewindFunc = fileRewind,
-			.sourceLength = sourceLength
+			.tellFunc = fileTell,
+			.seekFunc = fileSeek,
+			.sourceLength = sourceLength,
+			.isMetadataLazy = isMetadataLazy
 	};
-	descriptor.GifFileIn = DGifOpen(file, &fileRead, &descriptor.Error);
+	descriptor.GifFileIn = DGifOpenBulk(file, &fileRead, &descriptor.Error);
 	descriptor.startPos = ftell(file);
 
 	return createGifInfo(&descriptor, env);
@@ -40,7 +40,8 @@
 
 #define OOME_MESSAGE "Failed to allocate native memory"
 #define DEFAULT_FRAME_DURATION_MS 100
-#define STREAM_BUFFER_SIZE  8192
+#define COMMENT_LENGTH_MAX 2048
+#define FRAME_POLL_INTERVAL_MS 20
 #define NULL_GIF_INFO (jlong) (intptr_t) NULL
 
 /**
@@ -89,16 +90,84 @@ typedef struct GifInfo GifInfo;
 typedef int
 (*RewindFunc)(GifInfo *);
 
+typedef long long
+(*TellFunc)(GifInfo *);
+
+typedef int
+(*SeekFunc)(GifInfo *, long long);
+
+typedef bool
+(*RecordAvailableFunc)(GifInfo *);
+
+typedef struct {
+	void **frames;
+	size_t byteBudget;
+	size_t byteCount;
+	uint_fast32_t interval;
+	uint_fast32_t hitCount;
+	uint_fast32_t missCount;
+} CheckpointCache;
+
+typedef struct {
+	uint32_t colors[256];
+	uint_fast16_t colorCount;
+} FramePalette;
+
+typedef struct {
+	GifByteType *indices;
+	FramePalette *palette;
+	void *pixels;
+} CachedFrame;
+
+/**
+ * Identifies composited frames: content of the GIF and options affecting the canvas. Content is compared by its hash,
+ * length and offsets of all the frames relative to the start of the GIF, owned by the key.
+ */
+typedef struct {
+	uint64_t contentHash;
+	size_t contentLength;
+	uint_fast32_t imageCount;
+	uint_fast16_t sampleSize;
+	GifWord cropLeft, cropTop, width, height;
+	bool isOpaque;
+	bool isRgb565;
+	bool isRgb565Dithered;
+	long long *frameOffsets;
+} FrameCacheKey;
+
+typedef struct {
+	CachedFrame *frames;
+	FramePalette **palettes;
+	uint_fast32_t paletteCount;
+	uint_fast32_t frameCount;
+	size_t byteBudget;
+	size_t byteCount;
+	bool isIndexed;
+	bool isSequential;
+	FrameCacheKey key;
+	bool isShareable;
+	bool isShared;
+} FrameCache;
+
+typedef struct Downsampler Downsampler;
+
+typedef struct {
+	GifWord left, top, right, bottom;
+} DirtyRect;
+
 struct GifInfo {
 	void (*destructor)(GifInfo *, JNIEnv *);
 	GifFileType *gifFilePtr;
 	GifWord originalWidth, originalHeight;
+	GifWord cropLeft, cropTop;
 	uint_fast16_t sampleSize;
 	long long lastFrameRemainder;
 	long long nextStartTime;
 	uint_fast32_t currentIndex;
 	GraphicsControlBlock *controlBlock;
-	argb *backupPtr;
+	void *backupPtr;
+	uint_fast32_t backupSize;
+	GifImageDesc backupArea;
 	long long startPos;
 	unsigned char *rasterBits;
 	uint_fast32_t rasterSize;
@@ -106,27 +175,45 @@ struct GifInfo {
 	uint_fast16_t loopCount;
 	uint_fast16_t currentLoop;
 	RewindFunc rewindFunction;
+	TellFunc tellFunction;
+	SeekFunc seekFunction;
+	RewindFunc sourceRewindFunction;
+	TellFunc sourceTellFunction;
+	SeekFunc sourceSeekFunction;
+	RecordAvailableFunc recordAvailableFunction;
+	long long *frameOffsets;
+	CheckpointCache *checkpointCache;
+	FrameCache *frameCache;
+	Downsampler *downsampler;
+	DirtyRect dirtyRect;
 	jfloat speedFactor;
 	uint32_t stride;
 	jlong sourceLength;
 	bool isOpaque;
+	uint32_t argbPalette[256];
+	const ColorMapObject *argbPaletteSource;
+	bool isRgb565;
+	bool isRgb565Dithered;
+	uint16_t *rgb565Palettes;
+	const ColorMapObject *rgb565PaletteSource;
+	bool isDecodeFused;
+	bool isFramePending;
+	bool isMetadataComplete;
+	long long metadataPosition;
+	bool isWaitingForFrame;
+	bool isMetadataImported;
 	void *frameBufferDescriptor;
 };
 
-typedef struct {
-	jobject stream;
-	jmethodID readMethodID;
-	jmethodID resetMethodID;
-	jmethodID closeMethodID;
-	jbyteArray buffer;
-	jint bufferPosition;
-	bool markCalled;
-} StreamContainer;
-
+/**
+ * Bytes are either decoded in place from the whole array copied while opening or read straight from the array
+ * into the input window of the decoder, so Java array is accessed once per window instead of every sub-block.
+ */
 typedef struct {
 	uint_fast32_t position;
 	jbyteArray buffer;
 	unsigned int length;
+	uint8_t *bytes;
 } ByteArrayContainer;
 
 typedef struct {
@@ -141,7 +228,11 @@ typedef struct {
 	int Error;
 	long long startPos;
 	RewindFunc rewindFunc;
+	TellFunc tellFunc;
+	SeekFunc seekFunc;
+	RecordAvailableFunc recordAvailableFunc;
 	jlong sourceLength;
+	bool isMetadataLazy;
 } GifSourceDescriptor;
 
 void DetachCurrentThread(void);
@@ -162,35 +253,78 @@ void throwException(JNIEnv *env, enum Exception exception, char *message);
 
 bool isSourceNull(void *ptr, JNIEnv *env);
 
-static uint_fast8_t fileRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size);
+static size_t fileRead(GifFileType *gif, GifByteType *bytes, size_t size);
 
-static uint_fast8_t directByteBufferRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size);
+static const GifByteType *directByteBufferMap(GifFileType *gif, size_t *size);
 
-static uint_fast8_t byteArrayRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size);
+static size_t byteArrayRead(GifFileType *gif, GifByteType *bytes, size_t size);
 
-static uint_fast8_t streamRead(GifFileType *gif, GifByteType *bytes, uint_fast8_t size);
+static const GifByteType *byteArrayMap(GifFileType *gif, size_t *size);
 
 int fileRewind(GifInfo *info);
 
 int streamRewind(GifInfo *info);
 
+void releaseStreamContainer(JNIEnv *env, void *container);
+
 int byteArrayRewind(GifInfo *info);
 
+void releaseByteArrayContainer(JNIEnv *env, ByteArrayContainer *container);
+
 int directByteBufferRewind(GifInfo *info);
 
-static int getComment(GifByteType *Bytes, GifInfo *);
+long long fileTell(GifInfo *info);
+
+long long byteArrayTell(GifInfo *info);
+
+long long directByteBufferTell(GifInfo *info);
+
+int fileSeek(GifInfo *info, long long position);
+
+int byteArraySeek(GifInfo *info, long long position);
+
+int directByteBufferSeek(GifInfo *info, long long position);
 
-static int readExtensions(int ExtFunction, GifByteType *ExtData, GifInfo *info);
+int pushBufferRewind(GifInfo *info);
+
+void releasePushBufferContainer(void *container);
+
+int mappedFileRewind(GifInfo *info);
+
+void releaseMappedFileContainer(void *container);
+
+GifInfo *createGifInfoFromMappedFile(JNIEnv *env, int fd, long long offset, bool isMetadataLazy, bool *isMapped);
+
+static int getComment(const GifByteType *Bytes, GifInfo *);
+
+static int readExtensions(int ExtFunction, const GifByteType *ExtData, GifInfo *info);
+
+bool readRasterBits(GifFileType *gifFilePtr, GifPixelType *rasterBits, uint_fast16_t sampleSize);
 
 void DDGifSlurp(GifInfo *info, bool decode, bool exitAfterFrame);
 
+void readInitialMetadata(GifInfo *info, uint_fast32_t frameLimit);
+
+bool scanMetadata(GifInfo *info, uint_fast32_t frameCount);
+
+bool resumeAfterFrontier(GifInfo *info);
+
+bool isImageDescConsistent(GifInfo *info);
+
+void sampleImageDesc(const GifInfo *info, GifImageDesc *desc);
+
 void throwGifIOException(int gifErrorCode, JNIEnv *env, bool readErrno);
 
 GifInfo *createGifInfo(GifSourceDescriptor *descriptor, JNIEnv *env);
 
-static inline void blitNormal(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap);
+static const uint32_t *getArgbPalette(GifInfo *info, const ColorMapObject *cmap);
+
+static inline void blitNormal(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap,
+                              const GifPixelType *rasterBits, uint_fast32_t rasterSize);
 
-static void drawFrame(argb *bm, GifInfo *info, SavedImage *frame);
+static void decodeFrame(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap);
+
+static void drawFrame(argb *bm, GifInfo *info, SavedImage *frame, const GifPixelType *rasterBits, uint_fast32_t rasterSize);
 
 static bool checkIfCover(const SavedImage *target, const SavedImage *covered);
 
@@ -210,14 +344,89 @@ jint restoreSavedState(GifInfo *info, JNIEnv *env, jlongArray state, void *pixel
 
 void prepareCanvas(const argb *bm, GifInfo *info);
 
+bool isFrameMissing(GifInfo *info);
+
 void drawNextBitmap(argb *bm, GifInfo *info);
 
+void drawDecodedBitmap(argb *bm, GifInfo *info, const GifPixelType *rasterBits, uint_fast32_t rasterSize);
+
 uint_fast32_t getFrameDuration(GifInfo *info);
 
 JNIEnv *getEnv(void);
 
 uint_fast32_t seek(GifInfo *info, uint_fast32_t desiredIndex, void *pixels);
 
+bool isKeyFrame(GifInfo *info, uint_fast32_t index);
+
+void initCheckpointCache(GifInfo *info, size_t byteBudget, uint_fast32_t interval);
+
+void releaseCheckpointCache(GifInfo *info);
+
+void storeCheckpoint(const argb *bm, GifInfo *info);
+
+bool findCheckpoint(GifInfo *info, uint_fast32_t startIndex, uint_fast32_t *index);
+
+void restoreCheckpoint(argb *bm, GifInfo *info, uint_fast32_t index);
+
+void initFrameCache(GifInfo *info, size_t byteBudget, bool isIndexed, bool isShared);
+
+void releaseFrameCache(GifInfo *info);
+
+bool isFrameCacheComplete(GifInfo *info);
+
+void storeFrame(const argb *bm, GifInfo *info);
+
+void restoreFrame(argb *bm, GifInfo *info);
+
+void initCrop(GifInfo *info, GifWord left, GifWord top, GifWord right, GifWord bottom);
+
+bool clipToCanvas(const GifInfo *info, const GifImageDesc *frame, GifImageDesc *visible);
+
+void initDownsampler(GifInfo *info, GifWord width, GifWord height);
+
+void releaseDownsampler(GifInfo *info);
+
+GifWord getOutputWidth(GifInfo *info);
+
+GifWord getOutputHeight(GifInfo *info);
+
+size_t getDownsamplerByteCount(GifInfo *info);
+
+void setOutputStride(GifInfo *info, uint32_t stride);
+
+argb *getCanvas(GifInfo *info, void *pixels);
+
+void presentCanvas(GifInfo *info, void *pixels);
+
+void mapToOutput(GifInfo *info, DirtyRect *rect);
+
+void getFrameDirtyRect(GifInfo *info, uint_fast32_t index, DirtyRect *rect);
+
+void addCurrentFrameDirtyRect(GifInfo *info);
+
+void invalidateCanvas(GifInfo *info);
+
+bool takeDirtyRect(GifInfo *info, DirtyRect *rect);
+
+void initRgb565(GifInfo *info, bool isDithered);
+
+void releaseRgb565(GifInfo *info);
+
+size_t getCanvasPixelSize(const GifInfo *info);
+
+const uint16_t *getRgb565Palettes(GifInfo *info, const ColorMapObject *cmap);
+
+void convertRowToRgb565(const GifInfo *info, const argb *src, uint16_t *dst, GifWord width, GifWord x, GifWord y);
+
+bool decodeFramesInParallel(GifInfo *info, argb *bm, uint_fast32_t lastIndex, uint_fast16_t threadCount);
+
 void setGCBDefaults(GraphicsControlBlock *gcb);
 
-static GifInfo *createGifInfoFromFile(JNIEnv *env, FILE *file, long long sourceLength);
+static GifInfo *createGifInfoFromFile(JNIEnv *env, FILE *file, long long sourceLength, bool isMetadataLazy);
+
+/**
+ * @return size in bytes of the color table following the descriptor with given packed fields
+ */
+static inline size_t getColorTableSize(uint_fast8_t flags) {
+	return flags & 0x80 ? 3U << ((flags & 7) + 1) : 0;
+}
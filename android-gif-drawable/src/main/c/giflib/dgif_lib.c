@@ -37,11 +37,56 @@ static int DGifDecompressInput(GifFileType *GifFile, int *Code);
 static int DGifBufferedInput(GifFileType *GifFile, GifByteType *Buf,
                              GifByteType *NextByte);
 
+static GifFileType *DGifOpenInput(void *userData, BulkInputFunc readFunc,
+                                  InputFunc legacyReadFunc, MapInputFunc mapFunc, int *Error);
+
+static size_t DGifLegacyInput(GifFileType *GifFile, GifByteType *Buf, size_t Len);
+
+static size_t DGifFillInput(GifFileType *GifFile, size_t Size);
+
+static size_t DGifMapInput(GifFileType *GifFile, size_t Size);
+
+static const GifByteType *DGifGetSubBlock(GifFileType *GifFile);
+
+static void DGifSetupDecompressFast(GifFilePrivateType *Private);
+
+static int DGifDecompressLineFast(GifFileType *GifFile, GifPixelType *Line,
+                                  uint_fast32_t LineLen);
+
+static int DGifFastInput(GifFileType *GifFile, GifLzwTables *Tables, unsigned long *ShiftDWord,
+                         GifWord *ShiftState, GifWord RunningBits);
+
 /******************************************************************************
 GifFileType constructor with user supplied input function (TVT)
+The function is called for at most 255 bytes at once, it is adapted to the
+bulk one filling the input window by DGifLegacyInput.
 ******************************************************************************/
 GifFileType *
 DGifOpen(void *userData, InputFunc readFunc, int *Error) {
+    return DGifOpenInput(userData, DGifLegacyInput, readFunc, NULL, Error);
+}
+
+/******************************************************************************
+GifFileType constructor with user supplied input function, which is asked for
+the whole free space of the input window at once.
+******************************************************************************/
+GifFileType *
+DGifOpenBulk(void *userData, BulkInputFunc readFunc, int *Error) {
+    return DGifOpenInput(userData, readFunc, NULL, NULL, Error);
+}
+
+/******************************************************************************
+GifFileType constructor with user supplied map function, for the data kept in
+memory. The input window points to the data itself, so it is never copied.
+******************************************************************************/
+GifFileType *
+DGifOpenMapped(void *userData, MapInputFunc mapFunc, int *Error) {
+    return DGifOpenInput(userData, NULL, NULL, mapFunc, Error);
+}
+
+static GifFileType *
+DGifOpenInput(void *userData, BulkInputFunc readFunc, InputFunc legacyReadFunc, MapInputFunc mapFunc,
+              int *Error) {
     char Buf[GIF_STAMP_LEN + 1];
     GifFileType *GifFile;
     GifFilePrivateType *Private;
@@ -72,14 +117,17 @@ DGifOpen(void *userData, InputFunc readFunc, int *Error) {
 //    Private->File = NULL;
 //    Private->FileState = FILE_STATE_READ;
 
-    Private->Read = readFunc;    /* TVT */
+    Private->Read = readFunc;
+    Private->LegacyRead = legacyReadFunc;    /* TVT */
+    Private->Map = mapFunc;
+    Private->UseFastLzw = true;
     GifFile->UserData = userData;    /* TVT */
 
     /* Lets see if this is a GIF file: */
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, (unsigned char *) Buf, sizeof("GIFVER") - 1) !=
-        GIF_STAMP_LEN) {
+    if (DGifReadInput(GifFile, (unsigned char *) Buf, sizeof("GIFVER") - 1) != GIF_STAMP_LEN) {
         if (Error != NULL)
             *Error = D_GIF_ERR_READ_FAILED;
+        free(Private->InputBuffer);
         free((char *) Private);
         free((char *) GifFile);
         return NULL;
@@ -90,12 +138,14 @@ DGifOpen(void *userData, InputFunc readFunc, int *Error) {
     if (strncmp(GIF_STAMP, Buf, GIF_VERSION_POS) != 0) {
         if (Error != NULL)
             *Error = D_GIF_ERR_NOT_GIF_FILE;
+        free(Private->InputBuffer);
         free((char *) Private);
         free((char *) GifFile);
         return NULL;
     }
 
     if (DGifGetScreenDesc(GifFile) == GIF_ERROR) {
+        free(Private->InputBuffer);
         free((char *) Private);
         free((char *) GifFile);
         if (Error != NULL)
@@ -111,6 +161,54 @@ DGifOpen(void *userData, InputFunc readFunc, int *Error) {
     return GifFile;
 }
 
+/******************************************************************************
+GifFileType constructor decoding a single image, which data were obtained by
+DGifGetImageData, with user supplied map function. Decoder settings are
+taken from ParentFile. Pixels can be obtained by DGifGetLine afterwards.
+******************************************************************************/
+GifFileType *
+DGifOpenImage(const GifFileType *ParentFile, const GifImageDesc *ImageDesc,
+              void *userData, MapInputFunc mapFunc, int *Error) {
+    GifFileType *GifFile;
+    GifFilePrivateType *Private;
+
+    GifFile = (GifFileType *) calloc(1, sizeof(GifFileType));
+    if (GifFile == NULL) {
+        if (Error != NULL)
+            *Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+        return NULL;
+    }
+
+    Private = (GifFilePrivateType *) calloc(1, sizeof(GifFilePrivateType));
+    if (!Private) {
+        if (Error != NULL)
+            *Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+        free((char *) GifFile);
+        return NULL;
+    }
+
+    GifFile->Private = (void *) Private;
+    Private->Map = mapFunc;
+    Private->UseFastLzw = ((GifFilePrivateType *) ParentFile->Private)->UseFastLzw;
+    GifFile->UserData = userData;
+
+    /* Color map is owned by the parent file, it is not needed for decoding */
+    memcpy(&GifFile->Image, ImageDesc, sizeof(GifImageDesc));
+    GifFile->Image.ColorMap = NULL;
+
+    if (DGifSetupDecompress(GifFile) == GIF_ERROR) {
+        if (Error != NULL)
+            *Error = GifFile->Error;
+        DGifCloseFile(GifFile);
+        return NULL;
+    }
+    Private->PixelCount = GifFile->Image.Width * GifFile->Image.Height;
+
+    if (Error != NULL)
+        *Error = 0;
+    return GifFile;
+}
+
 /******************************************************************************
 This routine should be called before any other DGif calls. Note that
 this routine is called automatically from DGif file open routines.
@@ -132,7 +230,7 @@ DGifGetScreenDesc(GifFileType *GifFile) {
         DGifGetWord(GifFile, &GifFile->SHeight) == GIF_ERROR)
         return GIF_ERROR;
 
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, Buf, 3) != 3) {
+    if (DGifReadInput(GifFile, Buf, 3) != 3) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         GifFreeMapObject(GifFile->SColorMap);
         GifFile->SColorMap = NULL;
@@ -155,7 +253,7 @@ DGifGetScreenDesc(GifFileType *GifFile) {
         /* Get the global color map: */
 //	GifFile->SColorMap->SortFlag = SortFlag;
         for (i = 0; i < GifFile->SColorMap->ColorCount; i++) {
-            if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, Buf, 3) != 3) {
+            if (DGifReadInput(GifFile, Buf, 3) != 3) {
                 GifFreeMapObject(GifFile->SColorMap);
                 GifFile->SColorMap = NULL;
                 GifFile->Error = D_GIF_ERR_READ_FAILED;
@@ -186,7 +284,7 @@ DGifGetRecordType(GifFileType *GifFile, GifRecordType *Type) {
 //        return GIF_ERROR;
 //    }
 
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &Buf, 1) != 1) {
+    if (DGifReadInput(GifFile, &Buf, 1) != 1) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         return GIF_ERROR;
     }
@@ -231,7 +329,7 @@ DGifGetImageDesc(GifFileType *GifFile, bool changeImageCount,
         DGifGetWord(GifFile, &GifFile->Image.Width) == GIF_ERROR ||
         DGifGetWord(GifFile, &GifFile->Image.Height) == GIF_ERROR)
         return GIF_ERROR;
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, Buf, 1) != 1) {
+    if (DGifReadInput(GifFile, Buf, 1) != 1) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         GifFreeMapObject(GifFile->Image.ColorMap);
         GifFile->Image.ColorMap = NULL;
@@ -262,7 +360,7 @@ DGifGetImageDesc(GifFileType *GifFile, bool changeImageCount,
         unsigned int i;
         /* Get the image local color map: */
         for (i = 0; i < GifFile->Image.ColorMap->ColorCount; i++) {
-            if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, Buf, 3) != 3) {
+            if (DGifReadInput(GifFile, Buf, 3) != 3) {
                 GifFreeMapObject(GifFile->Image.ColorMap);
                 GifFile->Error = D_GIF_ERR_READ_FAILED;
                 GifFile->Image.ColorMap = NULL;
@@ -314,7 +412,7 @@ Get one full scanned line (Line) of length LineLen from GIF file.
 ******************************************************************************/
 int
 DGifGetLine(GifFileType *GifFile, GifPixelType *Line, uint_fast32_t LineLen) {
-    GifByteType *Dummy;
+    const GifByteType *Dummy;
     GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
 
 //    if (!IS_READABLE(Private)) {
@@ -331,7 +429,8 @@ DGifGetLine(GifFileType *GifFile, GifPixelType *Line, uint_fast32_t LineLen) {
         return GIF_ERROR;
     }
 
-    if (DGifDecompressLine(GifFile, Line, LineLen) == GIF_OK) {
+    if ((Private->IsFastLzw ? DGifDecompressLineFast(GifFile, Line, LineLen)
+                            : DGifDecompressLine(GifFile, Line, LineLen)) == GIF_OK) {
         if (Private->PixelCount == 0) {
             /* We probably won't be called any more, so let's clean up
              * everything before we return: need to flush out all the
@@ -352,11 +451,12 @@ DGifGetLine(GifFileType *GifFile, GifPixelType *Line, uint_fast32_t LineLen) {
 Get an extension block (see GIF manual) from GIF file. This routine only
 returns the first data block, and DGifGetExtensionNext should be called
 after this one until NULL extension is returned.
-The Extension should NOT be freed by the user (not dynamically allocated).
+The Extension should NOT be freed by the user (not dynamically allocated),
+it points to the input window and stays valid until the input is read again.
 Note it is assumed the Extension description header has been read.
 ******************************************************************************/
 int
-DGifGetExtension(GifFileType *GifFile, int *ExtCode, GifByteType **Extension) {
+DGifGetExtension(GifFileType *GifFile, int *ExtCode, const GifByteType **Extension) {
     GifByteType Buf;
 //    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
 
@@ -366,7 +466,7 @@ DGifGetExtension(GifFileType *GifFile, int *ExtCode, GifByteType **Extension) {
 //        return GIF_ERROR;
 //    }
 
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &Buf, 1) != 1) {
+    if (DGifReadInput(GifFile, &Buf, 1) != 1) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         return GIF_ERROR;
     }
@@ -378,26 +478,21 @@ DGifGetExtension(GifFileType *GifFile, int *ExtCode, GifByteType **Extension) {
 /******************************************************************************
 Get a following extension block (see GIF manual) from GIF file. This
 routine should be called until NULL Extension is returned.
-The Extension should NOT be freed by the user (not dynamically allocated).
+The Extension should NOT be freed by the user (not dynamically allocated),
+it points to the input window and stays valid until the input is read again.
+It must not be modified, mapped windows are the source data itself.
 ******************************************************************************/
 int
-DGifGetExtensionNext(GifFileType *GifFile, GifByteType **Extension) {
-    GifByteType Buf;
-    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+DGifGetExtensionNext(GifFileType *GifFile, const GifByteType **Extension) {
+    const GifByteType *Block = DGifGetSubBlock(GifFile);
 
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &Buf, 1) != 1) {
+    if (Block == NULL) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         return GIF_ERROR;
     }
-    if (Buf > 0) {
-        *Extension = Private->Buf;    /* Use private unused buffer. */
-        (*Extension)[0] = Buf;  /* Pascal strings notation (pos. 0 is len.). */
-        /* coverity[tainted_data] */
-        if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &((*Extension)[1]), Buf) != Buf) {
-            GifFile->Error = D_GIF_ERR_READ_FAILED;
-            return GIF_ERROR;
-        }
-    } else
+    if (Block[0] > 0)
+        *Extension = Block;    /* Pascal strings notation (pos. 0 is len.). */
+    else
         *Extension = NULL;
 
     return GIF_OK;
@@ -465,6 +560,8 @@ DGifCloseFile(GifFileType *GifFile) {
 //        return GIF_ERROR;
 //    }
 
+    free(((GifFilePrivateType *) GifFile->Private)->LzwTables);
+    free(((GifFilePrivateType *) GifFile->Private)->InputBuffer);
     free((char *) GifFile->Private);
 
     /*
@@ -478,6 +575,174 @@ DGifCloseFile(GifFileType *GifFile) {
     return GIF_OK;
 }
 
+/******************************************************************************
+Reads consecutive chunks of at most 255 bytes using the input function passed
+to DGifOpen, until Len bytes are read or the function returns less.
+******************************************************************************/
+static size_t
+DGifLegacyInput(GifFileType *GifFile, GifByteType *Buf, size_t Len) {
+    InputFunc LegacyRead = ((GifFilePrivateType *) GifFile->Private)->LegacyRead;
+    size_t Count = 0;
+
+    while (Count < Len) {
+        const uint_fast8_t ChunkLen = (uint_fast8_t) (Len - Count < UINT8_MAX ? Len - Count : UINT8_MAX);
+        const uint_fast8_t ReadLen = LegacyRead(GifFile, Buf + Count, ChunkLen);
+        Count += ReadLen;
+        if (ReadLen < ChunkLen)
+            break;
+    }
+    return Count;
+}
+
+/******************************************************************************
+Makes at least Size unparsed bytes (Size must not exceed INPUT_MIN_SIZE / 2)
+available in the input window, reading the source only if there are less.
+The source is asked for the whole free space of the window at once. Window
+starts at INPUT_MIN_SIZE and doubles each time it is filled up, keeping the
+bytes already parsed, up to INPUT_MAX_SIZE. Only then parsed bytes are
+discarded, so short GIFs stay in the window completely.
+Returns the number of unparsed bytes, it is less than Size only at the end of
+the data.
+******************************************************************************/
+static size_t
+DGifFillInput(GifFileType *GifFile, size_t Size) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+
+    if (Private->Map != NULL)
+        return DGifMapInput(GifFile, Size);
+    while (Private->InputLen - Private->InputPos < Size) {
+        if (Private->InputLen == Private->InputSize) {
+            GifByteType *InputBuffer = NULL;
+            if (Private->InputSize < INPUT_MAX_SIZE) {
+                const size_t NewSize = Private->InputSize == 0 ? INPUT_MIN_SIZE : Private->InputSize * 2;
+                InputBuffer = realloc(Private->InputBuffer, NewSize);
+                if (InputBuffer != NULL) {
+                    Private->Input = Private->InputBuffer = InputBuffer;
+                    Private->InputSize = NewSize;
+                }
+            }
+            if (InputBuffer == NULL) {
+                if (Private->InputSize == 0)
+                    return 0;
+                /* Window cannot grow, so parsed bytes make room for the next ones. */
+                Private->InputLen -= Private->InputPos;
+                memmove(Private->InputBuffer, Private->InputBuffer + Private->InputPos, Private->InputLen);
+                Private->InputPos = 0;
+            }
+        }
+        const size_t ReadLen = Private->Read(GifFile, Private->InputBuffer + Private->InputLen,
+                                             Private->InputSize - Private->InputLen);
+        if (ReadLen == 0)
+            break;
+        Private->InputLen += ReadLen;
+    }
+    return Private->InputLen - Private->InputPos;
+}
+
+/******************************************************************************
+DGifFillInput counterpart for the files opened by DGifOpenMapped. The window
+points to the mapped data, which runs up to its end, so the source is mapped
+again only after the window is discarded. Bytes mapped right behind the window
+extend it, any others replace it.
+******************************************************************************/
+static size_t
+DGifMapInput(GifFileType *GifFile, size_t Size) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+
+    while (Private->InputLen - Private->InputPos < Size) {
+        size_t MapLen = 0;
+        const GifByteType *Mapped = Private->Map(GifFile, &MapLen);
+        if (MapLen == 0)
+            break;
+        if (Private->InputLen > 0 && Mapped == Private->Input + Private->InputLen) {
+            Private->InputLen += MapLen;
+        } else {
+            Private->Input = Mapped;
+            Private->InputPos = 0;
+            Private->InputLen = MapLen;
+        }
+    }
+    return Private->InputLen - Private->InputPos;
+}
+
+/******************************************************************************
+Returns the next data sub-block in Pascal string notation (pos. 0 is len.),
+straight from the input window, or NULL if it could not be read completely.
+It stays valid until the input is read again, or as long as the data if the
+window is mapped.
+******************************************************************************/
+static const GifByteType *
+DGifGetSubBlock(GifFileType *GifFile) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+
+    if (DGifFillInput(GifFile, 1) < 1)
+        return NULL;
+    /* coverity[tainted_data] */
+    const size_t BlockSize = Private->Input[Private->InputPos] + 1U;
+    if (DGifFillInput(GifFile, BlockSize) < BlockSize)
+        return NULL;
+    const GifByteType *Block = Private->Input + Private->InputPos;
+    Private->InputPos += BlockSize;
+    return Block;
+}
+
+/******************************************************************************
+Reads up to Len bytes through the input window. Returns the number of bytes
+read, it is less than Len only at the end of the data.
+******************************************************************************/
+size_t
+DGifReadInput(GifFileType *GifFile, GifByteType *Buf, size_t Len) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+    size_t Count = 0;
+
+    while (Count < Len) {
+        size_t Available = DGifFillInput(GifFile, 1);
+        if (Available == 0)
+            break;
+        if (Available > Len - Count)
+            Available = Len - Count;
+        memcpy(Buf + Count, Private->Input + Private->InputPos, Available);
+        Private->InputPos += Available;
+        Count += Available;
+    }
+    return Count;
+}
+
+/******************************************************************************
+Returns the number of bytes already read from the source, but not parsed yet.
+Position of the source is ahead of the parsing one by this number.
+******************************************************************************/
+size_t
+DGifGetBufferedInputLength(const GifFileType *GifFile) {
+    const GifFilePrivateType *Private = (const GifFilePrivateType *) GifFile->Private;
+    return Private->InputLen - Private->InputPos;
+}
+
+/******************************************************************************
+Moves the parsing position by Distance bytes, if the target is still inside
+the input window. Nothing is changed and GIF_ERROR is returned otherwise.
+******************************************************************************/
+int
+DGifSeekBufferedInput(GifFileType *GifFile, long long Distance) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+    const long long Target = (long long) Private->InputPos + Distance;
+
+    if (Target < 0 || Target > (long long) Private->InputLen)
+        return GIF_ERROR;
+    Private->InputPos = (size_t) Target;
+    return GIF_OK;
+}
+
+/******************************************************************************
+Discards the input window, so the next bytes are read from the current
+position of the source. It has to be called after the source is moved.
+******************************************************************************/
+void
+DGifDiscardBufferedInput(GifFileType *GifFile) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+    Private->InputPos = Private->InputLen = 0;
+}
+
 /******************************************************************************
 Get 2 bytes (word) from the given file:
 ******************************************************************************/
@@ -485,7 +750,7 @@ static int
 DGifGetWord(GifFileType *GifFile, GifWord *Word) {
     unsigned char c[2];
 
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, c, 2) != 2) {
+    if (DGifReadInput(GifFile, c, 2) != 2) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         return GIF_ERROR;
     }
@@ -497,28 +762,22 @@ DGifGetWord(GifFileType *GifFile, GifWord *Word) {
 /******************************************************************************
 Continue to get the image code in compressed form. This routine should be
 called until NULL block is returned.
-The block should NOT be freed by the user (not dynamically allocated).
+The block should NOT be freed by the user (not dynamically allocated), it
+points to the input window and stays valid until the input is read again.
+It must not be modified, mapped windows are the source data itself.
 ******************************************************************************/
 int
-DGifGetCodeNext(GifFileType *GifFile, GifByteType **CodeBlock) {
-    GifByteType Buf;
+DGifGetCodeNext(GifFileType *GifFile, const GifByteType **CodeBlock) {
     GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+    const GifByteType *Block = DGifGetSubBlock(GifFile);
 
-    /* coverity[tainted_data_argument] */
-    if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &Buf, 1) != 1) {
+    if (Block == NULL) {
         GifFile->Error = D_GIF_ERR_READ_FAILED;
         return GIF_ERROR;
     }
 
-    /* coverity[lower_bounds] */
-    if (Buf > 0) {
-        *CodeBlock = Private->Buf;    /* Use private unused buffer. */
-        (*CodeBlock)[0] = Buf;  /* Pascal strings notation (pos. 0 is len.). */
-        /* coverity[tainted_data] */
-        if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &((*CodeBlock)[1]), Buf) != Buf) {
-            GifFile->Error = D_GIF_ERR_READ_FAILED;
-            return GIF_ERROR;
-        }
+    if (Block[0] > 0) {
+        *CodeBlock = Block;    /* Pascal strings notation (pos. 0 is len.). */
     } else {
         *CodeBlock = NULL;
         Private->Buf[0] = 0;    /* Make sure the buffer is empty! */
@@ -528,6 +787,52 @@ DGifGetCodeNext(GifFileType *GifFile, GifByteType **CodeBlock) {
     return GIF_OK;
 }
 
+/******************************************************************************
+Copy the rest of the current image in compressed form: LZ code size followed
+by all the data sub-blocks and the block terminator. This routine should be
+called right after DGifGetImageDesc, instead of any DGifGetLine calls.
+The data should be freed by the user.
+******************************************************************************/
+int
+DGifGetImageData(GifFileType *GifFile, GifByteType **ImageData, size_t *ImageDataSize) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+    const GifByteType *CodeBlock;
+    size_t Size = 1, Capacity = 4096;
+    GifByteType *Data = malloc(Capacity);
+
+    if (Data == NULL) {
+        GifFile->Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+        return GIF_ERROR;
+    }
+    Data[0] = (GifByteType) Private->BitsPerPixel;
+    do {
+        if (DGifGetCodeNext(GifFile, &CodeBlock) == GIF_ERROR) {
+            free(Data);
+            return GIF_ERROR;
+        }
+        const size_t BlockSize = CodeBlock != NULL ? CodeBlock[0] + 1U : 1U;
+        if (Size + BlockSize > Capacity) {
+            GifByteType *NewData = realloc(Data, Capacity * 2);
+            if (NewData == NULL) {
+                free(Data);
+                GifFile->Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+                return GIF_ERROR;
+            }
+            Data = NewData;
+            Capacity *= 2;
+        }
+        if (CodeBlock != NULL)
+            memcpy(Data + Size, CodeBlock, BlockSize);
+        else
+            Data[Size] = 0;
+        Size += BlockSize;
+    } while (CodeBlock != NULL);
+
+    *ImageData = Data;
+    *ImageDataSize = Size;
+    return GIF_OK;
+}
+
 /******************************************************************************
 Setup the LZ decompression for this image:
 ******************************************************************************/
@@ -538,7 +843,7 @@ DGifSetupDecompress(GifFileType *GifFile) {
     GifPrefixType *Prefix;
     GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
 
-    ((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &CodeSize, 1);    /* Read Code size from file. */
+    DGifReadInput(GifFile, &CodeSize, 1);    /* Read Code size from file. */
     BitsPerPixel = CodeSize;
 
     /* this can only happen on a severely malformed GIF */
@@ -563,9 +868,29 @@ DGifSetupDecompress(GifFileType *GifFile) {
     for (i = 0; i <= LZ_MAX_CODE; i++)
         Prefix[i] = NO_SUCH_CODE;
 
+    Private->IsFastLzw = false;
+    if (Private->UseFastLzw) {
+        if (Private->LzwTables == NULL)
+            Private->LzwTables = malloc(sizeof(GifLzwTables));
+        /* Fall back to the legacy decoder if tables cannot be allocated. */
+        if (Private->LzwTables != NULL) {
+            DGifSetupDecompressFast(Private);
+            Private->IsFastLzw = true;
+        }
+    }
+
     return GIF_OK;
 }
 
+/******************************************************************************
+Selects LZ decompression routine for the images which are not set up yet.
+The fast one is the default, both produce the same output.
+******************************************************************************/
+void
+DGifSetFastLzw(GifFileType *GifFile, bool Enabled) {
+    ((GifFilePrivateType *) GifFile->Private)->UseFastLzw = Enabled;
+}
+
 /******************************************************************************
 The LZ decompression routine:
 This version decompress the given GIF file into Line of length LineLen.
@@ -763,8 +1088,8 @@ DGifDecompressInput(GifFileType *GifFile, int *Code) {
 }
 
 /******************************************************************************
-This routines read one GIF data block at a time and buffers it internally
-so that the decompression routine could access it.
+This routines takes one GIF data block at a time from the input window and
+buffers it internally so that the decompression routine could access it.
 The routine returns the next byte from its internal buffer (or read next
 block in if buffer empty) and returns GIF_OK if succesful.
 ******************************************************************************/
@@ -772,7 +1097,8 @@ static int
 DGifBufferedInput(GifFileType *GifFile, GifByteType *Buf, GifByteType *NextByte) {
     if (Buf[0] == 0) {
         /* Needs to read the next buffer - this one is empty: */
-        if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, Buf, 1) != 1) {
+        const GifByteType *Block = DGifGetSubBlock(GifFile);
+        if (Block == NULL) {
             GifFile->Error = D_GIF_ERR_READ_FAILED;
             return GIF_ERROR;
         }
@@ -780,14 +1106,11 @@ DGifBufferedInput(GifFileType *GifFile, GifByteType *Buf, GifByteType *NextByte)
          * says the LZW termination code should come first.  Therefore we
          * shouldn't be inside this routine at that point.
          */
-        if (Buf[0] == 0) {
+        if (Block[0] == 0) {
             GifFile->Error = D_GIF_ERR_IMAGE_DEFECT;
             return GIF_ERROR;
         }
-        if (((GifFilePrivateType *) GifFile->Private)->Read(GifFile, &Buf[1], Buf[0]) != Buf[0]) {
-            GifFile->Error = D_GIF_ERR_READ_FAILED;
-            return GIF_ERROR;
-        }
+        memcpy(Buf, Block, Block[0] + 1U);
         *NextByte = Buf[1];
         Buf[1] = 2;    /* We use now the second place as last char read! */
         Buf[0]--;
@@ -798,3 +1121,220 @@ DGifBufferedInput(GifFileType *GifFile, GifByteType *Buf, GifByteType *NextByte)
 
     return GIF_OK;
 }
+
+/******************************************************************************
+Setup the fast LZ decompression, common state is already initialized by
+DGifSetupDecompress. Codes below ClearCode are single pixel strings, ClearCode
+itself is set up the same way as DGifGetPrefixChar returns it for a prefix.
+******************************************************************************/
+static void
+DGifSetupDecompressFast(GifFilePrivateType *Private) {
+    GifLzwTables *Tables = Private->LzwTables;
+    GifWord i;
+
+    Tables->BlockPos = Tables->BlockLen = 0;
+    Tables->PendingPos = Tables->PendingLen = 0;
+    for (i = 0; i <= Private->ClearCode; i++) {
+        Tables->LengthM1[i] = 0;
+        Tables->ChunkPrefix[i] = 0;
+        Tables->FirstChar[i] = (GifByteType) i;
+        Tables->Chunks[i][0] = (GifByteType) i;
+    }
+}
+
+/******************************************************************************
+The fast LZ decompression routine, output is identical to DGifDecompressLine.
+Strings are not traced through the Prefix linked list byte by byte: every
+code knows its length and first pixel, so whole string is written forward,
+chunk by chunk, right to its place in Line. Input bits are taken from the
+current data sub-block in machine words instead of byte by byte.
+******************************************************************************/
+static int
+DGifDecompressLineFast(GifFileType *GifFile, GifPixelType *Line, uint_fast32_t LineLen) {
+    GifFilePrivateType *Private = (GifFilePrivateType *) GifFile->Private;
+    GifLzwTables *Tables = Private->LzwTables;
+    GifPrefixType *Prefix = Private->Prefix;
+    const GifWord ClearCode = Private->ClearCode, EOFCode = Private->EOFCode;
+    GifWord LastCode = Private->LastCode;
+    /* Local copies, so they are not reloaded after every pixel store. */
+    unsigned long ShiftDWord = Private->CrntShiftDWord;
+    GifWord ShiftState = Private->CrntShiftState;
+    GifWord RunningCode = Private->RunningCode, RunningBits = Private->RunningBits, MaxCode1 = Private->MaxCode1;
+    uint_fast32_t i = 0;
+    int Result = GIF_OK;
+
+    if (Tables->PendingLen != 0) {
+        i = Tables->PendingLen < LineLen ? Tables->PendingLen : LineLen;
+        memcpy(Line, Tables->Pending + Tables->PendingPos, i);
+        Tables->PendingPos += i;
+        Tables->PendingLen -= i;
+    }
+
+    while (i < LineLen) {
+        if (ShiftState < RunningBits &&
+            DGifFastInput(GifFile, Tables, &ShiftDWord, &ShiftState, RunningBits) == GIF_ERROR) {
+            Result = GIF_ERROR;
+            break;
+        }
+        const GifWord CrntCode = ShiftDWord & ((1UL << RunningBits) - 1);
+        ShiftDWord >>= RunningBits;
+        ShiftState -= RunningBits;
+        if (RunningCode < LZ_MAX_CODE + 2 && ++RunningCode > MaxCode1 && RunningBits < LZ_BITS) {
+            MaxCode1 <<= 1;
+            RunningBits++;
+        }
+
+        if (CrntCode == EOFCode) {
+            GifFile->Error = D_GIF_ERR_EOF_TOO_SOON;
+            Result = GIF_ERROR;
+            break;
+        }
+        if (CrntCode == ClearCode) {
+            GifWord j;
+            for (j = 0; j <= LZ_MAX_CODE; j++)
+                Prefix[j] = NO_SUCH_CODE;
+            RunningCode = EOFCode + 1;
+            RunningBits = Private->BitsPerPixel + 1;
+            MaxCode1 = 1 << RunningBits;
+            LastCode = ClearCode;
+            continue;
+        }
+
+        const GifWord NewCode = RunningCode - 2;
+        /* The pixel appended to LastCode string to form NewCode. */
+        GifByteType NewSuffix;
+        if (CrntCode < ClearCode) {
+            NewSuffix = (GifByteType) CrntCode;
+            Line[i++] = NewSuffix;
+        } else {
+            GifWord StringCode = CrntCode;
+            bool IsNewCode = false;
+            if (Prefix[CrntCode] == NO_SUCH_CODE) {
+                /* Only allowed if CrntCode is exactly the running code, its
+                 * string is the LastCode one followed by its first pixel. */
+                if (CrntCode != NewCode || LastCode > LZ_MAX_CODE) {
+                    GifFile->Error = D_GIF_ERR_IMAGE_DEFECT;
+                    Result = GIF_ERROR;
+                    break;
+                }
+                StringCode = LastCode;
+                IsNewCode = true;
+            }
+            if (CrntCode == NewCode) {
+                NewSuffix = LastCode <= LZ_MAX_CODE ? Tables->FirstChar[LastCode] : (GifByteType) NO_SUCH_CODE;
+            } else {
+                NewSuffix = Tables->FirstChar[CrntCode];
+            }
+
+            const uint_fast16_t LengthM1 = Tables->LengthM1[StringCode];
+            const uint_fast32_t Length = LengthM1 + 1 + IsNewCode;
+            GifByteType *Dst = Length <= LineLen - i ? Line + i : Tables->Pending;
+            if (IsNewCode)
+                Dst[LengthM1 + 1] = NewSuffix;
+
+            /* Last chunk may be partial, all the preceding ones are full. */
+            const uint_fast8_t ChunkLength = (uint_fast8_t) (LengthM1 % LZ_CHUNK_SIZE + 1);
+            GifByteType *Out = Dst + LengthM1 + 1 - ChunkLength;
+            const GifByteType *Chunk = Tables->Chunks[StringCode];
+            if (ChunkLength == LZ_CHUNK_SIZE) {
+                memcpy(Out, Chunk, LZ_CHUNK_SIZE);
+            } else {
+                uint_fast8_t k;
+                for (k = 0; k < ChunkLength; k++)
+                    Out[k] = Chunk[k];
+            }
+            while (Out > Dst) {
+                StringCode = Tables->ChunkPrefix[StringCode];
+                Out -= LZ_CHUNK_SIZE;
+                memcpy(Out, Tables->Chunks[StringCode], LZ_CHUNK_SIZE);
+            }
+
+            if (Dst != Tables->Pending) {
+                i += Length;
+            } else {
+                const uint_fast32_t Count = LineLen - i;
+                memcpy(Line + i, Dst, Count);
+                Tables->PendingPos = Count;
+                Tables->PendingLen = Length - Count;
+                i = LineLen;
+            }
+        }
+
+        if (Prefix[NewCode] == NO_SUCH_CODE) {
+            if (LastCode != NO_SUCH_CODE) {
+                Prefix[NewCode] = LastCode;
+                const uint_fast16_t LengthM1 = Tables->LengthM1[LastCode] + 1;
+                Tables->LengthM1[NewCode] = LengthM1;
+                Tables->FirstChar[NewCode] = Tables->FirstChar[LastCode];
+                if (LengthM1 % LZ_CHUNK_SIZE != 0) {
+                    memcpy(Tables->Chunks[NewCode], Tables->Chunks[LastCode], LZ_CHUNK_SIZE);
+                    Tables->ChunkPrefix[NewCode] = Tables->ChunkPrefix[LastCode];
+                } else {
+                    Tables->ChunkPrefix[NewCode] = LastCode;
+                }
+                Tables->Chunks[NewCode][LengthM1 % LZ_CHUNK_SIZE] = NewSuffix;
+            }
+        } else {
+            /* Table is full, DGifDecompressLine keeps replacing suffix of the last code. */
+            Tables->Chunks[NewCode][Tables->LengthM1[NewCode] % LZ_CHUNK_SIZE] = NewSuffix;
+        }
+        LastCode = CrntCode;
+    }
+
+    Private->CrntShiftDWord = ShiftDWord;
+    Private->CrntShiftState = ShiftState;
+    Private->RunningCode = RunningCode;
+    Private->RunningBits = RunningBits;
+    Private->MaxCode1 = MaxCode1;
+    if (Result == GIF_OK)
+        Private->LastCode = LastCode;
+    return Result;
+}
+
+/******************************************************************************
+Fills ShiftDWord with as many bytes of the current data sub-block as fit, the
+next sub-block is read only if RunningBits are still not available, same as
+in DGifBufferedInput.
+******************************************************************************/
+static int
+DGifFastInput(GifFileType *GifFile, GifLzwTables *Tables, unsigned long *ShiftDWord,
+              GifWord *ShiftState, GifWord RunningBits) {
+    while (*ShiftState < RunningBits) {
+        if (Tables->BlockPos == Tables->BlockLen) {
+            const GifByteType *Block = DGifGetSubBlock(GifFile);
+            if (Block == NULL) {
+                GifFile->Error = D_GIF_ERR_READ_FAILED;
+                return GIF_ERROR;
+            }
+            if (Block[0] == 0) {
+                GifFile->Error = D_GIF_ERR_IMAGE_DEFECT;
+                return GIF_ERROR;
+            }
+            Tables->Block = Block + 1;
+            Tables->BlockPos = 0;
+            Tables->BlockLen = Block[0];
+        }
+        const GifWord Available = Tables->BlockLen - Tables->BlockPos;
+        GifWord Count = (GifWord) ((sizeof(unsigned long) * 8 - *ShiftState) / 8);
+        if (Count > Available)
+            Count = Available;
+        const GifByteType *Src = Tables->Block + Tables->BlockPos;
+        unsigned long Word = 0;
+#if defined(__BYTE_ORDER__) && __BYTE_ORDER__ == __ORDER_LITTLE_ENDIAN__
+        if (Available >= sizeof(Word)) {
+            memcpy(&Word, Src, sizeof(Word));
+            if (Count < sizeof(Word))
+                Word &= (1UL << (Count * 8)) - 1;
+        } else
+#endif
+        {
+            GifWord k;
+            for (k = 0; k < Count; k++)
+                Word |= (unsigned long) Src[k] << (k * 8);
+        }
+        *ShiftDWord |= Word << *ShiftState;
+        *ShiftState += Count * 8;
+        Tables->BlockPos += Count;
+    }
+    return GIF_OK;
+}
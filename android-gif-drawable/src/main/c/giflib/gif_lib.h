@@ -92,6 +92,13 @@ typedef enum {
 /* func type to read gif data from arbitrary sources (TVT) */
 typedef uint_fast8_t (*InputFunc)(GifFileType *, GifByteType *, uint_fast8_t);
 
+/* func type to read up to the given number of bytes at once, less are returned only at the end of the data */
+typedef size_t (*BulkInputFunc)(GifFileType *, GifByteType *, size_t);
+
+/* func type to map the data kept in memory instead of reading it, it returns the bytes from the current position
+ * up to the end of the data, storing their number, and moves the position past them */
+typedef const GifByteType *(*MapInputFunc)(GifFileType *, size_t *);
+
 /******************************************************************************
  GIF89 structures
 ******************************************************************************/
@@ -116,6 +123,13 @@ typedef struct GraphicsControlBlock {
 /* Main entry points */
 GifFileType *DGifOpen(void *userPtr, InputFunc readFunc, int *Error);
 
+GifFileType *DGifOpenBulk(void *userPtr, BulkInputFunc readFunc, int *Error);
+
+GifFileType *DGifOpenMapped(void *userPtr, MapInputFunc mapFunc, int *Error);
+
+GifFileType *DGifOpenImage(const GifFileType *ParentFile, const GifImageDesc *ImageDesc,
+                           void *userPtr, MapInputFunc mapFunc, int *Error);
+
 /* new one (TVT) */
 int DGifCloseFile(GifFileType *GifFile);
 
@@ -144,11 +158,23 @@ int DGifGetImageDesc(GifFileType *GifFile, bool changeImageCount,
 int DGifGetLine(GifFileType *GifFile, GifPixelType *GifLine, uint_fast32_t GifLineLen);
 
 int DGifGetExtension(GifFileType *GifFile, int *GifExtCode,
-                     GifByteType **GifExtension);
+                     const GifByteType **GifExtension);
+
+int DGifGetExtensionNext(GifFileType *GifFile, const GifByteType **GifExtension);
+
+int DGifGetCodeNext(GifFileType *GifFile, const GifByteType **GifCodeBlock);
+
+int DGifGetImageData(GifFileType *GifFile, GifByteType **GifImageData, size_t *GifImageDataSize);
+
+void DGifSetFastLzw(GifFileType *GifFile, bool Enabled);
+
+size_t DGifReadInput(GifFileType *GifFile, GifByteType *Buf, size_t Len);
+
+size_t DGifGetBufferedInputLength(const GifFileType *GifFile);
 
-int DGifGetExtensionNext(GifFileType *GifFile, GifByteType **GifExtension);
+int DGifSeekBufferedInput(GifFileType *GifFile, long long Distance);
 
-int DGifGetCodeNext(GifFileType *GifFile, GifByteType **GifCodeBlock);
+void DGifDiscardBufferedInput(GifFileType *GifFile);
 /*****************************************************************************
  Everything below this point is new after version 1.2, supporting `slurp
  mode' for doing I/O in two big belts with all the image-bashing in core.
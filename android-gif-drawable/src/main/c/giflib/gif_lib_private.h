@@ -20,6 +20,11 @@ gif_lib_private.h - internal giflib routines and structures
 #define FIRST_CODE          4097    /* Impossible code, to signal first. */
 #define NO_SUCH_CODE        4098    /* Impossible code, to signal empty. */
 
+#define LZ_CHUNK_SIZE       8       /* String bytes stored per code by the fast decoder. */
+
+#define INPUT_MIN_SIZE      4096    /* Initial size of the input window. */
+#define INPUT_MAX_SIZE      65536   /* Size the input window grows up to. */
+
 //#define FILE_STATE_WRITE    0x01
 //#define FILE_STATE_SCREEN   0x02
 //#define FILE_STATE_IMAGE    0x04
@@ -27,6 +32,22 @@ gif_lib_private.h - internal giflib routines and structures
 
 //#define IS_READABLE(Private)    (Private->FileState & FILE_STATE_READ)
 
+/* String table of the fast decoder. Each code keeps the last (length - 1) % LZ_CHUNK_SIZE + 1
+ * bytes of its string and links to the code holding the preceding full chunk. */
+typedef struct GifLzwTables {
+	const GifByteType *Block;
+	/* Bytes of the current data sub-block, read in place from the input window. */
+	GifWord BlockPos, BlockLen;
+	/* Position in the current data sub-block. */
+	GifWord PendingPos, PendingLen;
+	/* Bytes of the last string which did not fit into the line. */
+	uint_fast16_t LengthM1[LZ_MAX_CODE + 1];
+	uint_fast16_t ChunkPrefix[LZ_MAX_CODE + 1];
+	GifByteType FirstChar[LZ_MAX_CODE + 1];
+	GifByteType Chunks[LZ_MAX_CODE + 1][LZ_CHUNK_SIZE];
+	GifByteType Pending[LZ_MAX_CODE + 1];
+} GifLzwTables;
+
 typedef struct GifFilePrivateType {
 	GifWord //FileState, /*FileHandle,*/  /* Where all this data goes to! */
 			BitsPerPixel,     /* Bits per pixel (Codes uses at least this + 1). */
@@ -46,7 +67,15 @@ typedef struct GifFilePrivateType {
 	/* Number of pixels in image. */
 //    FILE *File;
 	/* File as stream. */
-	InputFunc Read;     /* function to read gif input (TVT) */
+	BulkInputFunc Read;     /* function to read gif input */
+	InputFunc LegacyRead;   /* function adapted by Read if opened by DGifOpen (TVT) */
+	MapInputFunc Map;       /* function used instead of Read if opened by DGifOpenMapped */
+	const GifByteType *Input;
+	/* Window of the source, sub-blocks are parsed straight from it. */
+	GifByteType *InputBuffer;
+	/* Memory of the window if it is read, mapped windows point to the source data itself. */
+	size_t InputPos, InputLen, InputSize;
+	/* Parsing position, number of bytes read from the source and capacity of the window. */
 //    OutputFunc Write;   /* function to write gif output (MRB) */
 	GifByteType Buf[256];
 	/* Compressed input is buffered here. */
@@ -55,6 +84,12 @@ typedef struct GifFilePrivateType {
 	GifByteType Suffix[LZ_MAX_CODE + 1];
 	/* So we can trace the codes. */
 	GifPrefixType Prefix[LZ_MAX_CODE + 1];
+	bool UseFastLzw;
+	/* Decoder chosen for the next images. */
+	bool IsFastLzw;
+	/* Decoder of the current image. */
+	GifLzwTables *LzwTables;
+	/* Allocated when the fast decoder is used for the first time. */
 //    bool gif89;
 } GifFilePrivateType;
 
@@ -1,8 +1,41 @@
 #include "gif.h"
 
+/**
+ * Decoder reads the source ahead into its input window, so the position of the source is ahead of the decoding one
+ * by the number of buffered bytes. Position functions of GifInfo account for them and move within the window
+ * without touching the source if the target is still buffered.
+ */
+static long long tellInput(GifInfo *info) {
+	const long long position = info->sourceTellFunction(info);
+	return position < 0 ? position : position - (long long) DGifGetBufferedInputLength(info->gifFilePtr);
+}
+
+static int seekInput(GifInfo *info, long long position) {
+	const long long currentPosition = tellInput(info);
+	if (currentPosition >= 0 && DGifSeekBufferedInput(info->gifFilePtr, position - currentPosition) == GIF_OK) {
+		return 0;
+	}
+	DGifDiscardBufferedInput(info->gifFilePtr);
+	return info->sourceSeekFunction(info, position);
+}
+
+static int rewindInput(GifInfo *info) {
+	if (info->sourceTellFunction != NULL) {
+		const long long currentPosition = tellInput(info);
+		if (currentPosition >= 0 && DGifSeekBufferedInput(info->gifFilePtr, info->startPos - currentPosition) == GIF_OK) {
+			return 0;
+		}
+	}
+	DGifDiscardBufferedInput(info->gifFilePtr);
+	return info->sourceRewindFunction(info);
+}
+
 GifInfo *createGifInfo(GifSourceDescriptor *descriptor, JNIEnv *env) {
 	if (descriptor->startPos < 0) {
 		descriptor->Error = D_GIF_ERR_NOT_READABLE;
+	} else if (descriptor->GifFileIn != NULL) {
+		// start position is taken from the source, after the header has been read through the input window
+		descriptor->startPos -= (long long) DGifGetBufferedInputLength(descriptor->GifFileIn);
 	}
 	if (descriptor->Error != 0 || descriptor->GifFileIn == NULL) {
 		bool readErrno = descriptor->rewindFunc == fileRewind && (descriptor->Error == D_GIF_ERR_NOT_READABLE || descriptor->Error == D_GIF_ERR_READ_FAILED);
@@ -38,16 +71,48 @@ GifInfo *createGifInfo(GifSourceDescriptor *descriptor, JNIEnv *env) {
 	info->sourceLength = descriptor->sourceLength;
 
 	info->backupPtr = NULL;
-	info->rewindFunction = descriptor->rewindFunc;
+	info->backupSize = 0;
+	info->backupArea.Width = 0;
+	info->sourceRewindFunction = descriptor->rewindFunc;
+	info->sourceTellFunction = descriptor->tellFunc;
+	info->sourceSeekFunction = descriptor->seekFunc;
+	info->rewindFunction = rewindInput;
+	info->tellFunction = descriptor->tellFunc != NULL ? tellInput : NULL;
+	info->seekFunction = descriptor->seekFunc != NULL && descriptor->tellFunc != NULL ? seekInput : NULL;
+	info->recordAvailableFunction = descriptor->recordAvailableFunc;
+	info->frameOffsets = NULL;
+	info->checkpointCache = NULL;
+	info->frameCache = NULL;
+	info->downsampler = NULL;
+	info->dirtyRect = (DirtyRect) {.left = 0, .top = 0, .right = 0, .bottom = 0};
 	info->frameBufferDescriptor = NULL;
 	info->isOpaque = false;
+	info->argbPaletteSource = NULL;
+	info->isRgb565 = false;
+	info->isRgb565Dithered = false;
+	info->rgb565Palettes = NULL;
+	info->rgb565PaletteSource = NULL;
+	info->isDecodeFused = true;
+	info->isFramePending = false;
+	info->isMetadataComplete = false;
+	info->metadataPosition = -1;
+	info->isWaitingForFrame = false;
+	info->isMetadataImported = false;
 	info->sampleSize = 1;
+	info->stride = 0;
 
 	info->rasterBits = NULL;
 	info->rasterSize = 0;
 	info->originalHeight = info->gifFilePtr->SHeight;
 	info->originalWidth = info->gifFilePtr->SWidth;
-	DDGifSlurp(info, false, false);
+	info->cropLeft = 0;
+	info->cropTop = 0;
+	if (descriptor->isMetadataLazy && descriptor->seekFunc != NULL) {
+		// the second frame tells whether the image is animated, the remaining ones are read by scanMetadata
+		readInitialMetadata(info, 2);
+	} else {
+		DDGifSlurp(info, false, false);
+	}
 	info->rasterBits = NULL;
 	info->rasterSize = 0;
 
@@ -78,6 +143,13 @@ GifInfo *createGifInfo(GifSourceDescriptor *descriptor, JNIEnv *env) {
 	return info;
 }
 
+void sampleImageDesc(const GifInfo *info, GifImageDesc *desc) {
+	desc->Width /= info->sampleSize;
+	desc->Height /= info->sampleSize;
+	desc->Left /= info->sampleSize;
+	desc->Top /= info->sampleSize;
+}
+
 void setGCBDefaults(GraphicsControlBlock *gcb) {
 	gcb->DelayTime = DEFAULT_FRAME_DURATION_MS;
 	gcb->TransparentColor = NO_TRANSPARENT_COLOR;
@@ -85,12 +157,19 @@ void setGCBDefaults(GraphicsControlBlock *gcb) {
 }
 
 __unused JNIEXPORT void JNICALL
-Java_pl_droidsonroids_gif_GifInfoHandle_setOptions(__unused JNIEnv *env, jclass __unused class, jlong gifInfo, jchar sampleSize, jboolean isOpaque) {
+Java_pl_droidsonroids_gif_GifInfoHandle_setOptions(__unused JNIEnv *env, jclass __unused class, jlong gifInfo, jchar sampleSize, jboolean isOpaque,
+                                                   jlong checkpointCacheSize, jint checkpointInterval, jlong frameCacheSize,
+                                                   jboolean isFrameCacheIndexed, jboolean isFrameCacheShared, jboolean isFastLzwDecoder,
+                                                   jint targetWidth, jint targetHeight,
+                                                   jint cropLeft, jint cropTop, jint cropRight, jint cropBottom,
+                                                   jboolean isRgb565, jboolean isRgb565Dithered) {
 	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
 	if (info == NULL) {
 		return;
 	}
 	info->isOpaque = isOpaque == JNI_TRUE;
+	info->argbPaletteSource = NULL;
+	DGifSetFastLzw(info->gifFilePtr, isFastLzwDecoder == JNI_TRUE);
 	info->sampleSize = (uint_fast16_t) sampleSize;
 	info->gifFilePtr->SHeight /= info->sampleSize;
 	info->gifFilePtr->SWidth /= info->sampleSize;
@@ -101,13 +180,29 @@ Java_pl_droidsonroids_gif_GifInfoHandle_setOptions(__unused JNIEnv *env, jclass
 		info->gifFilePtr->SWidth = 1;
 	}
 
-	SavedImage *sp;
 	uint_fast32_t i;
 	for (i = 0; i < info->gifFilePtr->ImageCount; i++) {
-		sp = &info->gifFilePtr->SavedImages[i];
-		sp->ImageDesc.Width /= info->sampleSize;
-		sp->ImageDesc.Height /= info->sampleSize;
-		sp->ImageDesc.Left /= info->sampleSize;
-		sp->ImageDesc.Top /= info->sampleSize;
+		sampleImageDesc(info, &info->gifFilePtr->SavedImages[i].ImageDesc);
+	}
+	if (checkpointCacheSize > 0 || frameCacheSize > 0) {
+		// caches are sized according to the number of frames, which is unknown until all the data arrives
+		if (!scanMetadata(info, 0)) {
+			checkpointCacheSize = 0;
+			frameCacheSize = 0;
+		}
+	}
+	if (cropLeft >= 0 && cropTop >= 0 && cropRight > cropLeft && cropBottom > cropTop) {
+		initCrop(info, (GifWord) cropLeft / info->sampleSize, (GifWord) cropTop / info->sampleSize,
+		         ((GifWord) cropRight + info->sampleSize - 1) / info->sampleSize,
+		         ((GifWord) cropBottom + info->sampleSize - 1) / info->sampleSize);
+	}
+	if (targetWidth > 0 && targetHeight > 0) {
+		initDownsampler(info, (GifWord) targetWidth, (GifWord) targetHeight);
+	}
+	// there is no alpha channel, so transparent content needs ARGB_8888 unless it is declared opaque
+	if (isRgb565 == JNI_TRUE && info->isOpaque) {
+		initRgb565(info, isRgb565Dithered == JNI_TRUE);
 	}
+	initCheckpointCache(info, (size_t) checkpointCacheSize, (uint_fast32_t) checkpointInterval);
+	initFrameCache(info, (size_t) frameCacheSize, isFrameCacheIndexed == JNI_TRUE, isFrameCacheShared == JNI_TRUE);
 }
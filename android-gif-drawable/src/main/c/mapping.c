@@ -0,0 +1,158 @@
+#include "gif.h"
+#include <sys/mman.h>
+
+/**
+ * Read-only mapping of the whole file, shared by all the GifInfos opened from the same version of the file.
+ * File is identified by device, inode, size and modification time, so replaced or rewritten files get a new mapping.
+ */
+typedef struct FileMapping {
+	dev_t device;
+	ino_t inode;
+	long long size;
+	struct timespec modificationTime;
+	uint8_t *bytes;
+	uint_fast32_t referenceCount;
+	struct FileMapping *next;
+} FileMapping;
+
+typedef struct {
+	FileMapping *mapping;
+	size_t position;
+} MappedFileContainer;
+
+static pthread_mutex_t mappingsMutex = PTHREAD_MUTEX_INITIALIZER;
+static FileMapping *mappings = NULL;
+
+static bool isSameFile(const FileMapping *mapping, const struct stat64 *st) {
+	return mapping->device == st->st_dev && mapping->inode == st->st_ino && mapping->size == st->st_size
+	       && mapping->modificationTime.tv_sec == st->st_mtim.tv_sec && mapping->modificationTime.tv_nsec == st->st_mtim.tv_nsec;
+}
+
+/**
+ * @return mapping of the file, existing one if it is already mapped, or NULL if it cannot be mapped
+ */
+static FileMapping *acquireFileMapping(int fd) {
+	struct stat64 st;
+	if (fstat64(fd, &st) != 0 || !S_ISREG(st.st_mode) || st.st_size <= 0 || (uint64_t) st.st_size > SIZE_MAX) {
+		return NULL;
+	}
+	pthread_mutex_lock(&mappingsMutex);
+	FileMapping *mapping;
+	for (mapping = mappings; mapping != NULL; mapping = mapping->next) {
+		if (isSameFile(mapping, &st)) {
+			mapping->referenceCount++;
+			pthread_mutex_unlock(&mappingsMutex);
+			return mapping;
+		}
+	}
+	mapping = malloc(sizeof(FileMapping));
+	if (mapping != NULL) {
+		mapping->bytes = mmap(NULL, (size_t) st.st_size, PROT_READ, MAP_SHARED, fd, 0);
+		if (mapping->bytes == MAP_FAILED) {
+			free(mapping);
+			mapping = NULL;
+		} else {
+			mapping->device = st.st_dev;
+			mapping->inode = st.st_ino;
+			mapping->size = st.st_size;
+			mapping->modificationTime = st.st_mtim;
+			mapping->referenceCount = 1;
+			mapping->next = mappings;
+			mappings = mapping;
+		}
+	}
+	pthread_mutex_unlock(&mappingsMutex);
+	return mapping;
+}
+
+static void releaseFileMapping(FileMapping *mapping) {
+	pthread_mutex_lock(&mappingsMutex);
+	const bool isReleased = --mapping->referenceCount == 0;
+	if (isReleased) {
+		FileMapping **link = &mappings;
+		while (*link != mapping) {
+			link = &(*link)->next;
+		}
+		*link = mapping->next;
+	}
+	pthread_mutex_unlock(&mappingsMutex);
+	if (isReleased) {
+		munmap(mapping->bytes, (size_t) mapping->size);
+		free(mapping);
+	}
+}
+
+static const GifByteType *mappedFileMap(GifFileType *gif, size_t *size) {
+	MappedFileContainer *container = gif->UserData;
+	const size_t length = (size_t) container->mapping->size;
+	const GifByteType *bytes = container->mapping->bytes + container->position;
+	*size = container->position < length ? length - container->position : 0;
+	container->position = length;
+	return bytes;
+}
+
+int mappedFileRewind(GifInfo *info) {
+	MappedFileContainer *container = info->gifFilePtr->UserData;
+	container->position = (size_t) info->startPos;
+	return 0;
+}
+
+static long long mappedFileTell(GifInfo *info) {
+	MappedFileContainer *container = info->gifFilePtr->UserData;
+	return (long long) container->position;
+}
+
+static int mappedFileSeek(GifInfo *info, long long position) {
+	MappedFileContainer *container = info->gifFilePtr->UserData;
+	if (position < 0 || position > container->mapping->size) {
+		return -1;
+	}
+	container->position = (size_t) position;
+	return 0;
+}
+
+void releaseMappedFileContainer(void *container) {
+	releaseFileMapping(((MappedFileContainer *) container)->mapping);
+	free(container);
+}
+
+/**
+ * Opens GIF starting at the given offset of the file, decoded in place from its memory mapping. Descriptor is not needed
+ * afterwards, the caller still owns it. Exception is thrown only if GIF cannot be decoded, so the caller can fall back
+ * to reading the file using stdio otherwise.
+ * @param isMapped set to true if file has been mapped
+ * @return GifInfo or NULL if file could not be mapped or exception has been thrown
+ */
+GifInfo *createGifInfoFromMappedFile(JNIEnv *env, int fd, long long offset, bool isMetadataLazy, bool *isMapped) {
+	*isMapped = false;
+	MappedFileContainer *container = malloc(sizeof(MappedFileContainer));
+	if (container == NULL) {
+		return NULL;
+	}
+	container->mapping = acquireFileMapping(fd);
+	if (container->mapping == NULL || offset < 0 || offset > container->mapping->size) {
+		if (container->mapping != NULL) {
+			releaseFileMapping(container->mapping);
+		}
+		free(container);
+		return NULL;
+	}
+	*isMapped = true;
+	container->position = (size_t) offset;
+
+	GifSourceDescriptor descriptor = {
+			.rewindFunc = mappedFileRewind,
+			.tellFunc = mappedFileTell,
+			.seekFunc = mappedFileSeek,
+			.sourceLength = container->mapping->size,
+			.isMetadataLazy = isMetadataLazy
+	};
+	descriptor.GifFileIn = DGifOpenMapped(container, &mappedFileMap, &descriptor.Error);
+	descriptor.startPos = (long long) container->position;
+
+	GifInfo *info = createGifInfo(&descriptor, env);
+	if (info == NULL) {
+		releaseMappedFileContainer(container);
+	}
+	return info;
+}
@@ -94,6 +94,9 @@ Java_pl_droidsonroids_gif_GifInfoHandle_getMetadataByteCount(JNIEnv *__unused  e
 
 	size_t size = sizeof(GifInfo) + sizeof(GifFileType);
 	size += info->gifFilePtr->ImageCount * (sizeof(GraphicsControlBlock) + sizeof(SavedImage));
+	if (info->frameOffsets != NULL) {
+		size += info->gifFilePtr->ImageCount * sizeof(long long);
+	}
 	size += info->comment != NULL ? strlen(info->comment) : 0;
 	return (jlong) size;
 }
@@ -113,7 +116,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_getAllocationByteCount(JNIEnv *__unused
 			GifImageDesc imageDesc = info->gifFilePtr->SavedImages[i].ImageDesc;
 			int_fast32_t widthOverflow = imageDesc.Width - info->originalWidth;
 			int_fast32_t heightOverflow = imageDesc.Height - info->originalHeight;
-			uint_fast32_t newRasterSize = imageDesc.Width * imageDesc.Height;
+			uint_fast32_t newRasterSize = info->isDecodeFused ? imageDesc.Width * info->sampleSize : imageDesc.Width * imageDesc.Height;
 			if (newRasterSize > rasterSize || widthOverflow > 0 || heightOverflow > 0) {
 				rasterSize = newRasterSize;
 			}
@@ -122,20 +125,25 @@ Java_pl_droidsonroids_gif_GifInfoHandle_getAllocationByteCount(JNIEnv *__unused
 	}
 	size *= sizeof(GifPixelType);
 
-	bool isBackupBitmapUsed = info->backupPtr != NULL;
-	if (!isBackupBitmapUsed) {
-		uint_fast32_t i;
-		for (i = 1; i < info->gifFilePtr->ImageCount; i++) {
-			if (info->controlBlock[i].DisposalMode == DISPOSE_PREVIOUS) {
-				isBackupBitmapUsed = true;
-				break;
-			}
+	uint_fast32_t backupSize = info->backupSize;
+	uint_fast32_t i;
+	for (i = 1; i < info->gifFilePtr->ImageCount; i++) {
+		GifImageDesc visible;
+		if (info->controlBlock[i].DisposalMode == DISPOSE_PREVIOUS
+		    && clipToCanvas(info, &info->gifFilePtr->SavedImages[i].ImageDesc, &visible)
+		    && visible.Width * visible.Height > backupSize) {
+			backupSize = visible.Width * visible.Height;
 		}
 	}
-
-	if (isBackupBitmapUsed) {
-		int32_t stride = info->stride > 0 ? info->stride : (int32_t) info->gifFilePtr->SWidth;
-		size += stride * info->gifFilePtr->SHeight * sizeof(argb);
+	size += backupSize * getCanvasPixelSize(info);
+	if (info->checkpointCache != NULL) {
+		size += info->checkpointCache->byteBudget;
+	}
+	size += getDownsamplerByteCount(info);
+	// shared cache is counted once by SharedFrameCache.getSize(), not by each GIF using it
+	if (info->frameCache != NULL && !info->frameCache->isShared) {
+		const size_t frameCacheSize = info->gifFilePtr->ImageCount * info->gifFilePtr->SWidth * info->gifFilePtr->SHeight * getCanvasPixelSize(info);
+		size += frameCacheSize < info->frameCache->byteBudget ? frameCacheSize : info->frameCache->byteBudget;
 	}
 
 	return (jlong) size;
@@ -196,6 +204,9 @@ jint restoreSavedState(GifInfo *info, JNIEnv *env, jlongArray state, void *pixel
 
 	const uint_fast32_t savedIndex = (uint_fast32_t) nativeState[0];
 	const uint_fast8_t savedLoop = (uint_fast8_t) nativeState[1];
+	if (savedIndex >= info->gifFilePtr->ImageCount) {
+		scanMetadata(info, savedIndex + 1 - info->gifFilePtr->ImageCount);
+	}
 
 	if (savedIndex >= info->gifFilePtr->ImageCount || info->currentLoop > info->loopCount)
 		return -1;
@@ -207,12 +218,7 @@ jint restoreSavedState(GifInfo *info, JNIEnv *env, jlongArray state, void *pixel
 
 	uint_fast32_t lastFrameDuration = info->controlBlock[info->currentIndex].DelayTime;
 	if (info->currentIndex < savedIndex) {
-		if (info->currentIndex == 0)
-			prepareCanvas(pixels, info);
-		while (info->currentIndex < savedIndex) {
-			DDGifSlurp(info, true, false);
-			lastFrameDuration = getBitmap(pixels, info);
-		}
+		lastFrameDuration = seek(info, savedIndex - 1, pixels);
 	}
 
 	info->currentLoop = savedLoop;
@@ -235,7 +241,8 @@ Java_pl_droidsonroids_gif_GifInfoHandle_restoreSavedState(JNIEnv *env, jclass __
 	if (info == NULL || lockPixels(env, jbitmap, info, &pixels) != 0) {
 		return -1;
 	}
-	const jint invalidationDelay = restoreSavedState(info, env, state, pixels);
+	const jint invalidationDelay = restoreSavedState(info, env, state, getCanvas(info, pixels));
+	presentCanvas(info, pixels);
 	unlockPixels(env, jbitmap);
 	return invalidationDelay;
 }
@@ -261,7 +268,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_getWidth(__unused JNIEnv *env, jclass __
 	if (info == NULL) {
 		return 0;
 	}
-	return (jint) info->gifFilePtr->SWidth;
+	return (jint) getOutputWidth(info);
 }
 
 __unused JNIEXPORT jint JNICALL
@@ -270,7 +277,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_getHeight(__unused JNIEnv *env, jclass _
 	if (info == NULL) {
 		return 0;
 	}
-	return (jint) info->gifFilePtr->SHeight;
+	return (jint) getOutputHeight(info);
 }
 
 __unused JNIEXPORT jint JNICALL
@@ -281,3 +288,18 @@ Java_pl_droidsonroids_gif_GifInfoHandle_getNumberOfFrames(__unused JNIEnv *env,
 	}
 	return (jint) info->gifFilePtr->ImageCount;
 }
+
+__unused JNIEXPORT jboolean JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_isMetadataComplete(__unused JNIEnv *env, jclass __unused class, jlong gifInfo) {
+	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
+	return info == NULL || info->isMetadataComplete ? JNI_TRUE : JNI_FALSE;
+}
+
+__unused JNIEXPORT jboolean JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_scanMetadata(__unused JNIEnv *env, jclass __unused class, jlong gifInfo, jint frameCount) {
+	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
+	if (info == NULL) {
+		return JNI_TRUE;
+	}
+	return scanMetadata(info, (uint_fast32_t) frameCount) ? JNI_TRUE : JNI_FALSE;
+}
@@ -14,12 +14,16 @@ Java_pl_droidsonroids_gif_GifInfoHandle_glTexImage2D(JNIEnv *__unused unused, jc
 	if (info == NULL || info->frameBufferDescriptor == NULL) {
 		return;
 	}
-	const GLsizei width = (const GLsizei) info->gifFilePtr->SWidth;
-	const GLsizei height = (const GLsizei) info->gifFilePtr->SHeight;
+	const GLsizei width = (const GLsizei) getOutputWidth(info);
+	const GLsizei height = (const GLsizei) getOutputHeight(info);
 	TexImageDescriptor *descriptor = info->frameBufferDescriptor;
 	void *const pixels = descriptor->frameBuffer;
 	pthread_mutex_lock(&descriptor->renderMutex);
-	glTexImage2D((GLenum) target, level, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+	if (info->isRgb565) {
+		glTexImage2D((GLenum) target, level, GL_RGB, width, height, 0, GL_RGB, GL_UNSIGNED_SHORT_5_6_5, pixels);
+	} else {
+		glTexImage2D((GLenum) target, level, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+	}
 	pthread_mutex_unlock(&descriptor->renderMutex);
 }
 
@@ -29,12 +33,16 @@ Java_pl_droidsonroids_gif_GifInfoHandle_glTexSubImage2D(JNIEnv *__unused env, jc
 	if (info == NULL || info->frameBufferDescriptor == NULL) {
 		return;
 	}
-	const GLsizei width = (const GLsizei) info->gifFilePtr->SWidth;
-	const GLsizei height = (const GLsizei) info->gifFilePtr->SHeight;
+	const GLsizei width = (const GLsizei) getOutputWidth(info);
+	const GLsizei height = (const GLsizei) getOutputHeight(info);
 	TexImageDescriptor *descriptor = info->frameBufferDescriptor;
 	void *const pixels = descriptor->frameBuffer;
 	pthread_mutex_lock(&descriptor->renderMutex);
-	glTexSubImage2D((GLenum) target, level, 0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+	if (info->isRgb565) {
+		glTexSubImage2D((GLenum) target, level, 0, 0, width, height, GL_RGB, GL_UNSIGNED_SHORT_5_6_5, pixels);
+	} else {
+		glTexSubImage2D((GLenum) target, level, 0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+	}
 	pthread_mutex_unlock(&descriptor->renderMutex);
 }
 
@@ -43,14 +51,21 @@ static void *slurp(void *pVoidInfo) {
 	JNIEnv *env = getEnv();
 	while (true) {
 		long renderStartTime = getRealTime();
-		DDGifSlurp(info, true, false);
 		TexImageDescriptor *texImageDescriptor = info->frameBufferDescriptor;
-		pthread_mutex_lock(&texImageDescriptor->renderMutex);
-		if (info->currentIndex == 0) {
-			prepareCanvas(texImageDescriptor->frameBuffer, info);
+		uint_fast32_t frameDuration;
+		if (info->isWaitingForFrame && !resumeAfterFrontier(info)) {
+			frameDuration = info->isWaitingForFrame ? FRAME_POLL_INTERVAL_MS : 0;
+		} else {
+			DDGifSlurp(info, true, false);
+			pthread_mutex_lock(&texImageDescriptor->renderMutex);
+			argb *const canvas = getCanvas(info, texImageDescriptor->frameBuffer);
+			if (info->currentIndex == 0 && !isFrameMissing(info)) {
+				prepareCanvas(canvas, info);
+			}
+			frameDuration = getBitmap(canvas, info);
+			presentCanvas(info, texImageDescriptor->frameBuffer);
+			pthread_mutex_unlock(&texImageDescriptor->renderMutex);
 		}
-		const uint_fast32_t frameDuration = getBitmap(texImageDescriptor->frameBuffer, info);
-		pthread_mutex_unlock(&texImageDescriptor->renderMutex);
 
 		const long long invalidationDelayMillis = calculateInvalidationDelay(info, renderStartTime, frameDuration);
 		const int pollResult = TEMP_FAILURE_RETRY(poll(&texImageDescriptor->eventPollFd, 1, (int) invalidationDelayMillis));
@@ -100,15 +115,17 @@ Java_pl_droidsonroids_gif_GifInfoHandle_initTexImageDescriptor(JNIEnv *env, jcla
 		return;
 	}
 	descriptor->eventPollFd.fd = -1;
-	const GifWord width = info->gifFilePtr->SWidth;
-	const GifWord height = info->gifFilePtr->SHeight;
-	descriptor->frameBuffer = malloc(width * height * sizeof(argb));
+	const GifWord width = getOutputWidth(info);
+	const GifWord height = getOutputHeight(info);
+	// RGB_565 rows are padded to the default unpack alignment of 4 bytes
+	const uint32_t stride = info->isRgb565 ? (width + 1U) & ~1U : width;
+	descriptor->frameBuffer = malloc(stride * height * (info->isRgb565 ? sizeof(uint16_t) : sizeof(argb)));
 	if (!descriptor->frameBuffer) {
 		free(descriptor);
 		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
 		return;
 	}
-	info->stride = (uint32_t) width;
+	setOutputStride(info, stride);
 	info->frameBufferDescriptor = descriptor;
 	errno = pthread_mutex_init(&descriptor->renderMutex, NULL);
 	THROW_ON_NONZERO_RESULT(errno, "Render mutex initialization failed ");
@@ -155,6 +172,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_seekToFrameGL(__unused JNIEnv *env, jcla
 		return;
 	}
 	TexImageDescriptor *descriptor = info->frameBufferDescriptor;
-	seek(info, (uint_fast32_t) desiredIndex, descriptor->frameBuffer);
+	seek(info, (uint_fast32_t) desiredIndex, getCanvas(info, descriptor->frameBuffer));
+	presentCanvas(info, descriptor->frameBuffer);
 }
 
@@ -0,0 +1,223 @@
+#include "gif.h"
+
+#define FRAMES_PER_THREAD 2
+#define MAX_THREAD_COUNT 64
+
+typedef struct {
+	GifImageDesc imageDesc;
+	GifByteType *imageData;
+	size_t imageDataSize;
+	size_t position;
+	GifPixelType *rasterBits;
+	bool isDecoded;
+} DecodeTask;
+
+typedef struct {
+	const GifFileType *gifFilePtr;
+	DecodeTask *tasks;
+	uint_fast32_t taskCount;
+	uint_fast32_t nextTask;
+	uint_fast16_t sampleSize;
+	pthread_mutex_t mutex;
+} DecodeBatch;
+
+static const GifByteType *mapImageData(GifFileType *gif, size_t *size) {
+	DecodeTask *task = gif->UserData;
+	const GifByteType *bytes = task->imageData + task->position;
+	*size = task->imageDataSize - task->position;
+	task->position = task->imageDataSize;
+	return bytes;
+}
+
+/**
+ * Reads records up to the next image and copies its compressed data, the same way as DDGifSlurp does before decoding.
+ * @return false if there is no more images or reading failed
+ */
+static bool readTask(GifInfo *info, DecodeTask *task) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	GifRecordType recordType;
+	const GifByteType *extData;
+	int extFunction;
+	do {
+		if (DGifGetRecordType(gifFilePtr, &recordType) == GIF_ERROR && gifFilePtr->Error != D_GIF_ERR_WRONG_RECORD) {
+			return false;
+		}
+		if (recordType == IMAGE_DESC_RECORD_TYPE) {
+			if (DGifGetImageDesc(gifFilePtr, false, info->originalWidth, info->originalHeight) == GIF_ERROR) {
+				return false;
+			}
+			if (gifFilePtr->Image.Width * gifFilePtr->Image.Height == 0) {
+				return false;
+			}
+			task->imageDesc = gifFilePtr->Image;
+			task->imageDesc.ColorMap = NULL;
+			return DGifGetImageData(gifFilePtr, &task->imageData, &task->imageDataSize) == GIF_OK;
+		} else if (recordType == EXTENSION_RECORD_TYPE) {
+			if (DGifGetExtension(gifFilePtr, &extFunction, &extData) == GIF_ERROR) {
+				return false;
+			}
+			while (extData != NULL) {
+				if (DGifGetExtensionNext(gifFilePtr, &extData) == GIF_ERROR) {
+					return false;
+				}
+			}
+		}
+	} while (recordType != TERMINATE_RECORD_TYPE);
+	return false;
+}
+
+static void decodeTask(DecodeTask *task, const GifFileType *parentFilePtr, uint_fast16_t sampleSize) {
+	int error;
+	GifFileType *imageFilePtr = DGifOpenImage(parentFilePtr, &task->imageDesc, task, mapImageData, &error);
+	if (imageFilePtr == NULL) {
+		return;
+	}
+	task->rasterBits = reallocarray(NULL, task->imageDesc.Width * task->imageDesc.Height, sizeof(GifPixelType));
+	if (task->rasterBits != NULL) {
+		task->isDecoded = readRasterBits(imageFilePtr, task->rasterBits, sampleSize) && imageFilePtr->Error == 0;
+	}
+	DGifCloseFile(imageFilePtr);
+}
+
+static void *decodeWorker(void *data) {
+	DecodeBatch *batch = data;
+	while (true) {
+		pthread_mutex_lock(&batch->mutex);
+		const uint_fast32_t index = batch->nextTask;
+		if (index < batch->taskCount) {
+			batch->nextTask++;
+		}
+		pthread_mutex_unlock(&batch->mutex);
+		if (index >= batch->taskCount) {
+			return NULL;
+		}
+		decodeTask(batch->tasks + index, batch->gifFilePtr, batch->sampleSize);
+	}
+}
+
+/**
+ * Decodes LZW data of the batch on threadCount threads including the calling one.
+ * Tasks are picked in order so all of them are decoded even if no additional thread could be started.
+ */
+static void decodeBatch(DecodeBatch *batch, uint_fast16_t threadCount) {
+	pthread_t threads[threadCount];
+	uint_fast16_t startedCount = 0;
+	while (startedCount + 1U < threadCount && startedCount + 1U < batch->taskCount) {
+		if (pthread_create(threads + startedCount, NULL, decodeWorker, batch) != 0) {
+			break;
+		}
+		startedCount++;
+	}
+	decodeWorker(batch);
+	while (startedCount > 0) {
+		pthread_join(threads[--startedCount], NULL);
+	}
+}
+
+/**
+ * Composites frames from the current one up to lastIndex onto the canvas and stores them in the frame cache.
+ * Compressed data of a batch of frames is read sequentially, then raster bits of all of them are decoded in parallel
+ * and finally frames are drawn one after another, as disposal of each frame depends on the previous ones.
+ * @return false if any frame could not be decoded, frames preceding the failed one are composited
+ */
+bool decodeFramesInParallel(GifInfo *info, argb *bm, uint_fast32_t lastIndex, uint_fast16_t threadCount) {
+	const uint_fast32_t batchCapacity = (uint_fast32_t) threadCount * FRAMES_PER_THREAD;
+	DecodeTask *tasks = calloc(batchCapacity, sizeof(DecodeTask));
+	if (tasks == NULL) {
+		info->gifFilePtr->Error = D_GIF_ERR_NOT_ENOUGH_MEM;
+		return false;
+	}
+	DecodeBatch batch = {.gifFilePtr = info->gifFilePtr, .tasks = tasks, .sampleSize = info->sampleSize};
+	if (pthread_mutex_init(&batch.mutex, NULL) != 0) {
+		free(tasks);
+		return false;
+	}
+
+	bool isSucceeded = true;
+	while (isSucceeded && info->currentIndex <= lastIndex) {
+		uint_fast32_t taskCount = lastIndex - info->currentIndex + 1;
+		if (taskCount > batchCapacity) {
+			taskCount = batchCapacity;
+		}
+		batch.taskCount = 0;
+		while (batch.taskCount < taskCount && readTask(info, tasks + batch.taskCount)) {
+			batch.taskCount++;
+		}
+		isSucceeded = batch.taskCount == taskCount;
+		batch.nextTask = 0;
+		decodeBatch(&batch, threadCount);
+
+		uint_fast32_t i;
+		for (i = 0; i < batch.taskCount; i++) {
+			DecodeTask *task = tasks + i;
+			if (isSucceeded && (!task->isDecoded || info->frameCache == NULL)) {
+				isSucceeded = false;
+			}
+			if (isSucceeded) {
+				drawDecodedBitmap(bm, info, task->rasterBits, task->imageDesc.Width * task->imageDesc.Height);
+				storeFrame(bm, info);
+				info->currentIndex++;
+			}
+			free(task->imageData);
+			free(task->rasterBits);
+			memset(task, 0, sizeof(DecodeTask));
+		}
+	}
+
+	pthread_mutex_destroy(&batch.mutex);
+	free(tasks);
+	return isSucceeded;
+}
+
+__unused JNIEXPORT jboolean JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_warmUpFrameCache(JNIEnv *__unused env, jclass __unused handleClass,
+                                                         jlong gifInfo, jint threadCount) {
+	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
+	if (info == NULL || info->frameCache == NULL) {
+		return JNI_FALSE;
+	}
+	if (isFrameCacheComplete(info)) {
+		return JNI_TRUE;
+	}
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	const uint_fast32_t savedIndex = info->currentIndex;
+	const uint_fast32_t savedStride = info->stride;
+	// frames are drawn onto the scratch canvas, so the visible one is not affected
+	const DirtyRect savedDirtyRect = info->dirtyRect;
+	// disposal backup is allocated with the stride of the bitmap, so it is kept if anything has been rendered
+	if (info->stride == 0) {
+		info->stride = gifFilePtr->SWidth;
+	}
+	argb *canvas = reallocarray(NULL, info->stride * gifFilePtr->SHeight, getCanvasPixelSize(info));
+	if (canvas == NULL || info->rewindFunction(info) != 0) {
+		free(canvas);
+		info->stride = savedStride;
+		return JNI_FALSE;
+	}
+	info->currentIndex = 0;
+	info->isFramePending = false;
+	prepareCanvas(canvas, info);
+	if (threadCount < 1) {
+		threadCount = 1;
+	} else if (threadCount > MAX_THREAD_COUNT) {
+		threadCount = MAX_THREAD_COUNT;
+	}
+	decodeFramesInParallel(info, canvas, gifFilePtr->ImageCount - 1, (uint_fast16_t) threadCount);
+	free(canvas);
+	info->dirtyRect = savedDirtyRect;
+
+	if (isFrameCacheComplete(info)) {
+		// position in the stream does not matter anymore, all frames are restored from the cache
+		info->currentIndex = savedIndex < gifFilePtr->ImageCount ? savedIndex : 0;
+		info->stride = savedStride;
+		return JNI_TRUE;
+	}
+	// animation starts over from the first frame, as the state of the bitmap canvas cannot be restored
+	info->rewindFunction(info);
+	info->currentIndex = 0;
+	free(info->backupPtr);
+	info->backupPtr = NULL;
+	info->backupSize = 0;
+	info->stride = savedStride;
+	return JNI_FALSE;
+}
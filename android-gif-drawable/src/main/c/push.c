@@ -0,0 +1,233 @@
+#include "gif.h"
+#include "giflib/gif_lib_private.h"
+
+#define HEADER_SIZE 13
+#define MIN_CAPACITY 4096
+
+/**
+ * Data appended over time by the producer, shared by all the GifInfos opened from it.
+ * Bytes may be moved by reallocation, so they are accessed only under the mutex.
+ */
+typedef struct {
+	pthread_mutex_t mutex;
+	uint8_t *bytes;
+	size_t size;
+	size_t capacity;
+	bool isComplete;
+	uint_fast32_t referenceCount;
+} PushBuffer;
+
+typedef struct {
+	PushBuffer *buffer;
+	size_t position;
+} PushBufferContainer;
+
+static void releasePushBuffer(PushBuffer *buffer) {
+	pthread_mutex_lock(&buffer->mutex);
+	const bool isReleased = --buffer->referenceCount == 0;
+	pthread_mutex_unlock(&buffer->mutex);
+	if (isReleased) {
+		pthread_mutex_destroy(&buffer->mutex);
+		free(buffer->bytes);
+		free(buffer);
+	}
+}
+
+/**
+ * @return position following the record starting at the given position or 0 if it has not arrived completely
+ */
+static size_t getRecordEnd(const PushBuffer *buffer, size_t position) {
+	if (position >= buffer->size) {
+		return 0;
+	}
+	const uint8_t *const bytes = buffer->bytes;
+	size_t blockPosition;
+	if (bytes[position] == EXTENSION_INTRODUCER) {
+		blockPosition = position + 2;
+	} else if (bytes[position] == DESCRIPTOR_INTRODUCER) {
+		if (position + 10 > buffer->size) {
+			return 0;
+		}
+		// descriptor, local color table and LZW minimum code size precede image data blocks
+		blockPosition = position + 10 + getColorTableSize(bytes[position + 9]) + 1;
+	} else {
+		return position + 1;
+	}
+	while (blockPosition < buffer->size) {
+		const uint8_t blockLength = bytes[blockPosition];
+		blockPosition += blockLength + 1U;
+		if (blockLength == 0) {
+			return blockPosition;
+		}
+	}
+	return 0;
+}
+
+static size_t pushBufferRead(GifFileType *gif, GifByteType *bytes, size_t size) {
+	PushBufferContainer *container = gif->UserData;
+	PushBuffer *buffer = container->buffer;
+	pthread_mutex_lock(&buffer->mutex);
+	if (container->position + size > buffer->size) {
+		size = container->position < buffer->size ? buffer->size - container->position : 0;
+	}
+	memcpy(bytes, buffer->bytes + container->position, size);
+	pthread_mutex_unlock(&buffer->mutex);
+	container->position += size;
+	return size;
+}
+
+int pushBufferRewind(GifInfo *info) {
+	PushBufferContainer *container = info->gifFilePtr->UserData;
+	container->position = (size_t) info->startPos;
+	return 0;
+}
+
+static long long pushBufferTell(GifInfo *info) {
+	PushBufferContainer *container = info->gifFilePtr->UserData;
+	return (long long) container->position;
+}
+
+static int pushBufferSeek(GifInfo *info, long long position) {
+	PushBufferContainer *container = info->gifFilePtr->UserData;
+	if (position < 0) {
+		return -1;
+	}
+	container->position = (size_t) position;
+	return 0;
+}
+
+/**
+ * Records are read only when they have arrived completely, so decoding never reaches the data frontier.
+ * Everything is available once the producer finishes, reading truncated data fails as usual then.
+ * Decoder reads ahead of the record, so its start is the decoding position rather than the position of the container.
+ */
+static bool isPushBufferRecordAvailable(GifInfo *info) {
+	PushBufferContainer *container = info->gifFilePtr->UserData;
+	PushBuffer *buffer = container->buffer;
+	const size_t recordPosition = (size_t) info->tellFunction(info);
+	pthread_mutex_lock(&buffer->mutex);
+	const bool isAvailable = buffer->isComplete || getRecordEnd(buffer, recordPosition) != 0;
+	pthread_mutex_unlock(&buffer->mutex);
+	return isAvailable;
+}
+
+void releasePushBufferContainer(void *container) {
+	releasePushBuffer(((PushBufferContainer *) container)->buffer);
+	free(container);
+}
+
+__unused JNIEXPORT jlong JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_createPushBuffer(JNIEnv *env, jclass __unused handleClass, jint initialCapacity) {
+	PushBuffer *buffer = malloc(sizeof(PushBuffer));
+	if (buffer == NULL) {
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return 0;
+	}
+	buffer->capacity = initialCapacity > MIN_CAPACITY ? (size_t) initialCapacity : MIN_CAPACITY;
+	buffer->bytes = malloc(buffer->capacity);
+	if (buffer->bytes == NULL) {
+		free(buffer);
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return 0;
+	}
+	errno = pthread_mutex_init(&buffer->mutex, NULL);
+	if (errno != 0) {
+		free(buffer->bytes);
+		free(buffer);
+		throwException(env, RUNTIME_EXCEPTION_ERRNO, "Push buffer mutex initialization failed ");
+		return 0;
+	}
+	buffer->size = 0;
+	buffer->isComplete = false;
+	buffer->referenceCount = 1;
+	return (jlong) (intptr_t) buffer;
+}
+
+__unused JNIEXPORT void JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_appendToPushBuffer(JNIEnv *env, jclass __unused handleClass, jlong pushBuffer,
+                                                           jbyteArray bytes, jint offset, jint length) {
+	PushBuffer *buffer = (PushBuffer *) (intptr_t) pushBuffer;
+	pthread_mutex_lock(&buffer->mutex);
+	if (buffer->size + length > buffer->capacity) {
+		size_t newCapacity = buffer->capacity * 2;
+		if (newCapacity < buffer->size + length) {
+			newCapacity = buffer->size + length;
+		}
+		uint8_t *newBytes = realloc(buffer->bytes, newCapacity);
+		if (newBytes == NULL) {
+			pthread_mutex_unlock(&buffer->mutex);
+			throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+			return;
+		}
+		buffer->bytes = newBytes;
+		buffer->capacity = newCapacity;
+	}
+	(*env)->GetByteArrayRegion(env, bytes, offset, length, (jbyte *) (buffer->bytes + buffer->size));
+	buffer->size += length;
+	pthread_mutex_unlock(&buffer->mutex);
+}
+
+__unused JNIEXPORT void JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_finishPushBuffer(JNIEnv *__unused env, jclass __unused handleClass, jlong pushBuffer) {
+	PushBuffer *buffer = (PushBuffer *) (intptr_t) pushBuffer;
+	pthread_mutex_lock(&buffer->mutex);
+	buffer->isComplete = true;
+	pthread_mutex_unlock(&buffer->mutex);
+}
+
+__unused JNIEXPORT void JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_releasePushBuffer(JNIEnv *__unused env, jclass __unused handleClass, jlong pushBuffer) {
+	releasePushBuffer((PushBuffer *) (intptr_t) pushBuffer);
+}
+
+__unused JNIEXPORT jboolean JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_isPushBufferOpenable(JNIEnv *__unused env, jclass __unused handleClass, jlong pushBuffer) {
+	PushBuffer *buffer = (PushBuffer *) (intptr_t) pushBuffer;
+	pthread_mutex_lock(&buffer->mutex);
+	bool isOpenable = buffer->isComplete;
+	if (!isOpenable && buffer->size >= HEADER_SIZE) {
+		size_t position = HEADER_SIZE + getColorTableSize(buffer->bytes[10]);
+		size_t recordEnd;
+		while ((recordEnd = getRecordEnd(buffer, position)) != 0) {
+			if (buffer->bytes[position] != EXTENSION_INTRODUCER) {
+				// the first image or anything the decoder stops at
+				isOpenable = true;
+				break;
+			}
+			position = recordEnd;
+		}
+	}
+	pthread_mutex_unlock(&buffer->mutex);
+	return isOpenable ? JNI_TRUE : JNI_FALSE;
+}
+
+__unused JNIEXPORT jlong JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_openPushBuffer(JNIEnv *env, jclass __unused handleClass, jlong pushBuffer) {
+	PushBufferContainer *container = malloc(sizeof(PushBufferContainer));
+	if (container == NULL) {
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL_GIF_INFO;
+	}
+	container->buffer = (PushBuffer *) (intptr_t) pushBuffer;
+	container->position = 0;
+	pthread_mutex_lock(&container->buffer->mutex);
+	container->buffer->referenceCount++;
+	pthread_mutex_unlock(&container->buffer->mutex);
+
+	GifSourceDescriptor descriptor = {
+			.rewindFunc = pushBufferRewind,
+			.tellFunc = pushBufferTell,
+			.seekFunc = pushBufferSeek,
+			.recordAvailableFunc = isPushBufferRecordAvailable,
+			.sourceLength = -1,
+			.isMetadataLazy = true
+	};
+	descriptor.GifFileIn = DGifOpenBulk(container, &pushBufferRead, &descriptor.Error);
+	descriptor.startPos = (long long) container->position;
+
+	GifInfo *info = createGifInfo(&descriptor, env);
+	if (info == NULL) {
+		releasePushBufferContainer(container);
+	}
+	return (jlong) (intptr_t) info;
+}
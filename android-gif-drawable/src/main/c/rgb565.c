@@ -0,0 +1,103 @@
+#include "gif.h"
+
+#define PALETTE_SIZE 256
+#define DITHER_PHASE_COUNT 16
+#define NO_DITHER_THRESHOLD 8
+
+// 4x4 Bayer matrix, thresholds of neighbouring pixels are spread evenly over the quantization step
+static const uint_fast8_t BayerMatrix[DITHER_PHASE_COUNT] = {0, 8, 2, 10, 12, 4, 14, 6, 3, 11, 1, 9, 15, 7, 13, 5};
+
+/**
+ * Threshold in range <0, 15> is scaled to the quantization step of each channel and added before truncation,
+ * so channel is rounded up with probability proportional to the truncated remainder.
+ * Threshold in the middle of the range rounds to nearest.
+ */
+static inline uint16_t toRgb565(uint_fast8_t red, uint_fast8_t green, uint_fast8_t blue, uint_fast8_t threshold) {
+	uint_fast16_t r = (red + threshold / 2U) >> 3;
+	uint_fast16_t g = (green + threshold / 4U) >> 2;
+	uint_fast16_t b = (blue + threshold / 2U) >> 3;
+	if (r > 31) {
+		r = 31;
+	}
+	if (g > 63) {
+		g = 63;
+	}
+	if (b > 31) {
+		b = 31;
+	}
+	return (uint16_t) (r << 11 | g << 5 | b);
+}
+
+static inline uint_fast8_t getThreshold(GifWord x, GifWord y) {
+	return BayerMatrix[(y & 3U) * 4 + (x & 3U)];
+}
+
+/**
+ * Frames are composited straight onto RGB_565 canvas using palettes converted beforehand. If dithering is enabled
+ * there is a palette for each of 16 positions of the dither matrix, otherwise a single palette rounded to nearest.
+ * Canvas stays ARGB_8888 when it is scaled down, pixels are converted when a frame is presented.
+ */
+void initRgb565(GifInfo *info, bool isDithered) {
+	info->isRgb565 = true;
+	info->isRgb565Dithered = isDithered;
+	if (info->downsampler != NULL) {
+		return;
+	}
+	info->rgb565Palettes = reallocarray(NULL, (isDithered ? DITHER_PHASE_COUNT : 1) * PALETTE_SIZE, sizeof(uint16_t));
+	if (info->rgb565Palettes == NULL) {
+		info->isRgb565 = false;
+	}
+}
+
+void releaseRgb565(GifInfo *info) {
+	free(info->rgb565Palettes);
+	info->rgb565Palettes = NULL;
+	info->rgb565PaletteSource = NULL;
+}
+
+size_t getCanvasPixelSize(const GifInfo *info) {
+	return info->rgb565Palettes != NULL ? sizeof(uint16_t) : sizeof(argb);
+}
+
+/**
+ * @return 256 colors for each dither matrix position, row by row, or just 256 colors if dithering is disabled
+ */
+const uint16_t *getRgb565Palettes(GifInfo *info, const ColorMapObject *cmap) {
+	if (info->rgb565PaletteSource == cmap) {
+		return info->rgb565Palettes;
+	}
+	const uint_fast8_t phaseCount = info->isRgb565Dithered ? DITHER_PHASE_COUNT : 1;
+	uint_fast8_t phase;
+	for (phase = 0; phase < phaseCount; phase++) {
+		const uint_fast8_t threshold = info->isRgb565Dithered ? BayerMatrix[phase] : NO_DITHER_THRESHOLD;
+		uint16_t *palette = info->rgb565Palettes + phase * PALETTE_SIZE;
+		uint_fast16_t i;
+		for (i = 0; i < PALETTE_SIZE; i++) {
+			if (i < cmap->ColorCount) {
+				const GifColorType color = cmap->Colors[i];
+				palette[i] = toRgb565(color.Red, color.Green, color.Blue, threshold);
+			} else {
+				palette[i] = 0;
+			}
+		}
+	}
+	info->rgb565PaletteSource = cmap;
+	return info->rgb565Palettes;
+}
+
+/**
+ * Converts a row of ARGB_8888 pixels, alpha is ignored. Coordinates are the ones of the first pixel in the output.
+ */
+void convertRowToRgb565(const GifInfo *info, const argb *src, uint16_t *dst, GifWord width, GifWord x, GifWord y) {
+	GifWord i;
+	for (i = 0; i < width; i++) {
+		const uint_fast8_t threshold = info->isRgb565Dithered ? getThreshold(x + i, y) : NO_DITHER_THRESHOLD;
+		dst[i] = toRgb565(src[i].rgb.Red, src[i].rgb.Green, src[i].rgb.Blue, threshold);
+	}
+}
+
+__unused JNIEXPORT jboolean JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_isRgb565(__unused JNIEnv *env, jclass __unused handleClass, jlong gifInfo) {
+	GifInfo *const info = ((GifInfo *) (intptr_t) gifInfo);
+	return info != NULL && info->isRgb565 ? JNI_TRUE : JNI_FALSE;
+}
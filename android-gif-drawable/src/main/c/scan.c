@@ -0,0 +1,312 @@
+#include "gif.h"
+#include "giflib/gif_lib_private.h"
+
+#define SCREEN_DESCRIPTOR_SIZE 7
+#define IMAGE_DESCRIPTOR_SIZE 9
+#define METADATA_FIELD_COUNT 7
+
+/**
+ * Seekable source read directly, either from memory or from a file. Skipping does not copy any data.
+ */
+typedef struct {
+	const uint8_t *bytes;
+	size_t length;
+	size_t position;
+	FILE *file;
+} ScanSource;
+
+/**
+ * Values reported by a GifInfo opened from the same source, without any options applied.
+ */
+typedef struct {
+	GifWord width;
+	GifWord height;
+	uint_fast32_t imageCount;
+	jlong duration;
+	uint_fast16_t loopCount;
+	size_t commentLength;
+	GifWord rasterSize;
+	uint_fast32_t backupSize;
+	GraphicsControlBlock controlBlock;
+} MetadataSummary;
+
+static bool scanRead(ScanSource *source, uint8_t *bytes, size_t size) {
+	if (source->file != NULL) {
+		return fread(bytes, 1, size, source->file) == size;
+	}
+	if (size > source->length - source->position) {
+		source->position = source->length;
+		return false;
+	}
+	memcpy(bytes, source->bytes + source->position, size);
+	source->position += size;
+	return true;
+}
+
+static bool scanSkip(ScanSource *source, size_t size) {
+	if (source->file != NULL) {
+		return fseeko(source->file, (off_t) size, SEEK_CUR) == 0;
+	}
+	if (size > source->length - source->position) {
+		source->position = source->length;
+		return false;
+	}
+	source->position += size;
+	return true;
+}
+
+static inline GifWord getWord(const uint8_t *bytes) {
+	return (GifWord) (bytes[0] | bytes[1] << 8);
+}
+
+/**
+ * Reads the length of the next sub-block and either its data or nothing, if it is not needed.
+ * @return length of the sub-block, 0 for the block terminator and -1 if reading failed
+ */
+static int_fast16_t nextSubBlock(ScanSource *source, uint8_t *data, bool isDataNeeded) {
+	uint8_t length;
+	if (!scanRead(source, &length, 1)) {
+		return -1;
+	}
+	if (length == 0) {
+		return 0;
+	}
+	if (isDataNeeded ? !scanRead(source, data, length) : !scanSkip(source, length)) {
+		return -1;
+	}
+	return length;
+}
+
+/**
+ * Handles sub-block of an extension the same way as readExtensions in decoding.c does.
+ * @return false if scanning should stop
+ */
+static bool scanExtension(ScanSource *source, MetadataSummary *summary, uint8_t function, const uint8_t *data, int_fast16_t length) {
+	if (function == GRAPHICS_EXT_FUNC_CODE) {
+		if (length != 4) {
+			return false;
+		}
+		summary->controlBlock.DisposalMode = (uint_fast8_t) ((data[0] >> 2) & 0x07);
+		const uint_fast16_t delayTime = getWord(data + 1);
+		summary->controlBlock.DelayTime = delayTime > 1 ? delayTime * 10 : DEFAULT_FRAME_DURATION_MS;
+	} else if (function == COMMENT_EXT_FUNC_CODE) {
+		if (summary->commentLength + length + 1 <= COMMENT_LENGTH_MAX) {
+			summary->commentLength += strnlen((const char *) data, (size_t) length);
+		}
+	} else if (function == APPLICATION_EXT_FUNC_CODE) {
+		if (strncmp("NETSCAPE2.0", (const char *) data, (size_t) length) == 0
+		    || strncmp("ANIMEXTS1.0", (const char *) data, (size_t) length) == 0) {
+			uint8_t loopData[UINT8_MAX];
+			const int_fast16_t loopDataLength = nextSubBlock(source, loopData, true);
+			if (loopDataLength < 0) {
+				return false;
+			}
+			if (loopDataLength == 3 && loopData[0] == 1) {
+				uint_fast16_t loopCount = getWord(loopData + 1);
+				if (loopCount) {
+					loopCount++;
+				}
+				summary->loopCount = loopCount;
+			}
+		}
+	}
+	return true;
+}
+
+static bool scanImage(ScanSource *source, MetadataSummary *summary) {
+	uint8_t descriptor[IMAGE_DESCRIPTOR_SIZE];
+	if (!scanRead(source, descriptor, IMAGE_DESCRIPTOR_SIZE)) {
+		return false;
+	}
+	const GifWord left = getWord(descriptor);
+	const GifWord top = getWord(descriptor + 2);
+	const GifWord width = getWord(descriptor + 4);
+	const GifWord height = getWord(descriptor + 6);
+	if (left + width > summary->width || top + height > summary->height) {
+		return false;
+	}
+	uint8_t lzwMinimumCodeSize;
+	if (!scanSkip(source, getColorTableSize(descriptor[8]))) {
+		return false;
+	}
+	if (!scanRead(source, &lzwMinimumCodeSize, 1) || lzwMinimumCodeSize > 8) {
+		return false;
+	}
+
+	if (width > summary->rasterSize) {
+		summary->rasterSize = width;
+	}
+	if (summary->imageCount > 0 && summary->controlBlock.DisposalMode == DISPOSE_PREVIOUS && width * height > summary->backupSize) {
+		summary->backupSize = width * height;
+	}
+	summary->duration += summary->controlBlock.DelayTime;
+	summary->imageCount++;
+	setGCBDefaults(&summary->controlBlock);
+
+	int_fast16_t length;
+	do {
+		length = nextSubBlock(source, NULL, false);
+	} while (length > 0);
+	return true;
+}
+
+/**
+ * Walks the records following the header collecting the values which would be known after opening GifInfo
+ * and reading all its metadata. Image data and unneeded extensions are skipped using lengths of their sub-blocks.
+ * Stops at the same malformed records as readMetadata in decoding.c.
+ */
+static int scanRecords(ScanSource *source, MetadataSummary *summary) {
+	uint8_t screenDescriptor[GIF_STAMP_LEN + SCREEN_DESCRIPTOR_SIZE];
+	if (!scanRead(source, screenDescriptor, GIF_STAMP_LEN)) {
+		return D_GIF_ERR_READ_FAILED;
+	}
+	if (strncmp(GIF_STAMP, (const char *) screenDescriptor, GIF_VERSION_POS) != 0) {
+		return D_GIF_ERR_NOT_GIF_FILE;
+	}
+	if (!scanRead(source, screenDescriptor + GIF_STAMP_LEN, SCREEN_DESCRIPTOR_SIZE)
+	    || !scanSkip(source, getColorTableSize(screenDescriptor[GIF_STAMP_LEN + 4]))) {
+		return D_GIF_ERR_NO_SCRN_DSCR;
+	}
+	summary->width = getWord(screenDescriptor + GIF_STAMP_LEN);
+	summary->height = getWord(screenDescriptor + GIF_STAMP_LEN + 2);
+	summary->loopCount = 1;
+	setGCBDefaults(&summary->controlBlock);
+
+	uint8_t introducer;
+	while (scanRead(source, &introducer, 1) && introducer != TERMINATOR_INTRODUCER) {
+		if (introducer == DESCRIPTOR_INTRODUCER) {
+			if (!scanImage(source, summary)) {
+				break;
+			}
+		} else if (introducer == EXTENSION_INTRODUCER) {
+			uint8_t function;
+			if (!scanRead(source, &function, 1)) {
+				break;
+			}
+			const bool isDataNeeded = function == GRAPHICS_EXT_FUNC_CODE || function == COMMENT_EXT_FUNC_CODE || function == APPLICATION_EXT_FUNC_CODE;
+			uint8_t data[UINT8_MAX];
+			int_fast16_t length;
+			while ((length = nextSubBlock(source, data, isDataNeeded)) > 0) {
+				if (!scanExtension(source, summary, function, data, length)) {
+					break;
+				}
+			}
+			if (length != 0) {
+				break;
+			}
+		}
+	}
+
+	if (summary->width < 1 || summary->height < 1) {
+		return D_GIF_ERR_INVALID_SCR_DIMS;
+	}
+	if (summary->imageCount == 0) {
+		return D_GIF_ERR_NO_FRAMES;
+	}
+	return 0;
+}
+
+/**
+ * @return width, height, number of frames, loop count, duration, metadata byte count and allocation byte count,
+ * consistent with the ones of GifInfoHandle opened from the same source
+ */
+static jlongArray toMetadataArray(JNIEnv *env, int error, const MetadataSummary *summary) {
+	if (error != 0) {
+		throwGifIOException(error, env, false);
+		return NULL;
+	}
+	size_t metadataByteCount = sizeof(GifInfo) + sizeof(GifFileType);
+	metadataByteCount += summary->imageCount * (sizeof(GraphicsControlBlock) + sizeof(SavedImage) + sizeof(long long));
+	metadataByteCount += summary->commentLength;
+	const size_t allocationByteCount = summary->rasterSize * sizeof(GifPixelType) + summary->backupSize * sizeof(argb);
+
+	const jlong metadata[METADATA_FIELD_COUNT] = {
+			summary->width,
+			summary->height,
+			summary->imageCount,
+			summary->loopCount,
+			summary->duration,
+			(jlong) metadataByteCount,
+			(jlong) allocationByteCount
+	};
+	jlongArray metadataArray = (*env)->NewLongArray(env, METADATA_FIELD_COUNT);
+	if (metadataArray != NULL) {
+		(*env)->SetLongArrayRegion(env, metadataArray, 0, METADATA_FIELD_COUNT, metadata);
+	}
+	return metadataArray;
+}
+
+static jlongArray scanFile(JNIEnv *env, FILE *file) {
+	ScanSource source = {.file = file};
+	MetadataSummary summary = {0};
+	const int error = scanRecords(&source, &summary);
+	fclose(file);
+	return toMetadataArray(env, error, &summary);
+}
+
+__unused JNIEXPORT jlongArray JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_scanFileMetadata(JNIEnv *env, jclass __unused handleClass, jstring jfname) {
+	if (isSourceNull(jfname, env)) {
+		return NULL;
+	}
+	const char *const filename = (*env)->GetStringUTFChars(env, jfname, NULL);
+	if (filename == NULL) {
+		throwException(env, RUNTIME_EXCEPTION_BARE, "GetStringUTFChars failed");
+		return NULL;
+	}
+	FILE *file = fopen(filename, "rbe");
+	(*env)->ReleaseStringUTFChars(env, jfname, filename);
+	if (file == NULL) {
+		throwGifIOException(D_GIF_ERR_OPEN_FAILED, env, true);
+		return NULL;
+	}
+	return scanFile(env, file);
+}
+
+__unused JNIEXPORT jlongArray JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_scanNativeFileDescriptorMetadata(JNIEnv *env, jclass __unused handleClass, jint fd, jlong offset) {
+	FILE *file = lseek64(fd, offset, SEEK_SET) != -1 ? fdopen(fd, "rb") : NULL;
+	if (file == NULL) {
+		throwGifIOException(D_GIF_ERR_OPEN_FAILED, env, true);
+		close(fd);
+		return NULL;
+	}
+	return scanFile(env, file);
+}
+
+/**
+ * Array is accessed in place, scanning does not call JNI nor block, so it is short enough for a critical region.
+ */
+__unused JNIEXPORT jlongArray JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_scanByteArrayMetadata(JNIEnv *env, jclass __unused handleClass, jbyteArray bytes) {
+	if (isSourceNull(bytes, env)) {
+		return NULL;
+	}
+	ScanSource source = {.length = (size_t) (*env)->GetArrayLength(env, bytes)};
+	uint8_t *const arrayBytes = (*env)->GetPrimitiveArrayCritical(env, bytes, NULL);
+	if (arrayBytes == NULL) {
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL;
+	}
+	source.bytes = arrayBytes;
+	MetadataSummary summary = {0};
+	const int error = scanRecords(&source, &summary);
+	(*env)->ReleasePrimitiveArrayCritical(env, bytes, arrayBytes, JNI_ABORT);
+	return toMetadataArray(env, error, &summary);
+}
+
+__unused JNIEXPORT jlongArray JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_scanDirectByteBufferMetadata(JNIEnv *env, jclass __unused handleClass, jobject buffer) {
+	const uint8_t *bytes = (*env)->GetDirectBufferAddress(env, buffer);
+	const jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+	if (bytes == NULL || capacity <= 0) {
+		if (!isSourceNull(buffer, env)) {
+			throwGifIOException(D_GIF_ERR_INVALID_BYTE_BUFFER, env, false);
+		}
+		return NULL;
+	}
+	ScanSource source = {.bytes = bytes, .length = (size_t) capacity};
+	MetadataSummary summary = {0};
+	const int error = scanRecords(&source, &summary);
+	return toMetadataArray(env, error, &summary);
+}
@@ -0,0 +1,375 @@
+#include "gif.h"
+#include "giflib/gif_lib_private.h"
+#include <zlib.h>
+
+#define SIDECAR_MAGIC 0x44434753U // "SGCD"
+#define SIDECAR_VERSION 1
+#define SIDECAR_HEADER_SIZE (4 + 1 + 8 + 4 + 2 + 2 + 2 + 4 + 2)
+#define SIDECAR_FRAME_SIZE (8 + 2 + 2 + 2 + 2 + 1 + 1 + 4 + 1 + 2)
+#define SIDECAR_CHECKSUM_SIZE 4
+#define NO_COLOR_MAP 0
+
+/**
+ * Little endian buffer of the sidecar, reading past its end makes it invalid instead of failing immediately,
+ * so fields can be read one after another and checked once.
+ */
+typedef struct {
+	uint8_t *bytes;
+	size_t length;
+	size_t position;
+	bool isValid;
+} SidecarBuffer;
+
+static void putBytes(SidecarBuffer *buffer, const void *bytes, size_t size) {
+	memcpy(buffer->bytes + buffer->position, bytes, size);
+	buffer->position += size;
+}
+
+static void putInteger(SidecarBuffer *buffer, uint64_t value, uint_fast8_t size) {
+	uint_fast8_t i;
+	for (i = 0; i < size; i++) {
+		buffer->bytes[buffer->position++] = (uint8_t) (value >> (8 * i));
+	}
+}
+
+static const uint8_t *getBytes(SidecarBuffer *buffer, size_t size) {
+	if (!buffer->isValid || size > buffer->length - buffer->position) {
+		buffer->isValid = false;
+		return NULL;
+	}
+	const uint8_t *bytes = buffer->bytes + buffer->position;
+	buffer->position += size;
+	return bytes;
+}
+
+static uint64_t getInteger(SidecarBuffer *buffer, uint_fast8_t size) {
+	const uint8_t *bytes = getBytes(buffer, size);
+	uint64_t value = 0;
+	if (bytes != NULL) {
+		while (size > 0) {
+			value = value << 8 | bytes[--size];
+		}
+	}
+	return value;
+}
+
+/**
+ * Fingerprint of the logical screen, read anyway when the source is opened.
+ * Together with the source length and descriptors of the frames read while opening
+ * it tells whether sidecar belongs to the source.
+ */
+static uint32_t getScreenChecksum(const GifInfo *info) {
+	const GifFileType *gifFilePtr = info->gifFilePtr;
+	const uint8_t screen[5] = {
+			(uint8_t) info->originalWidth, (uint8_t) (info->originalWidth >> 8),
+			(uint8_t) info->originalHeight, (uint8_t) (info->originalHeight >> 8),
+			(uint8_t) gifFilePtr->SBackGroundColor
+	};
+	uLong checksum = crc32(0L, screen, sizeof(screen));
+	if (gifFilePtr->SColorMap != NULL) {
+		checksum = crc32(checksum, (const Bytef *) gifFilePtr->SColorMap->Colors, gifFilePtr->SColorMap->ColorCount * sizeof(GifColorType));
+	}
+	return (uint32_t) checksum;
+}
+
+static size_t getColorMapSize(const ColorMapObject *colorMap) {
+	return colorMap != NULL ? colorMap->ColorCount * sizeof(GifColorType) : 0;
+}
+
+/**
+ * Descriptors of SavedImages are scaled down by the sample size, so the original ones are read again from the source.
+ * @return false if the descriptor could not be read
+ */
+static bool readOriginalImageDesc(GifInfo *info, uint_fast32_t index, GifImageDesc *desc) {
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	if (info->sampleSize == 1) {
+		*desc = gifFilePtr->SavedImages[index].ImageDesc;
+		return true;
+	}
+	uint8_t record[10];
+	if (info->seekFunction(info, info->frameOffsets[index]) != 0
+	    || DGifReadInput(gifFilePtr, record, sizeof(record)) != sizeof(record)) {
+		return false;
+	}
+	desc->Left = (GifWord) (record[1] | record[2] << 8);
+	desc->Top = (GifWord) (record[3] | record[4] << 8);
+	desc->Width = (GifWord) (record[5] | record[6] << 8);
+	desc->Height = (GifWord) (record[7] | record[8] << 8);
+	desc->Interlace = (record[9] & 0x40) != 0;
+	return true;
+}
+
+static bool writeFrames(GifInfo *info, SidecarBuffer *buffer) {
+	const GifFileType *gifFilePtr = info->gifFilePtr;
+	uint_fast32_t i;
+	for (i = 0; i < gifFilePtr->ImageCount; i++) {
+		GifImageDesc desc;
+		if (!readOriginalImageDesc(info, i, &desc)) {
+			return false;
+		}
+		const GraphicsControlBlock *controlBlock = info->controlBlock + i;
+		const ColorMapObject *colorMap = gifFilePtr->SavedImages[i].ImageDesc.ColorMap;
+		putInteger(buffer, (uint64_t) info->frameOffsets[i], 8);
+		putInteger(buffer, desc.Left, 2);
+		putInteger(buffer, desc.Top, 2);
+		putInteger(buffer, desc.Width, 2);
+		putInteger(buffer, desc.Height, 2);
+		putInteger(buffer, desc.Interlace, 1);
+		putInteger(buffer, colorMap != NULL ? colorMap->BitsPerPixel : NO_COLOR_MAP, 1);
+		putInteger(buffer, controlBlock->DelayTime, 4);
+		putInteger(buffer, controlBlock->DisposalMode, 1);
+		putInteger(buffer, (uint16_t) controlBlock->TransparentColor, 2);
+		if (colorMap != NULL) {
+			putBytes(buffer, colorMap->Colors, getColorMapSize(colorMap));
+		}
+	}
+	return true;
+}
+
+/**
+ * Serializes metadata of all the frames, reading the remaining ones first if metadata is read lazily.
+ * Decoding position is restored afterwards, so it must not be called in the middle of the frame.
+ * @return sidecar or NULL if source is not seekable, its length is unknown or not all the metadata could be read
+ */
+__unused JNIEXPORT jbyteArray JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_exportMetadata(JNIEnv *env, jclass __unused handleClass, jlong gifInfo) {
+	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
+	if (info == NULL || info->sourceLength < 0 || info->isFramePending || !scanMetadata(info, 0) || info->frameOffsets == NULL) {
+		return NULL;
+	}
+	const GifFileType *gifFilePtr = info->gifFilePtr;
+	const size_t commentLength = info->comment != NULL ? strlen(info->comment) : 0;
+	size_t length = SIDECAR_HEADER_SIZE + commentLength + gifFilePtr->ImageCount * SIDECAR_FRAME_SIZE + SIDECAR_CHECKSUM_SIZE;
+	uint_fast32_t i;
+	for (i = 0; i < gifFilePtr->ImageCount; i++) {
+		length += getColorMapSize(gifFilePtr->SavedImages[i].ImageDesc.ColorMap);
+	}
+	SidecarBuffer buffer = {.bytes = malloc(length), .length = length, .position = 0, .isValid = true};
+	if (buffer.bytes == NULL) {
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL;
+	}
+
+	putInteger(&buffer, SIDECAR_MAGIC, 4);
+	putInteger(&buffer, SIDECAR_VERSION, 1);
+	putInteger(&buffer, (uint64_t) info->sourceLength, 8);
+	putInteger(&buffer, getScreenChecksum(info), 4);
+	putInteger(&buffer, info->originalWidth, 2);
+	putInteger(&buffer, info->originalHeight, 2);
+	putInteger(&buffer, info->loopCount, 2);
+	putInteger(&buffer, gifFilePtr->ImageCount, 4);
+	putInteger(&buffer, commentLength, 2);
+	if (commentLength > 0) {
+		putBytes(&buffer, info->comment, commentLength);
+	}
+
+	const long long decodingPosition = info->tellFunction(info);
+	const bool isWritten = writeFrames(info, &buffer);
+	if (info->sampleSize > 1 && (decodingPosition < 0 || info->seekFunction(info, decodingPosition) != 0)) {
+		// animation starts over from the first frame, as the decoding position cannot be restored
+		info->rewindFunction(info);
+		info->currentIndex = 0;
+	}
+	if (!isWritten) {
+		free(buffer.bytes);
+		return NULL;
+	}
+	putInteger(&buffer, (uint32_t) crc32(0L, buffer.bytes, (uInt) buffer.position), SIDECAR_CHECKSUM_SIZE);
+
+	jbyteArray sidecar = (*env)->NewByteArray(env, (jsize) length);
+	if (sidecar != NULL) {
+		(*env)->SetByteArrayRegion(env, sidecar, 0, (jsize) length, (const jbyte *) buffer.bytes);
+	}
+	free(buffer.bytes);
+	return sidecar;
+}
+
+/**
+ * Frames read while opening must be the same as their counterparts in the sidecar.
+ */
+static bool isFrameConsistent(const GifInfo *info, uint_fast32_t index, const SavedImage *image, const GraphicsControlBlock *controlBlock,
+                              long long offset) {
+	const GifImageDesc *known = &info->gifFilePtr->SavedImages[index].ImageDesc;
+	const GraphicsControlBlock *knownControlBlock = info->controlBlock + index;
+	const ColorMapObject *knownColorMap = known->ColorMap;
+	return info->frameOffsets[index] == offset
+	       && known->Left == image->ImageDesc.Left && known->Top == image->ImageDesc.Top
+	       && known->Width == image->ImageDesc.Width && known->Height == image->ImageDesc.Height
+	       && known->Interlace == image->ImageDesc.Interlace
+	       && (knownColorMap != NULL ? knownColorMap->BitsPerPixel : NO_COLOR_MAP) ==
+	          (image->ImageDesc.ColorMap != NULL ? image->ImageDesc.ColorMap->BitsPerPixel : NO_COLOR_MAP)
+	       && knownControlBlock->DelayTime == controlBlock->DelayTime
+	       && knownControlBlock->DisposalMode == controlBlock->DisposalMode
+	       && knownControlBlock->TransparentColor == controlBlock->TransparentColor;
+}
+
+static void releaseImportedColorMaps(SavedImage *images, uint_fast32_t from, uint_fast32_t to) {
+	for (; from < to; from++) {
+		GifFreeMapObject(images[from].ImageDesc.ColorMap);
+		images[from].ImageDesc.ColorMap = NULL;
+	}
+}
+
+/**
+ * Parses frames following the header, only the ones not read while opening are stored in the given arrays.
+ * @return false if sidecar is malformed, does not match the source or memory could not be allocated
+ */
+static bool readFrames(GifInfo *info, SidecarBuffer *buffer, uint_fast32_t frameCount,
+                       SavedImage *images, GraphicsControlBlock *controlBlocks, long long *offsets) {
+	const GifFileType *gifFilePtr = info->gifFilePtr;
+	const uint_fast32_t knownCount = (uint_fast32_t) gifFilePtr->ImageCount;
+	long long previousOffset = info->startPos - 1;
+	uint_fast32_t i;
+	for (i = 0; i < frameCount; i++) {
+		SavedImage image = {0};
+		GraphicsControlBlock controlBlock;
+		const long long offset = (long long) getInteger(buffer, 8);
+		image.ImageDesc.Left = (GifWord) getInteger(buffer, 2);
+		image.ImageDesc.Top = (GifWord) getInteger(buffer, 2);
+		image.ImageDesc.Width = (GifWord) getInteger(buffer, 2);
+		image.ImageDesc.Height = (GifWord) getInteger(buffer, 2);
+		image.ImageDesc.Interlace = getInteger(buffer, 1) != 0;
+		const uint_fast8_t bitsPerPixel = (uint_fast8_t) getInteger(buffer, 1);
+		controlBlock.DelayTime = (uint_fast32_t) getInteger(buffer, 4);
+		controlBlock.DisposalMode = (uint_fast8_t) getInteger(buffer, 1);
+		controlBlock.TransparentColor = (int16_t) getInteger(buffer, 2);
+		// values are bounded the same way as the ones decoded from graphics control extensions
+		if (!buffer->isValid || offset <= previousOffset || offset >= info->sourceLength || bitsPerPixel > 8
+		    || controlBlock.DisposalMode > 7 || controlBlock.TransparentColor < NO_TRANSPARENT_COLOR || controlBlock.TransparentColor > 255
+		    || controlBlock.DelayTime > UINT16_MAX * 10
+		    || image.ImageDesc.Left + image.ImageDesc.Width > info->originalWidth
+		    || image.ImageDesc.Top + image.ImageDesc.Height > info->originalHeight) {
+			releaseImportedColorMaps(images, knownCount, i);
+			return false;
+		}
+		previousOffset = offset;
+		if (bitsPerPixel != NO_COLOR_MAP) {
+			const GifColorType *colors = (const GifColorType *) getBytes(buffer, (1U << bitsPerPixel) * sizeof(GifColorType));
+			image.ImageDesc.ColorMap = colors != NULL ? GifMakeMapObject(bitsPerPixel, colors) : NULL;
+			if (image.ImageDesc.ColorMap == NULL) {
+				releaseImportedColorMaps(images, knownCount, i);
+				return false;
+			}
+		}
+		if (i < knownCount) {
+			const bool isConsistent = isFrameConsistent(info, i, &image, &controlBlock, offset);
+			GifFreeMapObject(image.ImageDesc.ColorMap);
+			if (!isConsistent) {
+				return false;
+			}
+		} else {
+			images[i] = image;
+			controlBlocks[i] = controlBlock;
+			offsets[i] = offset;
+		}
+	}
+	return true;
+}
+
+/**
+ * Replaces the metadata read while opening lazily with the one exported earlier from the same source,
+ * so the remaining frames do not have to be read. Sidecar is verified against the source length, logical screen
+ * and the frames read while opening, descriptors of the remaining ones are verified as they are decoded.
+ * It must be called before the options are set.
+ * @return true if metadata has been imported, nothing is changed otherwise
+ */
+__unused JNIEXPORT jboolean JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_importMetadata(JNIEnv *env, jclass __unused handleClass, jlong gifInfo, jbyteArray sidecar) {
+	GifInfo *info = (GifInfo *) (intptr_t) gifInfo;
+	if (info == NULL || sidecar == NULL || info->isMetadataComplete || info->seekFunction == NULL || info->sampleSize != 1) {
+		return JNI_FALSE;
+	}
+	const jsize length = (*env)->GetArrayLength(env, sidecar);
+	if (length < SIDECAR_HEADER_SIZE + SIDECAR_CHECKSUM_SIZE) {
+		return JNI_FALSE;
+	}
+	SidecarBuffer buffer = {.bytes = malloc((size_t) length), .length = (size_t) length - SIDECAR_CHECKSUM_SIZE, .position = 0, .isValid = true};
+	if (buffer.bytes == NULL) {
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return JNI_FALSE;
+	}
+	(*env)->GetByteArrayRegion(env, sidecar, 0, length, (jbyte *) buffer.bytes);
+	const uint32_t checksum = (uint32_t) crc32(0L, buffer.bytes, (uInt) buffer.length);
+	const bool isHeaderValid = checksum == (buffer.bytes[buffer.length] | buffer.bytes[buffer.length + 1] << 8 |
+	                                        buffer.bytes[buffer.length + 2] << 16 | (uint32_t) buffer.bytes[buffer.length + 3] << 24)
+	                           && getInteger(&buffer, 4) == SIDECAR_MAGIC
+	                           && getInteger(&buffer, 1) == SIDECAR_VERSION
+	                           && (long long) getInteger(&buffer, 8) == info->sourceLength
+	                           && getInteger(&buffer, 4) == getScreenChecksum(info)
+	                           && getInteger(&buffer, 2) == (uint64_t) info->originalWidth
+	                           && getInteger(&buffer, 2) == (uint64_t) info->originalHeight;
+	const uint_fast16_t loopCount = (uint_fast16_t) getInteger(&buffer, 2);
+	const uint_fast32_t frameCount = (uint_fast32_t) getInteger(&buffer, 4);
+	const size_t commentLength = (size_t) getInteger(&buffer, 2);
+	const char *comment = (const char *) getBytes(&buffer, commentLength);
+	// every frame takes at least SIDECAR_FRAME_SIZE bytes, so allocation size is bounded by the sidecar length
+	if (!isHeaderValid || !buffer.isValid || frameCount < (uint_fast32_t) info->gifFilePtr->ImageCount
+	    || frameCount > (buffer.length - buffer.position) / SIDECAR_FRAME_SIZE || commentLength >= COMMENT_LENGTH_MAX) {
+		free(buffer.bytes);
+		return JNI_FALSE;
+	}
+
+	GifFileType *const gifFilePtr = info->gifFilePtr;
+	const uint_fast32_t knownCount = (uint_fast32_t) gifFilePtr->ImageCount;
+	SavedImage *images = reallocarray(gifFilePtr->SavedImages, frameCount, sizeof(SavedImage));
+	if (images != NULL) {
+		gifFilePtr->SavedImages = images;
+	}
+	GraphicsControlBlock *controlBlocks = reallocarray(info->controlBlock, frameCount + 1, sizeof(GraphicsControlBlock));
+	if (controlBlocks != NULL) {
+		info->controlBlock = controlBlocks;
+	}
+	long long *offsets = reallocarray(info->frameOffsets, frameCount, sizeof(long long));
+	if (offsets != NULL) {
+		info->frameOffsets = offsets;
+	}
+	char *commentCopy = commentLength > 0 ? malloc(commentLength + 1) : NULL;
+	if (images == NULL || controlBlocks == NULL || offsets == NULL || (commentLength > 0 && commentCopy == NULL)) {
+		free(commentCopy);
+		free(buffer.bytes);
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return JNI_FALSE;
+	}
+	const bool isImported = readFrames(info, &buffer, frameCount, images, controlBlocks, offsets);
+	if (!isImported || buffer.position != buffer.length) {
+		if (isImported) {
+			releaseImportedColorMaps(images, knownCount, frameCount);
+		}
+		free(commentCopy);
+		free(buffer.bytes);
+		return JNI_FALSE;
+	}
+
+	if (commentCopy != NULL) {
+		memcpy(commentCopy, comment, commentLength);
+		commentCopy[commentLength] = '\0';
+	}
+	free(info->comment);
+	info->comment = commentCopy;
+	free(buffer.bytes);
+	setGCBDefaults(controlBlocks + frameCount);
+	info->loopCount = loopCount;
+	gifFilePtr->ImageCount = (int) frameCount;
+	info->isMetadataComplete = true;
+	info->isMetadataImported = true;
+	return JNI_TRUE;
+}
+
+/**
+ * @return false if descriptor of the image about to be decoded does not match the imported one,
+ * pixels would be placed according to a wrong one otherwise
+ */
+bool isImageDescConsistent(GifInfo *info) {
+	const GifFileType *gifFilePtr = info->gifFilePtr;
+	if (!info->isMetadataImported) {
+		return true;
+	}
+	if (info->currentIndex >= (uint_fast32_t) gifFilePtr->ImageCount) {
+		return false;
+	}
+	GifImageDesc desc = gifFilePtr->Image;
+	sampleImageDesc(info, &desc);
+	const GifImageDesc *imported = &gifFilePtr->SavedImages[info->currentIndex].ImageDesc;
+	return desc.Left == imported->Left && desc.Top == imported->Top
+	       && desc.Width == imported->Width && desc.Height == imported->Height;
+}
@@ -0,0 +1,319 @@
+#include "gif.h"
+
+#define MIN_CHUNK_SIZE 4096
+
+/**
+ * Bytes drained from the Java stream in chunks. They are kept in memory up to the spill threshold,
+ * the following ones are appended to an unlinked spill file and read back through a window of chunk size.
+ * Stream is read only when decoding reaches bytes which have not been drained yet, so it is read once
+ * and subsequent loops and seeks are served from the native copy.
+ */
+typedef struct {
+	jobject stream;
+	jmethodID readMethodID;
+	jmethodID closeMethodID;
+	jbyteArray buffer;
+	size_t chunkSize;
+	uint8_t *bytes;
+	size_t byteCount;
+	size_t capacity;
+	size_t spillThreshold;
+	char *spillDirectory;
+	int spillFd;
+	uint8_t *window;
+	size_t windowStart;
+	size_t windowLength;
+	size_t length;
+	size_t position;
+	bool isEndOfStream;
+} StreamContainer;
+
+static jint readChunk(JNIEnv *env, StreamContainer *sc) {
+	if ((*env)->MonitorEnter(env, sc->stream) != 0) {
+		return 0;
+	}
+	jint totalLength = 0;
+	jint length;
+	do {
+		length = (*env)->CallIntMethod(env, sc->stream, sc->readMethodID, sc->buffer, totalLength, (jint) sc->chunkSize - totalLength);
+		if (length > 0) {
+			totalLength += length;
+		} else {
+			if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+#ifdef DEBUG
+				(*env)->ExceptionDescribe(env);
+#endif
+				(*env)->ExceptionClear(env);
+			}
+			break;
+		}
+	} while (totalLength < (jint) sc->chunkSize);
+	if ((*env)->MonitorExit(env, sc->stream) != 0) {
+		return 0;
+	}
+	return totalLength;
+}
+
+static bool openSpillFile(StreamContainer *sc) {
+	const size_t directoryLength = strlen(sc->spillDirectory);
+	char *path = malloc(directoryLength + sizeof("/gifXXXXXX"));
+	sc->window = malloc(sc->chunkSize);
+	if (path == NULL || sc->window == NULL) {
+		free(path);
+		return false;
+	}
+	memcpy(path, sc->spillDirectory, directoryLength);
+	memcpy(path + directoryLength, "/gifXXXXXX", sizeof("/gifXXXXXX"));
+	sc->spillFd = mkstemp(path);
+	if (sc->spillFd != -1) {
+		// file is removed as soon as it is closed
+		unlink(path);
+	}
+	free(path);
+	return sc->spillFd != -1;
+}
+
+/**
+ * Appends the next chunk of the stream to memory or to the spill file.
+ * @return false if the end of the stream has been reached or bytes could not be stored
+ */
+static bool drainChunk(JNIEnv *env, StreamContainer *sc) {
+	const jint chunkLength = readChunk(env, sc);
+	if (chunkLength <= 0) {
+		sc->isEndOfStream = true;
+		if (sc->spillFd == -1 && sc->byteCount < sc->capacity) {
+			uint8_t *bytes = realloc(sc->bytes, sc->byteCount > 0 ? sc->byteCount : 1);
+			if (bytes != NULL) {
+				sc->bytes = bytes;
+				sc->capacity = sc->byteCount;
+			}
+		}
+		return false;
+	}
+	const size_t length = (size_t) chunkLength;
+	if (sc->spillFd == -1 && (sc->spillThreshold == 0 || sc->byteCount + length <= sc->spillThreshold)) {
+		if (sc->byteCount + length > sc->capacity) {
+			size_t newCapacity = sc->capacity * 2;
+			if (newCapacity < sc->byteCount + length) {
+				newCapacity = sc->byteCount + length;
+			}
+			uint8_t *bytes = realloc(sc->bytes, newCapacity);
+			if (bytes == NULL) {
+				sc->isEndOfStream = true;
+				return false;
+			}
+			sc->bytes = bytes;
+			sc->capacity = newCapacity;
+		}
+		(*env)->GetByteArrayRegion(env, sc->buffer, 0, chunkLength, (jbyte *) (sc->bytes + sc->byteCount));
+		sc->byteCount += length;
+	} else {
+		if (sc->spillFd == -1 && !openSpillFile(sc)) {
+			sc->isEndOfStream = true;
+			return false;
+		}
+		// chunk just drained is the most likely one to be read next, so it becomes the window
+		(*env)->GetByteArrayRegion(env, sc->buffer, 0, chunkLength, (jbyte *) sc->window);
+		if (pwrite64(sc->spillFd, sc->window, length, (off64_t) (sc->length - sc->byteCount)) != (ssize_t) length) {
+			sc->windowLength = 0;
+			sc->isEndOfStream = true;
+			return false;
+		}
+		sc->windowStart = sc->length;
+		sc->windowLength = length;
+	}
+	sc->length += length;
+	return true;
+}
+
+/**
+ * Drains the stream until the given number of bytes is available or the stream ends.
+ */
+static void drainUpTo(StreamContainer *sc, size_t end) {
+	if (end <= sc->length || sc->isEndOfStream) {
+		return;
+	}
+	JNIEnv *env = getEnv();
+	if (env == NULL) {
+		return;
+	}
+	while (end > sc->length && drainChunk(env, sc));
+}
+
+/**
+ * Stream is drained only if there are no bytes left, so filling the input window does not wait for bytes
+ * which are not needed yet.
+ */
+static size_t streamRead(GifFileType *gif, GifByteType *bytes, size_t size) {
+	StreamContainer *sc = gif->UserData;
+	drainUpTo(sc, sc->position + 1);
+	if (sc->position + size > sc->length) {
+		size = sc->position < sc->length ? sc->length - sc->position : 0;
+	}
+	size_t count = 0;
+	while (count < size) {
+		size_t pieceLength;
+		if (sc->position < sc->byteCount) {
+			pieceLength = sc->byteCount - sc->position;
+			if (pieceLength > size - count) {
+				pieceLength = size - count;
+			}
+			memcpy(bytes + count, sc->bytes + sc->position, pieceLength);
+		} else {
+			if (sc->position < sc->windowStart || sc->position >= sc->windowStart + sc->windowLength) {
+				sc->windowStart = sc->position;
+				sc->windowLength = sc->length - sc->position < sc->chunkSize ? sc->length - sc->position : sc->chunkSize;
+				if (pread64(sc->spillFd, sc->window, sc->windowLength, (off64_t) (sc->windowStart - sc->byteCount)) != (ssize_t) sc->windowLength) {
+					sc->windowLength = 0;
+					break;
+				}
+			}
+			pieceLength = sc->windowStart + sc->windowLength - sc->position;
+			if (pieceLength > size - count) {
+				pieceLength = size - count;
+			}
+			memcpy(bytes + count, sc->window + sc->position - sc->windowStart, pieceLength);
+		}
+		count += pieceLength;
+		sc->position += pieceLength;
+	}
+	return count;
+}
+
+int streamRewind(GifInfo *info) {
+	StreamContainer *sc = info->gifFilePtr->UserData;
+	sc->position = (size_t) info->startPos;
+	return 0;
+}
+
+static long long streamTell(GifInfo *info) {
+	StreamContainer *sc = info->gifFilePtr->UserData;
+	return (long long) sc->position;
+}
+
+static int streamSeek(GifInfo *info, long long position) {
+	StreamContainer *sc = info->gifFilePtr->UserData;
+	if (position < 0) {
+		return -1;
+	}
+	drainUpTo(sc, (size_t) position);
+	if ((size_t) position > sc->length) {
+		return -1;
+	}
+	sc->position = (size_t) position;
+	return 0;
+}
+
+void releaseStreamContainer(JNIEnv *env, void *container) {
+	StreamContainer *sc = container;
+	if (sc->stream != NULL) {
+		(*env)->CallVoidMethod(env, sc->stream, sc->closeMethodID);
+		if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+#ifdef DEBUG
+			(*env)->ExceptionDescribe(env);
+#endif
+			(*env)->ExceptionClear(env);
+		}
+		(*env)->DeleteGlobalRef(env, sc->stream);
+	}
+	if (sc->buffer != NULL) {
+		(*env)->DeleteGlobalRef(env, sc->buffer);
+	}
+	if (sc->spillFd != -1) {
+		close(sc->spillFd);
+	}
+	free(sc->window);
+	free(sc->spillDirectory);
+	free(sc->bytes);
+	free(sc);
+}
+
+/**
+ * @param chunkSize      number of bytes read from the stream at once
+ * @param spillThreshold number of bytes kept in memory, the following ones are stored in a spill file, 0 means no limit
+ * @param spillDirectory directory of the spill file, it is not used if there is no threshold
+ */
+__unused JNIEXPORT jlong JNICALL
+Java_pl_droidsonroids_gif_GifInfoHandle_openStream(JNIEnv *env, jclass __unused class, jobject stream, jint chunkSize,
+                                                   jlong spillThreshold, jstring spillDirectory) {
+	StreamContainer *container = calloc(1, sizeof(StreamContainer));
+	if (container == NULL) {
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL_GIF_INFO;
+	}
+	container->spillFd = -1;
+	container->chunkSize = chunkSize > MIN_CHUNK_SIZE ? (size_t) chunkSize : MIN_CHUNK_SIZE;
+	container->spillThreshold = spillThreshold > 0 && spillDirectory != NULL ? (size_t) spillThreshold : 0;
+	container->capacity = container->chunkSize;
+	container->bytes = malloc(container->capacity);
+	if (container->bytes == NULL) {
+		releaseStreamContainer(env, container);
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL_GIF_INFO;
+	}
+	if (container->spillThreshold > 0) {
+		const char *directory = (*env)->GetStringUTFChars(env, spillDirectory, NULL);
+		if (directory == NULL) {
+			releaseStreamContainer(env, container);
+			throwException(env, RUNTIME_EXCEPTION_BARE, "GetStringUTFChars failed");
+			return NULL_GIF_INFO;
+		}
+		container->spillDirectory = strdup(directory);
+		(*env)->ReleaseStringUTFChars(env, spillDirectory, directory);
+		if (container->spillDirectory == NULL) {
+			releaseStreamContainer(env, container);
+			throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+			return NULL_GIF_INFO;
+		}
+	}
+
+	jbyteArray bufferArray = (*env)->NewByteArray(env, (jsize) container->chunkSize);
+	if (bufferArray == NULL) {
+		releaseStreamContainer(env, container);
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL_GIF_INFO;
+	}
+	container->buffer = (*env)->NewGlobalRef(env, bufferArray);
+	if (container->buffer == NULL) {
+		releaseStreamContainer(env, container);
+		throwException(env, OUT_OF_MEMORY_ERROR, OOME_MESSAGE);
+		return NULL_GIF_INFO;
+	}
+
+	jclass streamClass = (*env)->GetObjectClass(env, stream);
+	if (streamClass == NULL) {
+		releaseStreamContainer(env, container);
+		throwException(env, RUNTIME_EXCEPTION_BARE, "GetObjectClass failed");
+		return NULL_GIF_INFO;
+	}
+	container->readMethodID = (*env)->GetMethodID(env, streamClass, "read", "([BII)I");
+	container->closeMethodID = (*env)->GetMethodID(env, streamClass, "close", "()V");
+	if (container->readMethodID == NULL || container->closeMethodID == NULL) {
+		releaseStreamContainer(env, container);
+		return NULL_GIF_INFO;
+	}
+	container->stream = (*env)->NewGlobalRef(env, stream);
+	if (container->stream == NULL) {
+		releaseStreamContainer(env, container);
+		throwException(env, RUNTIME_EXCEPTION_BARE, "NewGlobalRef failed");
+		return NULL_GIF_INFO;
+	}
+
+	GifSourceDescriptor descriptor = {
+			.rewindFunc = streamRewind,
+			.tellFunc = streamTell,
+			.seekFunc = streamSeek,
+			.sourceLength = -1
+	};
+	descriptor.GifFileIn = DGifOpenBulk(container, &streamRead, &descriptor.Error);
+	descriptor.startPos = (long long) container->position;
+
+	GifInfo *info = createGifInfo(&descriptor, env);
+	if (info == NULL) {
+		// stream is closed only by the owner if it could not be opened
+		(*env)->DeleteGlobalRef(env, container->stream);
+		container->stream = NULL;
+		releaseStreamContainer(env, container);
+	}
+	return (jlong) (intptr_t) info;
+}
@@ -29,7 +29,10 @@ static void *slurp(void *pVoidInfo) {
 		}
 		descriptor->slurpHelper = 0;
 		pthread_mutex_unlock(&descriptor->slurpMutex);
-		DDGifSlurp(info, true, false);
+		// frame following the data frontier is decoded by the render thread once it arrives
+		if (!info->isWaitingForFrame) {
+			DDGifSlurp(info, true, false);
+		}
 		pthread_mutex_lock(&descriptor->renderMutex);
 		descriptor->renderHelper = 1;
 		pthread_cond_signal(&descriptor->renderCond);
@@ -83,6 +86,9 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 		THROW_ON_NONZERO_RESULT(errno, "Render mutex initialization failed ");
 		descriptor->frameBuffer = NULL;
 		info->frameBufferDescriptor = descriptor;
+		// frames are decoded by the slurp thread ahead of rendering, so indices of the whole frame are needed
+		info->isDecodeFused = false;
+		info->isFramePending = false;
 		info->destructor = releaseSurfaceDescriptor;
 	}
 
@@ -107,8 +113,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 
 	const int32_t windowFormat = info->isOpaque ? WINDOW_FORMAT_RGBX_8888 : WINDOW_FORMAT_RGBA_8888;
 	struct ANativeWindow *window = ANativeWindow_fromSurface(env, jsurface);
-	GifFileType *const gifFilePtr = info->gifFilePtr;
-	if (ANativeWindow_setBuffersGeometry(window, (int32_t) gifFilePtr->SWidth, (int32_t) gifFilePtr->SHeight, windowFormat) != 0) {
+	if (ANativeWindow_setBuffersGeometry(window, (int32_t) getOutputWidth(info), (int32_t) getOutputHeight(info), windowFormat) != 0) {
 		ANativeWindow_release(window);
 		throwException(env, RUNTIME_EXCEPTION_ERRNO, "Buffers geometry setting failed ");
 		return;
@@ -126,7 +131,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 	}
 	const size_t bufferSize = buffer.stride * buffer.height * sizeof(argb);
 
-	info->stride = (uint32_t) buffer.stride;
+	setOutputStride(info, (uint32_t) buffer.stride);
 	long long invalidationDelayMillis;
 	if (descriptor->frameBuffer) {
 		memcpy(buffer.bits, descriptor->frameBuffer, bufferSize);
@@ -135,7 +140,8 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 		descriptor->slurpHelper = 0;
 	} else {
 		if (savedState != NULL) {
-			invalidationDelayMillis = restoreSavedState(info, env, savedState, buffer.bits);
+			invalidationDelayMillis = restoreSavedState(info, env, savedState, getCanvas(info, buffer.bits));
+			presentCanvas(info, buffer.bits);
 			if (invalidationDelayMillis < 0)
 				invalidationDelayMillis = 0;
 		} else
@@ -181,17 +187,35 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 			memcpy(descriptor->frameBuffer, buffer.bits, bufferSize);
 			break;
 		}
+		if (info->isWaitingForFrame) {
+			pthread_mutex_lock(&descriptor->renderMutex);
+			while (descriptor->renderHelper == 0) {
+				pthread_cond_wait(&descriptor->renderCond, &descriptor->renderMutex);
+			}
+			pthread_mutex_unlock(&descriptor->renderMutex);
+			// slurp thread is idle now, render helper stays set so the frame is drawn below
+			if (!resumeAfterFrontier(info)) {
+				invalidationDelayMillis = info->isWaitingForFrame ? FRAME_POLL_INTERVAL_MS : -1;
+				continue;
+			}
+			DDGifSlurp(info, true, false);
+		}
 		oldBufferBits = buffer.bits;
 
-		const GifImageDesc imageDesc = gifFilePtr->SavedImages[info->currentIndex].ImageDesc;
+		DirtyRect frameRect;
+		getFrameDirtyRect(info, info->currentIndex, &frameRect);
+		const bool isFrameRectEmpty = frameRect.left >= frameRect.right || frameRect.top >= frameRect.bottom;
+		if (!isFrameRectEmpty) {
+			mapToOutput(info, &frameRect);
+		}
 		struct ARect dirtyRect = {
-				.left = imageDesc.Left,
-				.top = imageDesc.Top,
-				.right = imageDesc.Left + imageDesc.Width,
-				.bottom = imageDesc.Top + imageDesc.Height
+				.left = (int32_t) frameRect.left,
+				.top = (int32_t) frameRect.top,
+				.right = (int32_t) frameRect.right,
+				.bottom = (int32_t) frameRect.bottom
 		};
 
-		struct ARect *dirtyRectPtr = (info->currentIndex == 0) ? NULL : &dirtyRect;
+		struct ARect *dirtyRectPtr = (info->currentIndex == 0 || isFrameRectEmpty) ? NULL : &dirtyRect;
 
 		if (ANativeWindow_lock(window, &buffer, dirtyRectPtr) != 0) {
 #ifdef DEBUG
@@ -201,7 +225,7 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 		}
 
 		if (info->currentIndex == 0)
-			prepareCanvas(buffer.bits, info);
+			prepareCanvas(getCanvas(info, buffer.bits), info);
 		else
 			memcpy(buffer.bits, oldBufferBits, bufferSize);
 
@@ -212,7 +236,8 @@ Java_pl_droidsonroids_gif_GifInfoHandle_bindSurface(JNIEnv *env, jclass __unused
 		descriptor->renderHelper = 0;
 		pthread_mutex_unlock(&descriptor->renderMutex);
 
-		const uint_fast32_t frameDuration = getBitmap(buffer.bits, info);
+		const uint_fast32_t frameDuration = getBitmap(getCanvas(info, buffer.bits), info);
+		presentCanvas(info, buffer.bits);
 
 		pthread_mutex_lock(&descriptor->slurpMutex);
 		descriptor->slurpHelper = 1;
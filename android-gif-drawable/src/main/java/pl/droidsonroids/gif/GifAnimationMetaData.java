@@ -27,6 +27,8 @@ import pl.droidsonroids.gif.annotations.Beta;
 /**
  * Lightweight version of {@link pl.droidsonroids.gif.GifDrawable} used to retrieve metadata of GIF only,
  * without having to allocate the memory for its pixels.
+ * Seekable sources (all except {@link InputStream}) are scanned without decoder being set up,
+ * image data is skipped using lengths of its blocks instead of being read.
  */
 public class GifAnimationMetaData implements Serializable, Parcelable {
 	private static final long serialVersionUID = 5692363926580237325L;
@@ -75,7 +77,7 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 	 * @throws NullPointerException if filePath is null
 	 */
 	public GifAnimationMetaData(@NonNull String filePath) throws IOException {
-		this(new GifInfoHandle(filePath));
+		this(GifInfoHandle.scanFileMetadata(filePath));
 	}
 
 	/**
@@ -91,12 +93,11 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 
 	/**
 	 * Retrieves metadata from InputStream.
-	 * InputStream must support marking, IllegalArgumentException will be thrown otherwise.
+	 * Stream is read only once, it does not need to support marking.
 	 *
 	 * @param stream stream to read from
-	 * @throws IOException              when opening failed
-	 * @throws IllegalArgumentException if stream does not support marking
-	 * @throws NullPointerException     if stream is null
+	 * @throws IOException          when opening failed
+	 * @throws NullPointerException if stream is null
 	 */
 	public GifAnimationMetaData(@NonNull InputStream stream) throws IOException {
 		this(new GifInfoHandle(stream));
@@ -111,7 +112,7 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 	 * @throws IOException          when opening failed
 	 */
 	public GifAnimationMetaData(@NonNull AssetFileDescriptor afd) throws IOException {
-		this(new GifInfoHandle(afd));
+		this(GifInfoHandle.scanMetadata(afd));
 	}
 
 	/**
@@ -122,7 +123,7 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 	 * @throws NullPointerException if fd is null
 	 */
 	public GifAnimationMetaData(@NonNull FileDescriptor fd) throws IOException {
-		this(new GifInfoHandle(fd));
+		this(GifInfoHandle.scanMetadata(fd));
 	}
 
 	/**
@@ -134,7 +135,7 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 	 * @throws NullPointerException if bytes are null
 	 */
 	public GifAnimationMetaData(@NonNull byte[] bytes) throws IOException {
-		this(new GifInfoHandle(bytes));
+		this(GifInfoHandle.scanByteArrayMetadata(bytes));
 	}
 
 	/**
@@ -146,7 +147,7 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 	 * @throws NullPointerException if buffer is null
 	 */
 	public GifAnimationMetaData(@NonNull ByteBuffer buffer) throws IOException {
-		this(new GifInfoHandle(buffer));
+		this(GifInfoHandle.scanDirectByteBufferMetadata(buffer));
 	}
 
 	/**
@@ -159,7 +160,17 @@ public class GifAnimationMetaData implements Serializable, Parcelable {
 	 * @throws IOException if resolution fails or destination is not a GIF.
 	 */
 	public GifAnimationMetaData(@Nullable ContentResolver resolver, @NonNull Uri uri) throws IOException {
-		this(GifInfoHandle.openUri(resolver, uri));
+		this(GifInfoHandle.scanMetadata(resolver, uri));
+	}
+
+	private GifAnimationMetaData(final long[] metadata) {
+		mWidth = (int) metadata[0];
+		mHeight = (int) metadata[1];
+		mImageCount = (int) metadata[2];
+		mLoopCount = (int) metadata[3];
+		mDuration = (int) metadata[4];
+		mMetadataBytesCount = metadata[5];
+		mPixelsBytesCount = metadata[6];
 	}
 
 	private GifAnimationMetaData(final GifInfoHandle gifInfoHandle) {
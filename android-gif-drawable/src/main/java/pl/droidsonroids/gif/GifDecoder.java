@@ -10,7 +10,8 @@ import java.io.IOException;
 
 /**
  * GifDecoder allows lightweight access to GIF frames, without wrappers like Drawable or View.
- * {@link Bitmap} with size equal to or greater than size of the GIF is needed.
+ * {@link Bitmap} with size equal to or greater than size of the GIF is needed. Its configuration has to be
+ * the one returned by {@link #getBitmapConfig()}.
  * For access only metadata (size, number of frames etc.) without pixels see {@link GifAnimationMetaData}.
  */
 public class GifDecoder {
@@ -36,10 +37,7 @@ public class GifDecoder {
 	 * @throws IOException when creation fails
 	 */
 	public GifDecoder(@NonNull final InputSource inputSource, @Nullable final GifOptions options) throws IOException {
-		mGifInfoHandle = inputSource.open();
-		if (options != null) {
-			mGifInfoHandle.setOptions(options.inSampleSize, options.inIsOpaque);
-		}
+		mGifInfoHandle = options != null ? inputSource.createHandleWith(options) : inputSource.open();
 	}
 
 	/**
@@ -102,6 +100,36 @@ public class GifDecoder {
 		return mGifInfoHandle.getAllocationByteCount();
 	}
 
+	/**
+	 * See {@link GifDrawable#getCheckpointCacheHitCount()}
+	 *
+	 * @return number of checkpoint cache hits
+	 */
+	public int getCheckpointCacheHitCount() {
+		return mGifInfoHandle.getCheckpointCacheHitCount();
+	}
+
+	/**
+	 * See {@link GifDrawable#getCheckpointCacheMissCount()}
+	 *
+	 * @return number of checkpoint cache misses
+	 */
+	public int getCheckpointCacheMissCount() {
+		return mGifInfoHandle.getCheckpointCacheMissCount();
+	}
+
+	/**
+	 * See {@link GifDrawable#warmUpFrameCache(int)}. Frames are then rendered by {@link #seekToFrame(int, Bitmap)}
+	 * straight from the cache.
+	 *
+	 * @param threadCount number of threads decoding frames
+	 * @return true if all the frames are cached
+	 * @throws IllegalArgumentException if {@code threadCount < 1}
+	 */
+	public boolean warmUpFrameCache(@IntRange(from = 1) final int threadCount) {
+		return mGifInfoHandle.warmUpFrameCache(threadCount);
+	}
+
 	/**
 	 * See {@link GifDrawable#getFrameDuration(int)}
 	 *
@@ -143,6 +171,26 @@ public class GifDecoder {
 		return mGifInfoHandle.getNumberOfFrames();
 	}
 
+	/**
+	 * See {@link GifDrawable#isMetadataComplete()}. Metadata of the remaining frames is read when they are
+	 * seeked to, see {@link #seekToFrame(int, Bitmap)}.
+	 *
+	 * @return true if metadata values are final
+	 */
+	public boolean isMetadataComplete() {
+		return mGifInfoHandle.isMetadataComplete();
+	}
+
+	/**
+	 * See {@link GifDrawable#getMetadataSidecar()}.
+	 *
+	 * @return the sidecar or null if source cannot be seeked, its length is unknown or decoder is recycled
+	 */
+	@Nullable
+	public byte[] getMetadataSidecar() {
+		return mGifInfoHandle.exportMetadata();
+	}
+
 	/**
 	 * @return true if GIF is animated (has at least 2 frames and positive duration), false otherwise
 	 */
@@ -150,6 +198,15 @@ public class GifDecoder {
 		return mGifInfoHandle.getNumberOfFrames() > 1 && getDuration() > 0;
 	}
 
+	/**
+	 * @return {@link Bitmap.Config#RGB_565} if it is set by {@link GifOptions#setInPreferredConfig(Bitmap.Config)}
+	 * and it has not fallen back, {@link Bitmap.Config#ARGB_8888} otherwise
+	 */
+	@NonNull
+	public Bitmap.Config getBitmapConfig() {
+		return mGifInfoHandle.getBitmapConfig();
+	}
+
 	/**
 	 * See {@link GifDrawable#recycle()}
 	 */
@@ -164,8 +221,9 @@ public class GifDecoder {
 		if (buffer.getWidth() < mGifInfoHandle.getWidth() || buffer.getHeight() < mGifInfoHandle.getHeight()) {
 			throw new IllegalArgumentException("Bitmap ia too small, size must be greater than or equal to GIF size");
 		}
-		if (buffer.getConfig() != Bitmap.Config.ARGB_8888) {
-			throw new IllegalArgumentException("Only Config.ARGB_8888 is supported. Current bitmap config: " + buffer.getConfig());
+		final Bitmap.Config config = mGifInfoHandle.getBitmapConfig();
+		if (buffer.getConfig() != config) {
+			throw new IllegalArgumentException("Only Config." + config + " is supported. Current bitmap config: " + buffer.getConfig());
 		}
 	}
 }
@@ -35,9 +35,11 @@ import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +47,7 @@ import java.util.concurrent.TimeUnit;
 import pl.droidsonroids.gif.transforms.CornerRadiusTransform;
 import pl.droidsonroids.gif.transforms.Transform;
 
+import static pl.droidsonroids.gif.InvalidationHandler.MSG_TYPE_FRAME_INVALIDATION;
 import static pl.droidsonroids.gif.InvalidationHandler.MSG_TYPE_INVALIDATION;
 
 /**
@@ -75,13 +78,27 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	private PorterDuff.Mode mTintMode;
 	final boolean mIsRenderingTriggeredOnDraw;
 	final InvalidationHandler mInvalidationHandler;
+	/**
+	 * Frames rendered ahead of their presentation time, null if frames are rendered straight into the frame buffer.
+	 */
+	final RenderAheadRing mRenderAheadRing;
 
 	private final RenderTask mRenderTask = new RenderTask(this);
-	private final Rect mSrcRect;
+	private final MetadataScanTask mMetadataScanTask = new MetadataScanTask(this);
+	final Rect mSrcRect;
 	ScheduledFuture<?> mRenderTaskSchedule;
 	private int mScaledWidth;
 	private int mScaledHeight;
 	private Transform mTransform;
+	private final Rect mPendingDirtyRect = new Rect();
+	private final Rect mDirtyBounds = new Rect();
+	boolean mIsDirtyBoundsSet;
+	/**
+	 * Drawables showing frames of this one, see {@link GifMirrorDrawable}.
+	 */
+	final CopyOnWriteArrayList<WeakReference<GifMirrorDrawable>> mMirrors = new CopyOnWriteArrayList<>();
+	private final Rect mFrameDirtyRect = new Rect();
+	private boolean mIsFrameDirtyRectSet;
 
 	/**
 	 * Creates drawable from resource.
@@ -138,12 +155,11 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 
 	/**
 	 * Creates drawable from InputStream.
-	 * InputStream must support marking, IllegalArgumentException will be thrown otherwise.
+	 * Stream is read only once, it does not need to support marking.
 	 *
 	 * @param stream stream to read from
-	 * @throws IOException              when opening failed
-	 * @throws IllegalArgumentException if stream does not support marking
-	 * @throws NullPointerException     if stream is null
+	 * @throws IOException          when opening failed
+	 * @throws NullPointerException if stream is null
 	 */
 	public GifDrawable(@NonNull InputStream stream) throws IOException {
 		this(new GifInfoHandle(stream), null, null, true);
@@ -225,10 +241,15 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	                      boolean isRenderingTriggeredOnDraw,
 	                      @NonNull GifOptions options) throws IOException {
 
-		this(inputSource.createHandleWith(options), oldDrawable, executor, isRenderingTriggeredOnDraw);
+		this(inputSource.createHandleWith(options), oldDrawable, executor, isRenderingTriggeredOnDraw, options.inRenderAheadFrameCount);
 	}
 
 	GifDrawable(GifInfoHandle gifInfoHandle, final GifDrawable oldDrawable, ScheduledThreadPoolExecutor executor, boolean isRenderingTriggeredOnDraw) {
+		this(gifInfoHandle, oldDrawable, executor, isRenderingTriggeredOnDraw, 0);
+	}
+
+	GifDrawable(GifInfoHandle gifInfoHandle, final GifDrawable oldDrawable, ScheduledThreadPoolExecutor executor, boolean isRenderingTriggeredOnDraw,
+	            int renderAheadFrameCount) {
 		mIsRenderingTriggeredOnDraw = isRenderingTriggeredOnDraw;
 		mExecutor = executor != null ? executor : GifRenderingExecutor.getInstance();
 		mNativeInfoHandle = gifInfoHandle;
@@ -237,7 +258,8 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 			synchronized (oldDrawable.mNativeInfoHandle) {
 				if (!oldDrawable.mNativeInfoHandle.isRecycled()
 						&& oldDrawable.mNativeInfoHandle.getHeight() >= mNativeInfoHandle.getHeight()
-						&& oldDrawable.mNativeInfoHandle.getWidth() >= mNativeInfoHandle.getWidth()) {
+						&& oldDrawable.mNativeInfoHandle.getWidth() >= mNativeInfoHandle.getWidth()
+						&& oldDrawable.mBuffer.getConfig() == mNativeInfoHandle.getBitmapConfig()) {
 					oldDrawable.shutdown();
 					oldBitmap = oldDrawable.mBuffer;
 					oldBitmap.eraseColor(Color.TRANSPARENT);
@@ -246,16 +268,18 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		}
 
 		if (oldBitmap == null) {
-			mBuffer = Bitmap.createBitmap(mNativeInfoHandle.getWidth(), mNativeInfoHandle.getHeight(), Bitmap.Config.ARGB_8888);
+			mBuffer = Bitmap.createBitmap(mNativeInfoHandle.getWidth(), mNativeInfoHandle.getHeight(), mNativeInfoHandle.getBitmapConfig());
 		} else {
 			mBuffer = oldBitmap;
 		}
 		mBuffer.setHasAlpha(!gifInfoHandle.isOpaque());
+		mRenderAheadRing = renderAheadFrameCount > 0 && mNativeInfoHandle.getNumberOfFrames() > 1 ? new RenderAheadRing(mBuffer, renderAheadFrameCount) : null;
 		mSrcRect = new Rect(0, 0, mNativeInfoHandle.getWidth(), mNativeInfoHandle.getHeight());
 		mInvalidationHandler = new InvalidationHandler(this);
 		mRenderTask.doWork();
 		mScaledWidth = mNativeInfoHandle.getWidth();
 		mScaledHeight = mNativeInfoHandle.getHeight();
+		mMetadataScanTask.schedule(0);
 	}
 
 	/**
@@ -268,11 +292,16 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	public void recycle() {
 		shutdown();
 		mBuffer.recycle();
+		if (mRenderAheadRing != null) {
+			mRenderAheadRing.recycle();
+		}
 	}
 
 	private void shutdown() {
 		mIsRunning = false;
+		mMetadataScanTask.cancel();
 		mInvalidationHandler.removeMessages(MSG_TYPE_INVALIDATION);
+		mInvalidationHandler.removeMessages(MSG_TYPE_FRAME_INVALIDATION);
 		mNativeInfoHandle.recycle();
 	}
 
@@ -286,9 +315,92 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	@Override
 	public void invalidateSelf() {
 		super.invalidateSelf();
+		invalidateMirrors();
 		scheduleNextRender();
 	}
 
+	private void invalidateMirrors() {
+		for (final WeakReference<GifMirrorDrawable> reference : mMirrors) {
+			final GifMirrorDrawable mirror = reference.get();
+			if (mirror != null) {
+				mirror.invalidateFrameRect(mIsFrameDirtyRectSet ? mFrameDirtyRect : null);
+			} else {
+				mMirrors.remove(reference);
+			}
+		}
+	}
+
+	void addDirtyRect(int[] dirtyRect) {
+		synchronized (mPendingDirtyRect) {
+			mPendingDirtyRect.union(dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3]);
+		}
+	}
+
+	/**
+	 * Invalidates only the area changed by frames rendered since the previous call. If frames are rendered ahead,
+	 * due frames are published first and the area changed by them is invalidated. Area of the frame buffer
+	 * is mapped to the drawable bounds the same way as the frame buffer is drawn, widened by half of the frame buffer
+	 * pixel and 1 pixel to include bitmap filtering, which blends neighbouring pixels when scaling. Nothing is invalidated if rendered frames did not change anything.
+	 */
+	void invalidateDirtyRect() {
+		if (mRenderAheadRing != null) {
+			final long nextPublishTime = mRenderAheadRing.publish(this, SystemClock.uptimeMillis(), mIsRunning);
+			if (nextPublishTime != Long.MIN_VALUE && !mInvalidationHandler.hasMessages(MSG_TYPE_FRAME_INVALIDATION)) {
+				mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_FRAME_INVALIDATION, nextPublishTime);
+			}
+		}
+		synchronized (mPendingDirtyRect) {
+			mDirtyBounds.set(mPendingDirtyRect);
+			mPendingDirtyRect.setEmpty();
+		}
+		if (mDirtyBounds.isEmpty()) {
+			scheduleNextRender();
+			return;
+		}
+		mFrameDirtyRect.set(mDirtyBounds);
+		mapDirtyRect(mDirtyBounds, mSrcRect, mDstRect, mTransform);
+		mIsDirtyBoundsSet = !mDirtyBounds.isEmpty();
+		mIsFrameDirtyRectSet = true;
+		invalidateSelf();
+		mIsFrameDirtyRectSet = false;
+		mIsDirtyBoundsSet = false;
+	}
+
+	/**
+	 * Maps the area of the frame buffer to the drawable bounds, in place.
+	 *
+	 * @param dirtyRect area of the frame buffer, set empty if it cannot be mapped
+	 * @param srcRect   area of the frame buffer which is drawn
+	 * @param dstRect   drawable bounds
+	 * @param transform transform of the drawable, may be null
+	 */
+	static void mapDirtyRect(Rect dirtyRect, Rect srcRect, Rect dstRect, @Nullable Transform transform) {
+		final float scaleX = (float) dstRect.width() / srcRect.width();
+		final float scaleY = (float) dstRect.height() / srcRect.height();
+		dirtyRect.set((int) Math.floor(dstRect.left + (dirtyRect.left - 0.5f) * scaleX) - 1,
+				(int) Math.floor(dstRect.top + (dirtyRect.top - 0.5f) * scaleY) - 1,
+				(int) Math.ceil(dstRect.left + (dirtyRect.right + 0.5f) * scaleX) + 1,
+				(int) Math.ceil(dstRect.top + (dirtyRect.bottom + 0.5f) * scaleY) + 1);
+		if (!dirtyRect.intersect(dstRect)) {
+			dirtyRect.setEmpty();
+		}
+		if (transform != null && !dirtyRect.isEmpty()) {
+			transform.onDirtyBoundsChange(dirtyRect);
+		}
+	}
+
+	/**
+	 * Returns the area changed by the newly rendered frame while the drawable is being invalidated because of
+	 * rendering, so views invalidate only that area. Whole bounds are returned otherwise.
+	 *
+	 * @return the dirty bounds of this drawable
+	 */
+	@NonNull
+	@Override
+	public Rect getDirtyBounds() {
+		return mIsDirtyBoundsSet ? mDirtyBounds : super.getDirtyBounds();
+	}
+
 	@Override
 	public int getIntrinsicHeight() {
 		return mScaledHeight;
@@ -338,10 +450,16 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		}
 		final long lastFrameRemainder = mNativeInfoHandle.restoreRemainder();
 		startAnimation(lastFrameRemainder);
+		mMetadataScanTask.schedule(0);
 	}
 
 	void startAnimation(long lastFrameRemainder) {
-		if (mIsRenderingTriggeredOnDraw) {
+		if (mRenderAheadRing != null) {
+			cancelPendingRenderTask();
+			mRenderAheadRing.resume(SystemClock.uptimeMillis());
+			scheduleRenderAhead();
+			mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_FRAME_INVALIDATION, 0);
+		} else if (mIsRenderingTriggeredOnDraw) {
 			mNextFrameRenderTime = 0;
 			mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
 		} else {
@@ -359,7 +477,17 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		mExecutor.execute(new SafeRunnable(this) {
 			@Override
 			public void doWork() {
-				if (mNativeInfoHandle.reset()) {
+				final boolean isReset;
+				synchronized (mNativeInfoHandle) {
+					isReset = mNativeInfoHandle.reset();
+					if (isReset && mRenderAheadRing != null) {
+						mRenderAheadRing.clear(SystemClock.uptimeMillis());
+						if (mIsRunning) {
+							scheduleRenderAhead();
+						}
+					}
+				}
+				if (isReset) {
 					start();
 				}
 			}
@@ -380,7 +508,11 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		}
 
 		cancelPendingRenderTask();
+		mMetadataScanTask.cancel();
 		mNativeInfoHandle.saveRemainder();
+		if (mRenderAheadRing != null) {
+			mRenderAheadRing.pause(SystemClock.uptimeMillis());
+		}
 	}
 
 	private void cancelPendingRenderTask() {
@@ -388,6 +520,7 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 			mRenderTaskSchedule.cancel(false);
 		}
 		mInvalidationHandler.removeMessages(MSG_TYPE_INVALIDATION);
+		mInvalidationHandler.removeMessages(MSG_TYPE_FRAME_INVALIDATION);
 	}
 
 	@Override
@@ -407,7 +540,8 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 
 	/**
 	 * Returns loop count previously read from GIF's application extension block.
-	 * Defaults to 1 if there is no such extension.
+	 * Defaults to 1 if there is no such extension. The extension may not have been read yet
+	 * if metadata is read lazily, see {@link #isMetadataComplete()}.
 	 *
 	 * @return loop count, 0 means that animation is infinite
 	 */
@@ -435,12 +569,41 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	}
 
 	/**
+	 * Returns number of frames known so far. It is final unless metadata is read lazily,
+	 * see {@link #isMetadataComplete()}.
+	 *
 	 * @return number of frames in GIF, at least one
 	 */
 	public int getNumberOfFrames() {
 		return mNativeInfoHandle.getNumberOfFrames();
 	}
 
+	/**
+	 * Indicates whether metadata of all the frames has been read. If drawable has been created with
+	 * {@link GifOptions#setInLazyMetadata(boolean)} set, the remaining metadata is read in the background
+	 * while drawable is running and visible, until then values returned by {@link #getNumberOfFrames()}, {@link #getDuration()}, {@link #getLoopCount()},
+	 * {@link #getComment()} and {@link #getMetadataAllocationByteCount()} cover only the frames read so far
+	 * and may grow. Otherwise it is always {@code true}. It is also {@code true} if drawable is recycled.
+	 *
+	 * @return true if metadata values are final
+	 */
+	public boolean isMetadataComplete() {
+		return mNativeInfoHandle.isMetadataComplete();
+	}
+
+	/**
+	 * Exports metadata of all the frames, so the same source can be opened later without reading them again,
+	 * see {@link GifOptions#setInMetadataSidecar(byte[])}. If metadata is read lazily the remaining frames
+	 * are read first, which may take a while for long animations, so it should not be called on the UI thread then.
+	 * Sidecar takes about 20 bytes per frame plus the local color tables.
+	 *
+	 * @return the sidecar or null if source cannot be seeked, its length is unknown or drawable is recycled
+	 */
+	@Nullable
+	public byte[] getMetadataSidecar() {
+		return mNativeInfoHandle.exportMetadata();
+	}
+
 	/**
 	 * Retrieves last error which is also the indicator of current GIF status.
 	 *
@@ -479,6 +642,9 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	 */
 	public void setSpeed(@FloatRange(from = 0, fromInclusive = false) final float factor) {
 		mNativeInfoHandle.setSpeedFactor(factor);
+		if (mRenderAheadRing != null) {
+			mRenderAheadRing.setSpeedFactor(factor);
+		}
 	}
 
 	/**
@@ -494,6 +660,7 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	 * If there is no data (no Graphics Control Extension blocks) 0 is returned.
 	 * Note that one-frame GIFs can have non-zero duration defined in Graphics Control Extension block,
 	 * use {@link #getNumberOfFrames()} to determine if there is one or more frames.
+	 * Only durations of frames read so far are summed up if metadata is read lazily, see {@link #isMetadataComplete()}.
 	 *
 	 * @return duration of of one loop the animation in milliseconds. Result is always multiple of 10.
 	 */
@@ -517,8 +684,8 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	 * Seeks animation to given absolute position (within given loop) and refreshes the canvas.<br>
 	 * If <code>position</code> is greater than duration of the loop of animation (or whole animation if there is no loop)
 	 * then animation will be sought to the end, no exception will be thrown.<br>
-	 * NOTE: all frames from current (or first one if seeking backward) to desired one must be rendered sequentially to perform seeking.
-	 * It may take a lot of time if number of such frames is large.
+	 * NOTE: all frames from the nearest preceding frame covering the whole canvas to desired one must be rendered sequentially to perform seeking.
+	 * Frames before it are skipped without decoding. It may take a lot of time if number of frames to render is large.
 	 * Method is thread-safe. Decoding is performed in background thread and drawable is invalidated automatically
 	 * afterwards.
 	 *
@@ -533,8 +700,10 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		mExecutor.execute(new SafeRunnable(this) {
 			@Override
 			public void doWork() {
-				mNativeInfoHandle.seekToTime(position, mBuffer);
-				mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
+				synchronized (mNativeInfoHandle) {
+					mNativeInfoHandle.seekToTime(position, mBuffer);
+					invalidateSeekedFrame();
+				}
 			}
 		});
 	}
@@ -552,8 +721,8 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 
 		synchronized (mNativeInfoHandle) {
 			mNativeInfoHandle.seekToTime(position, mBuffer);
+			invalidateSeekedFrame();
 		}
-		mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
 	}
 
 	/**
@@ -570,8 +739,10 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		mExecutor.execute(new SafeRunnable(this) {
 			@Override
 			public void doWork() {
-				mNativeInfoHandle.seekToFrame(frameIndex, mBuffer);
-				mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
+				synchronized (mNativeInfoHandle) {
+					mNativeInfoHandle.seekToFrame(frameIndex, mBuffer);
+					invalidateSeekedFrame();
+				}
 			}
 		});
 	}
@@ -590,9 +761,9 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		final Bitmap bitmap;
 		synchronized (mNativeInfoHandle) {
 			mNativeInfoHandle.seekToFrame(frameIndex, mBuffer);
-			bitmap = getCurrentFrame();
+			bitmap = copyFrame(mBuffer);
+			invalidateSeekedFrame();
 		}
-		mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
 		return bitmap;
 	}
 
@@ -610,12 +781,32 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		final Bitmap bitmap;
 		synchronized (mNativeInfoHandle) {
 			mNativeInfoHandle.seekToTime(position, mBuffer);
-			bitmap = getCurrentFrame();
+			bitmap = copyFrame(mBuffer);
+			invalidateSeekedFrame();
 		}
-		mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
 		return bitmap;
 	}
 
+	/**
+	 * Invalidates the frame buffer after seeking. If frames are rendered ahead, they are replaced by the frame
+	 * seeked to, which is presented immediately. Must be called with the native handle locked.
+	 */
+	private void invalidateSeekedFrame() {
+		if (mRenderAheadRing == null) {
+			mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
+			return;
+		}
+		final int frameIndex = mNativeInfoHandle.getCurrentFrameIndex();
+		final int[] dirtyRect = {0, 0, mBuffer.getWidth(), mBuffer.getHeight()};
+		mRenderAheadRing.clear(SystemClock.uptimeMillis());
+		mRenderAheadRing.offer(mBuffer, dirtyRect, frameIndex, mNativeInfoHandle.getFrameDuration(frameIndex), SystemClock.uptimeMillis());
+		mInvalidationHandler.removeMessages(MSG_TYPE_FRAME_INVALIDATION);
+		mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_FRAME_INVALIDATION, 0);
+		if (mIsRunning) {
+			scheduleRenderAhead();
+		}
+	}
+
 	/**
 	 * Equivalent of {@link #isRunning()}
 	 *
@@ -693,7 +884,9 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	/**
 	 * Returns size of the memory needed to store pixels of this object. It counts possible length of all frame buffers.
 	 * Returned value may be lower than amount of actually allocated memory if GIF uses dispose to previous method but frame requiring it
-	 * has never been needed yet. Returned value does not change during runtime.
+	 * has never been needed yet. Returned value does not change during runtime, except when frame cache becomes shared.
+	 * Frame cache shared with other GIFs, see {@link GifOptions#setInFrameCacheShared(boolean)}, is not counted,
+	 * as it would be counted by each of them, its size is included in {@link SharedFrameCache#getSize()} instead.
 	 *
 	 * @return possible size of the memory needed to store pixels of this object
 	 */
@@ -704,6 +897,9 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		} else {
 			byteCount += getFrameByteCount();
 		}
+		if (mRenderAheadRing != null) {
+			byteCount += mRenderAheadRing.getAllocationByteCount();
+		}
 		return byteCount;
 	}
 
@@ -717,6 +913,73 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		return mNativeInfoHandle.getMetadataByteCount();
 	}
 
+	/**
+	 * Returns the number of seeks and saved state restores which could continue from a canvas checkpoint
+	 * instead of decoding all the preceding frames. Always 0 if checkpoints are disabled.
+	 *
+	 * @return number of checkpoint cache hits
+	 * @see GifOptions#setInCheckpointCacheSize(long)
+	 */
+	public int getCheckpointCacheHitCount() {
+		return mNativeInfoHandle.getCheckpointCacheHitCount();
+	}
+
+	/**
+	 * Returns the number of seeks and saved state restores which required decoding of preceding frames
+	 * because there was no suitable canvas checkpoint. Always 0 if checkpoints are disabled.
+	 *
+	 * @return number of checkpoint cache misses
+	 * @see GifOptions#setInCheckpointCacheSize(long)
+	 */
+	public int getCheckpointCacheMissCount() {
+		return mNativeInfoHandle.getCheckpointCacheMissCount();
+	}
+
+	/**
+	 * Returns the number of frames rendered ahead, which are waiting to be displayed.
+	 * Always 0 if frames are not rendered ahead.
+	 *
+	 * @return number of frames in the render-ahead ring
+	 * @see GifOptions#setInRenderAheadFrameCount(int)
+	 */
+	public int getRenderAheadFrameCount() {
+		return mRenderAheadRing != null ? mRenderAheadRing.getQueuedFrameCount() : 0;
+	}
+
+	/**
+	 * Returns the number of times the next frame was due but it has not been rendered yet, although there was
+	 * room for it in the render-ahead ring. Such frames are displayed late. Always 0 if frames are not rendered ahead.
+	 *
+	 * @return number of render-ahead ring underruns
+	 * @see GifOptions#setInRenderAheadFrameCount(int)
+	 */
+	public int getRenderAheadUnderrunCount() {
+		return mRenderAheadRing != null ? mRenderAheadRing.getUnderrunCount() : 0;
+	}
+
+	/**
+	 * Decodes all the frames and stores them in the frame cache at once, so the animation does not need to be decoded
+	 * while it is playing. LZW data of the frames is decompressed concurrently using given number of threads
+	 * (including the calling one), frames are composited one after another afterwards.
+	 * This method blocks until all the frames are decoded and rendering is blocked meanwhile,
+	 * so it should not be called on the UI thread. It does nothing if frame cache is disabled.
+	 * If whole animation could not be cached, playback is continued from the first frame.
+	 *
+	 * @param threadCount number of threads decoding frames, e.g. {@link Runtime#availableProcessors()}
+	 * @return true if all the frames are cached
+	 * @throws IllegalArgumentException if {@code threadCount < 1}
+	 * @see GifOptions#setInFrameCacheSize(long)
+	 */
+	public boolean warmUpFrameCache(@IntRange(from = 1) final int threadCount) {
+		synchronized (mNativeInfoHandle) {
+			final boolean isFrameCacheComplete = mNativeInfoHandle.warmUpFrameCache(threadCount);
+			if (!isFrameCacheComplete && mRenderAheadRing != null) {
+				mRenderAheadRing.clear(SystemClock.uptimeMillis());
+			}
+			return isFrameCacheComplete;
+		}
+	}
+
 	/**
 	 * Returns length of the input source obtained at the opening time or -1 if
 	 * length cannot be determined. Returned value does not change during runtime.
@@ -737,7 +1000,7 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	 * @throws ArrayIndexOutOfBoundsException if the pixels array is too small to receive required number of pixels
 	 */
 	public void getPixels(@NonNull int[] pixels) {
-		mBuffer.getPixels(pixels, 0, mNativeInfoHandle.getWidth(), 0, 0, mNativeInfoHandle.getWidth(), mNativeInfoHandle.getHeight());
+		getDisplayedFrame().getPixels(pixels, 0, mNativeInfoHandle.getWidth(), 0, 0, mNativeInfoHandle.getWidth(), mNativeInfoHandle.getHeight());
 	}
 
 	/**
@@ -758,7 +1021,7 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		if (y >= mNativeInfoHandle.getHeight()) {
 			throw new IllegalArgumentException("y must be < height");
 		}
-		return mBuffer.getPixel(x, y);
+		return getDisplayedFrame().getPixel(x, y);
 	}
 
 	@Override
@@ -783,10 +1046,11 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		} else {
 			clearColorFilter = false;
 		}
+		final Bitmap frame = acquireFrame();
 		if (mTransform == null) {
-			canvas.drawBitmap(mBuffer, mSrcRect, mDstRect, mPaint);
+			canvas.drawBitmap(frame, mSrcRect, mDstRect, mPaint);
 		} else {
-			mTransform.onDraw(canvas, mPaint, mBuffer);
+			mTransform.onDraw(canvas, mPaint, frame);
 		}
 		if (clearColorFilter) {
 			mPaint.setColorFilter(null);
@@ -794,6 +1058,33 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 
 	}
 
+	/**
+	 * Picks up the newest published frame if frames are rendered ahead. Rendering is resumed if slots have been freed.
+	 *
+	 * @return frame to be drawn
+	 */
+	Bitmap acquireFrame() {
+		if (mRenderAheadRing != null && mRenderAheadRing.acquire() && mIsRunning) {
+			scheduleRenderAhead();
+		}
+		return getDisplayedFrame();
+	}
+
+	private Bitmap getDisplayedFrame() {
+		if (mRenderAheadRing != null) {
+			final Bitmap frame = mRenderAheadRing.getDisplayedFrame();
+			if (frame != null) {
+				return frame;
+			}
+		}
+		return mBuffer;
+	}
+
+	void scheduleRenderAhead() {
+		mExecutor.remove(mRenderTask);
+		mRenderTaskSchedule = mExecutor.schedule(mRenderTask, 0, TimeUnit.MILLISECONDS);
+	}
+
 	private void scheduleNextRender() {
 		if (mIsRenderingTriggeredOnDraw && mIsRunning && mNextFrameRenderTime != Long.MIN_VALUE) {
 			final long renderDelay = Math.max(0, mNextFrameRenderTime - SystemClock.uptimeMillis());
@@ -860,8 +1151,12 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 	 * @return current frame
 	 */
 	public Bitmap getCurrentFrame() {
-		final Bitmap copy = mBuffer.copy(mBuffer.getConfig(), mBuffer.isMutable());
-		copy.setHasAlpha(mBuffer.hasAlpha());
+		return copyFrame(getDisplayedFrame());
+	}
+
+	private static Bitmap copyFrame(Bitmap frame) {
+		final Bitmap copy = frame.copy(frame.getConfig(), frame.isMutable());
+		copy.setHasAlpha(frame.hasAlpha());
 		return copy;
 	}
 
@@ -930,16 +1225,23 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 			} else if (changed) {
 				stop();
 			}
+		} else if (visible && changed) {
+			mMetadataScanTask.schedule(0);
 		}
 		return changed;
 	}
 
 	/**
 	 * Returns zero-based index of recently rendered frame in given loop or -1 when drawable is recycled.
+	 * If frames are rendered ahead, index of the displayed frame is returned.
 	 *
 	 * @return index of recently rendered frame or -1 when drawable is recycled
+	 * @see GifOptions#setInRenderAheadFrameCount(int)
 	 */
 	public int getCurrentFrameIndex() {
+		if (mRenderAheadRing != null && !mNativeInfoHandle.isRecycled()) {
+			return mRenderAheadRing.getDisplayedFrameIndex();
+		}
 		return mNativeInfoHandle.getCurrentFrameIndex();
 	}
 
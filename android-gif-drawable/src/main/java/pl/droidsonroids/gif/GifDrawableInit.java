@@ -51,6 +51,59 @@ public abstract class GifDrawableInit<T extends GifDrawableInit<T>> {
         return self();
     }
 
+    /**
+     * Target size, see {@link GifOptions#setInTargetSize(int, int)} for more details.
+     * Note that this call will overwrite target size set previously by {@link #options(GifOptions)}
+     *
+     * @param width  the width of the frame buffer
+     * @param height the height of the frame buffer
+     * @return this builder instance, to chain calls
+     */
+    public T targetSize(@IntRange(from = 1) final int width, @IntRange(from = 1) final int height) {
+        mOptions.setInTargetSize(width, height);
+        return self();
+    }
+
+    /**
+     * Crop rectangle, see {@link GifOptions#setInCropRect(int, int, int, int)} for more details.
+     * Note that this call will overwrite crop rectangle set previously by {@link #options(GifOptions)}
+     *
+     * @param left   the left edge of the rectangle, inclusive
+     * @param top    the top edge of the rectangle, inclusive
+     * @param right  the right edge of the rectangle, exclusive
+     * @param bottom the bottom edge of the rectangle, exclusive
+     * @return this builder instance, to chain calls
+     */
+    public T cropRect(@IntRange(from = 0) final int left, @IntRange(from = 0) final int top,
+                      @IntRange(from = 1) final int right, @IntRange(from = 1) final int bottom) {
+        mOptions.setInCropRect(left, top, right, bottom);
+        return self();
+    }
+
+    /**
+     * Frame cache size, see {@link GifOptions#setInFrameCacheSize(long)} for more details.
+     * Note that this call will overwrite frame cache size set previously by {@link #options(GifOptions)}
+     *
+     * @param frameCacheSize the frame cache size in bytes
+     * @return this builder instance, to chain calls
+     */
+    public T frameCacheSize(@IntRange(from = 0) final long frameCacheSize) {
+        mOptions.setInFrameCacheSize(frameCacheSize);
+        return self();
+    }
+
+    /**
+     * Number of frames rendered ahead, see {@link GifOptions#setInRenderAheadFrameCount(int)} for more details.
+     * Note that this call will overwrite the value set previously by {@link #options(GifOptions)}
+     *
+     * @param renderAheadFrameCount number of frames rendered ahead
+     * @return this builder instance, to chain calls
+     */
+    public T renderAheadFrameCount(@IntRange(from = 0) final int renderAheadFrameCount) {
+        mOptions.setInRenderAheadFrameCount(renderAheadFrameCount);
+        return self();
+    }
+
     /**
      * Appropriate constructor wrapper. Must be preceded by on of {@code from()} calls.
      *
@@ -1,10 +1,13 @@
 package pl.droidsonroids.gif;
 
 import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Parcelable;
+import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import android.util.AttributeSet;
 import android.widget.ImageView;
@@ -17,6 +20,8 @@ import android.widget.ImageView;
 public class GifImageView extends ImageView {
 
 	private boolean mFreezesAnimation;
+	private final RectF mDirtyRectF = new RectF();
+	private final Rect mDirtyRect = new Rect();
 
 	/**
 	 * A corresponding superclass constructor wrapper.
@@ -110,6 +115,27 @@ public class GifImageView extends ImageView {
 		}
 	}
 
+	/**
+	 * Like equivalent from superclass but if a new frame of the source {@link GifDrawable} has been rendered
+	 * then only the area it changed is invalidated, see {@link GifDrawable#getDirtyBounds()}.
+	 *
+	 * @param drawable the drawable to invalidate
+	 */
+	@SuppressWarnings("deprecation")
+	@Override
+	public void invalidateDrawable(@NonNull Drawable drawable) {
+		if (drawable != getDrawable() || !(drawable instanceof GifDrawable) || !((GifDrawable) drawable).mIsDirtyBoundsSet) {
+			super.invalidateDrawable(drawable);
+			return;
+		}
+		mDirtyRectF.set(drawable.getDirtyBounds());
+		getImageMatrix().mapRect(mDirtyRectF);
+		mDirtyRectF.offset(getPaddingLeft(), getPaddingTop());
+		mDirtyRectF.roundOut(mDirtyRect);
+		mDirtyRect.offset(getScrollX(), getScrollY());
+		invalidate(mDirtyRect);
+	}
+
 	@Override
 	public Parcelable onSaveInstanceState() {
 		Drawable source = mFreezesAnimation ? getDrawable() : null;
@@ -8,6 +8,8 @@ import android.os.Build;
 
 import androidx.annotation.FloatRange;
 import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import android.system.ErrnoException;
@@ -37,31 +39,60 @@ final class GifInfoHandle {
 	}
 
 	GifInfoHandle(FileDescriptor fileDescriptor) throws GifIOException {
-		gifInfoPtr = openFileDescriptor(fileDescriptor, 0, true);
+		this(fileDescriptor, false);
+	}
+
+	/**
+	 * @param isMetadataLazy whether only the beginning of the source is read while opening,
+	 *                       see {@link GifOptions#setInLazyMetadata(boolean)}
+	 */
+	GifInfoHandle(FileDescriptor fileDescriptor, boolean isMetadataLazy) throws GifIOException {
+		gifInfoPtr = openFileDescriptor(fileDescriptor, 0, true, isMetadataLazy);
 	}
 
 	GifInfoHandle(byte[] bytes) throws GifIOException {
-		gifInfoPtr = openByteArray(bytes);
+		this(bytes, false, false);
+	}
+
+	/**
+	 * @param isCopiedToNativeMemory whether the whole array is copied while opening,
+	 *                               see {@link InputSource.ByteArraySource#ByteArraySource(byte[], boolean)}
+	 */
+	GifInfoHandle(byte[] bytes, boolean isMetadataLazy, boolean isCopiedToNativeMemory) throws GifIOException {
+		gifInfoPtr = openByteArray(bytes, isMetadataLazy, isCopiedToNativeMemory);
 	}
 
 	GifInfoHandle(ByteBuffer buffer) throws GifIOException {
-		gifInfoPtr = openDirectByteBuffer(buffer);
+		this(buffer, false);
+	}
+
+	GifInfoHandle(ByteBuffer buffer, boolean isMetadataLazy) throws GifIOException {
+		gifInfoPtr = openDirectByteBuffer(buffer, isMetadataLazy);
 	}
 
 	GifInfoHandle(String filePath) throws GifIOException {
-		gifInfoPtr = openFile(filePath);
+		this(filePath, false);
+	}
+
+	GifInfoHandle(String filePath, boolean isMetadataLazy) throws GifIOException {
+		gifInfoPtr = openFile(filePath, isMetadataLazy);
 	}
 
 	GifInfoHandle(InputStream stream) throws GifIOException {
-		if (!stream.markSupported()) {
-			throw new IllegalArgumentException("InputStream does not support marking");
-		}
-		gifInfoPtr = openStream(stream);
+		this(stream, InputSource.InputStreamSource.DEFAULT_CHUNK_SIZE, 0);
+	}
+
+	GifInfoHandle(InputStream stream, int chunkSize, long spillThreshold) throws GifIOException {
+		gifInfoPtr = openStream(stream, chunkSize, spillThreshold, System.getProperty("java.io.tmpdir"));
 	}
 
 	GifInfoHandle(AssetFileDescriptor afd) throws IOException {
+		this(afd, false);
+	}
+
+	GifInfoHandle(AssetFileDescriptor afd, boolean isMetadataLazy) throws IOException {
 		try {
-			gifInfoPtr = openFileDescriptor(afd.getFileDescriptor(), afd.getStartOffset(), false);
+			gifInfoPtr = openFileDescriptor(afd.getFileDescriptor(), afd.getStartOffset(), false, isMetadataLazy);
 		} finally {
 			try {
 				afd.close();
@@ -71,18 +102,19 @@ final class GifInfoHandle {
 		}
 	}
 
-	private static long openFileDescriptor(FileDescriptor fileDescriptor, long offset, boolean closeOriginalDescriptor) throws GifIOException {
-		final int nativeFileDescriptor;
+	private static long openFileDescriptor(FileDescriptor fileDescriptor, long offset, boolean closeOriginalDescriptor, boolean isMetadataLazy) throws GifIOException {
+		return openNativeFileDescriptor(toNativeFileDescriptor(fileDescriptor, closeOriginalDescriptor), offset, isMetadataLazy);
+	}
+
+	private static int toNativeFileDescriptor(FileDescriptor fileDescriptor, boolean closeOriginalDescriptor) throws GifIOException {
 		if (Build.VERSION.SDK_INT > Build.VERSION_CODES.O_MR1) {
 			try {
-				nativeFileDescriptor = getNativeFileDescriptor(fileDescriptor, closeOriginalDescriptor);
+				return getNativeFileDescriptor(fileDescriptor, closeOriginalDescriptor);
 			} catch (Exception e) { //cannot catch ErrnoException due to VerifyError on API <= 19
 				throw new GifIOException(GifError.OPEN_FAILED.errorCode, e.getMessage());
 			}
-		} else {
-			nativeFileDescriptor = extractNativeFileDescriptor(fileDescriptor, closeOriginalDescriptor);
 		}
-		return openNativeFileDescriptor(nativeFileDescriptor, offset);
+		return extractNativeFileDescriptor(fileDescriptor, closeOriginalDescriptor);
 	}
 
 	@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
@@ -99,31 +131,94 @@ final class GifInfoHandle {
 	}
 
 	static GifInfoHandle openUri(ContentResolver resolver, Uri uri) throws IOException {
+		return openUri(resolver, uri, false);
+	}
+
+	static GifInfoHandle openUri(ContentResolver resolver, Uri uri, boolean isMetadataLazy) throws IOException {
+		if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) { //workaround for #128
+			return new GifInfoHandle(uri.getPath(), isMetadataLazy);
+		}
+		final AssetFileDescriptor assetFileDescriptor = resolver.openAssetFileDescriptor(uri, "r");
+		if (assetFileDescriptor == null) {
+			throw new IOException("Could not open AssetFileDescriptor for " + uri);
+		}
+		return new GifInfoHandle(assetFileDescriptor, isMetadataLazy);
+	}
+
+	/**
+	 * Scans metadata of the source without opening it, image data is skipped and no decoder state is allocated.
+	 *
+	 * @return width, height, number of frames, loop count, duration, metadata and allocation byte counts
+	 * the same as reported by the handle opened from the same source
+	 */
+	static long[] scanMetadata(FileDescriptor fileDescriptor) throws GifIOException {
+		return scanNativeFileDescriptorMetadata(toNativeFileDescriptor(fileDescriptor, true), 0);
+	}
+
+	static long[] scanMetadata(AssetFileDescriptor afd) throws GifIOException {
+		try {
+			return scanNativeFileDescriptorMetadata(toNativeFileDescriptor(afd.getFileDescriptor(), false), afd.getStartOffset());
+		} finally {
+			try {
+				afd.close();
+			} catch (IOException ignored) {
+				//no-op
+			}
+		}
+	}
+
+	static long[] scanMetadata(ContentResolver resolver, Uri uri) throws IOException {
 		if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) { //workaround for #128
-			return new GifInfoHandle(uri.getPath());
+			return scanFileMetadata(uri.getPath());
 		}
 		final AssetFileDescriptor assetFileDescriptor = resolver.openAssetFileDescriptor(uri, "r");
 		if (assetFileDescriptor == null) {
 			throw new IOException("Could not open AssetFileDescriptor for " + uri);
 		}
-		return new GifInfoHandle(assetFileDescriptor);
+		return scanMetadata(assetFileDescriptor);
+	}
+
+	static GifInfoHandle fromPushBuffer(long pushBufferPtr) throws GifIOException {
+		final GifInfoHandle handle = new GifInfoHandle();
+		handle.gifInfoPtr = openPushBuffer(pushBufferPtr);
+		return handle;
 	}
 
-	static native long openNativeFileDescriptor(int fd, long offset) throws GifIOException;
+	static native long openNativeFileDescriptor(int fd, long offset, boolean isMetadataLazy) throws GifIOException;
 
 	static native int extractNativeFileDescriptor(FileDescriptor fileDescriptor, boolean closeOriginalDescriptor) throws GifIOException;
 
 	static native int createTempNativeFileDescriptor() throws GifIOException;
 
-	static native long openByteArray(byte[] bytes) throws GifIOException;
+	static native long openByteArray(byte[] bytes, boolean isMetadataLazy, boolean isCopiedToNativeMemory) throws GifIOException;
+
+	static native long openDirectByteBuffer(ByteBuffer buffer, boolean isMetadataLazy) throws GifIOException;
+
+	static native long openStream(InputStream stream, int chunkSize, long spillThreshold, String spillDirectory) throws GifIOException;
+
+	static native long openFile(String filePath, boolean isMetadataLazy) throws GifIOException;
+
+	static native long openPushBuffer(long pushBufferPtr) throws GifIOException;
+
+	static native long[] scanFileMetadata(String filePath) throws GifIOException;
 
-	static native long openDirectByteBuffer(ByteBuffer buffer) throws GifIOException;
+	static native long[] scanNativeFileDescriptorMetadata(int fd, long offset) throws GifIOException;
 
-	static native long openStream(InputStream stream) throws GifIOException;
+	static native long[] scanByteArrayMetadata(byte[] bytes) throws GifIOException;
 
-	static native long openFile(String filePath) throws GifIOException;
+	static native long[] scanDirectByteBufferMetadata(ByteBuffer buffer) throws GifIOException;
 
-	private static native long renderFrame(long gifFileInPtr, Bitmap frameBuffer);
+	static native long createPushBuffer(int initialCapacity);
+
+	static native void appendToPushBuffer(long pushBufferPtr, byte[] bytes, int offset, int length);
+
+	static native void finishPushBuffer(long pushBufferPtr);
+
+	static native void releasePushBuffer(long pushBufferPtr);
+
+	static native boolean isPushBufferOpenable(long pushBufferPtr);
+
+	private static native long renderFrame(long gifFileInPtr, Bitmap frameBuffer, int[] dirtyRect);
 
 	private static native void bindSurface(long gifInfoPtr, Surface surface, long[] savedState);
 
@@ -173,7 +268,25 @@ final class GifInfoHandle {
 
 	private static native int getFrameDuration(long gifInfoPtr, int index);
 
-	private static native void setOptions(long gifInfoPtr, char sampleSize, boolean isOpaque);
+	private static native void setOptions(long gifInfoPtr, char sampleSize, boolean isOpaque, long checkpointCacheSize,
+										  int checkpointInterval, long frameCacheSize, boolean isFrameCacheIndexed,
+										  boolean isFrameCacheShared, boolean isFastLzwDecoder, int targetWidth, int targetHeight,
+										  int cropLeft, int cropTop, int cropRight, int cropBottom,
+										  boolean isRgb565, boolean isRgb565Dithered);
+
+	private static native int getCheckpointCacheHitCount(long gifInfoPtr);
+
+	private static native int getCheckpointCacheMissCount(long gifInfoPtr);
+
+	private static native boolean warmUpFrameCache(long gifInfoPtr, int threadCount);
+
+	static native void setSharedFrameCacheMaxSize(long maxSize);
+
+	static native long getSharedFrameCacheMaxSize();
+
+	static native long getSharedFrameCacheSize();
+
+	static native void trimSharedFrameCache(long size);
 
 	private static native int getWidth(long gifFileInPtr);
 
@@ -181,8 +294,18 @@ final class GifInfoHandle {
 
 	private static native int getNumberOfFrames(long gifInfoPtr);
 
+	private static native boolean isMetadataComplete(long gifInfoPtr);
+
+	private static native boolean scanMetadata(long gifInfoPtr, int frameCount);
+
+	private static native byte[] exportMetadata(long gifInfoPtr);
+
+	private static native boolean importMetadata(long gifInfoPtr, byte[] sidecar);
+
 	private static native boolean isOpaque(long gifInfoPtr);
 
+	private static native boolean isRgb565(long gifInfoPtr);
+
 	private static native void startDecoderThread(long gifInfoPtr);
 
 	private static native void stopDecoderThread(long gifInfoPtr);
@@ -195,8 +318,8 @@ final class GifInfoHandle {
 
 	private static native void initTexImageDescriptor(long gifInfoPtr);
 
-	synchronized long renderFrame(Bitmap frameBuffer) {
-		return renderFrame(gifInfoPtr, frameBuffer);
+	synchronized long renderFrame(Bitmap frameBuffer, int[] dirtyRect) {
+		return renderFrame(gifInfoPtr, frameBuffer, dirtyRect);
 	}
 
 	void bindSurface(Surface surface, long[] savedState) {
@@ -325,7 +448,32 @@ final class GifInfoHandle {
 	}
 
 	void setOptions(char sampleSize, boolean isOpaque) {
-		setOptions(gifInfoPtr, sampleSize, isOpaque);
+		setOptions(gifInfoPtr, sampleSize, isOpaque, 0, 0, 0, false, false, true, 0, 0, 0, 0, 0, 0, false, false);
+	}
+
+	void setOptions(@NonNull GifOptions options) {
+		setOptions(gifInfoPtr, options.inSampleSize, options.inIsOpaque, options.inCheckpointCacheSize,
+				options.inCheckpointInterval, options.inFrameCacheSize, options.inFrameCacheIndexed,
+				options.inFrameCacheShared, options.inFastLzwDecoder, options.inTargetWidth, options.inTargetHeight,
+				options.inCropLeft, options.inCropTop, options.inCropRight, options.inCropBottom,
+				options.inPreferredConfig == Bitmap.Config.RGB_565, options.inDither);
+	}
+
+	synchronized int getCheckpointCacheHitCount() {
+		return getCheckpointCacheHitCount(gifInfoPtr);
+	}
+
+	synchronized int getCheckpointCacheMissCount() {
+		return getCheckpointCacheMissCount(gifInfoPtr);
+	}
+
+	boolean warmUpFrameCache(@IntRange(from = 1) final int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count is not positive");
+		}
+		synchronized (this) {
+			return warmUpFrameCache(gifInfoPtr, threadCount);
+		}
 	}
 
 	synchronized int getWidth() {
@@ -340,10 +488,56 @@ final class GifInfoHandle {
 		return getNumberOfFrames(gifInfoPtr);
 	}
 
+	synchronized boolean isMetadataComplete() {
+		return isMetadataComplete(gifInfoPtr);
+	}
+
+	/**
+	 * Reads metadata of frames following the known ones, if handle has been opened lazily.
+	 *
+	 * @param frameCount maximum number of frames to read, 0 means all the remaining ones
+	 * @return true if metadata of all the frames is known
+	 */
+	synchronized boolean scanMetadata(@IntRange(from = 0) final int frameCount) {
+		return scanMetadata(gifInfoPtr, frameCount);
+	}
+
+	/**
+	 * Serializes metadata of all the frames, reading the remaining ones first if handle has been opened lazily.
+	 *
+	 * @return sidecar or null if source is not seekable or its length is unknown
+	 */
+	@Nullable
+	synchronized byte[] exportMetadata() {
+		return exportMetadata(gifInfoPtr);
+	}
+
+	/**
+	 * Replaces metadata read while opening lazily with the one exported earlier from the same source.
+	 * It must be called before {@link #setOptions(GifOptions)}.
+	 *
+	 * @param sidecar the result of {@link #exportMetadata()}
+	 * @return true if metadata has been imported, false if sidecar does not match the source
+	 */
+	synchronized boolean importMetadata(@NonNull final byte[] sidecar) {
+		return importMetadata(gifInfoPtr, sidecar);
+	}
+
 	synchronized boolean isOpaque() {
 		return isOpaque(gifInfoPtr);
 	}
 
+	synchronized boolean isRgb565() {
+		return isRgb565(gifInfoPtr);
+	}
+
+	/**
+	 * @return configuration of bitmaps frames are rendered onto
+	 */
+	Bitmap.Config getBitmapConfig() {
+		return isRgb565() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+	}
+
 	void glTexImage2D(int target, int level) {
 		glTexImage2D(gifInfoPtr, target, level);
 	}
@@ -370,7 +564,11 @@ final class GifInfoHandle {
 	}
 
 	private void throwIfFrameIndexOutOfBounds(@IntRange(from = 0) final int index) {
-		final int numberOfFrames = getNumberOfFrames(gifInfoPtr);
+		int numberOfFrames = getNumberOfFrames(gifInfoPtr);
+		if (index >= numberOfFrames && !isMetadataComplete(gifInfoPtr)) {
+			scanMetadata(gifInfoPtr, index + 1 - numberOfFrames);
+			numberOfFrames = getNumberOfFrames(gifInfoPtr);
+		}
 		if (index < 0 || index >= numberOfFrames) {
 			throw new IndexOutOfBoundsException("Frame index is not in range <0;" + numberOfFrames + '>');
 		}
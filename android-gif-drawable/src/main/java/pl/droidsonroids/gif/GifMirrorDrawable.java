@@ -0,0 +1,185 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+import pl.droidsonroids.gif.transforms.Transform;
+
+/**
+ * A lightweight {@link Drawable} showing frames of the source {@link GifDrawable}, intended for the same GIF displayed
+ * multiple times in sync, eg. stickers. Source decodes and schedules frames once for all of its mirrors, mirrors do not
+ * hold any native resources nor frame buffers. Each mirror has its own bounds, {@link Paint} and {@link Transform},
+ * so, unlike {@link MultiCallback}, the same animation can be displayed in differently sized {@link android.view.View}s.
+ * <p>
+ * Playback is controlled by the source, eg. {@link GifDrawable#stop()} stops all of its mirrors. Source does not need
+ * to be displayed itself, however rendering pauses while it is not visible, see {@link Drawable#setVisible(boolean, boolean)}.
+ * Nothing is drawn once the source is recycled. Mirrors are referenced weakly by the source.
+ */
+public class GifMirrorDrawable extends Drawable {
+
+	private final GifDrawable mSource;
+	private final Rect mDstRect = new Rect();
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+	private final Rect mDirtyBounds = new Rect();
+	private boolean mIsDirtyBoundsSet;
+	private Transform mTransform;
+
+	/**
+	 * Creates a mirror of the given drawable and starts following its frames.
+	 *
+	 * @param source drawable which decodes frames
+	 */
+	public GifMirrorDrawable(@NonNull GifDrawable source) {
+		mSource = source;
+		source.mMirrors.add(new WeakReference<>(this));
+	}
+
+	/**
+	 * @return drawable which decodes frames shown by this mirror
+	 */
+	@NonNull
+	public GifDrawable getSource() {
+		return mSource;
+	}
+
+	/**
+	 * Invalidates area of this drawable to which given area of the frame buffer is drawn,
+	 * see {@link GifDrawable#getDirtyBounds()}.
+	 *
+	 * @param frameRect area of the frame buffer changed by rendering or null to invalidate the whole drawable
+	 */
+	void invalidateFrameRect(@Nullable Rect frameRect) {
+		if (frameRect != null) {
+			mDirtyBounds.set(frameRect);
+			GifDrawable.mapDirtyRect(mDirtyBounds, mSource.mSrcRect, mDstRect, mTransform);
+			mIsDirtyBoundsSet = !mDirtyBounds.isEmpty();
+		}
+		invalidateSelf();
+		mIsDirtyBoundsSet = false;
+	}
+
+	/**
+	 * Returns the area changed by the newly rendered frame while the mirror is being invalidated because of
+	 * rendering of the source. Whole bounds are returned otherwise.
+	 *
+	 * @return the dirty bounds of this drawable
+	 */
+	@NonNull
+	@Override
+	public Rect getDirtyBounds() {
+		return mIsDirtyBoundsSet ? mDirtyBounds : super.getDirtyBounds();
+	}
+
+	@Override
+	protected void onBoundsChange(Rect bounds) {
+		mDstRect.set(bounds);
+		if (mTransform != null) {
+			mTransform.onBoundsChange(bounds);
+		}
+	}
+
+	/**
+	 * Draws the frame currently displayed by the source.
+	 *
+	 * @param canvas canvas to draw into
+	 */
+	@Override
+	public void draw(@NonNull Canvas canvas) {
+		if (mSource.isRecycled()) {
+			return;
+		}
+		final Bitmap frame = mSource.acquireFrame();
+		if (mTransform == null) {
+			canvas.drawBitmap(frame, mSource.mSrcRect, mDstRect, mPaint);
+		} else {
+			mTransform.onDraw(canvas, mPaint, frame);
+		}
+	}
+
+	@Override
+	public int getIntrinsicWidth() {
+		return mSource.getIntrinsicWidth();
+	}
+
+	@Override
+	public int getIntrinsicHeight() {
+		return mSource.getIntrinsicHeight();
+	}
+
+	@Override
+	public void setAlpha(@IntRange(from = 0, to = 255) int alpha) {
+		mPaint.setAlpha(alpha);
+	}
+
+	@Override
+	public int getAlpha() {
+		return mPaint.getAlpha();
+	}
+
+	@Override
+	public void setColorFilter(@Nullable ColorFilter cf) {
+		mPaint.setColorFilter(cf);
+	}
+
+	@Nullable
+	@Override
+	public ColorFilter getColorFilter() {
+		return mPaint.getColorFilter();
+	}
+
+	/**
+	 * See {@link Drawable#getOpacity()}
+	 *
+	 * @return either {@link PixelFormat#TRANSPARENT} or {@link PixelFormat#OPAQUE}
+	 * depending on current {@link Paint} and opacity of the source
+	 */
+	@SuppressWarnings("deprecation")
+	@Override
+	public int getOpacity() {
+		if (!mSource.mNativeInfoHandle.isOpaque() || mPaint.getAlpha() < 255) {
+			return PixelFormat.TRANSPARENT;
+		}
+		return PixelFormat.OPAQUE;
+	}
+
+	/**
+	 * @return the paint used to render this mirror
+	 */
+	@NonNull
+	public final Paint getPaint() {
+		return mPaint;
+	}
+
+	/**
+	 * Specify a {@link Transform} implementation to customize how the frame is drawn by this mirror.
+	 * Transform instances should not be shared with the source nor other mirrors.
+	 *
+	 * @param transform new {@link Transform} or null to remove current one
+	 */
+	public void setTransform(@Nullable Transform transform) {
+		mTransform = transform;
+		if (mTransform != null) {
+			mTransform.onBoundsChange(mDstRect);
+		}
+	}
+
+	/**
+	 * @return The current {@link Transform} implementation that customizes
+	 * how the frame is drawn by this mirror or null if nothing has been set.
+	 */
+	@Nullable
+	public Transform getTransform() {
+		return mTransform;
+	}
+}
@@ -1,5 +1,7 @@
 package pl.droidsonroids.gif;
 
+import android.graphics.Bitmap;
+
 import androidx.annotation.IntRange;
 import androidx.annotation.Nullable;
 
@@ -9,8 +11,27 @@ import androidx.annotation.Nullable;
  */
 public class GifOptions {
 
+	static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+
 	char inSampleSize;
 	boolean inIsOpaque;
+	long inCheckpointCacheSize;
+	int inCheckpointInterval;
+	long inFrameCacheSize;
+	boolean inFrameCacheIndexed;
+	boolean inFrameCacheShared;
+	boolean inFastLzwDecoder;
+	int inTargetWidth;
+	int inTargetHeight;
+	int inCropLeft;
+	int inCropTop;
+	int inCropRight;
+	int inCropBottom;
+	int inRenderAheadFrameCount;
+	Bitmap.Config inPreferredConfig;
+	boolean inDither;
+	boolean inLazyMetadata;
+	byte[] inMetadataSidecar;
 
 	public GifOptions() {
 		reset();
@@ -19,6 +40,23 @@ public class GifOptions {
 	private void reset() {
 		inSampleSize = 1;
 		inIsOpaque = false;
+		inCheckpointCacheSize = 0;
+		inCheckpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+		inFrameCacheSize = 0;
+		inFrameCacheIndexed = true;
+		inFrameCacheShared = false;
+		inFastLzwDecoder = true;
+		inTargetWidth = 0;
+		inTargetHeight = 0;
+		inCropLeft = 0;
+		inCropTop = 0;
+		inCropRight = 0;
+		inCropBottom = 0;
+		inRenderAheadFrameCount = 0;
+		inPreferredConfig = Bitmap.Config.ARGB_8888;
+		inDither = false;
+		inLazyMetadata = false;
+		inMetadataSidecar = null;
 	}
 
 	/**
@@ -59,12 +97,271 @@ public class GifOptions {
 		this.inIsOpaque = inIsOpaque;
 	}
 
+	/**
+	 * Sets the maximum number of bytes which can be used for canvas checkpoints. Checkpoint is a copy
+	 * of the fully composited frame, so backward seeks and saved state restores can continue from the
+	 * nearest checkpoint instead of decoding all the preceding frames again.
+	 * Checkpoints are taken every {@link #setInCheckpointInterval(int)} frames and on frames covering
+	 * the whole canvas, while frames are being rendered. If budget is exhausted the interval is doubled
+	 * and checkpoints which are not aligned to the new one are released.
+	 * <p>
+	 * Each checkpoint takes {@code width * height * 4} bytes, where dimensions are the ones after subsampling.
+	 * Default value is 0, which means that checkpoints are disabled.
+	 *
+	 * @param inCheckpointCacheSize checkpoint cache size in bytes
+	 * @see GifDrawable#getCheckpointCacheHitCount()
+	 */
+	public void setInCheckpointCacheSize(@IntRange(from = 0) long inCheckpointCacheSize) {
+		this.inCheckpointCacheSize = Math.max(0, inCheckpointCacheSize);
+	}
+
+	/**
+	 * Sets the number of frames between consecutive canvas checkpoints.
+	 * Values lower than 1 are treated as 1.
+	 * It has no effect unless {@link #setInCheckpointCacheSize(long)} is set to non-zero value.
+	 * Default value is {@value #DEFAULT_CHECKPOINT_INTERVAL}.
+	 *
+	 * @param inCheckpointInterval the checkpoint interval in frames
+	 */
+	public void setInCheckpointInterval(@IntRange(from = 1) int inCheckpointInterval) {
+		this.inCheckpointInterval = Math.max(1, inCheckpointInterval);
+	}
+
+	/**
+	 * Sets the maximum number of bytes which can be used to keep all the composited frames of the animation.
+	 * If all the frames fit, they are stored while the first loop is being played and subsequent loops
+	 * are rendered by copying stored frames, without decoding the source again.
+	 * Animations which do not fit are decoded on each loop as usual.
+	 * Useful for short looping animations like stickers.
+	 * <p>
+	 * Each frame takes {@code width * height} bytes, where dimensions are the ones after subsampling,
+	 * or 4 times more if frames are not indexed, see {@link #setInFrameCacheIndexed(boolean)}.
+	 * Default value is 0, which means that frames are not cached.
+	 *
+	 * @param inFrameCacheSize frame cache size in bytes
+	 */
+	public void setInFrameCacheSize(@IntRange(from = 0) long inFrameCacheSize) {
+		this.inFrameCacheSize = Math.max(0, inFrameCacheSize);
+	}
+
+	/**
+	 * Indicates whether frames kept in the frame cache are stored as 8-bit palette indices.
+	 * Such frames take 4 times less memory and are expanded to ARGB only when copied into the frame buffer.
+	 * Frames which need more than 256 colors are stored as ARGB anyway.
+	 * It has no effect unless {@link #setInFrameCacheSize(long)} is set to non-zero value.
+	 * Default value is {@code true}.
+	 *
+	 * @param inFrameCacheIndexed whether cached frames are stored as palette indices
+	 */
+	public void setInFrameCacheIndexed(boolean inFrameCacheIndexed) {
+		this.inFrameCacheIndexed = inFrameCacheIndexed;
+	}
+
+	/**
+	 * Indicates whether the frame cache is shared by all the GIFs having the same content and options affecting
+	 * composited frames, like sample size, crop rectangle and preferred config, eg. the same GIF shown in a list
+	 * and in a detail view. Frames are then decoded and stored only once, GIFs opened after all the frames
+	 * have been stored are rendered from the shared cache right from the start.
+	 * Content is identified by the 64-bit hash and the length of the whole source, computed synchronously while
+	 * applying the options, and by offsets of all the frames. So the whole source is read one more time before the first
+	 * frame is rendered, {@link InputSource.InputStreamSource} is drained completely (and spilled if its spill threshold
+	 * is exceeded) at that point. Sources which cannot seek to frames are not shared.
+	 * Pixels are not compared, so different GIFs would share frames only if their hashes collided and all their frames
+	 * were at the same offsets, which is deliberately accepted instead of comparing whole contents.
+	 * <p>
+	 * Complete caches are kept in the process-wide cache limited by {@link SharedFrameCache#setMaxSize(long)},
+	 * caches which are not used by any GIF anymore are evicted in least recently used order to fit it.
+	 * Cache which does not fit at all is used only by the GIF which has stored it.
+	 * It has no effect unless {@link #setInFrameCacheSize(long)} is set to non-zero value.
+	 * Default value is {@code false}.
+	 *
+	 * @param inFrameCacheShared whether frame cache is shared
+	 */
+	public void setInFrameCacheShared(boolean inFrameCacheShared) {
+		this.inFrameCacheShared = inFrameCacheShared;
+	}
+
+	/**
+	 * Indicates whether frames are decompressed using the fast LZW decoder, which keeps length and
+	 * the first pixel of each string and writes whole strings at once. Otherwise the original giflib
+	 * decoder is used. Both produce the same pixels, the original one can be used as a fallback.
+	 * Default value is {@code true}.
+	 *
+	 * @param inFastLzwDecoder whether the fast LZW decoder is used
+	 */
+	public void setInFastLzwDecoder(boolean inFastLzwDecoder) {
+		this.inFastLzwDecoder = inFastLzwDecoder;
+	}
+
+	/**
+	 * Requests the decoder to scale frames down to the given size. Unlike {@link #setInSampleSize(int)},
+	 * which skips pixels, each pixel of the frame buffer is an average of the area of the original image
+	 * it covers, so result is not aliased and any size can be requested. Frames are composited
+	 * in the original size (after subsampling if {@link #setInSampleSize(int)} is also used) onto
+	 * an additional internal buffer, so disposal is not affected, and scaled down afterwards.
+	 * Aspect ratio is not preserved, dimensions greater than the original ones are clamped
+	 * as images are never scaled up. Values lower than 1 disable scaling.
+	 * Default values are 0, which means that frames are not scaled.
+	 *
+	 * @param inTargetWidth  the width of the frame buffer
+	 * @param inTargetHeight the height of the frame buffer
+	 */
+	public void setInTargetSize(@IntRange(from = 1) int inTargetWidth, @IntRange(from = 1) int inTargetHeight) {
+		if (inTargetWidth < 1 || inTargetHeight < 1) {
+			this.inTargetWidth = 0;
+			this.inTargetHeight = 0;
+		} else {
+			this.inTargetWidth = inTargetWidth;
+			this.inTargetHeight = inTargetHeight;
+		}
+	}
+
+	/**
+	 * Requests the decoder to produce only the given rectangle of the image, like
+	 * {@link android.graphics.BitmapRegionDecoder} does. Frame buffer and all the other buffers sized after
+	 * the canvas are allocated only for the rectangle and only parts of the frames intersecting it are drawn.
+	 * Coordinates are in pixels of the original image, rectangle is scaled accordingly if
+	 * {@link #setInSampleSize(int)} is also used and then scaled to {@link #setInTargetSize(int, int)} if set.
+	 * Rectangle is clamped to the image bounds, it is ignored if it does not intersect the image.
+	 * Empty rectangle or negative coordinates disable cropping.
+	 * Default values are 0, which means that frames are not cropped.
+	 *
+	 * @param inCropLeft   the left edge of the rectangle, inclusive
+	 * @param inCropTop    the top edge of the rectangle, inclusive
+	 * @param inCropRight  the right edge of the rectangle, exclusive
+	 * @param inCropBottom the bottom edge of the rectangle, exclusive
+	 */
+	public void setInCropRect(@IntRange(from = 0) int inCropLeft, @IntRange(from = 0) int inCropTop,
+	                          @IntRange(from = 1) int inCropRight, @IntRange(from = 1) int inCropBottom) {
+		if (inCropLeft < 0 || inCropTop < 0 || inCropRight <= inCropLeft || inCropBottom <= inCropTop) {
+			this.inCropLeft = 0;
+			this.inCropTop = 0;
+			this.inCropRight = 0;
+			this.inCropBottom = 0;
+		} else {
+			this.inCropLeft = inCropLeft;
+			this.inCropTop = inCropTop;
+			this.inCropRight = inCropRight;
+			this.inCropBottom = inCropBottom;
+		}
+	}
+
+	/**
+	 * Sets the number of frames {@link GifDrawable} renders ahead of their presentation time. Each of them is
+	 * rendered as usual, copied into its own bitmap and displayed when it is due, so the bitmap being drawn
+	 * is never written to and frames which take longer to decode than their duration do not delay the animation
+	 * as long as there are frames rendered in advance. Rendering is no longer triggered by drawing,
+	 * see {@link GifDrawableBuilder#renderingTriggeredOnDraw(boolean)}, it stops when all the bitmaps are taken
+	 * and resumes when frames are drawn.
+	 * <p>
+	 * Each frame takes the same amount of memory as the frame buffer, one more is needed for the displayed frame.
+	 * It has no effect on views other than {@link GifDrawable} and on single frame images.
+	 * Default value is 0, which means that frames are rendered straight into the frame buffer.
+	 *
+	 * @param inRenderAheadFrameCount number of frames rendered ahead
+	 * @see GifDrawable#getRenderAheadFrameCount()
+	 * @see GifDrawable#getRenderAheadUnderrunCount()
+	 */
+	public void setInRenderAheadFrameCount(@IntRange(from = 0) int inRenderAheadFrameCount) {
+		this.inRenderAheadFrameCount = Math.max(0, inRenderAheadFrameCount);
+	}
+
+	/**
+	 * Sets the configuration of the frame buffer, like
+	 * {@link android.graphics.BitmapFactory.Options#inPreferredConfig} does. Only {@link Bitmap.Config#ARGB_8888}
+	 * and {@link Bitmap.Config#RGB_565} are supported, other values are treated as {@link Bitmap.Config#ARGB_8888}.
+	 * <p>
+	 * {@link Bitmap.Config#RGB_565} frame buffer takes half of the memory, frames are composited straight onto it
+	 * using palettes converted to 16 bits beforehand, so are the checkpoints and cached frames, which are never indexed.
+	 * There is no alpha channel, so it takes effect only if {@link #setInIsOpaque(boolean)} is set as well,
+	 * transparent areas which are not covered by previous frames appear black then. Otherwise, GIFs which
+	 * may have transparent areas fall back to {@link Bitmap.Config#ARGB_8888}.
+	 * It applies to {@link GifDrawable}, {@link GifDecoder} and {@link GifTexImage2D}, which uploads
+	 * {@code GL_UNSIGNED_SHORT_5_6_5} textures in such case.
+	 * Default value is {@link Bitmap.Config#ARGB_8888}.
+	 *
+	 * @param inPreferredConfig the frame buffer configuration
+	 * @see #setInDither(boolean)
+	 */
+	public void setInPreferredConfig(@Nullable Bitmap.Config inPreferredConfig) {
+		this.inPreferredConfig = inPreferredConfig == Bitmap.Config.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+	}
+
+	/**
+	 * Indicates whether colors are dithered with a 4x4 ordered dither matrix when they are reduced to 16 bits,
+	 * like {@link android.graphics.BitmapFactory.Options#inDither} does. Dithering hides banding of smooth gradients,
+	 * pattern is fixed to the canvas so it does not flicker between frames. Otherwise colors are rounded to nearest.
+	 * It has no effect unless {@link #setInPreferredConfig(Bitmap.Config)} is set to {@link Bitmap.Config#RGB_565}.
+	 * Default value is {@code false}.
+	 *
+	 * @param inDither whether colors are dithered
+	 */
+	public void setInDither(boolean inDither) {
+		this.inDither = inDither;
+	}
+
+	/**
+	 * Indicates whether only the beginning of the source, up to the second frame, is read when it is opened.
+	 * Otherwise all the frames are read upfront to collect their durations, disposal methods and positions,
+	 * which delays showing the first frame of long animations. Metadata of the remaining frames is read
+	 * incrementally in the background by {@link GifDrawable} and on demand when frames are played or seeked to,
+	 * so {@link GifDrawable#getNumberOfFrames()}, {@link GifDrawable#getDuration()} and similar values may grow
+	 * until {@link GifDrawable#isMetadataComplete()} returns {@code true}.
+	 * <p>
+	 * It has no effect on sources which cannot be seeked, like {@link InputSource.InputStreamSource},
+	 * and if {@link #setInCheckpointCacheSize(long)} or {@link #setInFrameCacheSize(long)} is set to non-zero value,
+	 * as caches need all the frames to be known. It applies to {@link GifDrawable} and {@link GifDecoder}.
+	 * Default value is {@code false}.
+	 *
+	 * @param inLazyMetadata whether metadata of frames is read lazily
+	 */
+	public void setInLazyMetadata(boolean inLazyMetadata) {
+		this.inLazyMetadata = inLazyMetadata;
+	}
+
+	/**
+	 * Sets metadata of all the frames exported earlier by {@link GifDrawable#getMetadataSidecar()}
+	 * or {@link GifDecoder#getMetadataSidecar()}, so the source is opened like with {@link #setInLazyMetadata(boolean)}
+	 * but the remaining frames do not have to be read at all. Useful for GIFs displayed repeatedly, like items
+	 * of a list, sidecar can be kept in memory or on disk next to the cached file.
+	 * <p>
+	 * Sidecar is verified against the source length, logical screen and the frames read while opening.
+	 * If it does not match, it is ignored and metadata is read as if it was not set.
+	 * Frame descriptors are verified again when frames are decoded, frames which do not match are not drawn.
+	 * Sidecar does not depend on the other options, eg. the one exported with {@link #setInSampleSize(int)} set
+	 * can be used without it. It has no effect on sources which cannot be seeked or whose length is unknown,
+	 * like {@link InputSource.InputStreamSource} and {@link InputSource.PushSource}.
+	 * Default value is {@code null}.
+	 *
+	 * @param inMetadataSidecar the sidecar, not copied
+	 */
+	public void setInMetadataSidecar(@Nullable byte[] inMetadataSidecar) {
+		this.inMetadataSidecar = inMetadataSidecar;
+	}
+
 	void setFrom(@Nullable GifOptions source) {
 		if (source == null) {
 			reset();
 		} else {
 			inIsOpaque = source.inIsOpaque;
 			inSampleSize = source.inSampleSize;
+			inCheckpointCacheSize = source.inCheckpointCacheSize;
+			inCheckpointInterval = source.inCheckpointInterval;
+			inFrameCacheSize = source.inFrameCacheSize;
+			inFrameCacheIndexed = source.inFrameCacheIndexed;
+			inFrameCacheShared = source.inFrameCacheShared;
+			inFastLzwDecoder = source.inFastLzwDecoder;
+			inTargetWidth = source.inTargetWidth;
+			inTargetHeight = source.inTargetHeight;
+			inCropLeft = source.inCropLeft;
+			inCropTop = source.inCropTop;
+			inCropRight = source.inCropRight;
+			inCropBottom = source.inCropBottom;
+			inRenderAheadFrameCount = source.inRenderAheadFrameCount;
+			inPreferredConfig = source.inPreferredConfig;
+			inDither = source.inDither;
+			inLazyMetadata = source.inLazyMetadata;
+			inMetadataSidecar = source.inMetadataSidecar;
 		}
 	}
 }
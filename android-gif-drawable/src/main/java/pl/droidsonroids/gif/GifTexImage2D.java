@@ -35,7 +35,7 @@ public class GifTexImage2D {
 			options = new GifOptions();
 		}
 		mGifInfoHandle = inputSource.open();
-		mGifInfoHandle.setOptions(options.inSampleSize, options.inIsOpaque);
+		mGifInfoHandle.setOptions(options);
 		mGifInfoHandle.initTexImageDescriptor();
 	}
 
@@ -6,6 +6,7 @@ import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.net.Uri;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
@@ -14,6 +15,7 @@ import java.nio.ByteBuffer;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import androidx.annotation.DrawableRes;
+import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RawRes;
@@ -25,17 +27,28 @@ public abstract class InputSource {
 	private InputSource() {
 	}
 
-	abstract GifInfoHandle open() throws IOException;
+	final GifInfoHandle open() throws IOException {
+		return open(false);
+	}
+
+	/**
+	 * @param isMetadataLazy whether only the beginning of the source is read while opening,
+	 *                       ignored if source is not seekable
+	 */
+	abstract GifInfoHandle open(boolean isMetadataLazy) throws IOException;
 
 	final GifDrawable createGifDrawable(final GifDrawable oldDrawable, final ScheduledThreadPoolExecutor executor,
 										final boolean isRenderingAlwaysEnabled, final GifOptions options) throws IOException {
 
-		return new GifDrawable(createHandleWith(options), oldDrawable, executor, isRenderingAlwaysEnabled);
+		return new GifDrawable(createHandleWith(options), oldDrawable, executor, isRenderingAlwaysEnabled, options.inRenderAheadFrameCount);
 	}
 
 	final GifInfoHandle createHandleWith(@NonNull GifOptions options) throws IOException {
-		final GifInfoHandle handle = open();
-		handle.setOptions(options.inSampleSize, options.inIsOpaque);
+		final GifInfoHandle handle = open(options.inLazyMetadata || options.inMetadataSidecar != null);
+		if (options.inMetadataSidecar != null && !handle.importMetadata(options.inMetadataSidecar) && !options.inLazyMetadata) {
+			handle.scanMetadata(0);
+		}
+		handle.setOptions(options);
 		return handle;
 	}
 
@@ -56,8 +69,8 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws GifIOException {
-			return new GifInfoHandle(byteBuffer);
+		GifInfoHandle open(boolean isMetadataLazy) throws GifIOException {
+			return new GifInfoHandle(byteBuffer, isMetadataLazy);
 		}
 	}
 
@@ -66,25 +79,48 @@ public abstract class InputSource {
 	 */
 	public static final class ByteArraySource extends InputSource {
 		private final byte[] bytes;
+		private final boolean isCopiedToNativeMemory;
 
 		/**
 		 * Constructs new source.
 		 * Array can be larger than size of the GIF data. Bytes beyond GIF terminator are not accessed.
+		 * Equivalent of {@link #ByteArraySource(byte[], boolean)} with {@code false}.
 		 *
 		 * @param bytes source array
 		 */
 		public ByteArraySource(@NonNull byte[] bytes) {
+			this(bytes, false);
+		}
+
+		/**
+		 * Constructs new source.
+		 * Array can be larger than size of the GIF data. Bytes beyond GIF terminator are not accessed.
+		 * <p>
+		 * If {@code isCopiedToNativeMemory} is true, the whole array is copied into native memory once while opening
+		 * and the array is not referenced afterwards, so decoding does not access Java heap at all.
+		 * Otherwise array is referenced until the source is recycled and its consecutive parts are copied into
+		 * a small native window as frames are decoded, which keeps memory usage lower at the cost of a JNI call
+		 * each time a window is refilled, for every loop of the animation.
+		 *
+		 * @param bytes                  source array
+		 * @param isCopiedToNativeMemory whether the whole array is copied into native memory while opening
+		 */
+		public ByteArraySource(@NonNull byte[] bytes, boolean isCopiedToNativeMemory) {
 			this.bytes = bytes;
+			this.isCopiedToNativeMemory = isCopiedToNativeMemory;
 		}
 
 		@Override
-		GifInfoHandle open() throws GifIOException {
-			return new GifInfoHandle(bytes);
+		GifInfoHandle open(boolean isMetadataLazy) throws GifIOException {
+			return new GifInfoHandle(bytes, isMetadataLazy, isCopiedToNativeMemory);
 		}
 	}
 
 	/**
 	 * Input using {@link File} or path as source.
+	 * Regular files are memory mapped, mapping is shared by all the GIFs opened from the same file
+	 * and released when the last of them is recycled. File must not be truncated while mapped,
+	 * replacing or deleting it is fine. Other files are read using stdio.
 	 */
 	public static final class FileSource extends InputSource {
 		private final String mPath;
@@ -108,8 +144,8 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws GifIOException {
-			return new GifInfoHandle(mPath);
+		GifInfoHandle open(boolean isMetadataLazy) throws GifIOException {
+			return new GifInfoHandle(mPath, isMetadataLazy);
 		}
 	}
 
@@ -132,8 +168,8 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws IOException {
-			return GifInfoHandle.openUri(mContentResolver, mUri);
+		GifInfoHandle open(boolean isMetadataLazy) throws IOException {
+			return GifInfoHandle.openUri(mContentResolver, mUri, isMetadataLazy);
 		}
 	}
 
@@ -156,13 +192,14 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws IOException {
-			return new GifInfoHandle(mAssetManager.openFd(mAssetName));
+		GifInfoHandle open(boolean isMetadataLazy) throws IOException {
+			return new GifInfoHandle(mAssetManager.openFd(mAssetName), isMetadataLazy);
 		}
 	}
 
 	/**
 	 * Input using {@link FileDescriptor} as a source.
+	 * Regular files are memory mapped, see {@link FileSource}.
 	 */
 	public static final class FileDescriptorSource extends InputSource {
 		private final FileDescriptor mFd;
@@ -177,29 +214,173 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws IOException {
-			return new GifInfoHandle(mFd);
+		GifInfoHandle open(boolean isMetadataLazy) throws IOException {
+			return new GifInfoHandle(mFd, isMetadataLazy);
 		}
 	}
 
 	/**
 	 * Input using {@link InputStream} as a source.
+	 * Stream is read in chunks and each byte is read only once, subsequent loops and seeks are served from the native copy,
+	 * so stream does not need to support marking. Copy is kept in memory unless spill threshold is set, bytes above
+	 * the threshold are stored in a temporary file in {@code java.io.tmpdir}. File is unlinked as soon as it is created,
+	 * so it has no name and its space is freed when the {@link GifDrawable} or other object opened from this source is recycled.
 	 */
 	public static final class InputStreamSource extends InputSource {
+		static final int DEFAULT_CHUNK_SIZE = 65536;
 		private final InputStream inputStream;
+		private final int chunkSize;
+		private final long spillThreshold;
 
 		/**
-		 * Constructs new source.
+		 * Constructs new source reading stream in chunks of default size and keeping all the bytes in memory.
 		 *
-		 * @param inputStream source input stream, it must support marking
+		 * @param inputStream source input stream
 		 */
 		public InputStreamSource(@NonNull InputStream inputStream) {
+			this(inputStream, DEFAULT_CHUNK_SIZE, 0);
+		}
+
+		/**
+		 * Constructs new source.
+		 *
+		 * @param inputStream    source input stream
+		 * @param chunkSize      number of bytes requested from the stream at once, values below 4096 are rounded up
+		 * @param spillThreshold number of bytes kept in memory, the following ones are stored in a temporary file,
+		 *                       0 means that all the bytes are kept in memory
+		 * @throws IllegalArgumentException if spillThreshold is negative
+		 */
+		public InputStreamSource(@NonNull InputStream inputStream, int chunkSize, long spillThreshold) {
+			if (spillThreshold < 0) {
+				throw new IllegalArgumentException("Spill threshold is negative");
+			}
 			this.inputStream = inputStream;
+			this.chunkSize = chunkSize;
+			this.spillThreshold = spillThreshold;
+		}
+
+		@Override
+		GifInfoHandle open(boolean isMetadataLazy) throws IOException {
+			return new GifInfoHandle(inputStream, chunkSize, spillThreshold);
+		}
+	}
+
+	/**
+	 * Input using bytes appended over time as a source, for example while GIF is being downloaded.
+	 * Bytes are copied into a native buffer growing as needed. Frames which have arrived completely are played
+	 * and animation waits at the last one until the next one arrives, instead of failing. Metadata like number
+	 * of frames and duration grows accordingly, see {@link GifDrawable#isMetadataComplete()}. Animation loops
+	 * after {@link #finish()} is called, when the end of data is known.
+	 * <p>
+	 * Source can be opened as soon as the header and the first frame have arrived,
+	 * see {@link #isFirstFrameAvailable()}. It can be opened several times, all the handles share the buffer.
+	 * Bytes can be appended from any thread.
+	 * It can be used with {@link GifDrawable}, {@link GifDecoder}, {@link GifTextureView} and {@link GifTexImage2D},
+	 * frame and checkpoint caches are disabled until all the data is appended.
+	 * <p>
+	 * Source holds a native buffer, which has to be released by {@link #close()} when no more bytes are going
+	 * to be appended and no more handles are going to be opened, e.g. after the download finishes or fails.
+	 * Handles already opened keep playing the frames which have arrived until they are recycled.
+	 */
+	public static final class PushSource extends InputSource implements Closeable {
+		private long mPushBufferPtr;
+		private boolean mIsFinished;
+
+		/**
+		 * Constructs new empty source.
+		 */
+		public PushSource() {
+			this(0);
+		}
+
+		/**
+		 * Constructs new empty source.
+		 *
+		 * @param initialCapacity expected size of the data in bytes, e.g. Content-Length of the download
+		 */
+		public PushSource(@IntRange(from = 0) int initialCapacity) {
+			mPushBufferPtr = GifInfoHandle.createPushBuffer(initialCapacity);
+		}
+
+		/**
+		 * Appends bytes to the end of the data.
+		 *
+		 * @param bytes  array containing bytes to be appended
+		 * @param offset offset of the first byte in the array
+		 * @param length number of bytes
+		 * @throws IndexOutOfBoundsException if range is not within the array
+		 * @throws IllegalStateException     if source has been finished or closed
+		 */
+		public synchronized void append(@NonNull byte[] bytes, int offset, int length) {
+			if (offset < 0 || length < 0 || offset > bytes.length - length) {
+				throw new IndexOutOfBoundsException("Range is not within the array");
+			}
+			throwIfNotAppendable();
+			GifInfoHandle.appendToPushBuffer(mPushBufferPtr, bytes, offset, length);
+		}
+
+		/**
+		 * Appends all the bytes from the array to the end of the data.
+		 *
+		 * @param bytes bytes to be appended
+		 * @throws IllegalStateException if source has been finished or closed
+		 */
+		public void append(@NonNull byte[] bytes) {
+			append(bytes, 0, bytes.length);
+		}
+
+		/**
+		 * Marks the end of data. No more bytes can be appended then.
+		 * Animation continues from the last frame which has arrived, loops if needed.
+		 * If data is truncated, animation is played as if it was a complete file.
+		 * This method is idempotent.
+		 */
+		public synchronized void finish() {
+			if (mIsFinished || mPushBufferPtr == 0) {
+				return;
+			}
+			mIsFinished = true;
+			GifInfoHandle.finishPushBuffer(mPushBufferPtr);
+		}
+
+		/**
+		 * @return true if the header and the first frame have arrived or {@link #finish()} has been called,
+		 * so source can be opened
+		 */
+		public synchronized boolean isFirstFrameAvailable() {
+			return mPushBufferPtr != 0 && GifInfoHandle.isPushBufferOpenable(mPushBufferPtr);
+		}
+
+		/**
+		 * Releases the native buffer held by this source. Handles already opened keep it until they are recycled,
+		 * the buffer is freed when the last of them is recycled. Source cannot be appended to or opened afterwards.
+		 * It implies {@link #finish()}, so handles do not wait for the frames which are never going to arrive.
+		 * This method is idempotent.
+		 */
+		@Override
+		public synchronized void close() {
+			finish();
+			if (mPushBufferPtr != 0) {
+				GifInfoHandle.releasePushBuffer(mPushBufferPtr);
+				mPushBufferPtr = 0;
+			}
+		}
+
+		private void throwIfNotAppendable() {
+			if (mPushBufferPtr == 0) {
+				throw new IllegalStateException("Source is closed");
+			}
+			if (mIsFinished) {
+				throw new IllegalStateException("Source is finished");
+			}
 		}
 
 		@Override
-		GifInfoHandle open() throws IOException {
-			return new GifInfoHandle(inputStream);
+		synchronized GifInfoHandle open(boolean isMetadataLazy) throws GifIOException {
+			if (mPushBufferPtr == 0) {
+				throw new IllegalStateException("Source is closed");
+			}
+			return GifInfoHandle.fromPushBuffer(mPushBufferPtr);
 		}
 	}
 
@@ -222,8 +403,8 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws IOException {
-			return new GifInfoHandle(mResources.openRawResourceFd(mResourceId));
+		GifInfoHandle open(boolean isMetadataLazy) throws IOException {
+			return new GifInfoHandle(mResources.openRawResourceFd(mResourceId), isMetadataLazy);
 		}
 	}
 
@@ -243,8 +424,8 @@ public abstract class InputSource {
 		}
 
 		@Override
-		GifInfoHandle open() throws IOException {
-			return new GifInfoHandle(mAssetFileDescriptor);
+		GifInfoHandle open(boolean isMetadataLazy) throws IOException {
+			return new GifInfoHandle(mAssetFileDescriptor, isMetadataLazy);
 		}
 	}
 
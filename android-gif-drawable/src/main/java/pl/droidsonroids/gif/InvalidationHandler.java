@@ -11,6 +11,7 @@ import java.lang.ref.WeakReference;
 class InvalidationHandler extends Handler {
 
 	static final int MSG_TYPE_INVALIDATION = -1;
+	static final int MSG_TYPE_FRAME_INVALIDATION = -2;
 
 	private final WeakReference<GifDrawable> mDrawableRef;
 
@@ -27,6 +28,8 @@ class InvalidationHandler extends Handler {
 		}
 		if (msg.what == MSG_TYPE_INVALIDATION) {
 			gifDrawable.invalidateSelf();
+		} else if (msg.what == MSG_TYPE_FRAME_INVALIDATION) {
+			gifDrawable.invalidateDirtyRect();
 		} else {
 			for (AnimationListener listener : gifDrawable.mListeners) {
 				listener.onAnimationCompleted(msg.what);
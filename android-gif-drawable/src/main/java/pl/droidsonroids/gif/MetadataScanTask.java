@@ -0,0 +1,60 @@
+package pl.droidsonroids.gif;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads metadata of frames of lazily opened GIF in small steps, so rendering tasks scheduled
+ * on the same executor are not delayed until the whole source is read. If no frames could be read,
+ * because data of {@link InputSource.PushSource} has not arrived yet, next step is delayed.
+ * Scanning continues only while the drawable is running and visible, otherwise polling would keep
+ * the drawable referenced by the executor indefinitely. It is scheduled again when the drawable is started
+ * or becomes visible.
+ */
+class MetadataScanTask extends SafeRunnable {
+
+	private static final int FRAMES_PER_STEP = 16;
+	private static final long POLL_INTERVAL_MILLIS = 100;
+	private ScheduledFuture<?> mSchedule;
+
+	MetadataScanTask(GifDrawable gifDrawable) {
+		super(gifDrawable);
+	}
+
+	@Override
+	void doWork() {
+		if (!isScanNeeded()) {
+			return;
+		}
+		final GifInfoHandle handle = mGifDrawable.mNativeInfoHandle;
+		final int previousFrameCount = handle.getNumberOfFrames();
+		if (handle.scanMetadata(FRAMES_PER_STEP)) {
+			return;
+		}
+		schedule(handle.getNumberOfFrames() > previousFrameCount ? 0 : POLL_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Schedules the next step unless metadata is complete or the drawable is stopped or invisible.
+	 * Previously scheduled step is replaced.
+	 *
+	 * @param delay delay in milliseconds
+	 */
+	synchronized void schedule(long delay) {
+		cancel();
+		if (isScanNeeded()) {
+			mSchedule = mGifDrawable.mExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	synchronized void cancel() {
+		if (mSchedule != null) {
+			mSchedule.cancel(false);
+			mSchedule = null;
+		}
+	}
+
+	private boolean isScanNeeded() {
+		return mGifDrawable.mIsRunning && mGifDrawable.isVisible() && !mGifDrawable.mNativeInfoHandle.isMetadataComplete();
+	}
+}
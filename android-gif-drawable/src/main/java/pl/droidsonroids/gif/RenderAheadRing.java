@@ -0,0 +1,260 @@
+package pl.droidsonroids.gif;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.os.Build;
+
+/**
+ * Ring of frame buffers holding frames rendered ahead of their presentation time.
+ * Frames are rendered onto the frame buffer of {@link GifDrawable} as usual, then copied into a free slot
+ * and queued with their presentation times. Queued frames are published when they are due and picked up
+ * by the next draw. Only then the previously drawn slot can be reused, so slot being drawn is never written to.
+ */
+final class RenderAheadRing {
+	private final Bitmap[] mSlots;
+	private final Canvas[] mSlotCanvases;
+	private final boolean[] mIsSlotUsed;
+	private final long[] mPresentationTimes;
+	private final int[] mFrameIndices;
+	private final int[][] mDirtyRects;
+	private final int[] mQueue;
+	private final Paint mCopyPaint = new Paint();
+	private int mQueueHead;
+	private int mQueueSize;
+	private int mPublishedCount;
+	private volatile int mDisplayedSlot = -1;
+	private long mNextPresentationTime = Long.MIN_VALUE;
+	private long mPauseTime = Long.MIN_VALUE;
+	private float mSpeedFactor = 1f;
+	private boolean mIsUnderrunCounted;
+	private int mUnderrunCount;
+
+	/**
+	 * @param frameBuffer frame buffer frames are rendered onto, slots have the same dimensions and configuration
+	 * @param frameCount  number of frames which can be rendered ahead of the displayed one
+	 */
+	RenderAheadRing(Bitmap frameBuffer, int frameCount) {
+		final int slotCount = frameCount + 1;
+		mSlots = new Bitmap[slotCount];
+		mSlotCanvases = new Canvas[slotCount];
+		mIsSlotUsed = new boolean[slotCount];
+		mPresentationTimes = new long[slotCount];
+		mFrameIndices = new int[slotCount];
+		mDirtyRects = new int[slotCount][4];
+		mQueue = new int[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			mSlots[i] = Bitmap.createBitmap(frameBuffer.getWidth(), frameBuffer.getHeight(), frameBuffer.getConfig());
+			mSlots[i].setHasAlpha(frameBuffer.hasAlpha());
+			mSlotCanvases[i] = new Canvas(mSlots[i]);
+		}
+		mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+	}
+
+	synchronized void setSpeedFactor(float speedFactor) {
+		mSpeedFactor = speedFactor;
+	}
+
+	synchronized boolean hasFreeSlot() {
+		return findFreeSlot() >= 0;
+	}
+
+	private int findFreeSlot() {
+		for (int i = 0; i < mIsSlotUsed.length; i++) {
+			if (!mIsSlotUsed[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies frame buffer into a free slot and queues it right after the previously queued frame.
+	 * Frame which is ready later than it should be presented is presented immediately and the following ones
+	 * are delayed accordingly. The very first frame is displayed without waiting for publishing.
+	 *
+	 * @param frameBuffer   frame buffer containing rendered frame
+	 * @param dirtyRect     area of the frame buffer changed since the previous frame
+	 * @param frameIndex    index of the rendered frame
+	 * @param frameDuration duration of the rendered frame in milliseconds, before applying the speed factor
+	 * @param now           current time in {@link android.os.SystemClock#uptimeMillis()} time base
+	 * @return presentation time of the frame or {@link Long#MIN_VALUE} if there is no free slot
+	 */
+	synchronized long offer(Bitmap frameBuffer, int[] dirtyRect, int frameIndex, int frameDuration, long now) {
+		final int slot = findFreeSlot();
+		if (slot < 0) {
+			return Long.MIN_VALUE;
+		}
+		mSlotCanvases[slot].drawBitmap(frameBuffer, 0, 0, mCopyPaint);
+		mIsSlotUsed[slot] = true;
+		mFrameIndices[slot] = frameIndex;
+		System.arraycopy(dirtyRect, 0, mDirtyRects[slot], 0, 4);
+		final long presentationTime = Math.max(mNextPresentationTime, now);
+		mPresentationTimes[slot] = presentationTime;
+		mNextPresentationTime = presentationTime + (long) (frameDuration / mSpeedFactor);
+		mIsUnderrunCounted = false;
+		if (mDisplayedSlot < 0) {
+			mDisplayedSlot = slot;
+		} else {
+			mQueue[(mQueueHead + mQueueSize) % mQueue.length] = slot;
+			mQueueSize++;
+		}
+		return presentationTime;
+	}
+
+	/**
+	 * @return presentation time of the frame following the last queued one
+	 */
+	synchronized long getNextPresentationTime() {
+		return mNextPresentationTime;
+	}
+
+	/**
+	 * Publishes all the queued frames which are due, so the newest one of them is picked up by the next draw.
+	 * Dirty rectangles of published frames are added to the drawable. Underrun is counted if the next frame
+	 * is due but it has not been rendered yet although there was a free slot for it.
+	 *
+	 * @param drawable  drawable to add dirty rectangles to
+	 * @param now       current time in {@link android.os.SystemClock#uptimeMillis()} time base
+	 * @param isRunning whether more frames are going to be rendered
+	 * @return time when this method should be called again or {@link Long#MIN_VALUE} if it is not needed
+	 * until the next frame is queued
+	 */
+	synchronized long publish(GifDrawable drawable, long now, boolean isRunning) {
+		while (mPublishedCount < mQueueSize) {
+			final int slot = mQueue[(mQueueHead + mPublishedCount) % mQueue.length];
+			if (mPresentationTimes[slot] > now) {
+				return mPresentationTimes[slot];
+			}
+			drawable.addDirtyRect(mDirtyRects[slot]);
+			mPublishedCount++;
+		}
+		if (!isRunning || mPauseTime != Long.MIN_VALUE) {
+			return Long.MIN_VALUE;
+		}
+		if (mNextPresentationTime > now) {
+			return mNextPresentationTime;
+		}
+		if (!mIsUnderrunCounted && findFreeSlot() >= 0) {
+			mIsUnderrunCounted = true;
+			mUnderrunCount++;
+		}
+		return Long.MIN_VALUE;
+	}
+
+	/**
+	 * Makes the newest published frame the displayed one. Slots of skipped frames and of the previously
+	 * displayed one become free.
+	 *
+	 * @return true if any slot has been freed
+	 */
+	synchronized boolean acquire() {
+		if (mPublishedCount == 0) {
+			return false;
+		}
+		mIsSlotUsed[mDisplayedSlot] = false;
+		while (mPublishedCount > 1) {
+			mIsSlotUsed[mQueue[mQueueHead]] = false;
+			dequeue();
+			mPublishedCount--;
+		}
+		mDisplayedSlot = mQueue[mQueueHead];
+		dequeue();
+		mPublishedCount = 0;
+		return true;
+	}
+
+	private void dequeue() {
+		mQueueHead = (mQueueHead + 1) % mQueue.length;
+		mQueueSize--;
+	}
+
+	/**
+	 * Drops all the queued frames, e.g. when animation position is changed. The displayed frame is kept
+	 * until the next one is queued and published. The next queued frame is presented immediately.
+	 * If the ring is paused, the pause is counted from now on, so frames queued meanwhile are not postponed
+	 * by the time elapsed before.
+	 *
+	 * @param now current time in {@link android.os.SystemClock#uptimeMillis()} time base
+	 */
+	synchronized void clear(long now) {
+		while (mQueueSize > 0) {
+			mIsSlotUsed[mQueue[mQueueHead]] = false;
+			dequeue();
+		}
+		mPublishedCount = 0;
+		mNextPresentationTime = Long.MIN_VALUE;
+		mIsUnderrunCounted = false;
+		if (mPauseTime != Long.MIN_VALUE) {
+			mPauseTime = now;
+		}
+	}
+
+	synchronized void pause(long now) {
+		if (mPauseTime == Long.MIN_VALUE) {
+			mPauseTime = now;
+		}
+	}
+
+	/**
+	 * Postpones presentation of the queued frames by the time elapsed since {@link #pause(long)}.
+	 *
+	 * @param now current time in {@link android.os.SystemClock#uptimeMillis()} time base
+	 */
+	synchronized void resume(long now) {
+		if (mPauseTime == Long.MIN_VALUE) {
+			return;
+		}
+		final long pauseDuration = now - mPauseTime;
+		mPauseTime = Long.MIN_VALUE;
+		for (int i = mPublishedCount; i < mQueueSize; i++) {
+			mPresentationTimes[mQueue[(mQueueHead + i) % mQueue.length]] += pauseDuration;
+		}
+		if (mNextPresentationTime != Long.MIN_VALUE) {
+			mNextPresentationTime += pauseDuration;
+		}
+	}
+
+	/**
+	 * @return displayed frame or null if no frame has been queued yet
+	 */
+	Bitmap getDisplayedFrame() {
+		final int slot = mDisplayedSlot;
+		return slot >= 0 ? mSlots[slot] : null;
+	}
+
+	synchronized int getDisplayedFrameIndex() {
+		return mDisplayedSlot >= 0 ? mFrameIndices[mDisplayedSlot] : 0;
+	}
+
+	/**
+	 * @return number of frames rendered ahead, which have not been displayed yet
+	 */
+	synchronized int getQueuedFrameCount() {
+		return mQueueSize;
+	}
+
+	synchronized int getUnderrunCount() {
+		return mUnderrunCount;
+	}
+
+	long getAllocationByteCount() {
+		long byteCount = 0;
+		for (Bitmap slot : mSlots) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+				byteCount += slot.getAllocationByteCount();
+			} else {
+				byteCount += slot.getRowBytes() * slot.getHeight();
+			}
+		}
+		return byteCount;
+	}
+
+	void recycle() {
+		for (Bitmap slot : mSlots) {
+			slot.recycle();
+		}
+	}
+}
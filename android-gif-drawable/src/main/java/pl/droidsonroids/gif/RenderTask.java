@@ -4,17 +4,24 @@ import android.os.SystemClock;
 
 import java.util.concurrent.TimeUnit;
 
-import static pl.droidsonroids.gif.InvalidationHandler.MSG_TYPE_INVALIDATION;
+import static pl.droidsonroids.gif.InvalidationHandler.MSG_TYPE_FRAME_INVALIDATION;
 
 class RenderTask extends SafeRunnable {
 
+	private final int[] mDirtyRect = new int[4];
+
 	RenderTask(GifDrawable gifDrawable) {
 		super(gifDrawable);
 	}
 
 	@Override
 	public void doWork() {
-		final long invalidationDelay = mGifDrawable.mNativeInfoHandle.renderFrame(mGifDrawable.mBuffer);
+		if (mGifDrawable.mRenderAheadRing != null) {
+			renderAhead(mGifDrawable.mRenderAheadRing);
+			return;
+		}
+		final long invalidationDelay = mGifDrawable.mNativeInfoHandle.renderFrame(mGifDrawable.mBuffer, mDirtyRect);
+		mGifDrawable.addDirtyRect(mDirtyRect);
 		if (invalidationDelay >= 0) {
 			mGifDrawable.mNextFrameRenderTime = SystemClock.uptimeMillis() + invalidationDelay;
 			if (mGifDrawable.isVisible() && mGifDrawable.mIsRunning && !mGifDrawable.mIsRenderingTriggeredOnDraw) {
@@ -28,8 +35,59 @@ class RenderTask extends SafeRunnable {
 			mGifDrawable.mNextFrameRenderTime = Long.MIN_VALUE;
 			mGifDrawable.mIsRunning = false;
 		}
-		if (mGifDrawable.isVisible() && !mGifDrawable.mInvalidationHandler.hasMessages(MSG_TYPE_INVALIDATION)) {
-			mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
+		if (mGifDrawable.isVisible() && !mGifDrawable.mInvalidationHandler.hasMessages(MSG_TYPE_FRAME_INVALIDATION)) {
+			mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_FRAME_INVALIDATION, 0);
+		}
+	}
+
+	/**
+	 * Renders the next frame into the free slot of the ring, regardless of its presentation time.
+	 * Rendering continues until all the slots are taken, slots are freed when frames are drawn.
+	 */
+	private void renderAhead(RenderAheadRing ring) {
+		final GifInfoHandle handle = mGifDrawable.mNativeInfoHandle;
+		final long invalidationDelay;
+		final int frameIndex;
+		final long presentationTime;
+		final long frameEndTime;
+		synchronized (handle) {
+			if (!ring.hasFreeSlot()) {
+				return;
+			}
+			invalidationDelay = handle.renderFrame(mGifDrawable.mBuffer, mDirtyRect);
+			frameIndex = handle.getCurrentFrameIndex();
+			if (invalidationDelay >= 0) {
+				presentationTime = ring.offer(mGifDrawable.mBuffer, mDirtyRect, frameIndex, handle.getFrameDuration(frameIndex), SystemClock.uptimeMillis());
+			} else if (isFinalFrameRendered()) {
+				presentationTime = ring.offer(mGifDrawable.mBuffer, mDirtyRect, frameIndex, 0, SystemClock.uptimeMillis());
+			} else {
+				presentationTime = Long.MIN_VALUE;
+			}
+			frameEndTime = ring.getNextPresentationTime();
+		}
+		if (invalidationDelay >= 0) {
+			if (mGifDrawable.mIsRunning) {
+				mGifDrawable.scheduleRenderAhead();
+			}
+			if (!mGifDrawable.mListeners.isEmpty() && frameIndex == handle.getNumberOfFrames() - 1) {
+				mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(mGifDrawable.getCurrentLoop(), frameEndTime);
+			}
+		} else {
+			mGifDrawable.mIsRunning = false;
+		}
+		if (presentationTime != Long.MIN_VALUE && !mGifDrawable.mInvalidationHandler.hasMessages(MSG_TYPE_FRAME_INVALIDATION)) {
+			mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_FRAME_INVALIDATION, presentationTime);
 		}
 	}
+
+	/**
+	 * Negative invalidation delay means that animation has ended or nothing could be rendered. The final frame
+	 * of the animation changes the frame buffer and reports the changed area, otherwise frame buffer still holds
+	 * the previously queued frame, which must not be queued again.
+	 *
+	 * @return true if the final frame has just been rendered onto the frame buffer
+	 */
+	private boolean isFinalFrameRendered() {
+		return mDirtyRect[0] < mDirtyRect[2] && mDirtyRect[1] < mDirtyRect[3];
+	}
 }
@@ -0,0 +1,56 @@
+package pl.droidsonroids.gif;
+
+import androidx.annotation.IntRange;
+
+/**
+ * Process-wide cache of composited frames shared by GIFs having the same content and options,
+ * see {@link GifOptions#setInFrameCacheShared(boolean)}.
+ * Caches used by any GIF are never evicted, the remaining ones are evicted in least recently used order
+ * when the maximum size is exceeded.
+ */
+public final class SharedFrameCache {
+
+	/**
+	 * Default maximum size of the shared frame cache in bytes.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+	private SharedFrameCache() {
+	}
+
+	/**
+	 * Sets the maximum number of bytes taken by the shared frame caches. Caches which are not used anymore are evicted
+	 * immediately if they do not fit. Caches completed afterwards which do not fit are not shared.
+	 * Default value is {@value #DEFAULT_MAX_SIZE}.
+	 *
+	 * @param maxSize maximum size in bytes
+	 */
+	public static void setMaxSize(@IntRange(from = 0) final long maxSize) {
+		GifInfoHandle.setSharedFrameCacheMaxSize(Math.max(0, maxSize));
+	}
+
+	/**
+	 * @return maximum size in bytes
+	 * @see #setMaxSize(long)
+	 */
+	public static long getMaxSize() {
+		return GifInfoHandle.getSharedFrameCacheMaxSize();
+	}
+
+	/**
+	 * @return number of bytes taken by the shared frame caches, including the ones which are not used anymore
+	 */
+	public static long getSize() {
+		return GifInfoHandle.getSharedFrameCacheSize();
+	}
+
+	/**
+	 * Evicts caches which are not used anymore until all of them take at most the given number of bytes,
+	 * eg. {@code trimToSize(0)} on low memory. Maximum size is not changed.
+	 *
+	 * @param size target size in bytes
+	 */
+	public static void trimToSize(@IntRange(from = 0) final long size) {
+		GifInfoHandle.trimSharedFrameCache(Math.max(0, size));
+	}
+}
@@ -69,6 +69,11 @@ public class CornerRadiusTransform implements Transform {
 		mShader = null;
 	}
 
+	@Override
+	public void onDirtyBoundsChange(Rect dirtyBounds) {
+		// buffer is scaled to bounds like without transform, rounded corners only clip it
+	}
+
 	@Override
 	public void onDraw(Canvas canvas, Paint paint, Bitmap buffer) {
 		if (mCornerRadius == 0) {
@@ -28,4 +28,17 @@ public interface Transform {
 	 * @param buffer The current Bitmap for the GIF.
 	 */
 	void onDraw(Canvas canvas, Paint paint, Bitmap buffer);
+
+	/**
+	 * Called by {@link GifDrawable} before it invalidates only the area changed by newly rendered frames,
+	 * see {@link GifDrawable#getDirtyBounds()}. The area is mapped to the drawable bounds the same way
+	 * as the buffer is mapped when it is drawn without transform. Implementations can adjust it in place,
+	 * whole drawable is invalidated if it is set empty.
+	 * Default implementation sets it empty, as the buffer may be drawn arbitrarily.
+	 *
+	 * @param dirtyBounds the area of drawable bounds changed by newly rendered frames
+	 */
+	default void onDirtyBoundsChange(Rect dirtyBounds) {
+		dirtyBounds.setEmpty();
+	}
 }
@@ -0,0 +1,172 @@
+/**
+ * Host microbenchmark of blitNormal against the previous per-byte implementation.
+ * Build and run from this directory, e.g.:
+ *   cc -O2 -I"$JAVA_HOME/include" -I"$JAVA_HOME/include/linux" blit_benchmark.c -o blit_benchmark && ./blit_benchmark
+ * Add -DGIF_SCALAR_BLIT to measure the scalar fallback.
+ */
+#define __unused __attribute__((unused))
+#include <stdint.h>
+#include "../../main/c/drawing.c"
+#include "../../main/c/crop.c"
+#include "../../main/c/rgb565.c"
+#include "../../main/c/giflib/gifalloc.c"
+#include "../../main/c/giflib/openbsd-reallocarray.c"
+
+#define FRAME_WIDTH 1000
+#define FRAME_HEIGHT 1000
+#define ITERATIONS 50
+
+ColorMapObject *getDefColorMap(void) {
+	return NULL;
+}
+
+void storeCheckpoint(const argb *__unused bm, GifInfo *__unused info) {
+}
+
+bool isFrameCacheComplete(GifInfo *__unused info) {
+	return false;
+}
+
+void storeFrame(const argb *__unused bm, GifInfo *__unused info) {
+}
+
+void restoreFrame(argb *__unused bm, GifInfo *__unused info) {
+}
+
+int DGifGetLine(GifFileType *__unused GifFile, GifPixelType *__unused GifLine, uint_fast32_t __unused GifLineLen) {
+	return GIF_ERROR;
+}
+
+bool scanMetadata(GifInfo *__unused info, uint_fast32_t __unused frameCount) {
+	return true;
+}
+
+void addCurrentFrameDirtyRect(GifInfo *__unused info) {
+}
+
+void invalidateCanvas(GifInfo *__unused info) {
+}
+
+static void blitReference(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap) {
+	unsigned char *src = info->rasterBits;
+	if (src == NULL) {
+		return;
+	}
+	argb *dst = GET_ADDR(bm, info->stride, frame->ImageDesc.Left, frame->ImageDesc.Top);
+
+	uint_fast16_t x, y = frame->ImageDesc.Height;
+	const int_fast16_t transpIndex = info->controlBlock[info->currentIndex].TransparentColor;
+	const GifWord frameWidth = frame->ImageDesc.Width;
+	const GifWord padding = info->stride - frameWidth;
+	if (info->rasterSize < frame->ImageDesc.Height * frame->ImageDesc.Width) {
+		return;
+	}
+	if (info->isOpaque) {
+		if (transpIndex == NO_TRANSPARENT_COLOR) {
+			for (; y > 0; y--) {
+				for (x = frameWidth; x > 0; x--, src++, dst++) {
+					dst->rgb = cmap->Colors[*src];
+				}
+				dst += padding;
+			}
+		} else {
+			for (; y > 0; y--) {
+				for (x = frameWidth; x > 0; x--, src++, dst++) {
+					if (*src != transpIndex) {
+						dst->rgb = cmap->Colors[*src];
+					}
+				}
+				dst += padding;
+			}
+		}
+	} else {
+		if (transpIndex == NO_TRANSPARENT_COLOR) {
+			for (; y > 0; y--) {
+				MEMSET_ARGB((uint32_t *) dst, UINT_MAX, frameWidth);
+				for (x = frameWidth; x > 0; x--, src++, dst++) {
+					dst->rgb = cmap->Colors[*src];
+				}
+				dst += padding;
+			}
+		} else {
+			for (; y > 0; y--) {
+				for (x = frameWidth; x > 0; x--, src++, dst++) {
+					if (*src != transpIndex) {
+						dst->rgb = cmap->Colors[*src];
+						dst->alpha = 0xFF;
+					}
+				}
+				dst += padding;
+			}
+		}
+	}
+}
+
+static void blitCurrent(argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap) {
+	blitNormal(bm, info, frame, cmap, info->rasterBits, info->rasterSize);
+}
+
+static double getTime(void) {
+	struct timespec ts;
+	clock_gettime(CLOCK_MONOTONIC, &ts);
+	return ts.tv_sec + ts.tv_nsec / 1e9;
+}
+
+static double measure(void (*blit)(argb *, GifInfo *, SavedImage *, ColorMapObject *),
+                      argb *bm, GifInfo *info, SavedImage *frame, ColorMapObject *cmap) {
+	const double start = getTime();
+	int i;
+	for (i = 0; i < ITERATIONS; i++) {
+		blit(bm, info, frame, cmap);
+	}
+	const double megapixels = (double) frame->ImageDesc.Width * frame->ImageDesc.Height / 1e6;
+	return (getTime() - start) * 1000 / ITERATIONS / megapixels;
+}
+
+int main(void) {
+	const size_t pixelCount = FRAME_WIDTH * FRAME_HEIGHT;
+	ColorMapObject *cmap = GifMakeMapObject(8, NULL);
+	GraphicsControlBlock controlBlock;
+	GifFileType gifFile = {.SWidth = FRAME_WIDTH, .SHeight = FRAME_HEIGHT};
+	GifInfo info = {.gifFilePtr = &gifFile, .controlBlock = &controlBlock, .stride = FRAME_WIDTH, .rasterSize = (uint_fast32_t) pixelCount};
+	SavedImage frame = {.ImageDesc = {.Width = FRAME_WIDTH, .Height = FRAME_HEIGHT}};
+	argb *expected = malloc(pixelCount * sizeof(argb));
+	argb *actual = malloc(pixelCount * sizeof(argb));
+	info.rasterBits = malloc(pixelCount);
+	if (cmap == NULL || expected == NULL || actual == NULL || info.rasterBits == NULL) {
+		return 1;
+	}
+	srand(1);
+	size_t i;
+	for (i = 0; i < 256; i++) {
+		cmap->Colors[i] = (GifColorType) {(GifByteType) rand(), (GifByteType) rand(), (GifByteType) rand()};
+	}
+	for (i = 0; i < pixelCount; i++) {
+		info.rasterBits[i] = (unsigned char) rand();
+	}
+
+	printf("%-28s %12s %12s\n", "case", "old ms/MP", "new ms/MP");
+	int c;
+	for (c = 0; c < 4; c++) {
+		info.isOpaque = c & 1;
+		info.argbPaletteSource = NULL;
+		controlBlock.TransparentColor = c & 2 ? 7 : NO_TRANSPARENT_COLOR;
+		for (i = 0; i < pixelCount; i++) {
+			const uint32_t background = (uint32_t) rand();
+			memcpy(expected + i, &background, sizeof(argb));
+			memcpy(actual + i, &background, sizeof(argb));
+		}
+		blitReference(expected, &info, &frame, cmap);
+		blitCurrent(actual, &info, &frame, cmap);
+		if (memcmp(expected, actual, pixelCount * sizeof(argb)) != 0) {
+			printf("output mismatch, opaque=%d transparent=%d\n", c & 1, (c & 2) != 0);
+			return 1;
+		}
+		char name[32];
+		snprintf(name, sizeof(name), "%s, %s", c & 1 ? "opaque" : "non-opaque", c & 2 ? "transparent" : "no transparency");
+		const double oldCost = measure(blitReference, expected, &info, &frame, cmap);
+		const double newCost = measure(blitCurrent, actual, &info, &frame, cmap);
+		printf("%-28s %12.3f %12.3f\n", name, oldCost, newCost);
+	}
+	return 0;
+}
@@ -0,0 +1,156 @@
+/**
+ * Host verification of the fast LZW decoder against the original giflib one.
+ * Every GIF given as an argument is decoded with both decoders, using the same sequence of line lengths,
+ * and results of all DGifGetLine calls are compared. Decoding of a frame stops on the first error.
+ * Build and run from this directory, e.g.:
+ *   cc -O2 -I"$JAVA_HOME/include" -I"$JAVA_HOME/include/linux" lzw_verify.c -o lzw_verify && ./lzw_verify *.gif
+ */
+#define __unused __attribute__((unused))
+#include <stdint.h>
+#include <time.h>
+#include "../../main/c/giflib/dgif_lib.c"
+#include "../../main/c/giflib/gifalloc.c"
+#include "../../main/c/giflib/openbsd-reallocarray.c"
+
+#define ITERATIONS 10
+
+typedef struct {
+	const GifByteType *data;
+	size_t size;
+	size_t position;
+} MemorySource;
+
+typedef struct {
+	GifByteType *data;
+	size_t size;
+	size_t capacity;
+} Output;
+
+ColorMapObject *getDefColorMap(void) {
+	return NULL;
+}
+
+static uint_fast8_t readMemory(GifFileType *gif, GifByteType *bytes, uint_fast8_t size) {
+	MemorySource *source = gif->UserData;
+	size_t count = source->size - source->position;
+	if (count > size) {
+		count = size;
+	}
+	memcpy(bytes, source->data + source->position, count);
+	source->position += count;
+	return (uint_fast8_t) count;
+}
+
+static void append(Output *output, const void *data, size_t size) {
+	if (output == NULL) {
+		return;
+	}
+	if (output->size + size > output->capacity) {
+		output->capacity = (output->size + size) * 2;
+		output->data = realloc(output->data, output->capacity);
+	}
+	memcpy(output->data + output->size, data, size);
+	output->size += size;
+}
+
+static void decode(const GifByteType *data, size_t size, bool isFast, Output *output) {
+	MemorySource source = {data, size, 0};
+	int error;
+	GifFileType *gif = DGifOpen(&source, readMemory, &error);
+	if (gif == NULL) {
+		return;
+	}
+	DGifSetFastLzw(gif, isFast);
+	unsigned int seed = 1;
+	GifRecordType recordType;
+	do {
+		if (DGifGetRecordType(gif, &recordType) == GIF_ERROR) {
+			break;
+		}
+		if (recordType == IMAGE_DESC_RECORD_TYPE) {
+			if (DGifGetImageDesc(gif, true, gif->SWidth, gif->SHeight) == GIF_ERROR) {
+				break;
+			}
+			const size_t pixelCount = (size_t) gif->Image.Width * gif->Image.Height;
+			GifPixelType *line = malloc(gif->Image.Width * 3 + 1);
+			size_t decoded = 0;
+			while (decoded < pixelCount) {
+				// lines of various lengths, so strings are split between calls
+				seed = seed * 1103515245 + 12345;
+				size_t length = 1 + (seed >> 8) % (gif->Image.Width * 3);
+				if (length > pixelCount - decoded) {
+					length = pixelCount - decoded;
+				}
+				const int result = DGifGetLine(gif, line, length);
+				append(output, &result, sizeof(result));
+				if (result == GIF_ERROR) {
+					append(output, &gif->Error, sizeof(gif->Error));
+					break;
+				}
+				append(output, line, length);
+				decoded += length;
+			}
+			append(output, &source.position, sizeof(source.position));
+			free(line);
+		} else if (recordType == EXTENSION_RECORD_TYPE) {
+			int extensionCode;
+			const GifByteType *extension;
+			if (DGifGetExtension(gif, &extensionCode, &extension) == GIF_ERROR) {
+				break;
+			}
+			while (extension != NULL) {
+				if (DGifGetExtensionNext(gif, &extension) == GIF_ERROR) {
+					break;
+				}
+			}
+		}
+	} while (recordType != TERMINATE_RECORD_TYPE);
+	DGifCloseFile(gif);
+}
+
+static double measure(const GifByteType *data, size_t size, bool isFast) {
+	struct timespec start, end;
+	clock_gettime(CLOCK_MONOTONIC, &start);
+	int i;
+	for (i = 0; i < ITERATIONS; i++) {
+		decode(data, size, isFast, NULL);
+	}
+	clock_gettime(CLOCK_MONOTONIC, &end);
+	return ((end.tv_sec - start.tv_sec) * 1e3 + (end.tv_nsec - start.tv_nsec) / 1e6) / ITERATIONS;
+}
+
+int main(int argc, char **argv) {
+	int mismatchCount = 0;
+	printf("%-40s %12s %12s\n", "file", "legacy ms", "fast ms");
+	int i;
+	for (i = 1; i < argc; i++) {
+		FILE *file = fopen(argv[i], "rb");
+		if (file == NULL) {
+			continue;
+		}
+		fseek(file, 0, SEEK_END);
+		const size_t size = (size_t) ftell(file);
+		fseek(file, 0, SEEK_SET);
+		GifByteType *data = malloc(size);
+		const size_t readCount = fread(data, 1, size, file);
+		fclose(file);
+		if (readCount != size) {
+			free(data);
+			continue;
+		}
+
+		Output expected = {NULL, 0, 0}, actual = {NULL, 0, 0};
+		decode(data, size, false, &expected);
+		decode(data, size, true, &actual);
+		if (expected.size != actual.size || memcmp(expected.data, actual.data, expected.size) != 0) {
+			printf("%-40s output mismatch\n", argv[i]);
+			mismatchCount++;
+		} else {
+			printf("%-40s %12.3f %12.3f\n", argv[i], measure(data, size, false), measure(data, size, true));
+		}
+		free(expected.data);
+		free(actual.data);
+		free(data);
+	}
+	return mismatchCount != 0;
+}
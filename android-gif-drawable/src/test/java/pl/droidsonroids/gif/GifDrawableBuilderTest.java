@@ -15,4 +15,23 @@ public class GifDrawableBuilderTest {
 		assertThat(options.inSampleSize).isEqualTo((char) 1);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testOptionsAndFrameCacheSizeConflict() throws Exception {
+		GifDrawableBuilder builder = new GifDrawableBuilder();
+		GifOptions options = new GifOptions();
+		builder.options(options);
+		builder.frameCacheSize(1 << 20);
+		assertThat(options.inFrameCacheSize).isZero();
+		assertThat(builder.getOptions().inFrameCacheSize).isEqualTo(1 << 20);
+	}
+
+	@Test
+	public void testOptionsAndRenderAheadFrameCountConflict() throws Exception {
+		GifDrawableBuilder builder = new GifDrawableBuilder();
+		GifOptions options = new GifOptions();
+		builder.options(options);
+		builder.renderAheadFrameCount(2);
+		assertThat(options.inRenderAheadFrameCount).isZero();
+		assertThat(builder.getOptions().inRenderAheadFrameCount).isEqualTo(2);
+	}
+}
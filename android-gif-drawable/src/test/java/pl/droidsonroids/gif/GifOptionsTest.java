@@ -1,5 +1,7 @@
 package pl.droidsonroids.gif;
 
+import android.graphics.Bitmap;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -18,6 +20,23 @@ public class GifOptionsTest {
 	public void testInitialValues() {
 		assertThat(gifOptions.inSampleSize).isEqualTo((char) 1);
 		assertThat(gifOptions.inIsOpaque).isFalse();
+		assertThat(gifOptions.inCheckpointCacheSize).isZero();
+		assertThat(gifOptions.inCheckpointInterval).isEqualTo(GifOptions.DEFAULT_CHECKPOINT_INTERVAL);
+		assertThat(gifOptions.inFrameCacheSize).isZero();
+		assertThat(gifOptions.inFrameCacheIndexed).isTrue();
+		assertThat(gifOptions.inFrameCacheShared).isFalse();
+		assertThat(gifOptions.inFastLzwDecoder).isTrue();
+		assertThat(gifOptions.inTargetWidth).isZero();
+		assertThat(gifOptions.inTargetHeight).isZero();
+		assertThat(gifOptions.inCropLeft).isZero();
+		assertThat(gifOptions.inCropTop).isZero();
+		assertThat(gifOptions.inCropRight).isZero();
+		assertThat(gifOptions.inCropBottom).isZero();
+		assertThat(gifOptions.inRenderAheadFrameCount).isZero();
+		assertThat(gifOptions.inPreferredConfig).isEqualTo(Bitmap.Config.ARGB_8888);
+		assertThat(gifOptions.inDither).isFalse();
+		assertThat(gifOptions.inLazyMetadata).isFalse();
+		assertThat(gifOptions.inMetadataSidecar).isNull();
 	}
 
 	@Test
@@ -32,11 +51,126 @@ public class GifOptionsTest {
 		assertThat(gifOptions.inIsOpaque).isTrue();
 	}
 
+	@Test
+	public void setInCheckpointCacheSize() {
+		gifOptions.setInCheckpointCacheSize(1 << 20);
+		assertThat(gifOptions.inCheckpointCacheSize).isEqualTo(1 << 20);
+	}
+
+	@Test
+	public void setInvalidInCheckpointCacheSize() {
+		gifOptions.setInCheckpointCacheSize(-1);
+		assertThat(gifOptions.inCheckpointCacheSize).isZero();
+	}
+
+	@Test
+	public void setInvalidInCheckpointInterval() {
+		gifOptions.setInCheckpointInterval(0);
+		assertThat(gifOptions.inCheckpointInterval).isEqualTo(1);
+	}
+
+	@Test
+	public void setInFrameCacheShared() {
+		gifOptions.setInFrameCacheShared(true);
+		assertThat(gifOptions.inFrameCacheShared).isTrue();
+	}
+
+	@Test
+	public void setInTargetSize() {
+		gifOptions.setInTargetSize(120, 90);
+		assertThat(gifOptions.inTargetWidth).isEqualTo(120);
+		assertThat(gifOptions.inTargetHeight).isEqualTo(90);
+	}
+
+	@Test
+	public void setInvalidInTargetSize() {
+		gifOptions.setInTargetSize(120, 90);
+		gifOptions.setInTargetSize(120, 0);
+		assertThat(gifOptions.inTargetWidth).isZero();
+		assertThat(gifOptions.inTargetHeight).isZero();
+	}
+
+	@Test
+	public void setInCropRect() {
+		gifOptions.setInCropRect(50, 0, 150, 100);
+		assertThat(gifOptions.inCropLeft).isEqualTo(50);
+		assertThat(gifOptions.inCropTop).isZero();
+		assertThat(gifOptions.inCropRight).isEqualTo(150);
+		assertThat(gifOptions.inCropBottom).isEqualTo(100);
+	}
+
+	@Test
+	public void setInvalidInCropRect() {
+		gifOptions.setInCropRect(50, 0, 150, 100);
+		gifOptions.setInCropRect(150, 0, 50, 100);
+		assertThat(gifOptions.inCropLeft).isZero();
+		assertThat(gifOptions.inCropTop).isZero();
+		assertThat(gifOptions.inCropRight).isZero();
+		assertThat(gifOptions.inCropBottom).isZero();
+	}
+
+	@Test
+	public void setInRenderAheadFrameCount() {
+		gifOptions.setInRenderAheadFrameCount(3);
+		assertThat(gifOptions.inRenderAheadFrameCount).isEqualTo(3);
+	}
+
+	@Test
+	public void setInvalidInRenderAheadFrameCount() {
+		gifOptions.setInRenderAheadFrameCount(-1);
+		assertThat(gifOptions.inRenderAheadFrameCount).isZero();
+	}
+
+	@Test
+	public void setInPreferredConfig() {
+		gifOptions.setInPreferredConfig(Bitmap.Config.RGB_565);
+		assertThat(gifOptions.inPreferredConfig).isEqualTo(Bitmap.Config.RGB_565);
+	}
+
+	@Test
+	public void setUnsupportedInPreferredConfig() {
+		gifOptions.setInPreferredConfig(Bitmap.Config.RGB_565);
+		gifOptions.setInPreferredConfig(Bitmap.Config.ALPHA_8);
+		assertThat(gifOptions.inPreferredConfig).isEqualTo(Bitmap.Config.ARGB_8888);
+	}
+
+	@Test
+	public void setInDither() {
+		gifOptions.setInDither(true);
+		assertThat(gifOptions.inDither).isTrue();
+	}
+
+	@Test
+	public void setInLazyMetadata() {
+		gifOptions.setInLazyMetadata(true);
+		assertThat(gifOptions.inLazyMetadata).isTrue();
+	}
+
+	@Test
+	public void setInMetadataSidecar() {
+		final byte[] sidecar = new byte[32];
+		gifOptions.setInMetadataSidecar(sidecar);
+		assertThat(gifOptions.inMetadataSidecar).isSameAs(sidecar);
+	}
+
 	@Test
 	public void copyFromNonNull() {
 		GifOptions source = new GifOptions();
 		source.setInIsOpaque(false);
 		source.setInSampleSize(8);
+		source.setInCheckpointCacheSize(1 << 20);
+		source.setInCheckpointInterval(4);
+		source.setInFrameCacheSize(1 << 22);
+		source.setInFrameCacheIndexed(false);
+		source.setInFrameCacheShared(true);
+		source.setInFastLzwDecoder(false);
+		source.setInTargetSize(120, 90);
+		source.setInCropRect(50, 0, 150, 100);
+		source.setInRenderAheadFrameCount(3);
+		source.setInPreferredConfig(Bitmap.Config.RGB_565);
+		source.setInDither(true);
+		source.setInLazyMetadata(true);
+		source.setInMetadataSidecar(new byte[32]);
 		gifOptions.setFrom(source);
 		assertThat(gifOptions).isEqualToComparingFieldByField(source);
 	}
@@ -46,6 +180,16 @@ public class GifOptionsTest {
 		GifOptions defaultOptions = new GifOptions();
 		gifOptions.setInIsOpaque(false);
 		gifOptions.setInSampleSize(8);
+		gifOptions.setInCheckpointCacheSize(1 << 20);
+		gifOptions.setInFrameCacheShared(true);
+		gifOptions.setInFastLzwDecoder(false);
+		gifOptions.setInTargetSize(120, 90);
+		gifOptions.setInCropRect(50, 0, 150, 100);
+		gifOptions.setInRenderAheadFrameCount(3);
+		gifOptions.setInPreferredConfig(Bitmap.Config.RGB_565);
+		gifOptions.setInDither(true);
+		gifOptions.setInLazyMetadata(true);
+		gifOptions.setInMetadataSidecar(new byte[32]);
 		gifOptions.setFrom(null);
 		assertThat(gifOptions).isEqualToComparingFieldByField(defaultOptions);
 	}
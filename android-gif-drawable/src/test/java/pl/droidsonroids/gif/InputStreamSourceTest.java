@@ -0,0 +1,16 @@
+package pl.droidsonroids.gif;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InputStreamSourceTest {
+
+	@Test
+	public void testNegativeSpillThreshold() {
+		assertThatThrownBy(() -> new InputSource.InputStreamSource(new ByteArrayInputStream(new byte[0]), 4096, -1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}